@@ -0,0 +1,8 @@
+package android.content;
+
+/**
+ * A stand-in for Android's Context, only so the sinks that take one in their
+ * constructor compile - none of its methods are available.
+ */
+public abstract class Context {
+}
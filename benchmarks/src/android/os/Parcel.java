@@ -0,0 +1,101 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A stand-in for Android's Parcel, with just the methods the library uses.
+ *
+ * Values are kept in a list of objects instead of being flattened to bytes,
+ * so this measures how many values a Parcelable writes and reads, not the
+ * cost of the native Parcel. Data positions count values, not bytes.
+ */
+public final class Parcel {
+    private final List<Object> mValues = new ArrayList<Object>();
+    private int mPosition;
+
+    private Parcel() { }
+
+    public static Parcel obtain() {
+        return new Parcel();
+    }
+
+    public void recycle() {
+        mValues.clear();
+        mPosition = 0;
+    }
+
+    public int dataSize() {
+        return mValues.size();
+    }
+
+    public int dataPosition() {
+        return mPosition;
+    }
+
+    public void setDataPosition(int position) {
+        mPosition = position;
+    }
+
+    public void writeInt(int value) {
+        write(value);
+    }
+
+    public void writeLong(long value) {
+        write(value);
+    }
+
+    public void writeDouble(double value) {
+        write(value);
+    }
+
+    public void writeString(String value) {
+        write(value);
+    }
+
+    public void writeValue(Object value) {
+        write(value);
+    }
+
+    public void writeLongArray(long[] value) {
+        write(value != null ? value.clone() : null);
+    }
+
+    public int readInt() {
+        return (Integer) read();
+    }
+
+    public long readLong() {
+        return (Long) read();
+    }
+
+    public double readDouble() {
+        return (Double) read();
+    }
+
+    public String readString() {
+        return (String) read();
+    }
+
+    public Object readValue(ClassLoader loader) {
+        return read();
+    }
+
+    public long[] createLongArray() {
+        long[] value = (long[]) read();
+        return value != null ? value.clone() : null;
+    }
+
+    private void write(Object value) {
+        if(mPosition < mValues.size()) {
+            mValues.set(mPosition, value);
+        } else {
+            mValues.add(value);
+        }
+        mPosition++;
+    }
+
+    private Object read() {
+        return mValues.get(mPosition++);
+    }
+}
@@ -0,0 +1,19 @@
+package android.os;
+
+/**
+ * A stand-in for Android's Parcelable, see {@link Parcel}.
+ */
+public interface Parcelable {
+    public static final int PARCELABLE_WRITE_RETURN_VALUE = 0x0001;
+    public static final int CONTENTS_FILE_DESCRIPTOR = 0x0001;
+
+    public int describeContents();
+
+    public void writeToParcel(Parcel dest, int flags);
+
+    public interface Creator<T> {
+        public T createFromParcel(Parcel source);
+
+        public T[] newArray(int size);
+    }
+}
@@ -0,0 +1,63 @@
+package android.util;
+
+/**
+ * A stand-in for Android's Log so the library can run on a plain JVM.
+ *
+ * Debug and info messages are discarded so they don't skew the benchmarks -
+ * warnings and errors are printed to stderr.
+ */
+public final class Log {
+    private Log() { }
+
+    public static int v(String tag, String msg) {
+        return 0;
+    }
+
+    public static int v(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+
+    public static int d(String tag, String msg) {
+        return 0;
+    }
+
+    public static int d(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+
+    public static int i(String tag, String msg) {
+        return 0;
+    }
+
+    public static int i(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+
+    public static int w(String tag, String msg) {
+        return print(tag, msg, null);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return print(tag, msg, tr);
+    }
+
+    public static int w(String tag, Throwable tr) {
+        return print(tag, null, tr);
+    }
+
+    public static int e(String tag, String msg) {
+        return print(tag, msg, null);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return print(tag, msg, tr);
+    }
+
+    private static int print(String tag, String msg, Throwable tr) {
+        System.err.println(tag + ": " + (msg != null ? msg : ""));
+        if(tr != null) {
+            tr.printStackTrace();
+        }
+        return 0;
+    }
+}
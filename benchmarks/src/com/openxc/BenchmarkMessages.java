@@ -0,0 +1,53 @@
+package com.openxc;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * A mix of the messages a vehicle interface sends, shared by the benchmarks.
+ */
+public class BenchmarkMessages {
+    public final static String[] MESSAGES = {
+        "{\"name\": \"vehicle_speed\", \"value\": 42.5}",
+        "{\"name\": \"engine_speed\", \"value\": 1500}",
+        "{\"name\": \"brake_pedal_status\", \"value\": false}",
+        "{\"name\": \"transmission_gear_position\", \"value\": \"second\"}",
+        "{\"name\": \"button_event\", \"value\": \"left\", " +
+            "\"event\": \"pressed\"}",
+        "{\"name\": \"latitude\", \"value\": 42.292834, " +
+            "\"timestamp\": 1351176963.438211}"
+    };
+
+    /**
+     * @return each message as UTF-8 bytes, without a delimiter.
+     */
+    public static byte[][] getFrames() {
+        byte[][] frames = new byte[MESSAGES.length][];
+        for(int i = 0; i < MESSAGES.length; i++) {
+            frames[i] = toBytes(MESSAGES[i]);
+        }
+        return frames;
+    }
+
+    /**
+     * @param repetitions the number of times to repeat the messages.
+     * @return the messages as a stream of newline delimited UTF-8 bytes, the
+     *      way they're read from a vehicle interface.
+     */
+    public static byte[] getStream(int repetitions) {
+        StringBuilder stream = new StringBuilder();
+        for(int i = 0; i < repetitions; i++) {
+            for(String message : MESSAGES) {
+                stream.append(message).append("\r\n");
+            }
+        }
+        return toBytes(stream.toString());
+    }
+
+    private static byte[] toBytes(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch(UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.openxc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.openxc.measurements.UnrecognizedMeasurementTypeException;
+import com.openxc.remote.RawMeasurement;
+import com.openxc.sinks.BaseVehicleDataSink;
+import com.openxc.sinks.DataSinkException;
+
+/**
+ * Send measurements through a pipeline to a number of sinks that do nothing
+ * but count them, so the score is the pipeline's own overhead.
+ *
+ * The sinks are called directly from the source's thread, each given its own
+ * lossless queue, or read from a shared {@link DispatchRing}. Neither of the
+ * last two drops measurements, so once the sinks fall behind the source waits
+ * for them and the score includes the cost of delivery.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DataPipelineBenchmark {
+    @Param({"1", "4", "16"})
+    public int sinkCount;
+
+    @Param({"synchronous", "queued", "ring"})
+    public String dispatch;
+
+    private DataPipeline mPipeline;
+    private RawMeasurement[] mMeasurements;
+    private int mIndex;
+
+    @Setup
+    public void setUp() throws UnrecognizedMeasurementTypeException {
+        if("ring".equals(dispatch)) {
+            mPipeline = new DataPipeline(DispatchRing.DEFAULT_CAPACITY);
+        } else {
+            mPipeline = new DataPipeline();
+        }
+        for(int i = 0; i < sinkCount; i++) {
+            if("queued".equals(dispatch)) {
+                mPipeline.addSink(new CountingSink(), DeliveryPolicy.LOSSLESS);
+            } else {
+                mPipeline.addSink(new CountingSink());
+            }
+        }
+
+        mMeasurements = new RawMeasurement[BenchmarkMessages.MESSAGES.length];
+        for(int i = 0; i < mMeasurements.length; i++) {
+            mMeasurements[i] = new RawMeasurement(
+                    BenchmarkMessages.MESSAGES[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPipeline.stop();
+    }
+
+    @Benchmark
+    public void receive() {
+        int index = mIndex;
+        mIndex = index + 1 == mMeasurements.length ? 0 : index + 1;
+        mPipeline.receive(mMeasurements[index]);
+    }
+
+    private static class CountingSink extends BaseVehicleDataSink {
+        private long mCount;
+
+        @Override
+        public boolean receive(RawMeasurement measurement)
+                throws DataSinkException {
+            super.receive(measurement);
+            mCount++;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.openxc.measurements;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.openxc.NoValueException;
+import com.openxc.remote.RawMeasurement;
+import com.openxc.units.KilometersPerHour;
+
+/**
+ * Build typed measurements from raw ones, the last step before they're sent
+ * to an application's listeners.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+// JMH's @Measurement would clash with com.openxc.measurements.Measurement
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 1)
+public class BaseMeasurementBenchmark {
+    private RawMeasurement mNumeric;
+    private RawMeasurement mState;
+    private RawMeasurement mEvent;
+
+    @Setup
+    public void setUp() {
+        mNumeric = new RawMeasurement(VehicleSpeed.ID, 42.5);
+        mState = new RawMeasurement(TransmissionGearPosition.ID, "second");
+        mEvent = new RawMeasurement(VehicleButtonEvent.ID, "left", "pressed");
+    }
+
+    @Benchmark
+    public Measurement numeric()
+            throws UnrecognizedMeasurementTypeException, NoValueException {
+        return BaseMeasurement.getMeasurementFromRaw(VehicleSpeed.class,
+                mNumeric);
+    }
+
+    @Benchmark
+    public Measurement state()
+            throws UnrecognizedMeasurementTypeException, NoValueException {
+        return BaseMeasurement.getMeasurementFromRaw(
+                TransmissionGearPosition.class, mState);
+    }
+
+    @Benchmark
+    public Measurement event()
+            throws UnrecognizedMeasurementTypeException, NoValueException {
+        return BaseMeasurement.getMeasurementFromRaw(VehicleButtonEvent.class,
+                mEvent);
+    }
+
+    /**
+     * Build a type that isn't registered with a factory, with the reflective
+     * fallback.
+     */
+    @Benchmark
+    public Measurement reflection()
+            throws UnrecognizedMeasurementTypeException, NoValueException {
+        return BaseMeasurement.getMeasurementFromRaw(
+                UnregisteredVehicleSpeed.class, mNumeric);
+    }
+
+    /**
+     * Look up the measurement's type from its name first.
+     */
+    @Benchmark
+    public Measurement untyped()
+            throws UnrecognizedMeasurementTypeException, NoValueException {
+        return BaseMeasurement.getMeasurementFromRaw(mNumeric);
+    }
+
+    /**
+     * The same constructor as VehicleSpeed, but not registered with a
+     * factory.
+     */
+    public static class UnregisteredVehicleSpeed
+            extends BaseMeasurement<KilometersPerHour> {
+        public UnregisteredVehicleSpeed(Number value) {
+            super(new KilometersPerHour(value));
+        }
+    }
+}
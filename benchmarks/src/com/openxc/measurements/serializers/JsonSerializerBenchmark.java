@@ -0,0 +1,44 @@
+package com.openxc.measurements.serializers;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialize measurements with and without an event and a timestamp.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class JsonSerializerBenchmark {
+    private Double mValue = 42.5;
+    private Long mTimestamp = 1351176963438L;
+
+    @Benchmark
+    public String numeric() {
+        return JsonSerializer.serialize("vehicle_speed", mValue, null,
+                mTimestamp);
+    }
+
+    @Benchmark
+    public String event() {
+        return JsonSerializer.serialize("button_event", "left", "pressed",
+                mTimestamp);
+    }
+
+    @Benchmark
+    public String untimestamped() {
+        return JsonSerializer.serialize("vehicle_speed", mValue, null, null);
+    }
+}
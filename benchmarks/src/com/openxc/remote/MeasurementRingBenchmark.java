@@ -0,0 +1,67 @@
+package com.openxc.remote;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Move measurements through the shared memory ring buffer - compare with
+ * {@link RawMeasurementBenchmark#parcel()}, the cost of marshalling them for
+ * the binder (not counting the transaction itself).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MeasurementRingBenchmark {
+    private RawMeasurement[] mMeasurements = {
+        new RawMeasurement("vehicle_speed", 42.5),
+        new RawMeasurement("engine_speed", 1500),
+        new RawMeasurement("brake_pedal_status", false),
+        new RawMeasurement("button_event", "left", "pressed")
+    };
+    private int mIndex;
+    private File mFile;
+    private FileInputStream mInput;
+    private MeasurementRingWriter mWriter;
+    private MeasurementRingReader mReader;
+
+    @Setup
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("benchmark", ".ring");
+        mWriter = new MeasurementRingWriter(mFile,
+                MeasurementRingBuffer.DEFAULT_CAPACITY);
+        mInput = new FileInputStream(mFile);
+        mReader = new MeasurementRingReader(mInput.getChannel());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mInput.close();
+        mWriter.close();
+        mFile.delete();
+    }
+
+    @Benchmark
+    public RawMeasurement writeAndRead() {
+        int index = mIndex;
+        mIndex = index + 1 == mMeasurements.length ? 0 : index + 1;
+        mWriter.write(mMeasurements[index]);
+        return mReader.read();
+    }
+}
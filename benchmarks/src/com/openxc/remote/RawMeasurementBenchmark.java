@@ -0,0 +1,77 @@
+package com.openxc.remote;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.os.Parcel;
+
+import com.openxc.BenchmarkMessages;
+import com.openxc.measurements.UnrecognizedMeasurementTypeException;
+
+/**
+ * Decode measurements from a frame's bytes and from a String, and copy them
+ * through a Parcel the way they cross the binder.
+ *
+ * Each call handles the next of {@link BenchmarkMessages#MESSAGES}, so the
+ * score is the average over the mix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RawMeasurementBenchmark {
+    private byte[][] mFrames;
+    private RawMeasurement[] mMeasurements;
+    private Parcel mParcel;
+    private int mIndex;
+
+    @Setup
+    public void setUp() throws UnrecognizedMeasurementTypeException {
+        mFrames = BenchmarkMessages.getFrames();
+        mMeasurements = new RawMeasurement[mFrames.length];
+        for(int i = 0; i < mFrames.length; i++) {
+            mMeasurements[i] = new RawMeasurement(
+                    BenchmarkMessages.MESSAGES[i]);
+        }
+        mParcel = Parcel.obtain();
+    }
+
+    @Benchmark
+    public RawMeasurement decodeBytes()
+            throws UnrecognizedMeasurementTypeException {
+        byte[] frame = mFrames[next()];
+        return new RawMeasurement(frame, 0, frame.length);
+    }
+
+    @Benchmark
+    public RawMeasurement decodeString()
+            throws UnrecognizedMeasurementTypeException {
+        return new RawMeasurement(BenchmarkMessages.MESSAGES[next()]);
+    }
+
+    @Benchmark
+    public RawMeasurement parcel() {
+        mParcel.setDataPosition(0);
+        mMeasurements[next()].writeToParcel(mParcel, 0);
+        mParcel.setDataPosition(0);
+        return RawMeasurement.CREATOR.createFromParcel(mParcel);
+    }
+
+    private int next() {
+        int index = mIndex;
+        mIndex = index + 1 == mFrames.length ? 0 : index + 1;
+        return index;
+    }
+}
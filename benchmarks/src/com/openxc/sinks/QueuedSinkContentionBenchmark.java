@@ -0,0 +1,89 @@
+package com.openxc.sinks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.openxc.BenchmarkMessages;
+import com.openxc.DataPipeline;
+import com.openxc.DeliveryPolicy;
+import com.openxc.measurements.UnrecognizedMeasurementTypeException;
+import com.openxc.remote.RawMeasurement;
+
+/**
+ * Send measurements from several threads at once to a pipeline with queued
+ * sinks - e.g. the USB interface, the native location source and an
+ * application all feeding the same pipeline. The score is what each source
+ * thread pays to hand off a measurement, not the time to deliver it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Threads(3)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class QueuedSinkContentionBenchmark {
+    private final static int SINK_COUNT = 2;
+
+    @Param({"COALESCE_LATEST", "DROP_OLDEST"})
+    public DeliveryPolicy policy;
+
+    private DataPipeline mPipeline;
+    private RawMeasurement[] mMeasurements;
+
+    @State(Scope.Thread)
+    public static class Source {
+        private int mIndex;
+    }
+
+    @Setup
+    public void setUp() throws UnrecognizedMeasurementTypeException {
+        mPipeline = new DataPipeline();
+        for(int i = 0; i < SINK_COUNT; i++) {
+            CountingSink sink = new CountingSink();
+            sink.setDeliveryPolicy(policy);
+            mPipeline.addSink(sink);
+        }
+
+        mMeasurements = new RawMeasurement[BenchmarkMessages.MESSAGES.length];
+        for(int i = 0; i < mMeasurements.length; i++) {
+            mMeasurements[i] = new RawMeasurement(
+                    BenchmarkMessages.MESSAGES[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPipeline.stop();
+    }
+
+    @Benchmark
+    public void receive(Source source) {
+        int index = source.mIndex;
+        source.mIndex = index + 1 == mMeasurements.length ? 0 : index + 1;
+        mPipeline.receive(mMeasurements[index]);
+    }
+
+    private static class CountingSink extends AbstractQueuedCallbackSink {
+        private final AtomicLong mDelivered = new AtomicLong();
+
+        protected void propagateMeasurement(String measurementId,
+                RawMeasurement measurement) {
+            mDelivered.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.openxc.sinks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.openxc.BenchmarkMessages;
+import com.openxc.measurements.UnrecognizedMeasurementTypeException;
+import com.openxc.remote.RawMeasurement;
+
+/**
+ * Encode a batch of serialized measurements into the body of an upload
+ * request. The default batch is 25 records.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UploaderSinkBenchmark {
+    @Param({"25", "250"})
+    public int batchSize;
+
+    private ArrayList<String> mRecords;
+
+    @Setup
+    public void setUp() throws UnrecognizedMeasurementTypeException {
+        mRecords = new ArrayList<String>();
+        for(int i = 0; i < batchSize; i++) {
+            String message = BenchmarkMessages.MESSAGES[
+                    i % BenchmarkMessages.MESSAGES.length];
+            mRecords.add(new RawMeasurement(message).serialize());
+        }
+    }
+
+    @Benchmark
+    public String encodeBatch() throws DataSinkException {
+        return UploaderSink.constructRequestData(mRecords);
+    }
+}
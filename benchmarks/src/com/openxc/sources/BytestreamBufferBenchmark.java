@@ -0,0 +1,64 @@
+package com.openxc.sources;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.openxc.BenchmarkMessages;
+
+/**
+ * Split a stream of messages into frames, read from the device in chunks of
+ * different sizes.
+ *
+ * The score is the time to frame the whole stream, 600 messages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BytestreamBufferBenchmark {
+    @Param({"64", "512", "4096"})
+    public int readSize;
+
+    private byte[][] mReads;
+    private BytestreamBuffer mBuffer;
+
+    @Setup
+    public void setUp() {
+        byte[] stream = BenchmarkMessages.getStream(100);
+        mReads = new byte[(stream.length + readSize - 1) / readSize][];
+        for(int i = 0; i < mReads.length; i++) {
+            int offset = i * readSize;
+            int length = Math.min(readSize, stream.length - offset);
+            mReads[i] = new byte[length];
+            System.arraycopy(stream, offset, mReads[i], 0, length);
+        }
+        mBuffer = new BytestreamBuffer();
+    }
+
+    @Benchmark
+    public int frame(Blackhole blackhole) {
+        int frames = 0;
+        for(byte[] read : mReads) {
+            mBuffer.receive(read, read.length);
+            while(mBuffer.nextFrame()) {
+                blackhole.consume(mBuffer.getFrameLength());
+                frames++;
+            }
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,79 @@
+package com.openxc.sources.trace;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.openxc.BenchmarkMessages;
+import com.openxc.remote.RawMeasurement;
+import com.openxc.sources.SourceCallback;
+
+/**
+ * Process a directory of JSON traces with different numbers of threads.
+ *
+ * The score is the time to process 4 traces of 60,000 messages each - the
+ * speedup with more threads depends on the number of cores.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TraceProcessorBenchmark {
+    private static final int TRACE_COUNT = 4;
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    private File mDirectory;
+
+    @Setup
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("traces", "");
+        mDirectory.delete();
+        mDirectory.mkdir();
+
+        byte[] trace = BenchmarkMessages.getStream(10000);
+        for(int i = 0; i < TRACE_COUNT; i++) {
+            OutputStream output = new FileOutputStream(
+                    new File(mDirectory, "trace" + i + ".json"));
+            output.write(trace);
+            output.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for(File file : mDirectory.listFiles()) {
+            file.delete();
+        }
+        mDirectory.delete();
+    }
+
+    @Benchmark
+    public Object process(final Blackhole blackhole) throws IOException {
+        return new TraceProcessor(threads).process(mDirectory,
+                new SourceCallback() {
+                    public void receive(RawMeasurement measurement) {
+                        blackhole.consume(measurement);
+                    }
+                });
+    }
+}
@@ -0,0 +1,101 @@
+package com.openxc.sources.trace;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.openxc.BenchmarkMessages;
+
+/**
+ * Read the same trace in the JSON and binary formats, the JSON trace from a
+ * file through a stream and by mapping it, and from a {@link TraceCache}.
+ *
+ * The score is the time to read the whole trace, 600 messages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TraceReaderBenchmark {
+    private byte[] mJsonTrace;
+    private byte[] mBinaryTrace;
+    private File mJsonFile;
+    private TraceCache mCache;
+
+    @Setup
+    public void setUp() throws IOException {
+        mJsonTrace = BenchmarkMessages.getStream(100);
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        TraceConverter.toBinary(new ByteArrayInputStream(mJsonTrace), binary);
+        mBinaryTrace = binary.toByteArray();
+
+        mJsonFile = File.createTempFile("trace", ".json");
+        OutputStream output = new FileOutputStream(mJsonFile);
+        output.write(mJsonTrace);
+        output.close();
+
+        mCache = TraceCache.load(new JsonTraceReader(
+                    new ByteArrayInputStream(mJsonTrace)), 1024 * 1024);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mJsonFile.delete();
+    }
+
+    @Benchmark
+    public void readJson(Blackhole blackhole) throws IOException {
+        read(new JsonTraceReader(new ByteArrayInputStream(mJsonTrace)),
+                blackhole);
+    }
+
+    @Benchmark
+    public void readBinary(Blackhole blackhole) throws IOException {
+        read(new BinaryTraceReader(new ByteArrayInputStream(mBinaryTrace)),
+                blackhole);
+    }
+
+    @Benchmark
+    public void readJsonFile(Blackhole blackhole) throws IOException {
+        read(new JsonTraceReader(new FileInputStream(mJsonFile)), blackhole);
+    }
+
+    @Benchmark
+    public void readMappedJsonFile(Blackhole blackhole) throws IOException {
+        read(new MappedJsonTraceReader(mJsonFile), blackhole);
+    }
+
+    @Benchmark
+    public void readCached(Blackhole blackhole) throws IOException {
+        read(mCache.openReader(), blackhole);
+    }
+
+    private static void read(TraceReader reader, Blackhole blackhole)
+            throws IOException {
+        Object measurement;
+        while((measurement = reader.read()) != null) {
+            blackhole.consume(measurement);
+        }
+        reader.close();
+    }
+}
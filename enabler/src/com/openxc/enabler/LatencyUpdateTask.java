@@ -0,0 +1,80 @@
+package com.openxc.enabler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+
+import android.app.Activity;
+import android.widget.ArrayAdapter;
+import android.widget.ListView;
+
+import com.openxc.VehicleManager;
+import com.openxc.remote.PipelineStatistics;
+import com.openxc.remote.VehicleServiceException;
+
+/**
+ * Display the latency of each hop of the measurements traced in the vehicle
+ * service and in this application, if latency tracing is enabled.
+ */
+public class LatencyUpdateTask extends TimerTask {
+    private VehicleManager mVehicleManager;
+    private Activity mActivity;
+    private ArrayAdapter<Object> mLatencyListAdapter;
+
+    public LatencyUpdateTask(VehicleManager vehicleService,
+            Activity activity, ListView latencyListView) {
+        mVehicleManager = vehicleService;
+        mActivity = activity;
+
+        mLatencyListAdapter = new ArrayAdapter<Object>(mActivity,
+                android.R.layout.simple_list_item_1);
+        latencyListView.setAdapter(mLatencyListAdapter);
+    }
+
+    public void run() {
+        final List<String> summaries = getHopSummaries(mVehicleManager);
+        mActivity.runOnUiThread(new Runnable() {
+            public void run() {
+                mLatencyListAdapter.clear();
+                // See PipelineStatusUpdateTask RE: addAll
+                for(String summary : summaries) {
+                    mLatencyListAdapter.add(summary);
+                }
+                mLatencyListAdapter.notifyDataSetChanged();
+            }
+        });
+    }
+
+    /**
+     * @return a line for each hop traced in the vehicle service and in this
+     *      process, with the median and 99th percentile latency in
+     *      microseconds.
+     */
+    public static List<String> getHopSummaries(VehicleManager vehicleManager) {
+        List<String> summaries = new ArrayList<String>();
+        try {
+            addHopSummaries(summaries, "Service",
+                    vehicleManager.getRemoteStatistics());
+        } catch(VehicleServiceException e) {
+            // not bound yet, only show the local hops
+        }
+        addHopSummaries(summaries, "Enabler",
+                vehicleManager.getStatistics());
+        return summaries;
+    }
+
+    private static void addHopSummaries(List<String> summaries, String process,
+            PipelineStatistics statistics) {
+        for(PipelineStatistics.Hop hop : statistics.getHops()) {
+            summaries.add(process + " " + hop.getName() + ": p50 " +
+                    toMicroseconds(hop.getMedianLatency()) + "us, p99 " +
+                    toMicroseconds(hop.get99thPercentileLatency()) +
+                    "us (" + hop.getCount() + " samples)");
+        }
+    }
+
+    private static long toMicroseconds(long nanoseconds) {
+        return TimeUnit.NANOSECONDS.toMicros(nanoseconds);
+    }
+}
@@ -46,8 +46,10 @@ public class OpenXcEnablerActivity extends Activity {
     private TextView mMessageCountView;
     private ListView mSourceListView;
     private ListView mSinkListView;
+    private ListView mLatencyListView;
     private TimerTask mUpdateMessageCountTask;
     private TimerTask mUpdatePipelineStatusTask;
+    private TimerTask mUpdateLatencyTask;
     private Timer mTimer;
     private VehicleManager mVehicleManager;
 
@@ -74,9 +76,12 @@ public class OpenXcEnablerActivity extends Activity {
             mUpdatePipelineStatusTask = new PipelineStatusUpdateTask(
                     mVehicleManager, OpenXcEnablerActivity.this,
                     mSourceListView, mSinkListView);
+            mUpdateLatencyTask = new LatencyUpdateTask(mVehicleManager,
+                    OpenXcEnablerActivity.this, mLatencyListView);
             mTimer = new Timer();
             mTimer.schedule(mUpdateMessageCountTask, 100, 1000);
             mTimer.schedule(mUpdatePipelineStatusTask, 100, 1000);
+            mTimer.schedule(mUpdateLatencyTask, 100, 1000);
         }
 
         public void onServiceDisconnected(ComponentName className) {
@@ -104,6 +109,7 @@ public class OpenXcEnablerActivity extends Activity {
         mMessageCountView = (TextView) findViewById(R.id.message_count);
         mSourceListView = (ListView) findViewById(R.id.source_list);
         mSinkListView = (ListView) findViewById(R.id.sink_list);
+        mLatencyListView = (ListView) findViewById(R.id.latency_list);
 
         OpenXcEnablerActivity.this.runOnUiThread(new Runnable() {
             public void run() {
@@ -140,6 +146,14 @@ public class OpenXcEnablerActivity extends Activity {
         case R.id.settings:
             startActivity(new Intent(this, SettingsActivity.class));
             return true;
+        case R.id.dump_latency:
+            if(mVehicleManager != null) {
+                for(String summary : LatencyUpdateTask.getHopSummaries(
+                            mVehicleManager)) {
+                    Log.i(TAG, summary);
+                }
+            }
+            return true;
         default:
             return super.onOptionsItemSelected(item);
         }
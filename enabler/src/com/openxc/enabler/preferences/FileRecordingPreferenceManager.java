@@ -3,7 +3,9 @@ package com.openxc.enabler.preferences;
 import android.content.Context;
 import android.util.Log;
 
+import com.openxc.DeliveryPolicy;
 import com.openxc.enabler.R;
+import com.openxc.sinks.BinaryRecorderSink;
 import com.openxc.sinks.DataSinkException;
 import com.openxc.sinks.FileRecorderSink;
 import com.openxc.sinks.VehicleDataSink;
@@ -16,6 +18,7 @@ public class FileRecordingPreferenceManager extends VehiclePreferenceManager {
     private final static String TAG = "FileRecordingPreferenceManager";
     private VehicleDataSink mFileRecorder;
     private String mCurrentDirectory;
+    private boolean mCurrentBinary;
 
     public FileRecordingPreferenceManager(Context context) {
         super(context);
@@ -30,6 +33,7 @@ public class FileRecordingPreferenceManager extends VehiclePreferenceManager {
         return new PreferenceListener() {
             private int[] WATCHED_PREFERENCE_KEY_IDS = {
                 R.string.recording_checkbox_key,
+                R.string.recording_binary_checkbox_key,
             };
 
             protected int[] getWatchedPreferenceKeyIds() {
@@ -47,18 +51,30 @@ public class FileRecordingPreferenceManager extends VehiclePreferenceManager {
         Log.i(TAG, "Setting recording to " + enabled);
         if(enabled) {
             String directory = getPreferenceString(R.string.recording_directory_key);
+            boolean binary = getPreferences().getBoolean(
+                    getString(R.string.recording_binary_checkbox_key), false);
             if(directory != null) {
-                if(mFileRecorder == null || !mCurrentDirectory.equals(directory)) {
+                if(mFileRecorder == null || !mCurrentDirectory.equals(directory)
+                        || mCurrentBinary != binary) {
                     mCurrentDirectory = directory;
+                    mCurrentBinary = binary;
                     stopRecording();
 
                     try {
-                        mFileRecorder = new FileRecorderSink(
-                                new AndroidFileOpener(directory));
+                        AndroidFileOpener opener =
+                                new AndroidFileOpener(directory);
+                        if(binary) {
+                            mFileRecorder = new BinaryRecorderSink(opener);
+                        } else {
+                            mFileRecorder = new FileRecorderSink(opener);
+                        }
+                        // Writing to storage can stall, so don't let it hold
+                        // up the other sinks
+                        getVehicleManager().addSink(mFileRecorder,
+                                DeliveryPolicy.DROP_OLDEST);
                     } catch(DataSinkException e) {
                         Log.w(TAG, "Unable to start trace recording", e);
                     }
-                    getVehicleManager().addSink(mFileRecorder);
                 }
             } else {
                 Log.d(TAG, "No recording base directory set (" + directory +
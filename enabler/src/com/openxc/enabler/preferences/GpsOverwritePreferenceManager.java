@@ -3,6 +3,7 @@ package com.openxc.enabler.preferences;
 import android.content.Context;
 import android.util.Log;
 
+import com.openxc.DeliveryPolicy;
 import com.openxc.enabler.R;
 import com.openxc.sinks.MockedLocationSink;
 
@@ -47,7 +48,8 @@ public class GpsOverwritePreferenceManager extends VehiclePreferenceManager {
         Log.i(TAG, "Setting native GPS overwriting to " + enabled);
         if(mMockedLocationSink == null) {
             mMockedLocationSink = new MockedLocationSink(getContext());
-            getVehicleManager().addSink(mMockedLocationSink);
+            getVehicleManager().addSink(mMockedLocationSink,
+                    DeliveryPolicy.COALESCE_LATEST);
         }
         mMockedLocationSink.setOverwritingStatus(enabled);
     }
@@ -0,0 +1,56 @@
+package com.openxc.enabler.preferences;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.openxc.enabler.R;
+
+/**
+ * Enable or disable tracing the latency of a sample of the vehicle
+ * measurements.
+ *
+ * @see com.openxc.VehicleManager#setLatencySampleInterval(int)
+ */
+public class LatencyTracingPreferenceManager extends VehiclePreferenceManager {
+    private final static String TAG = "LatencyTracingPreferenceManager";
+
+    public LatencyTracingPreferenceManager(Context context) {
+        super(context);
+    }
+
+    public void close() {
+        super.close();
+        getVehicleManager().setLatencySampleInterval(0);
+    }
+
+    protected PreferenceListener createPreferenceListener(){
+        return new PreferenceListener() {
+            private int[] WATCHED_PREFERENCE_KEY_IDS = {
+                R.string.latency_sample_interval_key,
+            };
+
+            protected int[] getWatchedPreferenceKeyIds() {
+                return WATCHED_PREFERENCE_KEY_IDS;
+            }
+
+            public void readStoredPreferences() {
+                setSampleInterval(getPreferences().getString(
+                            getString(R.string.latency_sample_interval_key),
+                            "0"));
+            }
+        };
+    }
+
+    private void setSampleInterval(String value) {
+        int interval;
+        try {
+            interval = Integer.parseInt(value);
+        } catch(NumberFormatException e) {
+            Log.w(TAG, "Invalid latency sample interval " + value, e);
+            interval = 0;
+        }
+
+        Log.i(TAG, "Setting latency sample interval to " + interval);
+        getVehicleManager().setLatencySampleInterval(Math.max(0, interval));
+    }
+}
@@ -46,6 +46,7 @@ public class PreferenceManagerService extends Service {
         mPreferenceManagers.add(new UploadingPreferenceManager(this));
         mPreferenceManagers.add(new NetworkPreferenceManager(this));
         mPreferenceManagers.add(new TraceSourcePreferenceManager(this));
+        mPreferenceManagers.add(new LatencyTracingPreferenceManager(this));
     }
 
     @Override
@@ -0,0 +1,52 @@
+package com.openxc.remote;
+
+import android.os.Parcel;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.openxc.util.LatencyHistogram;
+
+public class PipelineStatisticsParcelTest extends AndroidTestCase {
+    @SmallTest
+    public void testRoundTrip() {
+        LatencyHistogram latency = new LatencyHistogram();
+        latency.record(1000);
+        latency.record(2000);
+
+        PipelineStatistics statistics = new PipelineStatistics(5000, 42);
+        statistics.addSource(new PipelineStatistics.Source("usb", 1000, 10,
+                    100));
+        statistics.addSink(new PipelineStatistics.Sink("recorder", latency,
+                    3, 4, 5));
+        statistics.addHop(new PipelineStatistics.Hop("binder", latency));
+
+        Parcel parcel = Parcel.obtain();
+        PipelineStatistics result;
+        try {
+            statistics.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            result = PipelineStatistics.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+
+        assertEquals(42, result.getMessageCount());
+        assertEquals(5000, result.getElapsedTime());
+        assertEquals("usb", result.getSources().get(0).getName());
+        assertEquals(100, result.getSources().get(0).getByteCount());
+
+        PipelineStatistics.Sink sink = result.getSinks().get(0);
+        assertEquals("recorder", sink.getName());
+        assertEquals(2, sink.getCount());
+        assertEquals(latency.getMaximum(), sink.getMaximumLatency());
+        assertEquals(3, sink.getQueueDepth());
+        assertEquals(4, sink.getOverwrittenCount());
+        assertEquals(5, sink.getDroppedCount());
+
+        PipelineStatistics.Hop hop = result.getHops().get(0);
+        assertEquals("binder", hop.getName());
+        assertEquals(2, hop.getCount());
+        assertEquals(latency.getPercentile(99),
+                hop.get99thPercentileLatency());
+    }
+}
@@ -0,0 +1,121 @@
+package com.openxc.remote;
+
+import android.os.Parcel;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.openxc.util.LatencyTracer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class RawMeasurementParcelTest extends AndroidTestCase {
+    private RawMeasurement roundTrip(RawMeasurement measurement) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            measurement.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return RawMeasurement.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    @SmallTest
+    public void testSeededName() {
+        RawMeasurement result = roundTrip(
+                new RawMeasurement("vehicle_speed", 42.5));
+        assertThat(result.getName(), sameInstance(
+                    MeasurementNames.getName(result.getNameId())));
+        assertThat(result.getName(), equalTo("vehicle_speed"));
+        assertThat(result.getValue(), equalTo((Object) 42.5));
+    }
+
+    @SmallTest
+    public void testUnseededName() {
+        RawMeasurement result = roundTrip(
+                new RawMeasurement("parcel_test_custom", 1));
+        assertThat(result.getName(), equalTo("parcel_test_custom"));
+        assertThat(result.getValue(), equalTo((Object) 1));
+    }
+
+    @SmallTest
+    public void testOriginalEncoding() {
+        // As written by a version of the library before the compact encoding
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeString("vehicle_speed");
+            parcel.writeLong(1234L);
+            parcel.writeValue(42.5);
+            parcel.writeValue("event");
+            parcel.setDataPosition(0);
+            RawMeasurement result = RawMeasurement.CREATOR.createFromParcel(
+                    parcel);
+            assertThat(result.getName(), equalTo("vehicle_speed"));
+            assertThat(result.getTimestamp(), equalTo(1234L));
+            assertThat(result.getValue(), equalTo((Object) 42.5));
+            assertThat(result.getEvent(), equalTo((Object) "event"));
+            assertFalse(result.isTraced());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    @SmallTest
+    public void testUntracedHasNoStamps() {
+        assertFalse(roundTrip(new RawMeasurement("vehicle_speed", 1.0)
+                    ).isTraced());
+    }
+
+    @SmallTest
+    public void testTraceStamps() {
+        RawMeasurement measurement = new RawMeasurement("vehicle_speed", 1.0);
+        measurement.startTrace(1234);
+        measurement.stamp(LatencyTracer.SENT);
+
+        RawMeasurement result = roundTrip(measurement);
+        assertTrue(result.isTraced());
+        assertThat(result.getTraceStamp(LatencyTracer.READ),
+                equalTo(1234L));
+        assertThat(result.getTraceStamp(LatencyTracer.SENT), equalTo(
+                    measurement.getTraceStamp(LatencyTracer.SENT)));
+        assertThat(result.getValue(), equalTo((Object) 1.0));
+    }
+
+    @SmallTest
+    public void testTimestamp() {
+        RawMeasurement measurement = new RawMeasurement("vehicle_speed", 1.0);
+        assertThat(roundTrip(measurement).getTimestamp(),
+                equalTo(measurement.getTimestamp()));
+    }
+
+    @SmallTest
+    public void testValueTypes() {
+        assertThat(roundTrip(new RawMeasurement("odometer", 12L)).getValue(),
+                equalTo((Object) 12L));
+        assertThat(roundTrip(new RawMeasurement("brake_pedal_status", true))
+                .getValue(), equalTo((Object) Boolean.TRUE));
+        assertThat(roundTrip(new RawMeasurement("brake_pedal_status", false))
+                .getValue(), equalTo((Object) Boolean.FALSE));
+    }
+
+    @SmallTest
+    public void testEvent() {
+        RawMeasurement result = roundTrip(
+                new RawMeasurement("button_event", "left", "pressed"));
+        assertThat(result.getValue(), equalTo((Object) "left"));
+        assertThat(result.getEvent(), equalTo((Object) "pressed"));
+
+        result = roundTrip(new RawMeasurement("door_status", "driver", true));
+        assertThat(result.getEvent(), equalTo((Object) Boolean.TRUE));
+    }
+
+    @SmallTest
+    public void testNoValue() {
+        RawMeasurement result = roundTrip(
+                new RawMeasurement("vehicle_speed", null));
+        assertNull(result.getValue());
+        assertFalse(result.hasEvent());
+    }
+}
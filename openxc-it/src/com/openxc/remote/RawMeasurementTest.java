@@ -41,6 +41,58 @@ public class RawMeasurementTest extends TestCase {
         assertFalse(measurement.isTimestamped());
     }
 
+    public void testSerializationCached() {
+        measurement = new RawMeasurement(measurementName, measurementValue);
+        assertSame(measurement.serialize(), measurement.serialize());
+    }
+
+    public void testUntimestampInvalidatesSerialization() {
+        measurement = new RawMeasurement(measurementName, measurementValue,
+                null, 1351176963438L);
+        assertTrue(measurement.serialize().contains("timestamp"));
+        measurement.untimestamp();
+        assertFalse(measurement.serialize().contains("timestamp"));
+    }
+
+    public void testDeserializedKeepsOriginalMessage()
+            throws UnrecognizedMeasurementTypeException {
+        String message = "{\"name\": \"" + measurementName +
+            "\", \"value\": 42.0, \"timestamp\": 1351176963.438}";
+        measurement = new RawMeasurement(message);
+        assertSame(message, measurement.serialize());
+    }
+
+    public void testDeserializedWithoutTimestampReserialized()
+            throws UnrecognizedMeasurementTypeException {
+        String message = "{\"name\": \"" + measurementName +
+            "\", \"value\": 42.0}";
+        measurement = new RawMeasurement(message);
+        assertTrue(measurement.serialize().contains("timestamp"));
+    }
+
+    public void testSerializationSharedAcrossThreads()
+            throws InterruptedException {
+        measurement = new RawMeasurement(measurementName, measurementValue);
+        final String[] results = new String[4];
+        Thread[] threads = new Thread[results.length];
+        for(int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    results[index] = measurement.serialize();
+                }
+            };
+            threads[i].start();
+        }
+
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        for(String result : results) {
+            assertSame(results[0], result);
+        }
+    }
+
     public void testDeserialize() {
         try {
             measurement = new RawMeasurement(
@@ -68,4 +120,77 @@ public class RawMeasurementTest extends TestCase {
         }
         Assert.fail();
     }
+
+    public void testDeserializeBytes()
+            throws UnrecognizedMeasurementTypeException {
+        byte[] bytes = ("garbage{\"name\": \"" + measurementName +
+                "\", \"value\": " + measurementValue.toString() +
+                "}garbage").getBytes();
+        measurement = new RawMeasurement(bytes, 7, bytes.length - 14);
+        assertEquals(measurement.getName(), measurementName);
+        assertEquals(measurement.getValue(), measurementValue);
+        assertFalse(measurement.hasEvent());
+    }
+
+    public void testDeserializeBytesTypes()
+            throws UnrecognizedMeasurementTypeException {
+        byte[] bytes = ("{\"name\": \"door_status\", \"value\": " +
+                "\"driver\", \"event\": true, " +
+                "\"timestamp\": 1351176963.426}").getBytes();
+        measurement = new RawMeasurement(bytes, 0, bytes.length);
+        assertEquals("door_status", measurement.getName());
+        assertEquals("driver", measurement.getValue());
+        assertEquals(Boolean.TRUE, measurement.getEvent());
+        assertEquals(1351176963426L, measurement.getTimestamp());
+    }
+
+    public void testDeserializeSkipsUnknownFields()
+            throws UnrecognizedMeasurementTypeException {
+        measurement = new RawMeasurement("{\"extra\": {\"name\": 1}, " +
+                "\"name\": \"" + measurementName + "\", \"value\": false}");
+        assertEquals(measurement.getName(), measurementName);
+        assertEquals(Boolean.FALSE, measurement.getValue());
+    }
+
+    public void testDeserializeBytesInvalidJson() {
+        byte[] bytes = "{\"name\":".getBytes();
+        try {
+            new RawMeasurement(bytes, 0, bytes.length);
+        } catch(UnrecognizedMeasurementTypeException e) {
+            return;
+        }
+        Assert.fail();
+    }
+
+    public void testTryParse() {
+        String serialized = "{\"name\": \"" + measurementName +
+                "\", \"value\": 1, \"timestamp\": 1332432977.831}";
+        RawMeasurement measurement = RawMeasurement.tryParse(serialized);
+        assertEquals(measurementName, measurement.getName());
+        assertEquals(1332432977831L, measurement.getTimestamp());
+        assertEquals(serialized, measurement.serialize());
+
+        byte[] bytes = serialized.getBytes();
+        measurement = RawMeasurement.tryParse(bytes, 0, bytes.length);
+        assertEquals(measurementName, measurement.getName());
+    }
+
+    public void testTryParseInvalid() {
+        assertNull(RawMeasurement.tryParse("{\"name\":"));
+        assertNull(RawMeasurement.tryParse("not json"));
+        assertNull(RawMeasurement.tryParse("{\"name\": \"no_value\"}"));
+        byte[] bytes = "{\"name\":".getBytes();
+        assertNull(RawMeasurement.tryParse(bytes, 0, bytes.length));
+    }
+
+    public void testDeserializedNameIsCanonical()
+            throws UnrecognizedMeasurementTypeException {
+        byte[] bytes = ("{\"name\": \"" + measurementName +
+                "\", \"value\": 1}").getBytes();
+        RawMeasurement first = new RawMeasurement(bytes, 0, bytes.length);
+        RawMeasurement second = new RawMeasurement(bytes, 0, bytes.length);
+        assertSame(first.getName(), second.getName());
+        assertEquals(MeasurementNames.getId(measurementName),
+                second.getNameId());
+    }
 }
@@ -0,0 +1,67 @@
+package com.openxc.sinks;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.openxc.remote.RawMeasurement;
+import com.openxc.sources.trace.BinaryTraceReader;
+import com.openxc.sources.trace.BinaryTraceWriter;
+import com.openxc.util.FileOpener;
+
+public class BinaryRecorderSinkTest extends AndroidTestCase {
+    BinaryRecorderSink sink;
+    ByteArrayOutputStream output;
+    String filename;
+
+    @Override
+    public void setUp() throws DataSinkException {
+        output = new ByteArrayOutputStream();
+        sink = new BinaryRecorderSink(new FileOpener() {
+            public BufferedWriter openForWriting(String path)
+                    throws IOException {
+                throw new IOException("Only binary files are supported");
+            }
+
+            public OutputStream openStreamForWriting(String path) {
+                filename = path;
+                return output;
+            }
+        });
+    }
+
+    @SmallTest
+    public void testRecord() throws DataSinkException, IOException {
+        sink.receive(new RawMeasurement("first", true, null, 1000));
+        sink.receive(new RawMeasurement("second", 42.5, null, 1010));
+        sink.flush();
+
+        assertTrue(filename.endsWith(BinaryTraceWriter.FILE_EXTENSION));
+        BinaryTraceReader reader = new BinaryTraceReader(
+                new ByteArrayInputStream(output.toByteArray()));
+        RawMeasurement measurement = reader.read();
+        assertEquals("first", measurement.getName());
+        assertEquals(true, measurement.getValue());
+        measurement = reader.read();
+        assertEquals("second", measurement.getName());
+        assertEquals(42.5, measurement.getValue());
+        assertEquals(1010, measurement.getTimestamp());
+        assertNull(reader.read());
+    }
+
+    @SmallTest
+    public void testStop() throws DataSinkException {
+        assertTrue(sink.receive(new RawMeasurement("first", true)));
+        sink.stop();
+        try {
+            sink.receive(new RawMeasurement("second", true));
+            fail("Expected a DataSinkException");
+        } catch(DataSinkException e) {
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.openxc.sinks;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
 
 import junit.framework.Assert;
@@ -111,5 +112,10 @@ public class FileRecorderSinkTest extends AndroidTestCase {
         public BufferedWriter openForWriting(String path) throws IOException {
             return new BufferedWriter(outputString);
         }
+
+        public OutputStream openStreamForWriting(String path)
+                throws IOException {
+            throw new IOException("Only text files are supported");
+        }
     }
 }
@@ -20,6 +20,14 @@ public class RemoteCallbackSinkTest extends AndroidTestCase {
             public void receive(RawMeasurement value) {
                 receivedId = value.getName();
             }
+
+            public void receiveBatch(RawMeasurement[] values) {
+                for(RawMeasurement value : values) {
+                    receive(value);
+                }
+            }
+
+            public void measurementsAvailable() { }
         };
     }
 
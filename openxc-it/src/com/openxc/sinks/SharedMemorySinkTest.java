@@ -0,0 +1,64 @@
+package com.openxc.sinks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.openxc.remote.RawMeasurement;
+import com.openxc.remote.VehicleServiceListener;
+
+import android.test.AndroidTestCase;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+public class SharedMemorySinkTest extends AndroidTestCase {
+    File file;
+    SharedMemorySink sink;
+    VehicleServiceListener listener;
+    List<String> receivedIds = new ArrayList<String>();
+
+    @Override
+    public void setUp() throws DataSinkException {
+        file = new File(getContext().getCacheDir(), "test.ring");
+        sink = new SharedMemorySink(file, 8);
+        listener = new VehicleServiceListener.Stub() {
+            public void receive(RawMeasurement value) {
+                receivedIds.add(value.getName());
+            }
+
+            public void receiveBatch(RawMeasurement[] values) {
+                for(RawMeasurement value : values) {
+                    receive(value);
+                }
+            }
+
+            public void measurementsAvailable() { }
+        };
+    }
+
+    @Override
+    public void tearDown() {
+        sink.stop();
+        file.delete();
+    }
+
+    @SmallTest
+    public void testRegister() {
+        assertEquals(0, sink.getListenerCount());
+        sink.register(listener);
+        assertEquals(1, sink.getListenerCount());
+        sink.unregister(listener);
+        assertEquals(0, sink.getListenerCount());
+    }
+
+    @SmallTest
+    public void testRegisterSendsLastKnownValues() throws DataSinkException {
+        sink.receive(new RawMeasurement("door_status", "driver", true));
+        sink.receive(new RawMeasurement("transmission_gear_position",
+                    "first"));
+        sink.register(listener);
+        assertEquals(2, receivedIds.size());
+        assertTrue(receivedIds.contains("door_status"));
+        assertTrue(receivedIds.contains("transmission_gear_position"));
+    }
+}
@@ -95,4 +95,54 @@ public class BytestreamBufferTest extends AndroidTestCase {
         assertEquals(0, records.size());
     }
 
+    @SmallTest
+    public void testNextFrameSlice() {
+        byte[] bytes = new String("{\"key\": \"value\"}\r\n").getBytes();
+        buffer.receive(bytes, bytes.length);
+        assertTrue(buffer.nextFrame());
+        assertEquals("{\"key\": \"value\"}", new String(
+                    buffer.getFrameBuffer(), buffer.getFrameOffset(),
+                    buffer.getFrameLength()));
+        assertFalse(buffer.nextFrame());
+    }
+
+    @SmallTest
+    public void testNullDelimiter() {
+        byte[] bytes = new String("{\"key\": \"value\"}\0\0{\"pork\"").getBytes();
+        buffer.receive(bytes, bytes.length);
+
+        List<String> records = buffer.readLines();
+        assertEquals(1, records.size());
+        assertTrue(records.get(0).indexOf("key") != -1);
+
+        bytes = new String(": \"miracle\"}\0").getBytes();
+        buffer.receive(bytes, bytes.length);
+        records = buffer.readLines();
+        assertEquals(1, records.size());
+        assertEquals("{\"pork\": \"miracle\"}", records.get(0));
+    }
+
+    @SmallTest
+    public void testPartialLargerThanBuffer() {
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < 1000; i++) {
+            builder.append("0123456789");
+        }
+        String message = builder.toString();
+        byte[] bytes = message.getBytes();
+        byte[] chunk = new byte[512];
+        for(int i = 0; i < bytes.length; i += chunk.length) {
+            int length = Math.min(chunk.length, bytes.length - i);
+            System.arraycopy(bytes, i, chunk, 0, length);
+            buffer.receive(chunk, length);
+            assertFalse(buffer.nextFrame());
+        }
+
+        bytes = new String("\n").getBytes();
+        buffer.receive(bytes, bytes.length);
+        assertTrue(buffer.nextFrame());
+        assertEquals(message.length(), buffer.getFrameLength());
+        assertFalse(buffer.nextFrame());
+    }
+
 }
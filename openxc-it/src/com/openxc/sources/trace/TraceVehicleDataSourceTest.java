@@ -102,6 +102,41 @@ public class TraceVehicleDataSourceTest extends AndroidTestCase {
         assertFalse(receivedNumericalCallback);
     }
 
+    @SmallTest
+    public void testUnthrottledPlayback() throws InterruptedException,
+            DataSourceException {
+        source = new TraceVehicleDataSource(callback, getContext(), traceUri,
+                false);
+        source.setPlaybackSpeed(TraceVehicleDataSource.UNTHROTTLED);
+        Thread.sleep(300);
+        assertTrue(source.getMessageCount() > 0);
+        assertTrue(source.getPlaybackRate() > 0);
+    }
+
+    @SmallTest
+    public void testPreloadedPlayback() throws InterruptedException,
+            DataSourceException {
+        receivedNumericalCallback = false;
+        receivedBooleanCallback = false;
+        source = new TraceVehicleDataSource(callback, getContext(), traceUri);
+        source.setPreloadLimit(1024 * 1024);
+        source.setPlaybackSpeed(TraceVehicleDataSource.UNTHROTTLED);
+        startTrace(source);
+        assertTrue(receivedNumericalCallback);
+        assertTrue(receivedBooleanCallback);
+    }
+
+    @SmallTest
+    public void testInvalidPlaybackSpeed() throws DataSourceException {
+        source = new TraceVehicleDataSource(callback, getContext(), traceUri);
+        try {
+            source.setPlaybackSpeed(0);
+            fail("Expected an IllegalArgumentException");
+        } catch(IllegalArgumentException e) {
+        }
+        assertEquals(1.0, source.getPlaybackSpeed());
+    }
+
     @SmallTest
     public void testConstructWithCallbackAndFile()
             throws DataSourceException {
@@ -1,16 +1,25 @@
 package com.openxc;
 
+import java.util.Collections;
+import java.util.Set;
+
 import junit.framework.TestCase;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.notNullValue;
 
+import com.openxc.remote.PipelineStatistics;
 import com.openxc.remote.RawMeasurement;
 
 import com.openxc.sinks.BaseVehicleDataSink;
+import com.openxc.sinks.DataSinkException;
+import com.openxc.sinks.FilteredVehicleDataSink;
 
+import com.openxc.sources.ApplicationSource;
 import com.openxc.sources.SourceCallback;
 import com.openxc.sources.VehicleDataSource;
 
+import com.openxc.util.LatencyTracer;
+
 public class DataPipelineTest extends TestCase {
     DataPipeline pipeline;
     TestSource source;
@@ -69,6 +78,19 @@ public class DataPipelineTest extends TestCase {
         assertTrue(sink.received);
     }
 
+    public void testStoresLastValue() {
+        RawMeasurement measurement = new RawMeasurement("measurement", 1);
+        pipeline.receive(measurement);
+        assertEquals(measurement, pipeline.get("measurement"));
+    }
+
+    public void testSinkSharesPipelineStore() {
+        pipeline.addSink(sink);
+        RawMeasurement measurement = new RawMeasurement("measurement", 1);
+        pipeline.receive(measurement);
+        assertEquals(measurement, sink.get("measurement"));
+    }
+
     public void testConnectsSourceCallback() {
         pipeline.addSink(sink);
         pipeline.addSource(source);
@@ -94,6 +116,167 @@ public class DataPipelineTest extends TestCase {
         assertFalse(sink.received);
     }
 
+    public void testQueuedSink() {
+        pipeline.addSink(sink, DeliveryPolicy.LOSSLESS);
+        pipeline.receive(new RawMeasurement("measurement", "value", "event"));
+        TestUtils.pause(50);
+        assertTrue(sink.received);
+        assertEquals(1, pipeline.getSinks().size());
+    }
+
+    public void testRemoveQueuedSink() {
+        pipeline.addSink(sink, DeliveryPolicy.LOSSLESS);
+        pipeline.removeSink(sink);
+        assertTrue(pipeline.getSinks().isEmpty());
+        pipeline.receive(new RawMeasurement("measurement", "value", "event"));
+        TestUtils.pause(50);
+        assertFalse(sink.received);
+    }
+
+    public void testQueuedSinkSharesPipelineStore() {
+        pipeline.addSink(sink, DeliveryPolicy.LOSSLESS);
+        RawMeasurement measurement = new RawMeasurement("measurement", 1);
+        pipeline.receive(measurement);
+        assertEquals(measurement, sink.get("measurement"));
+    }
+
+    public void testFailedQueuedSinkRemoved() {
+        pipeline.addSink(new BaseVehicleDataSink() {
+            public boolean receive(RawMeasurement measurement)
+                    throws DataSinkException {
+                throw new DataSinkException("Expected failure");
+            }
+        }, DeliveryPolicy.LOSSLESS);
+        pipeline.receive(new RawMeasurement("measurement", 1));
+        TestUtils.pause(50);
+        pipeline.receive(new RawMeasurement("measurement", 2));
+        assertTrue(pipeline.getSinks().isEmpty());
+    }
+
+    public void testRingSink() {
+        pipeline = new DataPipeline(16);
+        pipeline.addSink(sink);
+        pipeline.receive(new RawMeasurement("measurement", "value", "event"));
+        TestUtils.pause(50);
+        assertTrue(sink.received);
+    }
+
+    public void testRemoveRingSink() {
+        pipeline = new DataPipeline(16);
+        pipeline.addSink(sink, DeliveryPolicy.DROP_OLDEST);
+        pipeline.removeSink(sink);
+        assertTrue(pipeline.getSinks().isEmpty());
+        pipeline.receive(new RawMeasurement("measurement", "value", "event"));
+        TestUtils.pause(50);
+        assertFalse(sink.received);
+    }
+
+    public void testFailedRingSinkRemoved() {
+        pipeline = new DataPipeline(16);
+        pipeline.addSink(new BaseVehicleDataSink() {
+            public boolean receive(RawMeasurement measurement)
+                    throws DataSinkException {
+                throw new DataSinkException("Expected failure");
+            }
+        });
+        pipeline.receive(new RawMeasurement("measurement", 1));
+        TestUtils.pause(50);
+        assertTrue(pipeline.getSinks().isEmpty());
+    }
+
+    public void testFilteredSink() {
+        FilteredTestSink filtered = new FilteredTestSink();
+        pipeline.addSink(filtered);
+        pipeline.receive(new RawMeasurement("unwanted", 1));
+        assertFalse(filtered.received);
+        pipeline.receive(new RawMeasurement("wanted", 1));
+        assertTrue(filtered.received);
+    }
+
+    public void testFilteredQueuedSink() {
+        FilteredTestSink filtered = new FilteredTestSink();
+        pipeline.addSink(filtered, DeliveryPolicy.LOSSLESS);
+        pipeline.receive(new RawMeasurement("unwanted", 1));
+        TestUtils.pause(50);
+        assertFalse(filtered.received);
+        pipeline.receive(new RawMeasurement("wanted", 1));
+        TestUtils.pause(50);
+        assertTrue(filtered.received);
+    }
+
+    public void testFilteredRingSink() {
+        pipeline = new DataPipeline(16);
+        FilteredTestSink filtered = new FilteredTestSink();
+        pipeline.addSink(filtered);
+        pipeline.receive(new RawMeasurement("unwanted", 1));
+        TestUtils.pause(50);
+        assertFalse(filtered.received);
+        pipeline.receive(new RawMeasurement("wanted", 1));
+        TestUtils.pause(50);
+        assertTrue(filtered.received);
+    }
+
+    public void testStatistics() {
+        ApplicationSource applicationSource = new ApplicationSource();
+        pipeline.addSource(applicationSource);
+        pipeline.addSink(sink);
+        applicationSource.handleMessage(new RawMeasurement("measurement", 1));
+
+        PipelineStatistics statistics = pipeline.getStatistics();
+        assertEquals(1, statistics.getMessageCount());
+        assertEquals(1, statistics.getSources().size());
+        assertEquals(1, statistics.getSources().get(0).getMessageCount());
+        assertEquals(1, statistics.getSinks().size());
+        assertEquals(1, statistics.getSinks().get(0).getCount());
+    }
+
+    public void testStampsTracedMeasurement() {
+        pipeline.addSink(sink);
+        RawMeasurement measurement = new RawMeasurement("measurement", 1);
+        measurement.startTrace(System.nanoTime());
+        pipeline.receive(measurement);
+        assertTrue(measurement.getTraceStamp(LatencyTracer.PIPELINE) != 0);
+        assertEquals(0, measurement.getTraceStamp(
+                    LatencyTracer.CLIENT_PIPELINE));
+    }
+
+    public void testStampsClientPipeline() {
+        RawMeasurement measurement = new RawMeasurement("measurement", 1);
+        measurement.startTrace(System.nanoTime());
+        measurement.stamp(LatencyTracer.RECEIVED);
+        pipeline.receive(measurement);
+        assertEquals(0, measurement.getTraceStamp(LatencyTracer.PIPELINE));
+        assertTrue(measurement.getTraceStamp(
+                    LatencyTracer.CLIENT_PIPELINE) != 0);
+    }
+
+    public void testUntracedNotStamped() {
+        RawMeasurement measurement = new RawMeasurement("measurement", 1);
+        pipeline.receive(measurement);
+        assertFalse(measurement.isTraced());
+        assertEquals(0, measurement.getTraceStamp(LatencyTracer.PIPELINE));
+    }
+
+    public void testQueuedSinkStatistics() {
+        pipeline.addSink(sink, DeliveryPolicy.DROP_OLDEST);
+        pipeline.receive(new RawMeasurement("measurement", 1));
+        TestUtils.pause(50);
+
+        PipelineStatistics.Sink statistics =
+                pipeline.getStatistics().getSinks().get(0);
+        assertEquals(1, statistics.getCount());
+        assertEquals(0, statistics.getQueueDepth());
+        assertEquals(0, statistics.getDroppedCount());
+    }
+
+    public void testGetSinksUnwrapped() {
+        pipeline.addSink(sink);
+        TestSink queued = new TestSink();
+        pipeline.addSink(queued, DeliveryPolicy.LOSSLESS);
+        assertSame(sink, pipeline.getSinks().get(0));
+        assertSame(queued, pipeline.getSinks().get(1));
+    }
+
     private class TestSource implements VehicleDataSource {
         private SourceCallback callback;
 
@@ -114,11 +297,18 @@ public class DataPipelineTest extends TestCase {
     }
 
     private class TestSink extends BaseVehicleDataSink {
-        public boolean received = false;
+        public volatile boolean received = false;
 
         public boolean receive(RawMeasurement measurement) {
             received = true;
             return true;
         }
     }
+
+    private class FilteredTestSink extends TestSink
+            implements FilteredVehicleDataSink {
+        public Set<String> getMeasurementInterests() {
+            return Collections.singleton("wanted");
+        }
+    }
 }
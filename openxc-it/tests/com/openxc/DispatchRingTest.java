@@ -0,0 +1,163 @@
+package com.openxc;
+
+import junit.framework.TestCase;
+
+import com.openxc.remote.RawMeasurement;
+
+public class DispatchRingTest extends TestCase {
+    DispatchRing ring;
+
+    @Override
+    public void setUp() {
+        ring = new DispatchRing(4);
+    }
+
+    public void testInOrder() throws InterruptedException {
+        DispatchRing.Cursor cursor = ring.addCursor(DeliveryPolicy.LOSSLESS);
+        RawMeasurement first = new RawMeasurement("ring_a", 1);
+        RawMeasurement second = new RawMeasurement("ring_b", 2);
+        ring.publish(first);
+        ring.publish(second);
+        assertSame(first, cursor.take());
+        assertSame(second, cursor.take());
+        assertEquals(0, cursor.getLag());
+    }
+
+    public void testEveryCursorGetsEverything() throws InterruptedException {
+        DispatchRing.Cursor first = ring.addCursor(DeliveryPolicy.LOSSLESS);
+        DispatchRing.Cursor second = ring.addCursor(
+                DeliveryPolicy.DROP_OLDEST);
+        RawMeasurement measurement = new RawMeasurement("ring_a", 1);
+        ring.publish(measurement);
+        assertSame(measurement, first.take());
+        assertSame(measurement, second.take());
+    }
+
+    public void testStartsAtNewest() throws InterruptedException {
+        ring.publish(new RawMeasurement("ring_a", 1));
+        DispatchRing.Cursor cursor = ring.addCursor(DeliveryPolicy.LOSSLESS);
+        RawMeasurement measurement = new RawMeasurement("ring_a", 2);
+        ring.publish(measurement);
+        assertSame(measurement, cursor.take());
+    }
+
+    public void testLaggingCursorSkipsAhead() throws InterruptedException {
+        DispatchRing.Cursor cursor = ring.addCursor(
+                DeliveryPolicy.DROP_OLDEST);
+        for(int i = 0; i < 6; i++) {
+            ring.publish(new RawMeasurement("ring_a", i));
+        }
+        assertEquals(2, cursor.take().getValue());
+        assertEquals(2, cursor.getLostCount());
+        assertEquals(3, cursor.getLag());
+    }
+
+    public void testLosslessCursorHoldsPublisher()
+            throws InterruptedException {
+        final DispatchRing.Cursor cursor = ring.addCursor(
+                DeliveryPolicy.LOSSLESS);
+        for(int i = 0; i < 4; i++) {
+            ring.publish(new RawMeasurement("ring_a", i));
+        }
+
+        Thread publisher = new Thread() {
+            public void run() {
+                ring.publish(new RawMeasurement("ring_a", 4));
+            }
+        };
+        publisher.start();
+        TestUtils.pause(50);
+        assertTrue(publisher.isAlive());
+
+        assertEquals(0, cursor.take().getValue());
+        publisher.join(1000);
+        assertFalse(publisher.isAlive());
+        for(int i = 1; i < 5; i++) {
+            assertEquals(i, cursor.take().getValue());
+        }
+        assertEquals(0, cursor.getLostCount());
+    }
+
+    public void testLosslessCursorAddedAfterWraparound()
+            throws InterruptedException {
+        for(int i = 0; i < 8; i++) {
+            ring.publish(new RawMeasurement("ring_a", i));
+        }
+        DispatchRing.Cursor cursor = ring.addCursor(DeliveryPolicy.LOSSLESS);
+
+        Thread publisher = new Thread() {
+            public void run() {
+                for(int i = 8; i < 28; i++) {
+                    ring.publish(new RawMeasurement("ring_a", i));
+                }
+            }
+        };
+        publisher.start();
+        for(int i = 8; i < 28; i++) {
+            assertEquals(i, cursor.take().getValue());
+        }
+        publisher.join(1000);
+        assertFalse(publisher.isAlive());
+        assertEquals(0, cursor.getLostCount());
+    }
+
+    public void testRemovedCursorReleasesPublisher()
+            throws InterruptedException {
+        DispatchRing.Cursor cursor = ring.addCursor(DeliveryPolicy.LOSSLESS);
+        for(int i = 0; i < 4; i++) {
+            ring.publish(new RawMeasurement("ring_a", i));
+        }
+        ring.removeCursor(cursor);
+        ring.publish(new RawMeasurement("ring_a", 4));
+        assertTrue(cursor.isClosed());
+        assertNull(cursor.take());
+    }
+
+    public void testTakeWaitsForPublish() throws InterruptedException {
+        DispatchRing.Cursor cursor = ring.addCursor(DeliveryPolicy.LOSSLESS);
+        Thread publisher = new Thread() {
+            public void run() {
+                TestUtils.pause(20);
+                ring.publish(new RawMeasurement("ring_a", 1));
+            }
+        };
+        publisher.start();
+        assertEquals(1, cursor.take().getValue());
+    }
+
+    public void testConcurrentPublishers() throws InterruptedException {
+        final int count = 5000;
+        final DispatchRing.Cursor cursor = ring.addCursor(
+                DeliveryPolicy.LOSSLESS);
+        Thread[] publishers = new Thread[3];
+        for(int i = 0; i < publishers.length; i++) {
+            final String name = "ring_publisher_" + i;
+            publishers[i] = new Thread() {
+                public void run() {
+                    for(int j = 0; j < count; j++) {
+                        ring.publish(new RawMeasurement(name, j));
+                    }
+                }
+            };
+            publishers[i].start();
+        }
+
+        int[] next = new int[publishers.length];
+        for(int i = 0; i < count * publishers.length; i++) {
+            RawMeasurement measurement = cursor.take();
+            int publisher = Integer.parseInt(measurement.getName().substring(
+                        "ring_publisher_".length()));
+            assertEquals(next[publisher]++,
+                    ((Number) measurement.getValue()).intValue());
+        }
+        assertEquals(0, cursor.getLag());
+    }
+
+    public void testInvalidCapacity() {
+        try {
+            new DispatchRing(3);
+            fail("Expected an IllegalArgumentException");
+        } catch(IllegalArgumentException e) {
+        }
+    }
+}
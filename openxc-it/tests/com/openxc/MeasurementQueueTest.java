@@ -0,0 +1,230 @@
+package com.openxc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.openxc.remote.RawMeasurement;
+
+public class MeasurementQueueTest extends TestCase {
+    MeasurementQueue queue;
+    List<RawMeasurement> drained;
+
+    @Override
+    public void setUp() {
+        queue = new MeasurementQueue(3, DeliveryPolicy.COALESCE_LATEST);
+        drained = new ArrayList<RawMeasurement>();
+    }
+
+    public void testFifo() throws InterruptedException {
+        RawMeasurement first = new RawMeasurement("queue_a", 1);
+        RawMeasurement second = new RawMeasurement("queue_b", 2);
+        queue.put(first);
+        queue.put(second);
+        assertEquals(2, queue.drainTo(drained, 10));
+        assertSame(first, drained.get(0));
+        assertSame(second, drained.get(1));
+        assertTrue(queue.isEmpty());
+    }
+
+    public void testCoalesce() throws InterruptedException {
+        queue.put(new RawMeasurement("queue_a", 1));
+        queue.put(new RawMeasurement("queue_b", 1));
+        RawMeasurement latest = new RawMeasurement("queue_a", 2);
+        queue.put(latest);
+        assertEquals(2, queue.size());
+        assertEquals(1, queue.getOverwrittenCount());
+
+        queue.drainTo(drained, 10);
+        // keeps its place in line
+        assertSame(latest, drained.get(0));
+    }
+
+    public void testCoalesceAfterDrain() throws InterruptedException {
+        queue.put(new RawMeasurement("queue_a", 1));
+        queue.drainTo(drained, 10);
+        queue.put(new RawMeasurement("queue_a", 2));
+        assertEquals(1, queue.size());
+        assertEquals(0, queue.getOverwrittenCount());
+    }
+
+    public void testDropOldest() throws InterruptedException {
+        queue.setDefaultPolicy(DeliveryPolicy.DROP_OLDEST);
+        for(int i = 0; i < 5; i++) {
+            assertTrue(queue.put(new RawMeasurement("queue_a", i)));
+        }
+        assertEquals(3, queue.size());
+        assertEquals(2, queue.getDroppedCount());
+        queue.drainTo(drained, 10);
+        assertEquals(2, drained.get(0).getValue());
+    }
+
+    public void testPerSignalPolicy() throws InterruptedException {
+        queue.setPolicy("queue_events", DeliveryPolicy.DROP_OLDEST);
+        queue.put(new RawMeasurement("queue_events", 1));
+        queue.put(new RawMeasurement("queue_events", 2));
+        queue.put(new RawMeasurement("queue_a", 1));
+        queue.put(new RawMeasurement("queue_a", 2));
+        assertEquals(3, queue.size());
+        assertEquals(1, queue.getOverwrittenCount());
+
+        queue.setPolicy("queue_events", null);
+        assertEquals(DeliveryPolicy.COALESCE_LATEST, queue.getPolicy(
+                    new RawMeasurement("queue_events", 3)));
+    }
+
+    public void testLosslessNeverDropped() throws InterruptedException {
+        queue.setPolicy("queue_lossless", DeliveryPolicy.LOSSLESS);
+        for(int i = 0; i < 3; i++) {
+            queue.put(new RawMeasurement("queue_lossless", i));
+        }
+        queue.setPolicy("queue_events", DeliveryPolicy.DROP_OLDEST);
+        assertFalse(queue.put(new RawMeasurement("queue_events", 1)));
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(3, queue.size());
+    }
+
+    public void testCoalescedDoesNotUseCapacity()
+            throws InterruptedException {
+        queue.setPolicy("queue_lossless", DeliveryPolicy.LOSSLESS);
+        for(int i = 0; i < 3; i++) {
+            queue.put(new RawMeasurement("queue_lossless", i));
+        }
+        assertTrue(queue.put(new RawMeasurement("queue_a", 1)));
+        assertEquals(4, queue.size());
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    public void testConcurrentProducers() throws InterruptedException {
+        final int count = 10000;
+        Thread[] producers = new Thread[4];
+        for(int i = 0; i < producers.length; i++) {
+            final String name = "queue_producer_" + i;
+            producers[i] = new Thread() {
+                public void run() {
+                    try {
+                        for(int j = 0; j < count; j++) {
+                            queue.put(new RawMeasurement(name, j));
+                        }
+                    } catch(InterruptedException e) {
+                    }
+                }
+            };
+            producers[i].start();
+        }
+
+        int[] latest = new int[producers.length];
+        int received = 0;
+        while(received < producers.length) {
+            queue.awaitSize(1, 10 * 1000 * 1000);
+            queue.drainTo(drained, 100);
+            for(RawMeasurement measurement : drained) {
+                int producer = Integer.parseInt(measurement.getName().substring(
+                            "queue_producer_".length()));
+                int value = ((Number) measurement.getValue()).intValue();
+                // never goes backwards
+                assertTrue(value >= latest[producer]);
+                latest[producer] = value;
+                if(value == count - 1) {
+                    received++;
+                }
+            }
+            drained.clear();
+        }
+
+        for(Thread producer : producers) {
+            producer.join(1000);
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    public void testAwaitWokenByProducer() throws InterruptedException {
+        Thread producer = new Thread() {
+            public void run() {
+                TestUtils.pause(20);
+                try {
+                    queue.put(new RawMeasurement("queue_a", 1));
+                } catch(InterruptedException e) {
+                }
+            }
+        };
+        producer.start();
+        queue.awaitNotEmpty();
+        assertEquals(1, queue.drainTo(drained, 10));
+    }
+
+    public void testCloseWakesConsumer() throws InterruptedException {
+        Thread closer = new Thread() {
+            public void run() {
+                TestUtils.pause(20);
+                queue.close();
+            }
+        };
+        closer.start();
+        queue.awaitNotEmpty();
+        assertTrue(queue.isEmpty());
+    }
+
+    public void testLosslessWaitsForRoom() throws InterruptedException {
+        queue.setDefaultPolicy(DeliveryPolicy.LOSSLESS);
+        for(int i = 0; i < 3; i++) {
+            queue.put(new RawMeasurement("queue_a", i));
+        }
+
+        Thread producer = new Thread() {
+            public void run() {
+                try {
+                    queue.put(new RawMeasurement("queue_a", 3));
+                } catch(InterruptedException e) {
+                }
+            }
+        };
+        producer.start();
+        TestUtils.pause(50);
+        assertTrue(producer.isAlive());
+
+        queue.drainTo(drained, 1);
+        producer.join(1000);
+        assertFalse(producer.isAlive());
+        assertEquals(3, queue.size());
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    public void testCloseReleasesProducer() throws InterruptedException {
+        queue.setDefaultPolicy(DeliveryPolicy.LOSSLESS);
+        for(int i = 0; i < 3; i++) {
+            queue.put(new RawMeasurement("queue_a", i));
+        }
+
+        Thread producer = new Thread() {
+            public void run() {
+                try {
+                    queue.put(new RawMeasurement("queue_a", 3));
+                } catch(InterruptedException e) {
+                }
+            }
+        };
+        producer.start();
+        TestUtils.pause(50);
+        queue.close();
+        producer.join(1000);
+        assertFalse(producer.isAlive());
+        assertFalse(queue.put(new RawMeasurement("queue_a", 4)));
+    }
+
+    public void testAwaitSizeTimesOut() throws InterruptedException {
+        queue.put(new RawMeasurement("queue_a", 1));
+        long start = System.nanoTime();
+        queue.awaitSize(2, 20 * 1000 * 1000);
+        assertTrue(System.nanoTime() - start >= 10 * 1000 * 1000);
+    }
+
+    public void testInvalidCapacity() {
+        try {
+            new MeasurementQueue(0, DeliveryPolicy.LOSSLESS);
+            fail("Expected an IllegalArgumentException");
+        } catch(IllegalArgumentException e) {
+        }
+    }
+}
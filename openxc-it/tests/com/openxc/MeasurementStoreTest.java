@@ -0,0 +1,61 @@
+package com.openxc;
+
+import junit.framework.TestCase;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+import com.openxc.remote.RawMeasurement;
+
+public class MeasurementStoreTest extends TestCase {
+    MeasurementStore store;
+    RawMeasurement measurement;
+
+    @Override
+    public void setUp() {
+        store = new MeasurementStore();
+        measurement = new RawMeasurement("store_test", 42);
+    }
+
+    public void testEmpty() {
+        assertNull(store.get("store_test"));
+        assertFalse(store.contains("store_test"));
+        assertThat(store.size(), equalTo(0));
+    }
+
+    public void testPutAndGet() {
+        store.put(measurement);
+        assertThat(store.get("store_test"), sameInstance(measurement));
+        assertThat(store.get(measurement.getNameId()),
+                sameInstance(measurement));
+        assertTrue(store.contains("store_test"));
+    }
+
+    public void testReplacesOlderValue() {
+        store.put(measurement);
+        RawMeasurement newer = new RawMeasurement("store_test", 43);
+        store.put(newer);
+        assertThat(store.get("store_test"), sameInstance(newer));
+        assertThat(store.size(), equalTo(1));
+    }
+
+    public void testGetAll() {
+        store.put(measurement);
+        RawMeasurement other = new RawMeasurement("store_test_other", 1);
+        store.put(other);
+        assertThat(store.getAll().size(), equalTo(2));
+        assertTrue(store.getAll().contains(other));
+    }
+
+    public void testGetUnknownName() {
+        assertNull(store.get("store_test_never_seen"));
+        assertNull(store.get(-1));
+        assertNull(store.get(Integer.MAX_VALUE));
+    }
+
+    public void testClear() {
+        store.put(measurement);
+        store.clear();
+        assertFalse(store.contains("store_test"));
+    }
+}
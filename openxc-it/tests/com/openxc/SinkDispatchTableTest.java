@@ -0,0 +1,73 @@
+package com.openxc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.openxc.remote.RawMeasurement;
+import com.openxc.sinks.BaseVehicleDataSink;
+import com.openxc.sinks.FilteredVehicleDataSink;
+import com.openxc.sinks.VehicleDataSink;
+
+public class SinkDispatchTableTest extends TestCase {
+    List<VehicleDataSink> sinks;
+    VehicleDataSink unfiltered;
+    VehicleDataSink filtered;
+
+    @Override
+    public void setUp() {
+        sinks = new ArrayList<VehicleDataSink>();
+        filtered = new InterestedSink("dispatch_a");
+        unfiltered = new BaseVehicleDataSink();
+        sinks.add(filtered);
+        sinks.add(unfiltered);
+    }
+
+    public void testInterested() {
+        SinkDispatchTable table = new SinkDispatchTable(sinks);
+        VehicleDataSink[] selected = table.getSinks(
+                new RawMeasurement("dispatch_a", 1));
+        assertEquals(2, selected.length);
+        // in the order they were added
+        assertSame(filtered, selected[0]);
+        assertSame(unfiltered, selected[1]);
+    }
+
+    public void testNotInterested() {
+        SinkDispatchTable table = new SinkDispatchTable(sinks);
+        VehicleDataSink[] selected = table.getSinks(
+                new RawMeasurement("dispatch_b", 1));
+        assertEquals(1, selected.length);
+        assertSame(unfiltered, selected[0]);
+    }
+
+    public void testNameAddedLater() {
+        SinkDispatchTable table = new SinkDispatchTable(sinks);
+        VehicleDataSink[] selected = table.getSinks(
+                new RawMeasurement("dispatch_new_" + System.nanoTime(), 1));
+        assertEquals(1, selected.length);
+        assertSame(unfiltered, selected[0]);
+    }
+
+    public void testEmpty() {
+        assertEquals(0, SinkDispatchTable.EMPTY.getSinks(
+                    new RawMeasurement("dispatch_a", 1)).length);
+    }
+
+    private static class InterestedSink extends BaseVehicleDataSink
+            implements FilteredVehicleDataSink {
+        private Set<String> mInterests;
+
+        public InterestedSink(String... interests) {
+            mInterests = new HashSet<String>(Arrays.asList(interests));
+        }
+
+        public Set<String> getMeasurementInterests() {
+            return mInterests;
+        }
+    }
+}
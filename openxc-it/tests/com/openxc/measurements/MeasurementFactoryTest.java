@@ -0,0 +1,120 @@
+package com.openxc.measurements;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+
+import junit.framework.TestCase;
+
+import com.openxc.NoValueException;
+import com.openxc.remote.RawMeasurement;
+import com.openxc.units.Meter;
+
+public class MeasurementFactoryTest extends TestCase {
+    public void testEveryBuiltInHasFactory()
+            throws UnrecognizedMeasurementTypeException {
+        for(MeasurementFactory<?> factory : MeasurementFactories.ALL) {
+            assertThat(BaseMeasurement.getClassForId(factory.getId()),
+                    equalTo((Object) factory.getType()));
+            assertThat(BaseMeasurement.getIdForClass(factory.getType()),
+                    equalTo(factory.getId()));
+            assertEquals(factory, BaseMeasurement.getFactory(
+                        factory.getType()));
+        }
+    }
+
+    public void testNumberValue() throws UnrecognizedMeasurementTypeException,
+            NoValueException {
+        RawMeasurement raw = new RawMeasurement(VehicleSpeed.ID, 42.5);
+        Measurement measurement = BaseMeasurement.getMeasurementFromRaw(raw);
+        assertThat(measurement, instanceOf(VehicleSpeed.class));
+        assertThat(((VehicleSpeed) measurement).getValue().doubleValue(),
+                equalTo(42.5));
+        assertThat(measurement.getBirthtime(), equalTo(raw.getTimestamp()));
+    }
+
+    public void testIntegerValue() throws UnrecognizedMeasurementTypeException,
+            NoValueException {
+        Measurement measurement = BaseMeasurement.getMeasurementFromRaw(
+                new RawMeasurement(EngineSpeed.ID, 1500));
+        assertThat(((EngineSpeed) measurement).getValue().doubleValue(),
+                equalTo(1500.0));
+    }
+
+    public void testStateValueAndEvent()
+            throws UnrecognizedMeasurementTypeException, NoValueException {
+        Measurement measurement = BaseMeasurement.getMeasurementFromRaw(
+                new RawMeasurement(VehicleButtonEvent.ID, "left", "pressed"));
+        VehicleButtonEvent event = (VehicleButtonEvent) measurement;
+        assertThat(event.getValue().enumValue(), equalTo(
+                    VehicleButtonEvent.ButtonId.LEFT));
+        assertThat(event.getEvent().enumValue(), equalTo(
+                    VehicleButtonEvent.ButtonAction.PRESSED));
+    }
+
+    public void testFromClass() throws UnrecognizedMeasurementTypeException,
+            NoValueException {
+        Measurement measurement = BaseMeasurement.getMeasurementFromRaw(
+                BrakePedalStatus.class,
+                new RawMeasurement(BrakePedalStatus.ID, true));
+        assertTrue(((BrakePedalStatus) measurement).getValue().booleanValue());
+    }
+
+    public void testWrongValueType() throws NoValueException {
+        try {
+            BaseMeasurement.getMeasurementFromRaw(
+                    new RawMeasurement(VehicleSpeed.ID, "fast"));
+            fail("Expected an UnrecognizedMeasurementTypeException");
+        } catch(UnrecognizedMeasurementTypeException e) {
+        }
+    }
+
+    public void testUnknownState() throws NoValueException {
+        try {
+            BaseMeasurement.getMeasurementFromRaw(
+                    new RawMeasurement(TransmissionGearPosition.ID, "tenth"));
+            fail("Expected an UnrecognizedMeasurementTypeException");
+        } catch(UnrecognizedMeasurementTypeException e) {
+        }
+    }
+
+    public void testMissingValue() throws UnrecognizedMeasurementTypeException {
+        try {
+            BaseMeasurement.getMeasurementFromRaw(
+                    new RawMeasurement(VehicleSpeed.ID, null));
+            fail("Expected a NoValueException");
+        } catch(NoValueException e) {
+        }
+    }
+
+    public void testRegisterFactory()
+            throws UnrecognizedMeasurementTypeException, NoValueException {
+        BaseMeasurement.registerFactory(
+                new MeasurementFactory<TestMeasurement>(
+                    TestMeasurement.class, TestMeasurement.ID) {
+            public TestMeasurement create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new TestMeasurement(number(value, event));
+            }
+        });
+
+        Measurement measurement = BaseMeasurement.getMeasurementFromRaw(
+                new RawMeasurement(TestMeasurement.ID, 12));
+        assertThat(measurement, instanceOf(TestMeasurement.class));
+        assertThat(BaseMeasurement.getClassForId(TestMeasurement.ID),
+                equalTo((Object) TestMeasurement.class));
+    }
+
+    public static class TestMeasurement extends BaseMeasurement<Meter> {
+        public final static String ID = "factory_test_measurement";
+
+        public TestMeasurement(Number value) {
+            super(new Meter(value));
+        }
+
+        @Override
+        public String getGenericName() {
+            return ID;
+        }
+    }
+}
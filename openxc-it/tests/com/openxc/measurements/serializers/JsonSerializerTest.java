@@ -0,0 +1,99 @@
+package com.openxc.measurements.serializers;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import com.openxc.remote.RawMeasurement;
+
+public class JsonSerializerTest extends TestCase {
+    public void testNumericValue() {
+        assertEquals("{\"name\":\"vehicle_speed\",\"value\":42.5}",
+                JsonSerializer.serialize("vehicle_speed", 42.5, null, null));
+        assertEquals("{\"name\":\"engine_speed\",\"value\":1500}",
+                JsonSerializer.serialize("engine_speed", 1500, null, null));
+    }
+
+    public void testBooleanValue() {
+        assertEquals("{\"name\":\"brake_pedal_status\",\"value\":false}",
+                JsonSerializer.serialize("brake_pedal_status", false, null,
+                    null));
+    }
+
+    public void testStringValueAndEvent() {
+        assertEquals("{\"name\":\"button_event\",\"value\":\"left\"," +
+                "\"event\":\"pressed\"}",
+                JsonSerializer.serialize("button_event", "left", "pressed",
+                    null));
+    }
+
+    public void testEscapedString() {
+        assertEquals("{\"name\":\"a\\\"b\\\\c\\n\\u0001\"}",
+                JsonSerializer.serialize("a\"b\\c\n\u0001", null, null, null));
+    }
+
+    public void testNotANumber() {
+        assertEquals("{\"name\":\"a\",\"value\":\"NaN\"}",
+                JsonSerializer.serialize("a", Double.NaN, null, null));
+    }
+
+    public void testTimestampKeepsMilliseconds() {
+        assertEquals("{\"name\":\"a\",\"value\":1," +
+                "\"timestamp\":1351176963.438000}",
+                JsonSerializer.serialize("a", 1, null, 1351176963438L));
+        assertEquals("{\"name\":\"a\",\"value\":1," +
+                "\"timestamp\":1351176963.007000}",
+                JsonSerializer.serialize("a", 1, null, 1351176963007L));
+    }
+
+    public void testNoTimestamp() {
+        assertEquals("{\"name\":\"a\",\"value\":1}",
+                JsonSerializer.serialize("a", 1, null, null));
+        assertEquals("{\"name\":\"a\",\"value\":1}",
+                JsonSerializer.serialize("a", 1, null, 0L));
+    }
+
+    public void testRoundTrip() throws Exception {
+        for(long timestamp = 1351176963000L; timestamp < 1351176965000L;
+                timestamp++) {
+            RawMeasurement measurement = new RawMeasurement(
+                    JsonSerializer.serialize("a", 1.5, "b", timestamp));
+            assertEquals(timestamp, measurement.getTimestamp());
+            assertEquals(1.5, measurement.getValue());
+            assertEquals("b", measurement.getEvent());
+        }
+    }
+
+    public void testAppend() {
+        StringBuilder buffer = new StringBuilder("[");
+        JsonSerializer.serialize(buffer, "a", 1, null, 0);
+        assertEquals("[{\"name\":\"a\",\"value\":1}", buffer.toString());
+    }
+
+    public void testConcurrentSerialization() throws InterruptedException {
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        Thread[] threads = new Thread[4];
+        for(int i = 0; i < threads.length; i++) {
+            final String name = "serializer_" + i;
+            threads[i] = new Thread() {
+                public void run() {
+                    String expected = "{\"name\":\"" + name +
+                        "\",\"value\":7,\"timestamp\":1.001000}";
+                    for(int j = 0; j < 10000; j++) {
+                        String result = JsonSerializer.serialize(name, 7,
+                                null, 1001L);
+                        if(!expected.equals(result)) {
+                            failure.set(result);
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,82 @@
+package com.openxc.remote;
+
+import junit.framework.TestCase;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class MeasurementNamesTest extends TestCase {
+    public void testSameNameSameId() {
+        int id = MeasurementNames.getId("names_test_speed");
+        assertThat(MeasurementNames.getId("names_test_speed"), equalTo(id));
+    }
+
+    public void testDifferentNamesDifferentIds() {
+        assertFalse(MeasurementNames.getId("names_test_a") ==
+                MeasurementNames.getId("names_test_b"));
+    }
+
+    public void testCanonicalInstance() {
+        String name = new String("names_test_canonical");
+        String canonical = MeasurementNames.intern(name);
+        assertThat(MeasurementNames.intern(
+                    new String("names_test_canonical")),
+                sameInstance(canonical));
+        assertThat(MeasurementNames.getName(MeasurementNames.getId(name)),
+                sameInstance(canonical));
+    }
+
+    public void testLookupFromCharacters() {
+        int id = MeasurementNames.getId("names_test_chars");
+        char[] characters = "xxnames_test_charsyy".toCharArray();
+        assertThat(MeasurementNames.getId(characters, 2, 16), equalTo(id));
+    }
+
+    public void testNewNameFromCharacters() {
+        char[] characters = "names_test_new_chars".toCharArray();
+        int id = MeasurementNames.getId(characters, 0, characters.length);
+        assertThat(MeasurementNames.getName(id),
+                equalTo("names_test_new_chars"));
+        assertThat(MeasurementNames.getId("names_test_new_chars"),
+                equalTo(id));
+    }
+
+    public void testIdsBelowSize() {
+        int id = MeasurementNames.getId("names_test_size");
+        assertTrue(id < MeasurementNames.size());
+    }
+
+    public void testBuiltInNamesSeeded() {
+        assertTrue(MeasurementNames.isSeeded(
+                    MeasurementNames.getId("vehicle_speed")));
+        assertTrue(MeasurementNames.isSeeded(
+                    MeasurementNames.getId("accelerator_pedal_position")));
+        assertFalse(MeasurementNames.isSeeded(
+                    MeasurementNames.getId("names_test_not_seeded")));
+        assertFalse(MeasurementNames.isSeeded(MeasurementNames.UNKNOWN_ID));
+    }
+
+    public void testSeededIdsStable() {
+        // These are part of the Parcel format
+        assertThat(MeasurementNames.getId("accelerator_pedal_position"),
+                equalTo(0));
+        assertThat(MeasurementNames.getId("windshield_wiper_status"),
+                equalTo(MeasurementNames.SEEDED_NAME_COUNT - 1));
+    }
+
+    public void testUnknown() {
+        assertThat(MeasurementNames.getId(null),
+                equalTo(MeasurementNames.UNKNOWN_ID));
+        assertNull(MeasurementNames.getName(MeasurementNames.UNKNOWN_ID));
+        assertNull(MeasurementNames.getName(Integer.MAX_VALUE));
+    }
+
+    public void testRawMeasurementNameId() {
+        RawMeasurement measurement = new RawMeasurement(
+                new String("names_test_raw"), 42);
+        assertThat(measurement.getNameId(),
+                equalTo(MeasurementNames.getId("names_test_raw")));
+        assertThat(measurement.getName(), sameInstance(
+                    MeasurementNames.intern("names_test_raw")));
+    }
+}
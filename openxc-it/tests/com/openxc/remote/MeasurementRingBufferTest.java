@@ -0,0 +1,167 @@
+package com.openxc.remote;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class MeasurementRingBufferTest extends TestCase {
+    File file;
+    FileInputStream input;
+    MeasurementRingWriter writer;
+    MeasurementRingReader reader;
+
+    @Override
+    public void setUp() throws IOException {
+        file = File.createTempFile("measurements", ".ring");
+        writer = new MeasurementRingWriter(file, 8);
+        input = new FileInputStream(file);
+        reader = new MeasurementRingReader(input.getChannel());
+    }
+
+    @Override
+    public void tearDown() throws IOException {
+        input.close();
+        writer.close();
+        file.delete();
+    }
+
+    public void testEmpty() {
+        assertEquals(null, reader.read());
+    }
+
+    public void testNumber() {
+        RawMeasurement measurement = new RawMeasurement("vehicle_speed", 42.5);
+        assertTrue(writer.write(measurement));
+        RawMeasurement result = reader.read();
+        assertThat(result.getName(), equalTo("vehicle_speed"));
+        assertThat(result.getValue(), equalTo((Object) 42.5));
+        assertFalse(result.hasEvent());
+        assertThat(result.getTimestamp(), equalTo(measurement.getTimestamp()));
+        assertEquals(null, reader.read());
+    }
+
+    public void testBoolean() {
+        writer.write(new RawMeasurement("brake_pedal_status", true));
+        assertThat(reader.read().getValue(), equalTo((Object) Boolean.TRUE));
+    }
+
+    public void testStringValueAndEvent() {
+        writer.write(new RawMeasurement("button_event", "left", "pressed"));
+        RawMeasurement result = reader.read();
+        assertThat(result.getValue(), equalTo((Object) "left"));
+        assertThat(result.getEvent(), equalTo((Object) "pressed"));
+    }
+
+    public void testBooleanEvent() {
+        writer.write(new RawMeasurement("door_status", "driver", false));
+        RawMeasurement result = reader.read();
+        assertThat(result.getValue(), equalTo((Object) "driver"));
+        assertThat(result.getEvent(), equalTo((Object) Boolean.FALSE));
+    }
+
+    public void testNameIsCanonical() {
+        writer.write(new RawMeasurement("engine_speed", 1500));
+        assertTrue(reader.read().getName() ==
+                MeasurementNames.intern("engine_speed"));
+    }
+
+    public void testInOrder() {
+        for(int i = 0; i < 5; i++) {
+            writer.write(new RawMeasurement("odometer", i));
+        }
+
+        for(int i = 0; i < 5; i++) {
+            assertThat(reader.read().getValue(), equalTo((Object) (double) i));
+        }
+        assertEquals(null, reader.read());
+    }
+
+    public void testStartsAtNewest() throws IOException {
+        writer.write(new RawMeasurement("odometer", 1));
+        FileInputStream lateInput = new FileInputStream(file);
+        try {
+            MeasurementRingReader lateReader = new MeasurementRingReader(
+                    lateInput.getChannel());
+            assertEquals(null, lateReader.read());
+            writer.write(new RawMeasurement("odometer", 2));
+            assertThat(lateReader.read().getValue(), equalTo((Object) 2.0));
+        } finally {
+            lateInput.close();
+        }
+    }
+
+    public void testLapped() {
+        for(int i = 0; i < 20; i++) {
+            writer.write(new RawMeasurement("odometer", i));
+        }
+
+        // only the last 8 are still in the ring
+        assertThat(reader.read().getValue(), equalTo((Object) 12.0));
+        assertEquals(12, reader.getLostCount());
+    }
+
+    private void corrupt(int offset) throws IOException {
+        RandomAccessFile other = new RandomAccessFile(file, "rw");
+        try {
+            other.seek(offset);
+            int original = other.read();
+            other.seek(offset);
+            other.write(original ^ 0xff);
+        } finally {
+            other.close();
+        }
+    }
+
+    public void testTornRecordSkipped() throws IOException {
+        writer.write(new RawMeasurement("odometer", 1));
+        writer.write(new RawMeasurement("odometer", 2));
+        // As if the reader copied part of the value before the writer
+        // changed it, without the sequence changing
+        corrupt(MeasurementRingBuffer.RECORDS_OFFSET +
+                MeasurementRingBuffer.VALUE + 7);
+
+        assertThat(reader.read().getValue(), equalTo((Object) 2.0));
+        assertEquals(1, reader.getLostCount());
+        assertEquals(null, reader.read());
+    }
+
+    public void testTornNameSkipped() throws IOException {
+        writer.write(new RawMeasurement("odometer", 1));
+        corrupt(MeasurementRingBuffer.getNameOffset(
+                    MeasurementNames.getId("odometer")) +
+                MeasurementRingBuffer.NAME_CHARACTERS);
+        assertEquals(null, reader.read());
+        assertEquals(1, reader.getLostCount());
+    }
+
+    public void testStringTooLong() {
+        assertFalse(writer.write(new RawMeasurement("transmission_gear_position",
+                        "a value that is much too long to fit in a record")));
+        assertEquals(1, writer.getDroppedCount());
+        assertEquals(null, reader.read());
+    }
+
+    public void testNotARingBuffer() throws IOException {
+        File other = File.createTempFile("measurements", ".ring");
+        FileOutputStream output = new FileOutputStream(other);
+        output.write(new byte[128]);
+        output.close();
+
+        FileInputStream otherInput = new FileInputStream(other);
+        try {
+            new MeasurementRingReader(otherInput.getChannel());
+            fail("Expected an IOException");
+        } catch(IOException e) {
+        } finally {
+            otherInput.close();
+            other.delete();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.openxc.sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.openxc.DeliveryPolicy;
+import com.openxc.TestUtils;
+import com.openxc.remote.RawMeasurement;
+
+public class AbstractQueuedCallbackSinkTest extends TestCase {
+    RecordingSink sink;
+
+    @Override
+    public void setUp() {
+        sink = new RecordingSink();
+    }
+
+    @Override
+    public void tearDown() {
+        sink.stop();
+    }
+
+    public void testPropagates() throws DataSinkException {
+        sink.receive(new RawMeasurement("first", 1));
+        TestUtils.pause(50);
+        assertEquals(1, sink.received());
+    }
+
+    public void testBatchedWithinLatency() throws DataSinkException {
+        sink.setMaximumBatchLatency(100);
+        sink.receive(new RawMeasurement("first", 1));
+        sink.receive(new RawMeasurement("second", 2));
+        sink.receive(new RawMeasurement("third", 3));
+        TestUtils.pause(200);
+        assertEquals(1, sink.batches.size());
+        assertEquals(3, (int) sink.batches.get(0));
+    }
+
+    public void testMaximumBatchSize() throws DataSinkException {
+        sink.setMaximumBatchLatency(100);
+        sink.setMaximumBatchSize(2);
+        sink.receive(new RawMeasurement("first", 1));
+        sink.receive(new RawMeasurement("second", 2));
+        sink.receive(new RawMeasurement("third", 3));
+        TestUtils.pause(200);
+        assertEquals(3, sink.received());
+        for(Integer size : sink.batches) {
+            assertTrue(size <= 2);
+        }
+    }
+
+    public void testCoalescedByDefault() throws DataSinkException {
+        sink.setMaximumBatchLatency(100);
+        sink.receive(new RawMeasurement("first", 1));
+        sink.receive(new RawMeasurement("first", 2));
+        TestUtils.pause(200);
+        assertEquals(1, sink.received());
+        assertEquals(1, sink.getOverwrittenCount());
+    }
+
+    public void testLosslessPolicy() throws DataSinkException {
+        sink.setDeliveryPolicy("first", DeliveryPolicy.LOSSLESS);
+        sink.setMaximumBatchLatency(100);
+        sink.receive(new RawMeasurement("first", 1));
+        sink.receive(new RawMeasurement("first", 2));
+        TestUtils.pause(200);
+        assertEquals(2, sink.received());
+        assertEquals(0, sink.getOverwrittenCount());
+    }
+
+    public void testInvalidBatchSize() {
+        try {
+            sink.setMaximumBatchSize(0);
+            fail("Expected an IllegalArgumentException");
+        } catch(IllegalArgumentException e) {
+        }
+    }
+
+    private static class RecordingSink extends AbstractQueuedCallbackSink {
+        public List<Integer> batches = new ArrayList<Integer>();
+
+        public synchronized int received() {
+            int count = 0;
+            for(Integer size : batches) {
+                count += size;
+            }
+            return count;
+        }
+
+        @Override
+        protected synchronized void propagateMeasurements(
+                List<RawMeasurement> measurements) {
+            batches.add(measurements.size());
+        }
+
+        protected void propagateMeasurement(String measurementId,
+                RawMeasurement measurement) {
+        }
+    }
+}
@@ -4,6 +4,7 @@ import junit.framework.TestCase;
 
 import static org.mockito.Mockito.*;
 
+import com.openxc.MeasurementStore;
 import com.openxc.remote.RawMeasurement;
 
 public class BaseVehicleDataSinkTest extends TestCase {
@@ -18,6 +19,27 @@ public class BaseVehicleDataSinkTest extends TestCase {
         sink.receive(new RawMeasurement("measurement_type", "value"));
     }
 
+    public void testStoresReceived() throws DataSinkException {
+        RawMeasurement measurement = new RawMeasurement("measurement_type",
+                "value");
+        sink.receive(measurement);
+        assertTrue(sink.containsMeasurement("measurement_type"));
+        assertEquals(measurement, sink.get("measurement_type"));
+        assertEquals(1, sink.getMeasurements().size());
+    }
+
+    public void testSharedStoreNotDuplicated() throws DataSinkException {
+        MeasurementStore store = new MeasurementStore();
+        sink.setMeasurementStore(store);
+        sink.receive(new RawMeasurement("measurement_type", "value"));
+        assertFalse(store.contains("measurement_type"));
+
+        RawMeasurement measurement = new RawMeasurement("measurement_type",
+                "value");
+        store.put(measurement);
+        assertEquals(measurement, sink.get("measurement_type"));
+    }
+
     public void testStop() {
         sink.stop();
     }
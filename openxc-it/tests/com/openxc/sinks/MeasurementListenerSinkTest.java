@@ -0,0 +1,90 @@
+package com.openxc.sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.openxc.TestUtils;
+import com.openxc.measurements.EngineSpeed;
+import com.openxc.measurements.Measurement;
+import com.openxc.measurements.UnrecognizedMeasurementTypeException;
+import com.openxc.measurements.VehicleSpeed;
+import com.openxc.remote.RawMeasurement;
+
+public class MeasurementListenerSinkTest extends TestCase {
+    MeasurementListenerSink sink;
+    RecordingListener listener;
+
+    @Override
+    public void setUp() {
+        sink = new MeasurementListenerSink();
+        listener = new RecordingListener();
+    }
+
+    @Override
+    public void tearDown() {
+        sink.stop();
+    }
+
+    public void testNoListenersNotPropagated() {
+        assertFalse(sink.shouldPropagate(
+                    new RawMeasurement(VehicleSpeed.ID, 42)));
+    }
+
+    public void testReceiveRegistered() throws DataSinkException,
+            UnrecognizedMeasurementTypeException {
+        sink.register(VehicleSpeed.class, listener);
+        assertTrue(sink.shouldPropagate(
+                    new RawMeasurement(VehicleSpeed.ID, 42)));
+        sink.receive(new RawMeasurement(VehicleSpeed.ID, 42));
+        TestUtils.pause(50);
+        assertEquals(1, listener.received.size());
+        assertTrue(listener.received.get(0) instanceof VehicleSpeed);
+    }
+
+    public void testOtherTypesIgnored() throws DataSinkException,
+            UnrecognizedMeasurementTypeException {
+        sink.register(VehicleSpeed.class, listener);
+        sink.receive(new RawMeasurement(EngineSpeed.ID, 1500));
+        TestUtils.pause(50);
+        assertEquals(0, listener.received.size());
+        // still available as the last known value
+        assertTrue(sink.containsMeasurement(EngineSpeed.ID));
+    }
+
+    public void testSharedAcrossListeners() throws DataSinkException,
+            UnrecognizedMeasurementTypeException {
+        RecordingListener anotherListener = new RecordingListener();
+        sink.register(VehicleSpeed.class, listener);
+        sink.register(VehicleSpeed.class, anotherListener);
+        sink.receive(new RawMeasurement(VehicleSpeed.ID, 42));
+        TestUtils.pause(50);
+        assertEquals(1, listener.received.size());
+        assertSame(listener.received.get(0), anotherListener.received.get(0));
+    }
+
+    public void testUnregister() throws DataSinkException,
+            UnrecognizedMeasurementTypeException {
+        sink.register(VehicleSpeed.class, listener);
+        sink.unregister(VehicleSpeed.class, listener);
+        assertFalse(sink.shouldPropagate(
+                    new RawMeasurement(VehicleSpeed.ID, 42)));
+    }
+
+    public void testLastValueSentOnRegister() throws DataSinkException,
+            UnrecognizedMeasurementTypeException {
+        sink.receive(new RawMeasurement(VehicleSpeed.ID, 42));
+        sink.register(VehicleSpeed.class, listener);
+        TestUtils.pause(50);
+        assertEquals(1, listener.received.size());
+    }
+
+    private static class RecordingListener implements Measurement.Listener {
+        public List<Measurement> received = new ArrayList<Measurement>();
+
+        public synchronized void receive(Measurement measurement) {
+            received.add(measurement);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.openxc.sinks;
+
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import com.openxc.DeliveryPolicy;
+import com.openxc.MeasurementStore;
+import com.openxc.TestUtils;
+import com.openxc.remote.RawMeasurement;
+
+public class QueuedVehicleDataSinkTest extends TestCase {
+    SlowSink slowSink;
+    QueuedVehicleDataSink sink;
+
+    @Override
+    public void setUp() {
+        slowSink = new SlowSink();
+        sink = new QueuedVehicleDataSink(slowSink, DeliveryPolicy.DROP_OLDEST,
+                2);
+    }
+
+    @Override
+    public void tearDown() {
+        slowSink.release.countDown();
+        sink.stop();
+    }
+
+    public void testPassesOn() throws DataSinkException {
+        slowSink.release.countDown();
+        sink.receive(new RawMeasurement("queued", 1));
+        TestUtils.pause(50);
+        assertEquals(1, slowSink.received);
+    }
+
+    public void testDoesNotBlockOnSlowSink() throws DataSinkException {
+        long start = System.nanoTime();
+        for(int i = 0; i < 10; i++) {
+            sink.receive(new RawMeasurement("queued", i));
+        }
+        assertTrue(System.nanoTime() - start < 50 * 1000 * 1000);
+        assertTrue(sink.getDroppedCount() > 0);
+    }
+
+    public void testFailureRethrown() throws DataSinkException {
+        slowSink.fail = true;
+        slowSink.release.countDown();
+        sink.receive(new RawMeasurement("queued", 1));
+        TestUtils.pause(50);
+        try {
+            sink.receive(new RawMeasurement("queued", 2));
+            fail("Expected a DataSinkException");
+        } catch(DataSinkException e) {
+        }
+    }
+
+    public void testSharesStore() {
+        MeasurementStore store = new MeasurementStore();
+        sink.setMeasurementStore(store);
+        RawMeasurement measurement = new RawMeasurement("queued", 1);
+        store.put(measurement);
+        assertEquals(measurement, slowSink.get("queued"));
+    }
+
+    public void testStopsWrappedSink() {
+        sink.stop();
+        assertTrue(slowSink.stopped);
+    }
+
+    private static class SlowSink extends BaseVehicleDataSink {
+        CountDownLatch release = new CountDownLatch(1);
+        volatile int received = 0;
+        volatile boolean fail = false;
+        volatile boolean stopped = false;
+
+        public boolean receive(RawMeasurement measurement)
+                throws DataSinkException {
+            try {
+                release.await();
+            } catch(InterruptedException e) {
+                return false;
+            }
+
+            if(fail) {
+                throw new DataSinkException("Expected failure");
+            }
+            received++;
+            return true;
+        }
+
+        public void stop() {
+            stopped = true;
+        }
+    }
+}
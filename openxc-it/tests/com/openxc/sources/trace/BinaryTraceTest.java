@@ -0,0 +1,147 @@
+package com.openxc.sources.trace;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import com.openxc.remote.RawMeasurement;
+
+public class BinaryTraceTest extends TestCase {
+    ByteArrayOutputStream output;
+    BinaryTraceWriter writer;
+
+    @Override
+    public void setUp() throws IOException {
+        output = new ByteArrayOutputStream();
+        writer = new BinaryTraceWriter(output);
+    }
+
+    private BinaryTraceReader reader() throws IOException {
+        writer.flush();
+        return new BinaryTraceReader(
+                new ByteArrayInputStream(output.toByteArray()));
+    }
+
+    private void assertRoundTrip(Object value, Object event)
+            throws IOException {
+        writer.write(new RawMeasurement("binary_trace", value, event,
+                    1351176963438L));
+        RawMeasurement measurement = reader().read();
+        assertEquals("binary_trace", measurement.getName());
+        assertEquals(value, measurement.getValue());
+        assertEquals(event, measurement.getEvent());
+        assertEquals(1351176963438L, measurement.getTimestamp());
+    }
+
+    public void testDouble() throws IOException {
+        assertRoundTrip(94.1, null);
+    }
+
+    public void testDoubleFitsFloat() throws IOException {
+        assertRoundTrip(42.5, null);
+    }
+
+    public void testNotANumber() throws IOException {
+        assertRoundTrip(Double.NaN, null);
+    }
+
+    public void testInteger() throws IOException {
+        assertRoundTrip(-42, null);
+    }
+
+    public void testLong() throws IOException {
+        assertRoundTrip(Long.MAX_VALUE, null);
+    }
+
+    public void testBoolean() throws IOException {
+        assertRoundTrip(true, false);
+    }
+
+    public void testStringAndEvent() throws IOException {
+        assertRoundTrip("passenger", "pressed");
+    }
+
+    public void testEmptyTrace() throws IOException {
+        assertNull(reader().read());
+    }
+
+    public void testSequence() throws IOException {
+        long[] timestamps = { 1351176963438L, 1351176963440L,
+            1351176963439L, 1351176964000L };
+        for(int i = 0; i < timestamps.length; i++) {
+            writer.write(new RawMeasurement("binary_trace_" + (i % 2),
+                        i, "state", timestamps[i]));
+        }
+
+        BinaryTraceReader reader = reader();
+        for(int i = 0; i < timestamps.length; i++) {
+            RawMeasurement measurement = reader.read();
+            assertEquals("binary_trace_" + (i % 2), measurement.getName());
+            assertEquals(i, measurement.getValue());
+            assertEquals("state", measurement.getEvent());
+            assertEquals(timestamps[i], measurement.getTimestamp());
+        }
+        assertNull(reader.read());
+        assertEquals(output.size(), reader.getBytesRead());
+    }
+
+    public void testRepeatsAreSmall() throws IOException {
+        writer.write(new RawMeasurement("transmission_gear_position",
+                    "second", null, 1351176963438L));
+        writer.flush();
+        int first = output.size();
+        writer.write(new RawMeasurement("transmission_gear_position",
+                    "second", null, 1351176963448L));
+        writer.flush();
+        // header, name, timestamp delta and value
+        assertEquals(4, output.size() - first);
+    }
+
+    public void testCanonicalName() throws IOException {
+        writer.write(new RawMeasurement("vehicle_speed", 42.0, null,
+                    1351176963438L));
+        assertSame("vehicle_speed", reader().read().getName());
+    }
+
+    public void testUntimestampedGetsCurrentTime() throws IOException {
+        RawMeasurement measurement = new RawMeasurement("binary_trace", 1);
+        measurement.untimestamp();
+        long before = System.currentTimeMillis();
+        writer.write(measurement);
+        assertTrue(reader().read().getTimestamp() >= before);
+    }
+
+    public void testTruncated() throws IOException {
+        writer.write(new RawMeasurement("binary_trace", 1.0, null, 1000));
+        writer.write(new RawMeasurement("binary_trace", 94.1, null, 2000));
+        writer.flush();
+        byte[] bytes = output.toByteArray();
+        BinaryTraceReader reader = new BinaryTraceReader(
+                new ByteArrayInputStream(Arrays.copyOf(bytes,
+                        bytes.length - 3)));
+        assertEquals(1.0, reader.read().getValue());
+        assertFalse(reader.isTruncated());
+        assertNull(reader.read());
+        assertTrue(reader.isTruncated());
+    }
+
+    public void testNotBinary() {
+        try {
+            new BinaryTraceReader(new ByteArrayInputStream(
+                        "{\"name\": \"a\"}".getBytes()));
+            fail("Expected an IOException");
+        } catch(IOException e) {
+        }
+    }
+
+    public void testDetectFormat() throws IOException {
+        writer.flush();
+        assertTrue(TraceConverter.openReader(new ByteArrayInputStream(
+                        output.toByteArray())) instanceof BinaryTraceReader);
+        assertTrue(TraceConverter.openReader(new ByteArrayInputStream(
+                        "{}".getBytes())) instanceof JsonTraceReader);
+    }
+}
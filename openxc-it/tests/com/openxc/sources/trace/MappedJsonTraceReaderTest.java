@@ -0,0 +1,149 @@
+package com.openxc.sources.trace;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import junit.framework.TestCase;
+
+import com.openxc.remote.RawMeasurement;
+
+public class MappedJsonTraceReaderTest extends TestCase {
+    final static long START = 1332432977000L;
+
+    File trace;
+
+    @Override
+    public void setUp() throws IOException {
+        trace = File.createTempFile("trace", ".json");
+    }
+
+    @Override
+    public void tearDown() {
+        trace.delete();
+    }
+
+    private void writeTrace(String contents) throws IOException {
+        OutputStream output = new FileOutputStream(trace);
+        output.write(contents.getBytes("UTF-8"));
+        output.close();
+    }
+
+    private static String line(int i) {
+        return new RawMeasurement("mapped_" + i, i * 1.5, null,
+                START + i).serialize();
+    }
+
+    private static void assertRecord(int i, RawMeasurement measurement) {
+        assertNotNull(measurement);
+        assertEquals("mapped_" + i, measurement.getName());
+        assertEquals(i * 1.5, measurement.getValue());
+        assertEquals(START + i, measurement.getTimestamp());
+    }
+
+    public void testEmpty() throws IOException {
+        writeTrace("");
+        TraceReader reader = new MappedJsonTraceReader(trace);
+        assertNull(reader.read());
+        assertEquals(0, reader.getBytesRead());
+        reader.close();
+    }
+
+    public void testReadsLines() throws IOException {
+        writeTrace(line(0) + "\n" + line(1) + "\r\n\n" + line(2));
+        TraceReader reader = new MappedJsonTraceReader(trace);
+        assertRecord(0, reader.read());
+        assertRecord(1, reader.read());
+        assertRecord(2, reader.read());
+        assertNull(reader.read());
+        assertEquals(trace.length(), reader.getBytesRead());
+        reader.close();
+    }
+
+    public void testSkipsInvalidLines() throws IOException {
+        writeTrace(line(0) + "\n{\"name\": \"no_value\"}\nnot json\n" +
+                "{\"value\": \"no_name\"}\n\n" + line(1) + "\n");
+        MappedJsonTraceReader reader = new MappedJsonTraceReader(trace);
+        assertRecord(0, reader.read());
+        assertRecord(1, reader.read());
+        assertNull(reader.read());
+        assertEquals(3, reader.getSkippedLineCount());
+        reader.close();
+    }
+
+    public void testSkipsCutOffLastLine() throws IOException {
+        String last = line(1);
+        writeTrace(line(0) + "\n" + last.substring(0, last.length() / 2));
+        MappedJsonTraceReader reader = new MappedJsonTraceReader(trace);
+        assertRecord(0, reader.read());
+        assertNull(reader.read());
+        assertEquals(1, reader.getSkippedLineCount());
+        assertEquals(trace.length(), reader.getBytesRead());
+        reader.close();
+    }
+
+    public void testStartsAtOffset() throws IOException {
+        String first = line(0) + "\r\n";
+        writeTrace(first + line(1) + "\n");
+        TraceReader reader = new MappedJsonTraceReader(trace,
+                first.length());
+        assertRecord(1, reader.read());
+        assertNull(reader.read());
+        reader.close();
+    }
+
+    public void testLinesAcrossRegions() throws IOException {
+        StringBuilder contents = new StringBuilder();
+        for(int i = 0; i < 100; i++) {
+            contents.append(line(i)).append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        writeTrace(contents.toString());
+
+        // Regions much smaller than the trace but a bit larger than a line
+        TraceReader reader = new MappedJsonTraceReader(trace, 0,
+                Long.MAX_VALUE, line(0).length() * 3 / 2);
+        for(int i = 0; i < 100; i++) {
+            assertRecord(i, reader.read());
+        }
+        assertNull(reader.read());
+        assertEquals(trace.length(), reader.getBytesRead());
+        reader.close();
+    }
+
+    public void testLineLongerThanRegion() throws IOException {
+        writeTrace(line(0) + "\n" + line(1) + "\n");
+        TraceReader reader = new MappedJsonTraceReader(trace, 0,
+                Long.MAX_VALUE, 10);
+        try {
+            reader.read();
+            fail("Expected an IOException");
+        } catch(IOException e) {
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testSameAsStreamReader() throws IOException {
+        StringBuilder contents = new StringBuilder();
+        for(int i = 0; i < 50; i++) {
+            contents.append(line(i)).append("\n");
+        }
+        writeTrace(contents.toString());
+
+        TraceReader mapped = new MappedJsonTraceReader(trace);
+        TraceReader stream = new JsonTraceReader(new FileInputStream(trace));
+        RawMeasurement expected;
+        while((expected = stream.read()) != null) {
+            RawMeasurement measurement = mapped.read();
+            assertEquals(expected.getName(), measurement.getName());
+            assertEquals(expected.getValue(), measurement.getValue());
+            assertEquals(expected.getTimestamp(), measurement.getTimestamp());
+            assertEquals(stream.getBytesRead(), mapped.getBytesRead());
+        }
+        assertNull(mapped.read());
+        mapped.close();
+        stream.close();
+    }
+}
@@ -0,0 +1,113 @@
+package com.openxc.sources.trace;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.openxc.remote.RawMeasurement;
+
+public class TraceCacheTest extends TestCase {
+    final static long START = 1332432977000L;
+
+    class ListTraceReader implements TraceReader {
+        List<RawMeasurement> mMeasurements;
+        int mPosition;
+
+        ListTraceReader(List<RawMeasurement> measurements) {
+            mMeasurements = measurements;
+        }
+
+        public RawMeasurement read() {
+            if(mPosition >= mMeasurements.size()) {
+                return null;
+            }
+            return mMeasurements.get(mPosition++);
+        }
+
+        public long getBytesRead() {
+            return 0;
+        }
+
+        public void close() { }
+    }
+
+    private static List<RawMeasurement> trace(int count) {
+        List<RawMeasurement> measurements = new ArrayList<RawMeasurement>();
+        for(int i = 0; i < count; i++) {
+            measurements.add(new RawMeasurement("cached_" + (i % 5), i * 0.25,
+                        null, START + i));
+        }
+        return measurements;
+    }
+
+    private static void assertMeasurement(RawMeasurement expected,
+            RawMeasurement measurement) {
+        assertNotNull(measurement);
+        assertEquals(expected.getName(), measurement.getName());
+        assertEquals(expected.getValue(), measurement.getValue());
+        assertEquals(expected.getEvent(), measurement.getEvent());
+        assertEquals(expected.getTimestamp(), measurement.getTimestamp());
+    }
+
+    public void testValueTypes() throws IOException {
+        List<RawMeasurement> measurements = new ArrayList<RawMeasurement>();
+        measurements.add(new RawMeasurement("double", 42.125, null, START));
+        measurements.add(new RawMeasurement("integer", -7, null, START + 1));
+        measurements.add(new RawMeasurement("long", 1L << 40, null,
+                    START + 2));
+        measurements.add(new RawMeasurement("true", true, null, START + 3));
+        measurements.add(new RawMeasurement("false", false, null, START + 4));
+        measurements.add(new RawMeasurement("string", "passenger", null,
+                    START + 5));
+        measurements.add(new RawMeasurement("event", "driver", true,
+                    START + 6));
+        measurements.add(new RawMeasurement("event", "driver", 3.5,
+                    START + 7));
+
+        TraceCache cache = TraceCache.load(
+                new ListTraceReader(measurements), 1024 * 1024);
+        assertEquals(measurements.size(), cache.size());
+        TraceReader reader = cache.openReader();
+        for(RawMeasurement expected : measurements) {
+            assertMeasurement(expected, reader.read());
+        }
+        assertNull(reader.read());
+    }
+
+    public void testReplaysAgain() throws IOException {
+        List<RawMeasurement> measurements = trace(3000);
+        TraceCache cache = TraceCache.load(
+                new ListTraceReader(measurements), 1024 * 1024);
+        for(int pass = 0; pass < 2; pass++) {
+            TraceReader reader = cache.openReader();
+            for(RawMeasurement expected : measurements) {
+                RawMeasurement measurement = reader.read();
+                assertMeasurement(expected, measurement);
+                // Playback modifies the measurements it sends
+                measurement.untimestamp();
+            }
+            assertNull(reader.read());
+        }
+    }
+
+    public void testFitsInLimit() throws IOException {
+        TraceCache cache = TraceCache.load(new ListTraceReader(trace(10000)),
+                256 * 1024);
+        assertNotNull(cache);
+        assertEquals(10000, cache.size());
+        assertTrue(cache.getMemoryUsage() <= 256 * 1024);
+    }
+
+    public void testTooLarge() throws IOException {
+        assertNull(TraceCache.load(new ListTraceReader(trace(10000)),
+                    64 * 1024));
+    }
+
+    public void testEmpty() throws IOException {
+        TraceCache cache = TraceCache.load(new ListTraceReader(trace(0)), 0);
+        assertEquals(0, cache.size());
+        assertNull(cache.openReader().read());
+    }
+}
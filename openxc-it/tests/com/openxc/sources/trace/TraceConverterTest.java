@@ -0,0 +1,73 @@
+package com.openxc.sources.trace;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import com.openxc.remote.RawMeasurement;
+
+public class TraceConverterTest extends TestCase {
+    final static String TRACE =
+        "{\"timestamp\": 1332432977.831086, \"name\": \"vehicle_speed\", \"value\": 42}\n" +
+        "{\"timestamp\": 1332432977.831732, \"name\": \"windshield_wiper_status\", \"value\": true}\n" +
+        "not json\n" +
+        "{\"timestamp\": 1332432977.832471, \"name\": \"steering_wheel_angle\", \"value\": 94.1}\n" +
+        "{\"timestamp\": 1332432977.833068, \"name\": \"transmission_gear_position\", \"value\": \"FIRST\"}\n" +
+        "{\"timestamp\": 1332432977.834, \"name\": \"button_event\", \"value\": \"left\", \"event\": \"pressed\"}\n" +
+        // Cut off by a power loss
+        "{\"timestamp\": 1332432977.835, \"name\": \"vehic";
+
+    public void testJsonToBinaryAndBack() throws IOException {
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        assertEquals(5, TraceConverter.toBinary(
+                    new ByteArrayInputStream(TRACE.getBytes()), binary));
+        assertTrue(binary.size() < TRACE.length());
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        assertEquals(5, TraceConverter.toJson(
+                    new ByteArrayInputStream(binary.toByteArray()), json));
+
+        JsonTraceReader original = new JsonTraceReader(
+                new ByteArrayInputStream(TRACE.getBytes()));
+        TraceReader converted = new JsonTraceReader(
+                new ByteArrayInputStream(json.toByteArray()));
+        RawMeasurement expected;
+        while((expected = original.read()) != null) {
+            RawMeasurement actual = converted.read();
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getValue(), actual.getValue());
+            assertEquals(expected.getEvent(), actual.getEvent());
+            assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        }
+        assertNull(converted.read());
+        assertEquals(2, original.getSkippedLineCount());
+    }
+
+    public void testLongTraceShrinks() throws IOException {
+        StringBuilder trace = new StringBuilder();
+        for(int i = 0; i < 1000; i++) {
+            trace.append("{\"timestamp\": 13324329").append(77000 + i * 7)
+                .append(".123, \"name\": \"vehicle_speed\", \"value\": ")
+                .append(i % 120).append(".5}\n");
+            trace.append("{\"timestamp\": 13324329").append(77001 + i * 7)
+                .append(".456, \"name\": \"transmission_gear_position\", ")
+                .append("\"value\": \"second\"}\n");
+        }
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        assertEquals(2000, TraceConverter.toBinary(new ByteArrayInputStream(
+                        trace.toString().getBytes()), binary));
+        assertTrue(binary.size() * 5 < trace.length());
+    }
+
+    public void testJsonToJsonKeepsLines() throws IOException {
+        String trace = "{\"timestamp\": 1332432977.831086, " +
+            "\"name\": \"vehicle_speed\", \"value\": 42}\n";
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        TraceConverter.toJson(new ByteArrayInputStream(trace.getBytes()),
+                json);
+        assertEquals(trace, json.toString());
+    }
+}
@@ -0,0 +1,215 @@
+package com.openxc.sources.trace;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import junit.framework.TestCase;
+
+import com.openxc.remote.RawMeasurement;
+
+public class TraceIndexTest extends TestCase {
+    final static long START = 1332432977000L;
+    final static int RECORDS = TraceIndex.CHECKPOINT_INTERVAL * 5 + 10;
+
+    File trace;
+
+    @Override
+    public void setUp() throws IOException {
+        trace = File.createTempFile("trace", ".json");
+    }
+
+    @Override
+    public void tearDown() {
+        TraceIndex.getSidecar(trace).delete();
+        trace.delete();
+    }
+
+    private void writeJsonTrace(long[] timestamps) throws IOException {
+        Writer writer = new FileWriter(trace);
+        for(int i = 0; i < timestamps.length; i++) {
+            // \r\n on some lines to make sure offsets are in bytes
+            writer.write(new RawMeasurement("index_" + (i % 3), i, null,
+                        timestamps[i]).serialize() +
+                    (i % 2 == 0 ? "\n" : "\r\n"));
+        }
+        writer.close();
+    }
+
+    private void writeBinaryTrace(long[] timestamps) throws IOException {
+        BinaryTraceWriter writer = new BinaryTraceWriter(
+                new FileOutputStream(trace));
+        for(int i = 0; i < timestamps.length; i++) {
+            writer.write(new RawMeasurement("index_" + (i % 3),
+                        "value_" + (i % 7), null, timestamps[i]));
+        }
+        writer.close();
+    }
+
+    private static long[] sequentialTimestamps() {
+        long[] timestamps = new long[RECORDS];
+        for(int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = START + i * 10;
+        }
+        return timestamps;
+    }
+
+    private void assertSeeks(TraceIndex index, long[] timestamps, long time)
+            throws IOException {
+        TraceReader reader = new WindowedTraceReader(
+                index.openReader(trace, time), time, Long.MAX_VALUE);
+        // The first record at or after the time
+        int expected = -1;
+        for(int i = 0; i < timestamps.length; i++) {
+            if(timestamps[i] >= time) {
+                expected = i;
+                break;
+            }
+        }
+
+        RawMeasurement measurement = reader.read();
+        if(expected == -1) {
+            assertNull(measurement);
+        } else {
+            assertEquals(timestamps[expected], measurement.getTimestamp());
+            assertEquals("index_" + (expected % 3), measurement.getName());
+        }
+        reader.close();
+    }
+
+    public void testJsonSeek() throws IOException {
+        long[] timestamps = sequentialTimestamps();
+        writeJsonTrace(timestamps);
+        TraceIndex index = TraceIndex.build(trace);
+        assertEquals(RECORDS, index.getRecordCount());
+        assertEquals(6, index.getCheckpointCount());
+        assertEquals(START, index.getStartTime());
+        assertEquals(timestamps[RECORDS - 1], index.getEndTime());
+        assertFalse(index.isBinary());
+
+        assertSeeks(index, timestamps, 0);
+        assertSeeks(index, timestamps, START);
+        assertSeeks(index, timestamps, START + 15);
+        assertSeeks(index, timestamps, timestamps[2048]);
+        assertSeeks(index, timestamps, timestamps[RECORDS - 1]);
+        assertSeeks(index, timestamps, Long.MAX_VALUE);
+    }
+
+    public void testSeekSkipsAtMostOneInterval() throws IOException {
+        long[] timestamps = sequentialTimestamps();
+        writeJsonTrace(timestamps);
+        TraceIndex index = TraceIndex.build(trace);
+        TraceReader reader = index.openReader(trace, timestamps[3000]);
+        int skipped = 0;
+        while(reader.read().getTimestamp() < timestamps[3000]) {
+            skipped++;
+        }
+        assertTrue(skipped < TraceIndex.CHECKPOINT_INTERVAL);
+        reader.close();
+    }
+
+    public void testBinarySeek() throws IOException {
+        long[] timestamps = sequentialTimestamps();
+        writeBinaryTrace(timestamps);
+        TraceIndex index = TraceIndex.build(trace);
+        assertTrue(index.isBinary());
+        assertEquals(RECORDS, index.getRecordCount());
+
+        assertSeeks(index, timestamps, START);
+        assertSeeks(index, timestamps, timestamps[1500] - 1);
+        assertSeeks(index, timestamps, timestamps[RECORDS - 1]);
+
+        TraceReader reader = index.openReader(trace, timestamps[4500]);
+        RawMeasurement measurement;
+        while((measurement = reader.read()).getTimestamp() <
+                timestamps[4500]) { }
+        assertEquals("value_" + (4500 % 7), measurement.getValue());
+        reader.close();
+    }
+
+    public void testOutOfOrderTimestamps() throws IOException {
+        long[] timestamps = sequentialTimestamps();
+        // A record far in the future early on, and one from the past later
+        timestamps[10] = START + 100000;
+        timestamps[4000] = START;
+        writeJsonTrace(timestamps);
+        TraceIndex index = TraceIndex.build(trace);
+
+        // Nothing at or after the time can be skipped
+        TraceReader reader = new WindowedTraceReader(
+                index.openReader(trace, START + 50000), START + 50000,
+                Long.MAX_VALUE);
+        assertEquals(START + 100000, reader.read().getTimestamp());
+        reader.close();
+    }
+
+    public void testSidecar() throws IOException {
+        long[] timestamps = sequentialTimestamps();
+        writeJsonTrace(timestamps);
+        File sidecar = TraceIndex.getSidecar(trace);
+        assertFalse(sidecar.exists());
+
+        TraceIndex index = TraceIndex.open(trace);
+        assertTrue(sidecar.exists());
+
+        TraceIndex loaded = TraceIndex.read(sidecar);
+        assertTrue(loaded.isCurrent(trace));
+        assertEquals(index.getRecordCount(), loaded.getRecordCount());
+        assertEquals(index.getCheckpointCount(), loaded.getCheckpointCount());
+        for(int i = 0; i < index.getCheckpointCount(); i++) {
+            assertEquals(index.getOffset(i), loaded.getOffset(i));
+        }
+        assertSeeks(loaded, timestamps, timestamps[4000]);
+    }
+
+    public void testBinarySidecar() throws IOException {
+        long[] timestamps = sequentialTimestamps();
+        writeBinaryTrace(timestamps);
+        TraceIndex.open(trace);
+        TraceIndex loaded = TraceIndex.open(trace);
+        assertTrue(loaded.isBinary());
+        assertSeeks(loaded, timestamps, timestamps[5000]);
+    }
+
+    public void testStaleSidecarRebuilt() throws IOException {
+        writeJsonTrace(sequentialTimestamps());
+        TraceIndex.open(trace);
+
+        long[] timestamps = new long[100];
+        for(int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = START + i;
+        }
+        writeJsonTrace(timestamps);
+        TraceIndex index = TraceIndex.open(trace);
+        assertEquals(100, index.getRecordCount());
+        assertTrue(TraceIndex.read(TraceIndex.getSidecar(trace)).isCurrent(
+                    trace));
+    }
+
+    public void testEmptyTrace() throws IOException {
+        writeJsonTrace(new long[0]);
+        TraceIndex index = TraceIndex.build(trace);
+        assertEquals(0, index.getRecordCount());
+        assertNull(index.openReader(trace, START).read());
+    }
+
+    public void testWindow() throws IOException {
+        long[] timestamps = sequentialTimestamps();
+        writeJsonTrace(timestamps);
+        TraceIndex index = TraceIndex.build(trace);
+        TraceReader reader = new WindowedTraceReader(
+                index.openReader(trace, START + 1000), START + 1000,
+                START + 1100);
+        int count = 0;
+        RawMeasurement measurement;
+        while((measurement = reader.read()) != null) {
+            assertTrue(measurement.getTimestamp() >= START + 1000);
+            assertTrue(measurement.getTimestamp() <= START + 1100);
+            count++;
+        }
+        assertEquals(11, count);
+        reader.close();
+    }
+}
@@ -0,0 +1,192 @@
+package com.openxc.sources.trace;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.openxc.remote.RawMeasurement;
+import com.openxc.sources.SourceCallback;
+
+public class TraceProcessorTest extends TestCase {
+    final static long START = 1332432977000L;
+    final static int RECORDS = 500;
+
+    File directory;
+    RecordingCallback callback;
+
+    class RecordingCallback implements SourceCallback,
+            TraceProcessor.TraceListener {
+        List<RawMeasurement> received = new ArrayList<RawMeasurement>();
+        List<String> events = new ArrayList<String>();
+
+        public void receive(RawMeasurement measurement) {
+            received.add(measurement);
+        }
+
+        public void traceStarted(File trace) {
+            events.add("started " + trace.getName() + " " + received.size());
+        }
+
+        public void traceFinished(File trace) {
+            events.add("finished " + trace.getName() + " " + received.size());
+        }
+    }
+
+    @Override
+    public void setUp() throws IOException {
+        directory = File.createTempFile("traces", "");
+        directory.delete();
+        directory.mkdir();
+        callback = new RecordingCallback();
+    }
+
+    @Override
+    public void tearDown() {
+        for(File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private static RawMeasurement record(int trace, int i) {
+        return new RawMeasurement("trace_" + trace, i, null,
+                START + trace * RECORDS + i);
+    }
+
+    private File writeJsonTrace(String name, int trace) throws IOException {
+        File file = new File(directory, name);
+        Writer writer = new FileWriter(file);
+        for(int i = 0; i < RECORDS; i++) {
+            writer.write(record(trace, i).serialize() +
+                    (i % 2 == 0 ? "\n" : "\r\n"));
+            if(i % 100 == 0) {
+                writer.write("\nnot a measurement\n");
+            }
+        }
+        writer.close();
+        return file;
+    }
+
+    private File writeBinaryTrace(String name, int trace) throws IOException {
+        return writeBinaryTrace(name, trace, RECORDS);
+    }
+
+    private File writeBinaryTrace(String name, int trace, int records)
+            throws IOException {
+        File file = new File(directory, name);
+        BinaryTraceWriter writer = new BinaryTraceWriter(
+                new FileOutputStream(file));
+        for(int i = 0; i < records; i++) {
+            writer.write(record(trace, i));
+        }
+        writer.close();
+        return file;
+    }
+
+    private void assertReceivedInOrder(int firstTrace, int traceCount) {
+        assertEquals(RECORDS * traceCount, callback.received.size());
+        for(int trace = 0; trace < traceCount; trace++) {
+            for(int i = 0; i < RECORDS; i++) {
+                RawMeasurement measurement = callback.received.get(
+                        trace * RECORDS + i);
+                RawMeasurement expected = record(firstTrace + trace, i);
+                assertEquals(expected.getName(), measurement.getName());
+                assertEquals(expected.getValue(), measurement.getValue());
+                assertEquals(expected.getTimestamp(),
+                        measurement.getTimestamp());
+            }
+        }
+    }
+
+    public void testInvalidThreadCount() {
+        try {
+            new TraceProcessor(0);
+            fail("Expected an IllegalArgumentException");
+        } catch(IllegalArgumentException e) {
+        }
+    }
+
+    public void testSingleTraceInSmallChunks() throws IOException {
+        File trace = writeJsonTrace("trace.json", 0);
+        TraceProcessor.Summary summary = new TraceProcessor(4, 1000).process(
+                trace, callback);
+        assertReceivedInOrder(0, 1);
+        assertEquals(1, summary.getTraceCount());
+        assertEquals(RECORDS, summary.getRecordCount());
+        assertEquals(trace.length(), summary.getByteCount());
+        assertTrue(summary.getRecordsPerSecond() > 0);
+    }
+
+    public void testChunksOnLineBoundaries() throws IOException {
+        File trace = writeJsonTrace("trace.json", 0);
+        // Every chunk size from less than a line to a few lines
+        for(int chunkSize = 1; chunkSize < 300; chunkSize += 37) {
+            callback = new RecordingCallback();
+            new TraceProcessor(3, chunkSize).process(trace, callback);
+            assertReceivedInOrder(0, 1);
+        }
+    }
+
+    public void testDirectoryInOrder() throws IOException {
+        File binary = writeBinaryTrace("b.oxt", 1);
+        writeJsonTrace("a.json", 0);
+        writeJsonTrace("c.json", 2);
+        TraceIndex.build(binary).write(TraceIndex.getSidecar(binary));
+
+        TraceProcessor.Summary summary = new TraceProcessor(2, 4096).process(
+                directory, callback);
+        assertReceivedInOrder(0, 3);
+        assertEquals(3, summary.getTraceCount());
+
+        assertEquals(6, callback.events.size());
+        assertEquals("started a.json 0", callback.events.get(0));
+        assertEquals("finished a.json " + RECORDS, callback.events.get(1));
+        assertEquals("started b.oxt " + RECORDS, callback.events.get(2));
+        assertEquals("finished b.oxt " + RECORDS * 2, callback.events.get(3));
+        assertEquals("started c.json " + RECORDS * 2, callback.events.get(4));
+        assertEquals("finished c.json " + RECORDS * 3,
+                callback.events.get(5));
+    }
+
+    public void testBinaryTraceInChunks() throws IOException {
+        int records = TraceIndex.CHECKPOINT_INTERVAL * 5 - 100;
+        File trace = writeBinaryTrace("trace.oxt", 0, records);
+        // Two checkpoints per chunk, and a short last chunk
+        TraceProcessor.Summary summary = new TraceProcessor(2, 4096,
+                TraceIndex.CHECKPOINT_INTERVAL * 2).process(trace, callback);
+
+        assertEquals(records, summary.getRecordCount());
+        assertEquals(records, callback.received.size());
+        for(int i = 0; i < records; i++) {
+            assertEquals(record(0, i).getTimestamp(),
+                    callback.received.get(i).getTimestamp());
+        }
+        assertEquals(2, callback.events.size());
+        assertEquals("finished trace.oxt " + records, callback.events.get(1));
+        assertTrue(TraceIndex.getSidecar(trace).exists());
+    }
+
+    public void testEmptyTrace() throws IOException {
+        File trace = new File(directory, "empty.json");
+        trace.createNewFile();
+        TraceProcessor.Summary summary = new TraceProcessor(2).process(trace,
+                callback);
+        assertEquals(0, summary.getRecordCount());
+        assertEquals(2, callback.events.size());
+    }
+
+    public void testMissingTrace() {
+        try {
+            new TraceProcessor(2).process(new File(directory, "missing"),
+                    callback);
+            fail("Expected an IOException");
+        } catch(IOException e) {
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.openxc.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+import junit.framework.TestCase;
+
+public class JavaFileOpenerTest extends TestCase {
+    File file;
+    JavaFileOpener opener = new JavaFileOpener();
+
+    @Override
+    public void setUp() throws IOException {
+        file = File.createTempFile("opener", ".tmp");
+    }
+
+    @Override
+    public void tearDown() {
+        file.delete();
+    }
+
+    public void testStreamReplacesFile() throws IOException {
+        for(int i = 0; i < 2; i++) {
+            OutputStream stream = opener.openStreamForWriting(file.getPath());
+            stream.write(new byte[] { 1, 2, 3 });
+            stream.close();
+        }
+        assertEquals(3, file.length());
+    }
+
+    public void testWriterAppends() throws IOException {
+        for(int i = 0; i < 2; i++) {
+            Writer writer = opener.openForWriting(file.getPath());
+            writer.write("line\n");
+            writer.close();
+        }
+        assertEquals(10, file.length());
+    }
+}
@@ -0,0 +1,74 @@
+package com.openxc.util;
+
+import junit.framework.TestCase;
+
+public class LatencyHistogramTest extends TestCase {
+    LatencyHistogram histogram;
+
+    @Override
+    public void setUp() {
+        histogram = new LatencyHistogram();
+    }
+
+    public void testEmpty() {
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMean());
+    }
+
+    public void testSmallValuesExact() {
+        for(int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+        assertEquals(10, histogram.getCount());
+        assertEquals(5, histogram.getPercentile(50));
+        assertEquals(10, histogram.getPercentile(100));
+        assertEquals(10, histogram.getMaximum());
+    }
+
+    public void testRelativePrecision() {
+        long[] values = {1000, 123456, 98765432, 5000000000L};
+        for(long value : values) {
+            histogram.reset();
+            histogram.record(value);
+            long reported = histogram.getPercentile(50);
+            assertTrue(reported >= value);
+            assertTrue(reported - value <= value /
+                    LatencyHistogram.SUB_BUCKET_COUNT);
+        }
+    }
+
+    public void testPercentiles() {
+        for(int i = 0; i < 99; i++) {
+            histogram.record(1000);
+        }
+        histogram.record(1000000);
+        assertTrue(histogram.getPercentile(50) < 1100);
+        assertTrue(histogram.getPercentile(99) < 1100);
+        assertEquals(1000000, histogram.getPercentile(100));
+    }
+
+    public void testRecordCount() {
+        histogram.record(100, 4);
+        assertEquals(4, histogram.getCount());
+        assertEquals(100, histogram.getMean());
+    }
+
+    public void testNegativeCountedAsZero() {
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMaximum());
+    }
+
+    public void testLargestValue() {
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(50));
+    }
+
+    public void testReset() {
+        histogram.record(100);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaximum());
+    }
+}
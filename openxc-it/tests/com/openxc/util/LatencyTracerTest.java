@@ -0,0 +1,74 @@
+package com.openxc.util;
+
+import junit.framework.TestCase;
+
+public class LatencyTracerTest extends TestCase {
+    @Override
+    public void setUp() {
+        LatencyTracer.reset();
+    }
+
+    @Override
+    public void tearDown() {
+        LatencyTracer.setSampleInterval(0);
+        LatencyTracer.reset();
+    }
+
+    public void testOffByDefault() {
+        for(int i = 0; i < 100; i++) {
+            assertFalse(LatencyTracer.shouldSample());
+        }
+    }
+
+    public void testSampleInterval() {
+        LatencyTracer.setSampleInterval(10);
+        int sampled = 0;
+        for(int i = 0; i < 100; i++) {
+            if(LatencyTracer.shouldSample()) {
+                sampled++;
+            }
+        }
+        assertEquals(10, sampled);
+    }
+
+    public void testNegativeInterval() {
+        try {
+            LatencyTracer.setSampleInterval(-1);
+            fail("Expected an IllegalArgumentException");
+        } catch(IllegalArgumentException e) {
+        }
+    }
+
+    public void testRecordHops() {
+        long[] stamps = new long[LatencyTracer.HOP_COUNT];
+        stamps[LatencyTracer.READ] = 1000;
+        stamps[LatencyTracer.DECODED] = 1010;
+        stamps[LatencyTracer.PIPELINE] = 1030;
+        LatencyTracer.record(stamps);
+
+        assertEquals(0, LatencyTracer.getHopLatency(
+                    LatencyTracer.READ).getCount());
+        assertEquals(10, LatencyTracer.getHopLatency(
+                    LatencyTracer.DECODED).getMaximum());
+        assertEquals(20, LatencyTracer.getHopLatency(
+                    LatencyTracer.PIPELINE).getMaximum());
+        assertEquals(0, LatencyTracer.getHopLatency(
+                    LatencyTracer.SENT).getCount());
+        assertEquals(30, LatencyTracer.getTotalLatency().getMaximum());
+    }
+
+    public void testMissingHopsSkipped() {
+        long[] stamps = new long[LatencyTracer.HOP_COUNT];
+        stamps[LatencyTracer.READ] = 1000;
+        stamps[LatencyTracer.SENT] = 1005;
+        stamps[LatencyTracer.DELIVERED] = 1015;
+        LatencyTracer.record(stamps);
+
+        assertEquals(5, LatencyTracer.getHopLatency(
+                    LatencyTracer.SENT).getMaximum());
+        assertEquals(10, LatencyTracer.getHopLatency(
+                    LatencyTracer.DELIVERED).getMaximum());
+        assertEquals(0, LatencyTracer.getHopLatency(
+                    LatencyTracer.RECEIVED).getCount());
+    }
+}
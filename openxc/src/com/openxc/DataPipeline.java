@@ -1,16 +1,24 @@
 package com.openxc;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.base.Objects;
+import com.openxc.remote.PipelineStatistics;
 import com.openxc.remote.RawMeasurement;
+import com.openxc.sinks.AbstractQueuedCallbackSink;
+import com.openxc.sinks.BaseVehicleDataSink;
 import com.openxc.sinks.DataSinkException;
+import com.openxc.sinks.FilteredVehicleDataSink;
+import com.openxc.sinks.QueuedVehicleDataSink;
 import com.openxc.sinks.VehicleDataSink;
+import com.openxc.util.LatencyHistogram;
+import com.openxc.util.LatencyTracer;
+import com.openxc.sources.BaseVehicleDataSource;
 import com.openxc.sources.SourceCallback;
 import com.openxc.sources.VehicleDataSource;
 
@@ -22,16 +30,64 @@ import com.openxc.sources.VehicleDataSource;
  * {@link #receive(RawMeasurement)} method on the this class when new
  * values arrive. The DataPipeline then passes this value on to all currently
  * registered data sinks.
+ *
+ * The pipeline keeps the last known value of every measurement in a single
+ * {@link MeasurementStore}, which it shares with every sink extending
+ * {@link BaseVehicleDataSink} so they don't each have to keep a copy.
+ *
+ * Sinks that implement {@link FilteredVehicleDataSink} are only sent the
+ * measurements they're interested in.
+ *
+ * Sinks are called on the source's thread, so a slow sink delays the source
+ * and every other sink. A sink added with
+ * {@link #addSink(VehicleDataSink, DeliveryPolicy)} instead gets its own queue
+ * and thread - the source only has to add the measurement to the queue.
+ *
+ * The pipeline records how long each sink takes to handle a measurement, and
+ * {@link #getStatistics()} reports that along with the rates of each source and
+ * how far behind the queued sinks are. If measurements are being traced by
+ * {@link LatencyTracer}, the latency of each hop they've been traced through
+ * in this process is included too.
  */
 public class DataPipeline implements SourceCallback {
-    private int mMessagesReceived = 0;
-    private Map<String, RawMeasurement> mMeasurements =
-            new ConcurrentHashMap<String, RawMeasurement>();
+    private final long mStartTime = System.nanoTime();
+    private final AtomicLong mMessagesReceived = new AtomicLong();
+    private MeasurementStore mMeasurements = new MeasurementStore();
+    // The sinks as the pipeline calls them - wrapped in a TimedSink,
+    // QueuedVehicleDataSink or RingSink unless they have their own queue
     private CopyOnWriteArrayList<VehicleDataSink> mSinks =
             new CopyOnWriteArrayList<VehicleDataSink>();
+    // The same sinks indexed by the measurements they want, so receive()
+    // doesn't need an iterator and skips sinks that aren't interested
+    private volatile SinkDispatchTable mDispatchTable =
+            SinkDispatchTable.EMPTY;
+    private final DispatchRing mRing;
     private CopyOnWriteArrayList<VehicleDataSource> mSources =
             new CopyOnWriteArrayList<VehicleDataSource>();
 
+    public DataPipeline() {
+        mRing = null;
+    }
+
+    /**
+     * Create a pipeline that dispatches measurements to sinks through a
+     * {@link DispatchRing} instead of calling them from the source's thread.
+     *
+     * Every sink reads from the ring in its own thread. Sources only publish
+     * each measurement to the ring once, without allocating or locking, no
+     * matter how many sinks there are. Sinks added with
+     * {@link #addSink(VehicleDataSink)} never miss a measurement - if one
+     * falls a whole ring behind, the sources wait for it. Sinks added with
+     * {@link #addSink(VehicleDataSink, DeliveryPolicy)} and any other policy
+     * skip ahead instead.
+     *
+     * @param ringCapacity the number of measurements in the ring, which must
+     *      be a power of 2.
+     */
+    public DataPipeline(int ringCapacity) {
+        mRing = new DispatchRing(ringCapacity);
+    }
+
     /**
      * Accept new values from data sources and send it out to all registered
      * sinks.
@@ -45,32 +101,91 @@ public class DataPipeline implements SourceCallback {
         if(measurement == null) {
             return;
         }
-        mMeasurements.put(measurement.getName(), measurement);
-        List<VehicleDataSink> deadSinks = new ArrayList<VehicleDataSink>();
-        for(Iterator<VehicleDataSink> i = mSinks.iterator(); i.hasNext();) {
-            VehicleDataSink sink = i.next();
-            try {
-                sink.receive(measurement);
-            } catch(DataSinkException e) {
-                // TODO I'd like to use the Android log here, but I don't want
-                // that to be the only com.android import.
-                System.out.println(this.getClass().getName() + ": The sink " +
-                        sink + " exploded when we sent a new message " +
-                        "-- removing it from the pipeline: " + e);
-                deadSinks.add(sink);
-            }
+        if(measurement.isTraced()) {
+            // The same pipeline runs in the service and in applications
+            measurement.stamp(measurement.getTraceStamp(
+                        LatencyTracer.RECEIVED) == 0 ?
+                    LatencyTracer.PIPELINE : LatencyTracer.CLIENT_PIPELINE);
         }
-        mMessagesReceived++;
-        for(VehicleDataSink sink : deadSinks) {
-            removeSink(sink);
+        mMeasurements.put(measurement);
+        if(mRing != null) {
+            mRing.publish(measurement);
+        } else {
+            List<VehicleDataSink> deadSinks = null;
+            for(VehicleDataSink sink : mDispatchTable.getSinks(measurement)) {
+                try {
+                    sink.receive(measurement);
+                } catch(DataSinkException e) {
+                    logDeadSink(sink, e);
+                    if(deadSinks == null) {
+                        deadSinks = new ArrayList<VehicleDataSink>();
+                    }
+                    deadSinks.add(sink);
+                }
+            }
+
+            if(deadSinks != null) {
+                for(VehicleDataSink sink : deadSinks) {
+                    removeSink(sink);
+                }
+            }
         }
+        mMessagesReceived.incrementAndGet();
     }
 
     /**
      * Add a new sink to the pipeline.
+     *
+     * If the sink extends {@link BaseVehicleDataSink}, it's given this
+     * pipeline's {@link MeasurementStore} to look up last known values.
      */
     public VehicleDataSink addSink(VehicleDataSink sink) {
-        mSinks.add(sink);
+        if(mRing != null) {
+            return addSink(sink, DeliveryPolicy.LOSSLESS);
+        }
+
+        if(sink instanceof AbstractQueuedCallbackSink) {
+            // Already records its own latency
+            addPipelineSink(sink);
+        } else {
+            addPipelineSink(new TimedSink(sink));
+        }
+        return sink;
+    }
+
+    /**
+     * Add a new sink to the pipeline that receives measurements in its own
+     * thread.
+     *
+     * Measurements for the sink wait in a bounded queue, and the policy
+     * decides what happens when the sink falls behind and the queue fills up.
+     * Unless the policy is {@link DeliveryPolicy#LOSSLESS}, the sink can't
+     * delay the sources or the other sinks.
+     *
+     * Sinks that already have their own queue (i.e. extend
+     * {@link AbstractQueuedCallbackSink}) are added as they are, with the
+     * new policy. If the pipeline uses a {@link DispatchRing}, the policy is
+     * the sink's lag policy instead.
+     *
+     * @param sink the sink to add.
+     * @param policy what to do with new measurements when the sink's queue is
+     *      full.
+     * @return the sink - remove it with {@link #removeSink(VehicleDataSink)}
+     *      as usual.
+     */
+    public VehicleDataSink addSink(VehicleDataSink sink,
+            DeliveryPolicy policy) {
+        if(mRing != null) {
+            addPipelineSink(new RingSink(sink, mRing.addCursor(policy)));
+            return sink;
+        }
+
+        if(sink instanceof AbstractQueuedCallbackSink) {
+            ((AbstractQueuedCallbackSink) sink).setDeliveryPolicy(policy);
+            addPipelineSink(sink);
+        } else {
+            addPipelineSink(new QueuedVehicleDataSink(sink, policy));
+        }
         return sink;
     }
 
@@ -85,7 +200,18 @@ public class DataPipeline implements SourceCallback {
      */
     public void removeSink(VehicleDataSink sink) {
         if(sink != null) {
-            mSinks.remove(sink);
+            for(VehicleDataSink candidate : mSinks) {
+                if(unwrap(candidate) == sink) {
+                    // Stops the wrapped sink as well
+                    sink = candidate;
+                    break;
+                }
+            }
+
+            synchronized(mSinks) {
+                mSinks.remove(sink);
+                mDispatchTable = new SinkDispatchTable(mSinks);
+            }
             sink.stop();
         }
     }
@@ -120,8 +246,15 @@ public class DataPipeline implements SourceCallback {
         return mSources;
     }
 
+    /**
+     * @return a snapshot of the sinks in the pipeline, as they were added.
+     */
     public List<VehicleDataSink> getSinks() {
-        return mSinks;
+        List<VehicleDataSink> sinks = new ArrayList<VehicleDataSink>();
+        for(VehicleDataSink sink : mSinks) {
+            sinks.add(unwrap(sink));
+        }
+        return sinks;
     }
 
     /**
@@ -149,7 +282,11 @@ public class DataPipeline implements SourceCallback {
         for(Iterator<VehicleDataSink> i = mSinks.iterator(); i.hasNext();) {
             (i.next()).stop();
         }
-        mSinks.clear();
+
+        synchronized(mSinks) {
+            mSinks.clear();
+            mDispatchTable = SinkDispatchTable.EMPTY;
+        }
     }
 
     /**
@@ -162,19 +299,215 @@ public class DataPipeline implements SourceCallback {
         return mMeasurements.get(measurementId);
     }
 
+    /**
+     * @return the store of last known values shared with this pipeline's
+     *      sinks.
+     */
+    public MeasurementStore getMeasurementStore() {
+        return mMeasurements;
+    }
+
     /**
      * @return number of messages received since instantiation.
      */
     public int getMessageCount() {
-        return mMessagesReceived;
+        return (int) mMessagesReceived.get();
+    }
+
+    /**
+     * Take a snapshot of the message rates of the pipeline's sources, the
+     * latency, queue depth and losses of its sinks and the latency of each
+     * hop of the measurements traced in this process.
+     */
+    public PipelineStatistics getStatistics() {
+        long now = System.nanoTime();
+        PipelineStatistics statistics = new PipelineStatistics(
+                now - mStartTime, mMessagesReceived.get());
+        for(VehicleDataSource source : mSources) {
+            if(source instanceof BaseVehicleDataSource) {
+                BaseVehicleDataSource base = (BaseVehicleDataSource) source;
+                statistics.addSource(new PipelineStatistics.Source(
+                            source.toString(), now - base.getStartTime(),
+                            base.getMessageCount(),
+                            base.getBytesReceived()));
+            } else {
+                statistics.addSource(new PipelineStatistics.Source(
+                            source.toString(), 0, 0, 0));
+            }
+        }
+
+        for(VehicleDataSink sink : mSinks) {
+            String name = unwrap(sink).toString();
+            if(sink instanceof AbstractQueuedCallbackSink) {
+                AbstractQueuedCallbackSink queued =
+                        (AbstractQueuedCallbackSink) sink;
+                statistics.addSink(new PipelineStatistics.Sink(name,
+                            queued.getLatency(), queued.getQueueSize(),
+                            queued.getOverwrittenCount(),
+                            queued.getDroppedCount()));
+            } else if(sink instanceof RingSink) {
+                RingSink ringSink = (RingSink) sink;
+                statistics.addSink(new PipelineStatistics.Sink(name,
+                            ringSink.mLatency, ringSink.mCursor.getLag(), 0,
+                            ringSink.mCursor.getLostCount()));
+            } else if(sink instanceof TimedSink) {
+                statistics.addSink(new PipelineStatistics.Sink(name,
+                            ((TimedSink) sink).mLatency, 0, 0, 0));
+            }
+        }
+
+        for(int hop = 0; hop < LatencyTracer.HOP_COUNT; hop++) {
+            LatencyHistogram latency = LatencyTracer.getHopLatency(hop);
+            if(latency.getCount() > 0) {
+                statistics.addHop(new PipelineStatistics.Hop(
+                            LatencyTracer.getHopName(hop), latency));
+            }
+        }
+        if(LatencyTracer.getTotalLatency().getCount() > 0) {
+            statistics.addHop(new PipelineStatistics.Hop("total",
+                        LatencyTracer.getTotalLatency()));
+        }
+        return statistics;
+    }
+
+    /**
+     * @return the sink the pipeline's wrapper was created for, or the sink
+     *      itself if it isn't wrapped.
+     */
+    static VehicleDataSink unwrap(VehicleDataSink sink) {
+        if(sink instanceof QueuedVehicleDataSink) {
+            return ((QueuedVehicleDataSink) sink).getSink();
+        } else if(sink instanceof RingSink) {
+            return ((RingSink) sink).mSink;
+        } else if(sink instanceof TimedSink) {
+            return ((TimedSink) sink).mSink;
+        }
+        return sink;
+    }
+
+    private void addPipelineSink(VehicleDataSink sink) {
+        if(sink instanceof BaseVehicleDataSink) {
+            ((BaseVehicleDataSink) sink).setMeasurementStore(mMeasurements);
+        }
+
+        VehicleDataSink wrapped = unwrap(sink);
+        if(wrapped != sink && wrapped instanceof BaseVehicleDataSink) {
+            ((BaseVehicleDataSink) wrapped).setMeasurementStore(
+                    mMeasurements);
+        }
+
+        synchronized(mSinks) {
+            mSinks.add(sink);
+            mDispatchTable = new SinkDispatchTable(mSinks);
+        }
+    }
+
+    private void logDeadSink(VehicleDataSink sink, DataSinkException e) {
+        // TODO I'd like to use the Android log here, but I don't want
+        // that to be the only com.android import.
+        System.out.println(this.getClass().getName() + ": The sink " +
+                sink + " exploded when we sent a new message " +
+                "-- removing it from the pipeline: " + e);
     }
 
     @Override
     public String toString() {
         return Objects.toStringHelper(this)
             .add("sources", mSources)
-            .add("sinks", mSinks)
+            .add("sinks", getSinks())
             .add("numMeasurementTypes", mMeasurements.size())
+            .add("ring", mRing)
             .toString();
     }
+
+    /**
+     * A sink called directly from the source's thread, timing each call.
+     */
+    private static class TimedSink implements VehicleDataSink {
+        private final VehicleDataSink mSink;
+        private final LatencyHistogram mLatency = new LatencyHistogram();
+
+        public TimedSink(VehicleDataSink sink) {
+            mSink = sink;
+        }
+
+        public boolean receive(RawMeasurement measurement)
+                throws DataSinkException {
+            long start = System.nanoTime();
+            try {
+                return mSink.receive(measurement);
+            } finally {
+                mLatency.record(System.nanoTime() - start);
+            }
+        }
+
+        public void stop() {
+            mSink.stop();
+        }
+
+        @Override
+        public String toString() {
+            return mSink.toString();
+        }
+    }
+
+    /**
+     * A sink reading from the pipeline's {@link DispatchRing} in its own
+     * thread.
+     */
+    private class RingSink implements VehicleDataSink, Runnable {
+        private final VehicleDataSink mSink;
+        private final DispatchRing.Cursor mCursor;
+        private final SinkDispatchTable mFilter;
+        private final LatencyHistogram mLatency = new LatencyHistogram();
+
+        public RingSink(VehicleDataSink sink, DispatchRing.Cursor cursor) {
+            mSink = sink;
+            mCursor = cursor;
+            mFilter = new SinkDispatchTable(
+                    Collections.singletonList(sink));
+            new Thread(this, "RingSink").start();
+        }
+
+        public boolean receive(RawMeasurement measurement)
+                throws DataSinkException {
+            return mSink.receive(measurement);
+        }
+
+        public void stop() {
+            mRing.removeCursor(mCursor);
+            mSink.stop();
+        }
+
+        public void run() {
+            RawMeasurement measurement;
+            try {
+                while((measurement = mCursor.take()) != null) {
+                    if(mFilter.getSinks(measurement).length == 0) {
+                        continue;
+                    }
+
+                    long start = System.nanoTime();
+                    try {
+                        mSink.receive(measurement);
+                    } catch(DataSinkException e) {
+                        logDeadSink(mSink, e);
+                        removeSink(this);
+                        return;
+                    }
+                    mLatency.record(System.nanoTime() - start);
+                }
+            } catch(InterruptedException e) {
+                mRing.removeCursor(mCursor);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                .add("sink", mSink)
+                .add("cursor", mCursor)
+                .toString();
+        }
+    }
 }
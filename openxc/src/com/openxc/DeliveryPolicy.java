@@ -0,0 +1,27 @@
+package com.openxc;
+
+/**
+ * What to do with new measurements when the receiver of a
+ * {@link MeasurementQueue} can't keep up.
+ */
+public enum DeliveryPolicy {
+    /**
+     * Only keep the latest value of each measurement - a new value replaces
+     * one that's still waiting, and the replaced value is counted as
+     * overwritten. This is right for dashboards, which only care about the
+     * current state.
+     */
+    COALESCE_LATEST,
+
+    /**
+     * Keep every value. When the queue is full, whoever is adding to it waits
+     * until there's room, slowing down the source of the data.
+     */
+    LOSSLESS,
+
+    /**
+     * Keep every value while there's room in the queue, and drop the oldest
+     * waiting value to make room when it's full. Dropped values are counted.
+     */
+    DROP_OLDEST
+}
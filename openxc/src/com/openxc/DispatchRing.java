@@ -0,0 +1,326 @@
+package com.openxc;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.base.Objects;
+import com.openxc.remote.RawMeasurement;
+
+/**
+ * A preallocated ring of measurements that any number of sources publish to
+ * and each sink reads from at its own pace through a {@link Cursor}.
+ *
+ * Every measurement is written to the ring once, no matter how many sinks
+ * there are, and publishing doesn't allocate anything or take a lock. Each
+ * slot holds the sequence number of the measurement in it, so a reader can
+ * tell whether the slot has been published yet or already overwritten.
+ *
+ * A cursor that falls a whole ring behind is handled according to its lag
+ * policy:
+ *
+ * - {@link DeliveryPolicy#LOSSLESS} - publishers wait for the cursor to make
+ *   room, so the sink sees everything but can slow down the sources.
+ * - {@link DeliveryPolicy#DROP_OLDEST} and
+ *   {@link DeliveryPolicy#COALESCE_LATEST} - the ring overwrites the oldest
+ *   measurements and the cursor skips ahead to the oldest one still in the
+ *   ring, counting what it missed.
+ */
+public class DispatchRing {
+    public final static int DEFAULT_CAPACITY = 1024;
+    // Marks a slot that's in the middle of being written
+    private final static long WRITING = Long.MIN_VALUE;
+    private final static long LOSSLESS_WAIT_NANOS = 50 * 1000;
+    // How many times a cursor checks for a new measurement before parking -
+    // waking a parked thread is far more expensive than a few yields when
+    // measurements arrive in bursts
+    private final static int YIELDS_BEFORE_PARKING = 100;
+
+    private final int mMask;
+    private final AtomicReferenceArray<RawMeasurement> mSlots;
+    private final AtomicLongArray mPublished;
+    private final AtomicLong mNextSequence = new AtomicLong();
+    private volatile Cursor[] mCursors = new Cursor[0];
+    // No lossless cursor is behind this sequence - saves reading every
+    // cursor's position on each publish
+    private volatile long mGatingSequence = 0;
+
+    public DispatchRing() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of slots in the ring, which must be a power
+     *      of 2.
+     */
+    public DispatchRing(int capacity) {
+        if(capacity < 2 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException(
+                    "Capacity must be a power of 2, not " + capacity);
+        }
+        mMask = capacity - 1;
+        mSlots = new AtomicReferenceArray<RawMeasurement>(capacity);
+        mPublished = new AtomicLongArray(capacity);
+        for(int i = 0; i < capacity; i++) {
+            // As if the lap before the first one had been published
+            mPublished.set(i, i - capacity);
+        }
+    }
+
+    /**
+     * Add a measurement to the ring and wake up any cursors waiting for it.
+     *
+     * This only blocks if a cursor with the {@link DeliveryPolicy#LOSSLESS}
+     * lag policy is a whole ring behind.
+     */
+    public void publish(RawMeasurement measurement) {
+        long sequence = mNextSequence.getAndIncrement();
+        long previousLap = sequence - mSlots.length();
+        Cursor[] cursors = mCursors;
+        if(previousLap >= mGatingSequence) {
+            long gatingSequence = waitForLosslessCursors(cursors, previousLap);
+            synchronized(this) {
+                // If a cursor was added while we waited, it may be behind
+                // what we found - leave the sequence it set
+                if(cursors == mCursors) {
+                    mGatingSequence = gatingSequence;
+                }
+            }
+        }
+
+        int index = (int) sequence & mMask;
+        long published;
+        while((published = mPublished.get(index)) == WRITING ||
+                published < previousLap) {
+            // Another source is still writing the previous lap of this slot
+            Thread.yield();
+        }
+
+        mPublished.set(index, WRITING);
+        mSlots.set(index, measurement);
+        mPublished.set(index, sequence);
+
+        for(Cursor cursor : cursors) {
+            cursor.wake();
+        }
+    }
+
+    /**
+     * Wait until every lossless cursor has read the given sequence.
+     *
+     * @return the position of the slowest lossless cursor.
+     */
+    private long waitForLosslessCursors(Cursor[] cursors, long sequence) {
+        long slowest = Long.MAX_VALUE;
+        for(Cursor cursor : cursors) {
+            if(cursor.mLossless) {
+                long position;
+                while((position = cursor.mSequence) <= sequence &&
+                        !cursor.mClosed) {
+                    LockSupport.parkNanos(this, LOSSLESS_WAIT_NANOS);
+                }
+                slowest = Math.min(slowest, position);
+            }
+        }
+        return slowest;
+    }
+
+    /**
+     * Start reading from the ring - the cursor gets every measurement
+     * published after this call.
+     *
+     * @param lagPolicy what happens if the cursor falls a whole ring behind.
+     */
+    public Cursor addCursor(DeliveryPolicy lagPolicy) {
+        synchronized(this) {
+            Cursor cursor = new Cursor(lagPolicy, mNextSequence.get());
+            Cursor[] cursors = new Cursor[mCursors.length + 1];
+            System.arraycopy(mCursors, 0, cursors, 0, mCursors.length);
+            cursors[mCursors.length] = cursor;
+            mCursors = cursors;
+            if(cursor.mLossless) {
+                // Publishers may have stopped checking for lossless cursors
+                // (e.g. there weren't any), so make them check this one
+                // before overwriting anything it hasn't read
+                mGatingSequence = Math.min(mGatingSequence,
+                        cursor.mSequence);
+            }
+            return cursor;
+        }
+    }
+
+    /**
+     * Close the cursor and stop tracking it. Publishers will no longer wait
+     * for it.
+     */
+    public void removeCursor(Cursor cursor) {
+        cursor.close();
+        synchronized(this) {
+            int count = 0;
+            Cursor[] cursors = new Cursor[mCursors.length];
+            for(Cursor candidate : mCursors) {
+                if(candidate != cursor) {
+                    cursors[count++] = candidate;
+                }
+            }
+
+            if(count < mCursors.length) {
+                Cursor[] trimmed = new Cursor[count];
+                System.arraycopy(cursors, 0, trimmed, 0, count);
+                mCursors = trimmed;
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return mSlots.length();
+    }
+
+    /**
+     * @return the sequence number the next measurement will get, i.e. the
+     *      number of measurements published so far.
+     */
+    public long getSequence() {
+        return mNextSequence.get();
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+            .add("capacity", getCapacity())
+            .add("sequence", getSequence())
+            .add("cursors", mCursors.length)
+            .toString();
+    }
+
+    /**
+     * A single reader's position in the ring. Only one thread may read from a
+     * cursor.
+     */
+    public class Cursor {
+        private final boolean mLossless;
+        private final DeliveryPolicy mLagPolicy;
+        // The sequence number of the next measurement to read
+        private volatile long mSequence;
+        private volatile long mLostCount = 0;
+        private volatile boolean mClosed = false;
+        private volatile Thread mConsumer;
+        private final AtomicBoolean mWaiting = new AtomicBoolean();
+
+        private Cursor(DeliveryPolicy lagPolicy, long sequence) {
+            if(lagPolicy == null) {
+                throw new IllegalArgumentException("Policy can't be null");
+            }
+            mLagPolicy = lagPolicy;
+            mLossless = lagPolicy == DeliveryPolicy.LOSSLESS;
+            mSequence = sequence;
+        }
+
+        /**
+         * Return the next measurement, waiting for one to be published if
+         * necessary.
+         *
+         * @return the measurement, or null if the cursor was closed.
+         */
+        public RawMeasurement take() throws InterruptedException {
+            mConsumer = Thread.currentThread();
+            long sequence = mSequence;
+            while(!mClosed) {
+                int index = (int) sequence & mMask;
+                long published = mPublished.get(index);
+                if(published == sequence) {
+                    RawMeasurement measurement = mSlots.get(index);
+                    // Make sure it wasn't overwritten while we were reading
+                    if(mPublished.get(index) == sequence) {
+                        mSequence = sequence + 1;
+                        return measurement;
+                    }
+                } else if(published == WRITING) {
+                    Thread.yield();
+                } else if(published > sequence) {
+                    // We fell a whole ring behind - skip to the oldest
+                    // measurement that's still there
+                    long oldest = Math.max(sequence + 1,
+                            mNextSequence.get() - mSlots.length());
+                    mLostCount += oldest - sequence;
+                    sequence = oldest;
+                    mSequence = sequence;
+                } else {
+                    await(index, sequence);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the number of measurements published but not yet read.
+         */
+        public long getLag() {
+            return Math.max(0, mNextSequence.get() - mSequence);
+        }
+
+        /**
+         * @return the number of measurements skipped because the cursor fell
+         *      a whole ring behind.
+         */
+        public long getLostCount() {
+            return mLostCount;
+        }
+
+        public DeliveryPolicy getLagPolicy() {
+            return mLagPolicy;
+        }
+
+        public boolean isClosed() {
+            return mClosed;
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                .add("policy", getLagPolicy())
+                .add("lag", getLag())
+                .add("lost", getLostCount())
+                .toString();
+        }
+
+        private void close() {
+            mClosed = true;
+            Thread consumer = mConsumer;
+            if(consumer != null) {
+                LockSupport.unpark(consumer);
+            }
+        }
+
+        private void wake() {
+            if(mWaiting.get() && mWaiting.compareAndSet(true, false)) {
+                LockSupport.unpark(mConsumer);
+            }
+        }
+
+        private void await(int index, long sequence)
+                throws InterruptedException {
+            for(int i = 0; i < YIELDS_BEFORE_PARKING; i++) {
+                if(mPublished.get(index) >= sequence || mClosed) {
+                    return;
+                }
+                Thread.yield();
+            }
+
+            mWaiting.set(true);
+            // Check again now that publishers can see we're waiting, or we
+            // could miss the only wakeup
+            long published = mPublished.get(index);
+            if(published < sequence && published != WRITING && !mClosed) {
+                LockSupport.park(this);
+            }
+            mWaiting.set(false);
+
+            if(Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package com.openxc;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Objects;
+import com.openxc.remote.MeasurementNames;
+import com.openxc.remote.RawMeasurement;
+
+/**
+ * A bounded queue of measurements between any number of producers and a
+ * single consumer, with a {@link DeliveryPolicy} deciding what happens when
+ * the consumer falls behind.
+ *
+ * The policy can be set for the queue as a whole and overridden for individual
+ * measurements, e.g. to coalesce vehicle speed updates but keep every button
+ * event.
+ *
+ * Coalesced measurements (the default) never take a lock: each measurement
+ * has an atomic slot holding its latest value, and the IDs of the slots with
+ * a value waiting are kept in a lock-free ring in the order they were first
+ * filled. Measurements with the other policies wait in a bounded FIFO that's
+ * guarded by a lock, since they need to block or evict when it's full. Order
+ * is preserved between measurements with the same policy.
+ *
+ * The consumer only needs to be woken up when it's actually waiting - it
+ * flags that it's about to park, and producers only unpark it if they see the
+ * flag. Nothing here allocates after construction.
+ */
+public class MeasurementQueue {
+    public final static int DEFAULT_CAPACITY = 256;
+
+    // Coalesced measurements
+    private final AtomicReferenceArray<RawMeasurement> mLatest =
+            new AtomicReferenceArray<RawMeasurement>(
+                    MeasurementNames.MAXIMUM_NAMES);
+    private final PendingIds mPendingIds = new PendingIds(
+            MeasurementNames.MAXIMUM_NAMES);
+
+    // Everything else
+    private final Lock mLock = new ReentrantLock();
+    private final Condition mNotFull = mLock.newCondition();
+    private final RawMeasurement[] mItems;
+    private final DeliveryPolicy[] mItemPolicies;
+    // Sequence numbers of the oldest item and the next item to be added
+    private long mHead = 0;
+    private long mTail = 0;
+
+    private final AtomicInteger mSize = new AtomicInteger();
+    private final AtomicBoolean mConsumerWaiting = new AtomicBoolean();
+    private volatile Thread mConsumer;
+    private volatile boolean mClosed = false;
+    private final AtomicLong mOverwrittenCount = new AtomicLong();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+
+    private volatile DeliveryPolicy mDefaultPolicy;
+    private final AtomicReferenceArray<DeliveryPolicy> mPolicies =
+            new AtomicReferenceArray<DeliveryPolicy>(
+                    MeasurementNames.MAXIMUM_NAMES);
+    // Only used if the name table is full
+    private final Map<String, DeliveryPolicy> mUnindexedPolicies =
+            new ConcurrentHashMap<String, DeliveryPolicy>();
+
+    public MeasurementQueue() {
+        this(DEFAULT_CAPACITY, DeliveryPolicy.COALESCE_LATEST);
+    }
+
+    /**
+     * @param capacity the maximum number of measurements waiting in the FIFO
+     *      used by the non-coalescing policies.
+     * @param policy the policy for measurements that don't have their own.
+     */
+    public MeasurementQueue(int capacity, DeliveryPolicy policy) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException(
+                    "Capacity must be at least 1, not " + capacity);
+        }
+        mItems = new RawMeasurement[capacity];
+        mItemPolicies = new DeliveryPolicy[capacity];
+        setDefaultPolicy(policy);
+    }
+
+    public void setDefaultPolicy(DeliveryPolicy policy) {
+        if(policy == null) {
+            throw new IllegalArgumentException("Policy can't be null");
+        }
+        mDefaultPolicy = policy;
+    }
+
+    public DeliveryPolicy getDefaultPolicy() {
+        return mDefaultPolicy;
+    }
+
+    /**
+     * Override the default policy for one measurement.
+     *
+     * @param measurementId the name of the measurement.
+     * @param policy the policy to use, or null to go back to the default.
+     */
+    public void setPolicy(String measurementId, DeliveryPolicy policy) {
+        int id = MeasurementNames.getId(measurementId);
+        if(id != MeasurementNames.UNKNOWN_ID) {
+            mPolicies.set(id, policy);
+        } else if(measurementId != null) {
+            if(policy != null) {
+                mUnindexedPolicies.put(measurementId, policy);
+            } else {
+                mUnindexedPolicies.remove(measurementId);
+            }
+        }
+    }
+
+    /**
+     * @return the policy that applies to the measurement.
+     */
+    public DeliveryPolicy getPolicy(RawMeasurement measurement) {
+        DeliveryPolicy policy = null;
+        int id = measurement.getNameId();
+        if(id != MeasurementNames.UNKNOWN_ID) {
+            policy = mPolicies.get(id);
+        } else if(measurement.getName() != null
+                && !mUnindexedPolicies.isEmpty()) {
+            policy = mUnindexedPolicies.get(measurement.getName());
+        }
+        return policy != null ? policy : mDefaultPolicy;
+    }
+
+    /**
+     * Add a measurement to the queue, applying its policy if the queue is
+     * full.
+     *
+     * @return true if the measurement was queued (or replaced an older
+     *      value), false if it was dropped or the queue is closed.
+     * @throws InterruptedException if interrupted while waiting for room for a
+     *      {@link DeliveryPolicy#LOSSLESS} measurement.
+     */
+    public boolean put(RawMeasurement measurement)
+            throws InterruptedException {
+        if(mClosed) {
+            return false;
+        }
+
+        DeliveryPolicy policy = getPolicy(measurement);
+        int id = measurement.getNameId();
+        boolean queued;
+        if(policy == DeliveryPolicy.COALESCE_LATEST
+                && id != MeasurementNames.UNKNOWN_ID) {
+            queued = putLatest(id, measurement);
+        } else {
+            queued = putInOrder(measurement, policy);
+        }
+
+        if(queued) {
+            wakeConsumer();
+        }
+        return queued;
+    }
+
+    /**
+     * Move up to the given number of measurements from the queue to a list,
+     * without waiting. Only the consumer may call this.
+     *
+     * @return the number of measurements moved.
+     */
+    public int drainTo(List<RawMeasurement> destination, int maximum) {
+        int count = 0;
+        int id;
+        while(count < maximum && (id = mPendingIds.poll()) >= 0) {
+            destination.add(mLatest.getAndSet(id, null));
+            mSize.decrementAndGet();
+            count++;
+        }
+
+        if(count < maximum) {
+            mLock.lock();
+            try {
+                int drained = 0;
+                while(mHead < mTail && count < maximum) {
+                    destination.add(mItems[getIndex(mHead)]);
+                    removeHead();
+                    count++;
+                    drained++;
+                }
+
+                if(drained > 0) {
+                    mNotFull.signalAll();
+                }
+            } finally {
+                mLock.unlock();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Wait until there's at least one measurement in the queue or it's closed.
+     * Only the consumer may call this.
+     */
+    public void awaitNotEmpty() throws InterruptedException {
+        await(1, 0, false);
+    }
+
+    /**
+     * Wait until the queue has at least the given number of measurements, it's
+     * closed or the timeout expires. Only the consumer may call this.
+     */
+    public void awaitSize(int size, long timeoutNanos)
+            throws InterruptedException {
+        if(timeoutNanos > 0) {
+            await(size, timeoutNanos, true);
+        }
+    }
+
+    /**
+     * Stop accepting measurements and release anyone waiting on the queue.
+     */
+    public void close() {
+        mClosed = true;
+        Thread consumer = mConsumer;
+        if(consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+
+        mLock.lock();
+        try {
+            mNotFull.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public int size() {
+        return mSize.get();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return the capacity of the FIFO for non-coalesced measurements.
+     */
+    public int getCapacity() {
+        return mItems.length;
+    }
+
+    /**
+     * @return the number of values replaced by a newer value of the same
+     *      measurement before they were delivered.
+     */
+    public long getOverwrittenCount() {
+        return mOverwrittenCount.get();
+    }
+
+    /**
+     * @return the number of values dropped because the queue was full.
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+            .add("policy", getDefaultPolicy())
+            .add("size", size())
+            .add("overwritten", getOverwrittenCount())
+            .add("dropped", getDroppedCount())
+            .toString();
+    }
+
+    private boolean putLatest(int id, RawMeasurement measurement) {
+        if(mLatest.getAndSet(id, measurement) != null) {
+            // The consumer hasn't taken the previous value yet, so it will
+            // get this one instead
+            mOverwrittenCount.incrementAndGet();
+        } else {
+            mSize.incrementAndGet();
+            mPendingIds.push(id);
+        }
+        return true;
+    }
+
+    private boolean putInOrder(RawMeasurement measurement,
+            DeliveryPolicy policy) throws InterruptedException {
+        mLock.lock();
+        try {
+            while(mTail - mHead == mItems.length) {
+                if(policy == DeliveryPolicy.LOSSLESS) {
+                    mNotFull.await();
+                    if(mClosed) {
+                        return false;
+                    }
+                } else if(mItemPolicies[getIndex(mHead)] !=
+                        DeliveryPolicy.LOSSLESS) {
+                    removeHead();
+                    mDroppedCount.incrementAndGet();
+                } else {
+                    // Never drop a lossless value to make room
+                    mDroppedCount.incrementAndGet();
+                    return false;
+                }
+            }
+
+            int index = getIndex(mTail);
+            mItems[index] = measurement;
+            mItemPolicies[index] = policy;
+            mTail++;
+            mSize.incrementAndGet();
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void wakeConsumer() {
+        if(mConsumerWaiting.get() && mConsumerWaiting.compareAndSet(
+                    true, false)) {
+            LockSupport.unpark(mConsumer);
+        }
+    }
+
+    private void await(int size, long timeoutNanos, boolean timed)
+            throws InterruptedException {
+        mConsumer = Thread.currentThread();
+        long deadline = System.nanoTime() + timeoutNanos;
+        while(mSize.get() < size && !mClosed) {
+            mConsumerWaiting.set(true);
+            // Check again now that producers can see we're waiting, or we
+            // could miss the only wakeup
+            if(mSize.get() >= size || mClosed) {
+                mConsumerWaiting.set(false);
+                break;
+            }
+
+            if(timed) {
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0) {
+                    mConsumerWaiting.set(false);
+                    break;
+                }
+                LockSupport.parkNanos(this, remaining);
+            } else {
+                LockSupport.park(this);
+            }
+            mConsumerWaiting.set(false);
+
+            if(Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    private int getIndex(long sequence) {
+        return (int) (sequence % mItems.length);
+    }
+
+    // Must hold mLock
+    private void removeHead() {
+        int index = getIndex(mHead);
+        mItems[index] = null;
+        mItemPolicies[index] = null;
+        mHead++;
+        mSize.decrementAndGet();
+    }
+
+    /**
+     * A lock-free ring of name IDs with any number of producers and a single
+     * consumer.
+     *
+     * It can't overflow as long as an ID is never in it more than once, which
+     * the coalescing slots guarantee - an ID is only pushed when its slot goes
+     * from empty to full, and the slot is only emptied after the ID is polled.
+     */
+    private static class PendingIds {
+        // IDs are stored plus one, so 0 marks an empty (or not yet written)
+        // entry
+        private final AtomicIntegerArray mEntries;
+        private final AtomicLong mTail = new AtomicLong();
+        private long mHead = 0;
+
+        public PendingIds(int capacity) {
+            mEntries = new AtomicIntegerArray(capacity);
+        }
+
+        public void push(int id) {
+            long sequence = mTail.getAndIncrement();
+            mEntries.set((int) (sequence % mEntries.length()), id + 1);
+        }
+
+        /**
+         * @return the oldest ID, or -1 if there are none.
+         */
+        public int poll() {
+            if(mHead == mTail.get()) {
+                return -1;
+            }
+
+            int index = (int) (mHead % mEntries.length());
+            int entry;
+            while((entry = mEntries.get(index)) == 0) {
+                // A producer has claimed the entry but not written it yet
+                Thread.yield();
+            }
+            mEntries.set(index, 0);
+            mHead++;
+            return entry - 1;
+        }
+    }
+}
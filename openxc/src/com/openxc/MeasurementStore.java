@@ -0,0 +1,111 @@
+package com.openxc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.openxc.remote.MeasurementNames;
+import com.openxc.remote.RawMeasurement;
+
+/**
+ * The last known value of every measurement, indexed by name ID.
+ *
+ * A {@link DataPipeline} owns one of these and shares it with all of its sinks
+ * that extend {@link com.openxc.sinks.BaseVehicleDataSink}, so storing a new
+ * value is a single array write no matter how many sinks are attached. Slots
+ * are read and written atomically, so the store is safe to use from any
+ * thread without locking.
+ *
+ * Measurements with names that aren't in {@link MeasurementNames} (which only
+ * happens if the table is full) are kept in a regular map instead.
+ */
+public class MeasurementStore {
+    private final AtomicReferenceArray<RawMeasurement> mSlots =
+            new AtomicReferenceArray<RawMeasurement>(
+                    MeasurementNames.MAXIMUM_NAMES);
+    private final Map<String, RawMeasurement> mUnindexed =
+            new ConcurrentHashMap<String, RawMeasurement>();
+
+    /**
+     * Replace the last known value for the measurement's name.
+     */
+    public void put(RawMeasurement measurement) {
+        int id = measurement.getNameId();
+        if(id != MeasurementNames.UNKNOWN_ID) {
+            mSlots.set(id, measurement);
+        } else if(measurement.getName() != null) {
+            mUnindexed.put(measurement.getName(), measurement);
+        }
+    }
+
+    /**
+     * @return the last known value for the name ID, or null if no value has
+     *      been received.
+     */
+    public RawMeasurement get(int id) {
+        if(id < 0 || id >= mSlots.length()) {
+            return null;
+        }
+        return mSlots.get(id);
+    }
+
+    /**
+     * @return the last known value for the measurement name, or null if no
+     *      value has been received.
+     */
+    public RawMeasurement get(String name) {
+        int id = MeasurementNames.findId(name);
+        if(id != MeasurementNames.UNKNOWN_ID) {
+            return get(id);
+        } else if(name != null) {
+            return mUnindexed.get(name);
+        }
+        return null;
+    }
+
+    public boolean contains(String name) {
+        return get(name) != null;
+    }
+
+    /**
+     * @return a snapshot of the last known value of every measurement.
+     */
+    public List<RawMeasurement> getAll() {
+        List<RawMeasurement> result = new ArrayList<RawMeasurement>();
+        int count = Math.min(MeasurementNames.size(), mSlots.length());
+        for(int i = 0; i < count; i++) {
+            RawMeasurement measurement = mSlots.get(i);
+            if(measurement != null) {
+                result.add(measurement);
+            }
+        }
+        result.addAll(mUnindexed.values());
+        return result;
+    }
+
+    /**
+     * @return the number of different measurements with a known value.
+     */
+    public int size() {
+        int size = mUnindexed.size();
+        int count = Math.min(MeasurementNames.size(), mSlots.length());
+        for(int i = 0; i < count; i++) {
+            if(mSlots.get(i) != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Forget all known values.
+     */
+    public void clear() {
+        for(int i = 0; i < mSlots.length(); i++) {
+            mSlots.set(i, null);
+        }
+        mUnindexed.clear();
+    }
+}
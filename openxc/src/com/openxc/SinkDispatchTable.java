@@ -0,0 +1,123 @@
+package com.openxc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.openxc.remote.MeasurementNames;
+import com.openxc.remote.RawMeasurement;
+import com.openxc.sinks.FilteredVehicleDataSink;
+import com.openxc.sinks.VehicleDataSink;
+
+/**
+ * An immutable snapshot of a pipeline's sinks, indexed by the measurements
+ * each one wants.
+ *
+ * Sinks implementing {@link FilteredVehicleDataSink} are only listed for the
+ * measurements in their interest set; every other sink is listed for all
+ * measurements. Looking up the sinks for a measurement is an array index by
+ * its name ID, and returns the sinks in the order they were added.
+ */
+class SinkDispatchTable {
+    private final static VehicleDataSink[] NO_SINKS = new VehicleDataSink[0];
+    public final static SinkDispatchTable EMPTY = new SinkDispatchTable(
+            Collections.<VehicleDataSink>emptyList());
+
+    // Sinks that want everything, and so the sinks for any measurement no
+    // filtered sink is interested in
+    private final VehicleDataSink[] mUnfiltered;
+    private final VehicleDataSink[][] mByNameId;
+    // Only used for names that don't fit in the name table
+    private final Map<String, VehicleDataSink[]> mByName =
+            new HashMap<String, VehicleDataSink[]>();
+
+    public SinkDispatchTable(List<VehicleDataSink> sinks) {
+        List<VehicleDataSink> unfiltered = new ArrayList<VehicleDataSink>();
+        List<Set<String>> interests = new ArrayList<Set<String>>();
+        for(VehicleDataSink sink : sinks) {
+            Set<String> sinkInterests = getInterests(sink);
+            interests.add(sinkInterests);
+            if(sinkInterests == null) {
+                unfiltered.add(sink);
+            } else {
+                for(String name : sinkInterests) {
+                    // Make sure every interesting name has an ID before
+                    // sizing the table
+                    if(MeasurementNames.getId(name) ==
+                            MeasurementNames.UNKNOWN_ID) {
+                        mByName.put(name, null);
+                    }
+                }
+            }
+        }
+        mUnfiltered = unfiltered.toArray(NO_SINKS);
+
+        mByNameId = new VehicleDataSink[MeasurementNames.size()][];
+        for(int id = 0; id < mByNameId.length; id++) {
+            mByNameId[id] = mUnfiltered;
+        }
+
+        for(int i = 0; i < sinks.size(); i++) {
+            if(interests.get(i) == null) {
+                continue;
+            }
+
+            for(String name : interests.get(i)) {
+                int id = MeasurementNames.findId(name);
+                if(id != MeasurementNames.UNKNOWN_ID) {
+                    if(mByNameId[id] == mUnfiltered) {
+                        mByNameId[id] = select(sinks, interests, name);
+                    }
+                } else if(mByName.get(name) == null) {
+                    mByName.put(name, select(sinks, interests, name));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the sinks that want the measurement, in the order they were
+     *      added. Don't modify the array.
+     */
+    public VehicleDataSink[] getSinks(RawMeasurement measurement) {
+        int id = measurement.getNameId();
+        if(id >= 0 && id < mByNameId.length) {
+            return mByNameId[id];
+        } else if(id == MeasurementNames.UNKNOWN_ID && !mByName.isEmpty()) {
+            VehicleDataSink[] sinks = mByName.get(measurement.getName());
+            if(sinks != null) {
+                return sinks;
+            }
+        }
+        // Any name added to the table after this snapshot was taken can't
+        // be in a filtered sink's interests
+        return mUnfiltered;
+    }
+
+    /**
+     * @return the measurement IDs the sink (or the sink it wraps) is
+     *      interested in, or null if it wants all of them.
+     */
+    public static Set<String> getInterests(VehicleDataSink sink) {
+        sink = DataPipeline.unwrap(sink);
+        if(sink instanceof FilteredVehicleDataSink) {
+            return ((FilteredVehicleDataSink) sink).getMeasurementInterests();
+        }
+        return null;
+    }
+
+    private static VehicleDataSink[] select(List<VehicleDataSink> sinks,
+            List<Set<String>> interests, String name) {
+        List<VehicleDataSink> selected = new ArrayList<VehicleDataSink>();
+        for(int i = 0; i < sinks.size(); i++) {
+            Set<String> sinkInterests = interests.get(i);
+            if(sinkInterests == null || sinkInterests.contains(name)) {
+                selected.add(sinks.get(i));
+            }
+        }
+        return selected.toArray(NO_SINKS);
+    }
+}
@@ -23,6 +23,7 @@ import com.openxc.interfaces.VehicleInterface;
 import com.openxc.measurements.BaseMeasurement;
 import com.openxc.measurements.Measurement;
 import com.openxc.measurements.UnrecognizedMeasurementTypeException;
+import com.openxc.remote.PipelineStatistics;
 import com.openxc.remote.RawMeasurement;
 import com.openxc.remote.RemoteServiceVehicleInterface;
 import com.openxc.remote.VehicleService;
@@ -32,9 +33,12 @@ import com.openxc.sinks.DataSinkException;
 import com.openxc.sinks.MeasurementListenerSink;
 import com.openxc.sinks.MockedLocationSink;
 import com.openxc.sinks.VehicleDataSink;
+import com.openxc.sources.DataSourceException;
 import com.openxc.sources.RemoteListenerSource;
+import com.openxc.sources.SharedMemorySource;
 import com.openxc.sources.SourceCallback;
 import com.openxc.sources.VehicleDataSource;
+import com.openxc.util.LatencyTracer;
 
 /**
  * The VehicleManager is an in-process Android service and the primary entry
@@ -117,7 +121,9 @@ public class VehicleManager extends Service implements SourceCallback {
 
     private boolean mIsBound;
     private VehicleServiceInterface mRemoteService;
-    private RemoteListenerSource mRemoteSource;
+    private VehicleDataSource mRemoteSource;
+    private boolean mUseSharedMemory;
+    private int mLatencySampleInterval;
     private VehicleInterface mRemoteController;
     private MeasurementListenerSink mNotifier;
 
@@ -302,6 +308,38 @@ public class VehicleManager extends Service implements SourceCallback {
         mNotifier.unregister(measurementType, listener);
     }
 
+    /**
+     * Choose how updates of a measurement type are queued for listeners in
+     * this application when they can't keep up.
+     *
+     * By default listeners only get the latest value, and intermediate values
+     * that arrive while they're busy are skipped. With
+     * {@link DeliveryPolicy#LOSSLESS} or {@link DeliveryPolicy#DROP_OLDEST},
+     * values that reach this process are queued instead of replaced.
+     *
+     * The policy only applies to the queue in this process. Measurements from
+     * the {@link VehicleService} have already been through its own queue,
+     * which keeps every
+     * {@link com.openxc.measurements.VehicleButtonEvent} and
+     * {@link com.openxc.measurements.VehicleDoorStatus} but only the latest
+     * value of every other measurement, so intermediate values of those may
+     * be skipped before they get here whatever the policy. Measurements from
+     * sources added with {@link #addSource(VehicleDataSource)} only go through
+     * this process's queue.
+     *
+     * @param measurementType The class of the Measurement
+     *      (e.g. VehicleButtonEvent.class)
+     * @param policy the policy to use for that type, or null for the default.
+     * @throws UnrecognizedMeasurementTypeException if passed a class that does
+     *      not extend Measurement
+     */
+    public void setDeliveryPolicy(Class<? extends Measurement> measurementType,
+            DeliveryPolicy policy)
+            throws UnrecognizedMeasurementTypeException {
+        mNotifier.setDeliveryPolicy(
+                BaseMeasurement.getIdForClass(measurementType), policy);
+    }
+
     /**
      * Add a new data source to the vehicle service.
      *
@@ -347,6 +385,24 @@ public class VehicleManager extends Service implements SourceCallback {
         mPipeline.addSink(sink);
     }
 
+    /**
+     * Add a new data sink that receives measurements in its own thread, so it
+     * can't slow down reading from the vehicle or the other sinks.
+     *
+     * Use this for sinks that may block, e.g. writing to a file or updating
+     * the system location.
+     *
+     * @param sink an instance of a VehicleDataSink
+     * @param policy what to do with new measurements when the sink falls
+     *      behind.
+     * @see DataPipeline#addSink(VehicleDataSink, DeliveryPolicy)
+     */
+    public void addSink(VehicleDataSink sink, DeliveryPolicy policy) {
+        Log.i(TAG, "Adding queued data sink " + sink + " with policy " +
+                policy);
+        mPipeline.addSink(sink, policy);
+    }
+
     /**
      * Remove a previously registered sink from the data pipeline.
      */
@@ -506,6 +562,93 @@ public class VehicleManager extends Service implements SourceCallback {
         }
     }
 
+    /**
+     * Take a snapshot of the message rates and sink latencies in this
+     * process's pipeline.
+     *
+     * The statistics of the vehicle service itself, where the vehicle
+     * interfaces are read, are available from {@link #getRemoteStatistics()}.
+     */
+    public PipelineStatistics getStatistics() {
+        return mPipeline.getStatistics();
+    }
+
+    /**
+     * Take a snapshot of the message rates and sink latencies in the vehicle
+     * service's pipeline.
+     *
+     * @throws VehicleServiceException if the vehicle service isn't bound or
+     *      can't be reached.
+     */
+    public PipelineStatistics getRemoteStatistics()
+            throws VehicleServiceException {
+        if(mRemoteService != null) {
+            try {
+                return mRemoteService.getStatistics();
+            } catch(RemoteException e) {
+                throw new VehicleServiceException(
+                        "Unable to retrieve pipeline statistics", e);
+            }
+        } else {
+            throw new VehicleServiceException(
+                    "Unable to retrieve pipeline statistics");
+        }
+    }
+
+    /**
+     * Trace the latency of a sample of the measurements from the vehicle
+     * interfaces, both in the vehicle service and in this process.
+     *
+     * Each sampled measurement is stamped at every hop from the interface to
+     * the {@link Measurement.Listener}s in this application, and the latency
+     * of each hop is reported by {@link #getStatistics()} (the whole path, for
+     * measurements this application has listeners for) and
+     * {@link #getRemoteStatistics()} (the part in the service). Only
+     * measurements sent over the binder are traced - the stamps aren't
+     * carried by the shared memory transport.
+     *
+     * The setting applies to the whole vehicle service, so it affects the
+     * measurements sent to every application.
+     *
+     * @param interval the number of measurements per sample, or 0 to turn off
+     *      tracing.
+     */
+    public synchronized void setLatencySampleInterval(int interval) {
+        LatencyTracer.setSampleInterval(interval);
+        mLatencySampleInterval = interval;
+        if(mRemoteService != null) {
+            try {
+                mRemoteService.setLatencySampleInterval(interval);
+            } catch(RemoteException e) {
+                Log.w(TAG, "Unable to set the latency sample interval", e);
+            }
+        }
+    }
+
+    /**
+     * Choose how measurements are received from the vehicle service.
+     *
+     * By default each batch of measurements is sent to this process over the
+     * binder. With the shared memory transport, the service writes them to a
+     * memory-mapped buffer that this process reads, and the binder is only
+     * used to signal that new measurements are available. That's considerably
+     * cheaper at high data rates, especially when several applications are
+     * bound to the service.
+     *
+     * If the service can't share its buffer, the binder is used instead.
+     *
+     * @param enabled true to use shared memory.
+     */
+    public synchronized void setSharedMemoryTransport(boolean enabled) {
+        if(enabled != mUseSharedMemory) {
+            mUseSharedMemory = enabled;
+            if(mRemoteService != null) {
+                mPipeline.removeSource(mRemoteSource);
+                connectRemoteSource();
+            }
+        }
+    }
+
     /**
      * Add a new local vehicle interface to the service.
      *
@@ -586,8 +729,10 @@ public class VehicleManager extends Service implements SourceCallback {
                     mRemoteService);
             mInterfaces.add(mRemoteController);
 
-            mRemoteSource = new RemoteListenerSource(mRemoteService);
-            mPipeline.addSource(mRemoteSource);
+            connectRemoteSource();
+            if(mLatencySampleInterval > 0) {
+                setLatencySampleInterval(mLatencySampleInterval);
+            }
 
             mRemoteBoundLock.lock();
             mRemoteBoundCondition.signalAll();
@@ -602,6 +747,23 @@ public class VehicleManager extends Service implements SourceCallback {
         }
     };
 
+    private synchronized void connectRemoteSource() {
+        mRemoteSource = null;
+        if(mUseSharedMemory) {
+            try {
+                mRemoteSource = new SharedMemorySource(mRemoteService);
+            } catch(DataSourceException e) {
+                Log.w(TAG, "Unable to use shared memory transport, " +
+                        "falling back to binder", e);
+            }
+        }
+
+        if(mRemoteSource == null) {
+            mRemoteSource = new RemoteListenerSource(mRemoteService);
+        }
+        mPipeline.addSource(mRemoteSource);
+    }
+
     private void bindRemote() {
         Log.i(TAG, "Binding to VehicleService");
         Intent intent = new Intent(VehicleServiceInterface.class.getName());
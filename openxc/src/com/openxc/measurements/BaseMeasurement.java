@@ -2,13 +2,18 @@ package com.openxc.measurements;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import com.google.common.base.Objects;
 
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
+import com.google.common.collect.Maps;
 
 import com.openxc.NoValueException;
+import com.openxc.remote.MeasurementNames;
 import com.openxc.remote.RawMeasurement;
 
 import com.openxc.units.Unit;
@@ -31,6 +36,12 @@ import com.openxc.util.Range;
  * the measurement and its unit type. This unfortunately means we have to add
  * constructors to every child class because they aren't inherited from
  * Measurement. If you know of a better way, please say so.
+ *
+ * Converting a {@link RawMeasurement} to one of the child classes goes through
+ * a {@link MeasurementFactory} registered for the type - the factories for all
+ * of the built-in measurements are registered when this class is loaded. Types
+ * without a factory still work, but are constructed with reflection which is
+ * much slower.
  */
 public class BaseMeasurement<TheUnit extends Unit> implements Measurement {
     private AgingData<TheUnit> mValue;
@@ -38,9 +49,23 @@ public class BaseMeasurement<TheUnit extends Unit> implements Measurement {
     private Range<TheUnit> mRange;
     private static BiMap<String, Class<? extends Measurement>>
             sMeasurementIdToClass;
+    private static Map<Class<? extends Measurement>, MeasurementFactory<?>>
+            sFactories;
+    // The same factories, indexed by the MeasurementNames ID of their
+    // measurement so the lookup for a RawMeasurement doesn't need to hash
+    private static AtomicReferenceArray<MeasurementFactory<?>>
+            sFactoriesByNameId;
 
     static {
-        sMeasurementIdToClass = HashBiMap.create();
+        sMeasurementIdToClass = Maps.synchronizedBiMap(
+                HashBiMap.<String, Class<? extends Measurement>>create());
+        sFactories = new ConcurrentHashMap<Class<? extends Measurement>,
+                MeasurementFactory<?>>();
+        sFactoriesByNameId = new AtomicReferenceArray<MeasurementFactory<?>>(
+                MeasurementNames.MAXIMUM_NAMES);
+        for(MeasurementFactory<?> factory : MeasurementFactories.ALL) {
+            registerFactory(factory);
+        }
     }
 
     /**
@@ -132,6 +157,32 @@ public class BaseMeasurement<TheUnit extends Unit> implements Measurement {
         return "base_measurement";
     }
 
+    /**
+     * Register a factory to use when converting raw measurements to the
+     * factory's type, replacing any previously registered for that type.
+     *
+     * This is optional for measurement types defined outside of the library -
+     * without a factory they are constructed with reflection.
+     */
+    public static void registerFactory(MeasurementFactory<?> factory) {
+        sMeasurementIdToClass.forcePut(factory.getId(), factory.getType());
+        sFactories.put(factory.getType(), factory);
+
+        int nameId = MeasurementNames.getId(factory.getId());
+        if(nameId != MeasurementNames.UNKNOWN_ID) {
+            sFactoriesByNameId.set(nameId, factory);
+        }
+    }
+
+    /**
+     * @return the factory registered for the measurement type, or null if
+     *      there isn't one.
+     */
+    public static MeasurementFactory<?> getFactory(
+            Class<? extends Measurement> measurementType) {
+        return sFactories.get(measurementType);
+    }
+
     private static void cacheMeasurementId(
             Class<? extends Measurement> measurementType)
             throws UnrecognizedMeasurementTypeException {
@@ -174,6 +225,16 @@ public class BaseMeasurement<TheUnit extends Unit> implements Measurement {
     public static Measurement getMeasurementFromRaw(
             RawMeasurement rawMeasurement)
             throws UnrecognizedMeasurementTypeException, NoValueException {
+        if(rawMeasurement != null) {
+            int nameId = rawMeasurement.getNameId();
+            if(nameId != MeasurementNames.UNKNOWN_ID) {
+                MeasurementFactory<?> factory = sFactoriesByNameId.get(nameId);
+                if(factory != null) {
+                    return createMeasurement(factory, rawMeasurement);
+                }
+            }
+        }
+
         Class<? extends Measurement> measurementClass =
             BaseMeasurement.getClassForId(rawMeasurement.getName());
         return BaseMeasurement.getMeasurementFromRaw(measurementClass,
@@ -184,6 +245,11 @@ public class BaseMeasurement<TheUnit extends Unit> implements Measurement {
             Class<? extends Measurement> measurementType,
             RawMeasurement rawMeasurement)
             throws UnrecognizedMeasurementTypeException, NoValueException {
+        MeasurementFactory<?> factory = sFactories.get(measurementType);
+        if(factory != null) {
+            return createMeasurement(factory, rawMeasurement);
+        }
+
         Constructor<? extends Measurement> constructor = null;
         if(rawMeasurement != null && rawMeasurement.getValue() != null) {
             Class<?> valueClass = rawMeasurement.getValue().getClass();
@@ -243,6 +309,27 @@ public class BaseMeasurement<TheUnit extends Unit> implements Measurement {
         throw new NoValueException();
     }
 
+    private static Measurement createMeasurement(
+            MeasurementFactory<?> factory, RawMeasurement rawMeasurement)
+            throws UnrecognizedMeasurementTypeException, NoValueException {
+        if(rawMeasurement == null || rawMeasurement.getValue() == null) {
+            throw new NoValueException();
+        }
+
+        Measurement measurement;
+        try {
+            measurement = factory.create(rawMeasurement.getValue(),
+                    rawMeasurement.hasEvent() ? rawMeasurement.getEvent() : null);
+        } catch(IllegalArgumentException e) {
+            // e.g. an unknown enum constant for a State measurement
+            throw new UnrecognizedMeasurementTypeException(
+                    factory.getType() + "'s constructor threw an exception",
+                    e);
+        }
+        measurement.setTimestamp(rawMeasurement.getTimestamp());
+        return measurement;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if(this == obj) {
@@ -0,0 +1,157 @@
+package com.openxc.measurements;
+
+/**
+ * The factories for every measurement type built in to the library.
+ *
+ * {@link BaseMeasurement} registers all of these when it's loaded. When adding
+ * a new measurement type to the library, add an entry here too - a measurement
+ * without one still works, but it's built with reflection.
+ */
+class MeasurementFactories {
+    static final MeasurementFactory<?>[] ALL = {
+        new MeasurementFactory<AcceleratorPedalPosition>(
+                AcceleratorPedalPosition.class, AcceleratorPedalPosition.ID) {
+            public AcceleratorPedalPosition create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new AcceleratorPedalPosition(number(value, event));
+            }
+        },
+        new MeasurementFactory<BrakePedalStatus>(
+                BrakePedalStatus.class, BrakePedalStatus.ID) {
+            public BrakePedalStatus create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new BrakePedalStatus(bool(value, event));
+            }
+        },
+        new MeasurementFactory<EngineSpeed>(
+                EngineSpeed.class, EngineSpeed.ID) {
+            public EngineSpeed create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new EngineSpeed(number(value, event));
+            }
+        },
+        new MeasurementFactory<FuelConsumed>(
+                FuelConsumed.class, FuelConsumed.ID) {
+            public FuelConsumed create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new FuelConsumed(number(value, event));
+            }
+        },
+        new MeasurementFactory<FuelLevel>(
+                FuelLevel.class, FuelLevel.ID) {
+            public FuelLevel create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new FuelLevel(number(value, event));
+            }
+        },
+        new MeasurementFactory<HeadlampStatus>(
+                HeadlampStatus.class, HeadlampStatus.ID) {
+            public HeadlampStatus create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new HeadlampStatus(bool(value, event));
+            }
+        },
+        new MeasurementFactory<HighBeamStatus>(
+                HighBeamStatus.class, HighBeamStatus.ID) {
+            public HighBeamStatus create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new HighBeamStatus(bool(value, event));
+            }
+        },
+        new MeasurementFactory<IgnitionStatus>(
+                IgnitionStatus.class, IgnitionStatus.ID) {
+            public IgnitionStatus create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new IgnitionStatus(string(value, event));
+            }
+        },
+        new MeasurementFactory<Latitude>(
+                Latitude.class, Latitude.ID) {
+            public Latitude create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new Latitude(number(value, event));
+            }
+        },
+        new MeasurementFactory<Longitude>(
+                Longitude.class, Longitude.ID) {
+            public Longitude create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new Longitude(number(value, event));
+            }
+        },
+        new MeasurementFactory<Odometer>(
+                Odometer.class, Odometer.ID) {
+            public Odometer create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new Odometer(number(value, event));
+            }
+        },
+        new MeasurementFactory<ParkingBrakeStatus>(
+                ParkingBrakeStatus.class, ParkingBrakeStatus.ID) {
+            public ParkingBrakeStatus create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new ParkingBrakeStatus(bool(value, event));
+            }
+        },
+        new MeasurementFactory<SteeringWheelAngle>(
+                SteeringWheelAngle.class, SteeringWheelAngle.ID) {
+            public SteeringWheelAngle create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new SteeringWheelAngle(number(value, event));
+            }
+        },
+        new MeasurementFactory<TorqueAtTransmission>(
+                TorqueAtTransmission.class, TorqueAtTransmission.ID) {
+            public TorqueAtTransmission create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new TorqueAtTransmission(number(value, event));
+            }
+        },
+        new MeasurementFactory<TransmissionGearPosition>(
+                TransmissionGearPosition.class, TransmissionGearPosition.ID) {
+            public TransmissionGearPosition create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new TransmissionGearPosition(string(value, event));
+            }
+        },
+        new MeasurementFactory<TurnSignalStatus>(
+                TurnSignalStatus.class, TurnSignalStatus.ID) {
+            public TurnSignalStatus create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new TurnSignalStatus(string(value, event));
+            }
+        },
+        new MeasurementFactory<VehicleButtonEvent>(
+                VehicleButtonEvent.class, VehicleButtonEvent.ID) {
+            public VehicleButtonEvent create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new VehicleButtonEvent(
+                        require(String.class, value, value, event),
+                        require(String.class, event, value, event));
+            }
+        },
+        new MeasurementFactory<VehicleDoorStatus>(
+                VehicleDoorStatus.class, VehicleDoorStatus.ID) {
+            public VehicleDoorStatus create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new VehicleDoorStatus(
+                        require(String.class, value, value, event),
+                        require(Boolean.class, event, value, event));
+            }
+        },
+        new MeasurementFactory<VehicleSpeed>(
+                VehicleSpeed.class, VehicleSpeed.ID) {
+            public VehicleSpeed create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new VehicleSpeed(number(value, event));
+            }
+        },
+        new MeasurementFactory<WindshieldWiperStatus>(
+                WindshieldWiperStatus.class, WindshieldWiperStatus.ID) {
+            public WindshieldWiperStatus create(Object value, Object event)
+                    throws UnrecognizedMeasurementTypeException {
+                return new WindshieldWiperStatus(bool(value, event));
+            }
+        }
+    };
+}
@@ -0,0 +1,97 @@
+package com.openxc.measurements;
+
+/**
+ * Builds instances of one Measurement type from raw values.
+ *
+ * {@link BaseMeasurement} keeps a registry of these so turning a
+ * {@link com.openxc.remote.RawMeasurement} into a typed measurement is a
+ * direct constructor call instead of a reflective lookup for every message.
+ * The factories for the built-in measurements are listed in
+ * {@link MeasurementFactories}; applications with their own measurement types
+ * can register one with
+ * {@link BaseMeasurement#registerFactory(MeasurementFactory)}.
+ */
+public abstract class MeasurementFactory<T extends Measurement> {
+    private final Class<T> mType;
+    private final String mId;
+
+    /**
+     * @param type the class of measurement this factory builds.
+     * @param id the ID of the measurement type, i.e. its ID field.
+     */
+    protected MeasurementFactory(Class<T> type, String id) {
+        mType = type;
+        mId = id;
+    }
+
+    public Class<T> getType() {
+        return mType;
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    /**
+     * Build a new measurement from a raw value and event.
+     *
+     * @param value the non-null value of the measurement.
+     * @param event the event of the measurement, if it has one.
+     * @throws UnrecognizedMeasurementTypeException if the value or event
+     *      aren't the types this measurement expects.
+     */
+    public abstract T create(Object value, Object event)
+            throws UnrecognizedMeasurementTypeException;
+
+    /**
+     * @return the value as a Number, if the measurement has no event.
+     */
+    protected Number number(Object value, Object event)
+            throws UnrecognizedMeasurementTypeException {
+        if(!(value instanceof Number) || event != null) {
+            throw mismatch(value, event);
+        }
+        return (Number) value;
+    }
+
+    /**
+     * @return the value as a Boolean, if the measurement has no event.
+     */
+    protected Boolean bool(Object value, Object event)
+            throws UnrecognizedMeasurementTypeException {
+        if(!(value instanceof Boolean) || event != null) {
+            throw mismatch(value, event);
+        }
+        return (Boolean) value;
+    }
+
+    /**
+     * @return the value as a String, if the measurement has no event.
+     */
+    protected String string(Object value, Object event)
+            throws UnrecognizedMeasurementTypeException {
+        if(!(value instanceof String) || event != null) {
+            throw mismatch(value, event);
+        }
+        return (String) value;
+    }
+
+    /**
+     * @return the object cast to the expected type, if it is one.
+     */
+    protected <V> V require(Class<V> expected, Object object, Object value,
+            Object event) throws UnrecognizedMeasurementTypeException {
+        if(!expected.isInstance(object)) {
+            throw mismatch(value, event);
+        }
+        return expected.cast(object);
+    }
+
+    protected UnrecognizedMeasurementTypeException mismatch(Object value,
+            Object event) {
+        return new UnrecognizedMeasurementTypeException(mType +
+                " doesn't have the expected constructor, " + mType + "(" +
+                (value != null ? value.getClass() : null) +
+                (event != null ? ", " + event.getClass() : "") + ")");
+    }
+}
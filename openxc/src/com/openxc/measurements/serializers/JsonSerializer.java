@@ -1,55 +1,164 @@
 package com.openxc.measurements.serializers;
 
-import java.io.IOException;
-import java.io.StringWriter;
-
-import java.text.DecimalFormat;
-
-import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonGenerator;
-
-import android.util.Log;
-
+/**
+ * Serialize measurements to the OpenXC JSON message format, e.g.:
+ *
+ *      {"name":"vehicle_speed","value":42.5,"timestamp":1351176963.438000}
+ *
+ * The JSON is written by hand into a buffer that's reused by each thread,
+ * instead of with a new JsonFactory and StringWriter for every message, so
+ * serializing only allocates the resulting String. It's safe to call from any
+ * number of threads at once.
+ *
+ * Timestamps are in milliseconds, and they're written as seconds with a
+ * fractional part - always with 6 decimal places to match the traces
+ * recorded by the vehicle interface, but only the first 3 are significant.
+ */
 public class JsonSerializer implements MeasurementSerializer {
-    private static final String TAG = "JsonSerializer";
     public static final String NAME_FIELD = "name";
     public static final String VALUE_FIELD = "value";
     public static final String EVENT_FIELD = "event";
     public static final String TIMESTAMP_FIELD = "timestamp";
-    private static DecimalFormat sTimestampFormatter =
-            new DecimalFormat("##########.000000");
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    // Longer messages get their own buffer so one outlier isn't kept forever
+    private static final int MAXIMUM_REUSED_CAPACITY = 1024;
+    private static final ThreadLocal<StringBuilder> sBuffers =
+            new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(128);
+        }
+    };
+
+    /**
+     * @param timestamp the timestamp in milliseconds, or null if the
+     *      measurement doesn't have one.
+     */
     public static String serialize(String name, Object value, Object event,
             Long timestamp) {
-        StringWriter buffer = new StringWriter(64);
-        JsonFactory jsonFactory = new JsonFactory();
-        try {
-            JsonGenerator gen = jsonFactory.createJsonGenerator(buffer);
+        StringBuilder buffer = sBuffers.get();
+        buffer.setLength(0);
+        serialize(buffer, name, value, event,
+                timestamp != null ? timestamp.longValue() : 0);
+        String result = buffer.toString();
+        if(buffer.capacity() > MAXIMUM_REUSED_CAPACITY) {
+            sBuffers.remove();
+        }
+        return result;
+    }
 
-            gen.writeStartObject();
-            gen.writeStringField(NAME_FIELD, name);
+    /**
+     * Append a serialized measurement to a buffer.
+     *
+     * @param timestamp the timestamp in milliseconds, or 0 if the measurement
+     *      doesn't have one.
+     */
+    public static void serialize(StringBuilder buffer, String name,
+            Object value, Object event, long timestamp) {
+        buffer.append('{');
+        appendFieldName(buffer, NAME_FIELD);
+        appendString(buffer, name);
 
-            if(value != null) {
-                gen.writeObjectField(VALUE_FIELD, value);
-            }
+        if(value != null) {
+            buffer.append(',');
+            appendFieldName(buffer, VALUE_FIELD);
+            appendValue(buffer, value);
+        }
+
+        if(event != null) {
+            buffer.append(',');
+            appendFieldName(buffer, EVENT_FIELD);
+            appendValue(buffer, event);
+        }
+
+        if(timestamp != 0) {
+            buffer.append(',');
+            appendFieldName(buffer, TIMESTAMP_FIELD);
+            appendTimestamp(buffer, timestamp);
+        }
+        buffer.append('}');
+    }
+
+    private static void appendFieldName(StringBuilder buffer, String name) {
+        buffer.append('"').append(name).append("\":");
+    }
 
-            if(event != null) {
-                gen.writeObjectField(EVENT_FIELD, event);
+    private static void appendValue(StringBuilder buffer, Object value) {
+        if(value instanceof String) {
+            appendString(buffer, (String) value);
+        } else if(value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            if(Double.isNaN(number) || Double.isInfinite(number)) {
+                // JSON has no literal for these
+                appendString(buffer, value.toString());
+            } else {
+                buffer.append(value.toString());
             }
+        } else if(value instanceof Number || value instanceof Boolean) {
+            buffer.append(value.toString());
+        } else {
+            appendString(buffer, value.toString());
+        }
+    }
 
-            if(timestamp != null) {
-                gen.writeFieldName(TIMESTAMP_FIELD);
-                // serialized measurements represent the timestamp as seconds
-                // with a fracitonal part
-                gen.writeRawValue(sTimestampFormatter.format(timestamp / 1000));
+    private static void appendString(StringBuilder buffer, String value) {
+        if(value == null) {
+            buffer.append("null");
+            return;
+        }
+
+        buffer.append('"');
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch(c) {
+                case '"':
+                    buffer.append("\\\"");
+                    break;
+                case '\\':
+                    buffer.append("\\\\");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                default:
+                    if(c < 0x20) {
+                        buffer.append("\\u00")
+                            .append(HEX_DIGITS[c >> 4])
+                            .append(HEX_DIGITS[c & 0xf]);
+                    } else {
+                        buffer.append(c);
+                    }
+                    break;
             }
+        }
+        buffer.append('"');
+    }
 
-            gen.writeEndObject();
-            gen.close();
-        } catch(IOException e) {
-            Log.w(TAG, "Unable to encode all data to JSON -- " +
-                    "message may be incomplete", e);
+    /**
+     * Write milliseconds as seconds with 6 decimal places, without going
+     * through a double.
+     */
+    private static void appendTimestamp(StringBuilder buffer, long timestamp) {
+        if(timestamp < 0) {
+            buffer.append('-');
+            timestamp = -timestamp;
+        }
+
+        long milliseconds = timestamp % 1000;
+        buffer.append(timestamp / 1000).append('.');
+        if(milliseconds < 100) {
+            buffer.append('0');
+        }
+        if(milliseconds < 10) {
+            buffer.append('0');
         }
-        return buffer.toString();
+        buffer.append(milliseconds).append("000");
     }
 }
@@ -0,0 +1,268 @@
+package com.openxc.remote;
+
+import com.openxc.measurements.AcceleratorPedalPosition;
+import com.openxc.measurements.BrakePedalStatus;
+import com.openxc.measurements.EngineSpeed;
+import com.openxc.measurements.FuelConsumed;
+import com.openxc.measurements.FuelLevel;
+import com.openxc.measurements.HeadlampStatus;
+import com.openxc.measurements.HighBeamStatus;
+import com.openxc.measurements.IgnitionStatus;
+import com.openxc.measurements.Latitude;
+import com.openxc.measurements.Longitude;
+import com.openxc.measurements.Odometer;
+import com.openxc.measurements.ParkingBrakeStatus;
+import com.openxc.measurements.SteeringWheelAngle;
+import com.openxc.measurements.TorqueAtTransmission;
+import com.openxc.measurements.TransmissionGearPosition;
+import com.openxc.measurements.TurnSignalStatus;
+import com.openxc.measurements.VehicleButtonEvent;
+import com.openxc.measurements.VehicleDoorStatus;
+import com.openxc.measurements.VehicleSpeed;
+import com.openxc.measurements.WindshieldWiperStatus;
+
+/**
+ * A process-wide symbol table for measurement names.
+ *
+ * Every measurement name seen by the library is mapped to one canonical String
+ * instance and a small integer ID, assigned in the order the names are first
+ * seen. Decoders can look up a name directly from the characters they parsed
+ * with {@link #getId(char[], int, int)} without allocating a new String, and
+ * downstream components can index arrays by the ID instead of hashing the
+ * name again at every hop.
+ *
+ * Lookups are lock-free - the table is an immutable snapshot that's replaced
+ * (under a lock) when a new name is added, which only happens a few dozen times
+ * over the life of the process. To protect against a corrupted data stream
+ * filling the table with garbage, it stops accepting new names once it has
+ * {@link #MAXIMUM_NAMES} of them - lookups for anything else return
+ * {@link #UNKNOWN_ID}.
+ *
+ * The table always starts with the names of the built-in measurements, so
+ * their IDs are the same in every process and can be sent across process
+ * boundaries instead of the names themselves. The seeded names are part of the
+ * {@link RawMeasurement} Parcel format - adding, removing or reordering them
+ * needs a new version of that format.
+ */
+public class MeasurementNames {
+    public final static int UNKNOWN_ID = -1;
+    public final static int MAXIMUM_NAMES = 1024;
+
+    private final static String[] SEEDED_NAMES = {
+        AcceleratorPedalPosition.ID,
+        BrakePedalStatus.ID,
+        EngineSpeed.ID,
+        FuelConsumed.ID,
+        FuelLevel.ID,
+        HeadlampStatus.ID,
+        HighBeamStatus.ID,
+        IgnitionStatus.ID,
+        Latitude.ID,
+        Longitude.ID,
+        Odometer.ID,
+        ParkingBrakeStatus.ID,
+        SteeringWheelAngle.ID,
+        TorqueAtTransmission.ID,
+        TransmissionGearPosition.ID,
+        TurnSignalStatus.ID,
+        VehicleButtonEvent.ID,
+        VehicleDoorStatus.ID,
+        VehicleSpeed.ID,
+        WindshieldWiperStatus.ID
+    };
+
+    /**
+     * The number of names the table is seeded with - IDs below this are the
+     * same in every process.
+     */
+    public final static int SEEDED_NAME_COUNT = SEEDED_NAMES.length;
+
+    private static volatile Table sTable = new Table(SEEDED_NAMES.clone());
+
+    /**
+     * Return the ID for the name, adding it to the table if it's new.
+     *
+     * @return the ID of the name, or {@link #UNKNOWN_ID} if the name is null
+     *      or the table is full.
+     */
+    public static int getId(String name) {
+        if(name == null) {
+            return UNKNOWN_ID;
+        }
+
+        int id = sTable.find(name);
+        if(id == UNKNOWN_ID) {
+            id = add(name);
+        }
+        return id;
+    }
+
+    /**
+     * Return the ID for the name only if it's already in the table.
+     *
+     * Use this for queries (e.g. looking up the last value of a measurement)
+     * that shouldn't add new names to the table.
+     *
+     * @return the ID of the name, or {@link #UNKNOWN_ID} if the name hasn't
+     *      been seen before.
+     */
+    public static int findId(String name) {
+        if(name == null) {
+            return UNKNOWN_ID;
+        }
+        return sTable.find(name);
+    }
+
+    /**
+     * Return the ID for the name stored in a range of a character array,
+     * adding it to the table if it's new.
+     *
+     * A String is only allocated if the name hasn't been seen before.
+     *
+     * @return the ID of the name, or {@link #UNKNOWN_ID} if the table is
+     *      full.
+     */
+    public static int getId(char[] characters, int offset, int length) {
+        int id = sTable.find(characters, offset, length);
+        if(id == UNKNOWN_ID) {
+            id = add(new String(characters, offset, length));
+        }
+        return id;
+    }
+
+    /**
+     * @return the canonical name for the ID, or null if the ID is unknown.
+     */
+    public static String getName(int id) {
+        String[] names = sTable.mNames;
+        if(id < 0 || id >= names.length) {
+            return null;
+        }
+        return names[id];
+    }
+
+    /**
+     * Return the canonical instance of a name, adding it to the table if
+     * it's new.
+     *
+     * @return the canonical instance, or the original name if the table is
+     *      full.
+     */
+    public static String intern(String name) {
+        int id = getId(name);
+        if(id == UNKNOWN_ID) {
+            return name;
+        }
+        return getName(id);
+    }
+
+    /**
+     * @return true if the ID is one of the seeded names, and thus has the same
+     *      meaning in every process.
+     */
+    public static boolean isSeeded(int id) {
+        return id >= 0 && id < SEEDED_NAME_COUNT;
+    }
+
+    /**
+     * @return the number of names in the table - all IDs are less than this.
+     */
+    public static int size() {
+        return sTable.mNames.length;
+    }
+
+    private static synchronized int add(String name) {
+        Table table = sTable;
+        int id = table.find(name);
+        if(id != UNKNOWN_ID) {
+            return id;
+        }
+
+        if(table.mNames.length >= MAXIMUM_NAMES) {
+            return UNKNOWN_ID;
+        }
+
+        String[] names = new String[table.mNames.length + 1];
+        System.arraycopy(table.mNames, 0, names, 0, table.mNames.length);
+        id = table.mNames.length;
+        names[id] = name;
+        sTable = new Table(names);
+        return id;
+    }
+
+    /**
+     * An immutable open-addressed hash table of names to IDs.
+     *
+     * The hash is the same as String.hashCode() so names can be looked up
+     * either from a String or from a range of characters.
+     */
+    private static class Table {
+        private final String[] mNames;
+        private final String[] mSlots;
+        private final int[] mSlotIds;
+        private final int mMask;
+
+        public Table(String[] names) {
+            mNames = names;
+            int capacity = 16;
+            while(capacity < names.length * 2) {
+                capacity *= 2;
+            }
+            mSlots = new String[capacity];
+            mSlotIds = new int[capacity];
+            mMask = capacity - 1;
+
+            for(int id = 0; id < names.length; id++) {
+                int slot = names[id].hashCode() & mMask;
+                while(mSlots[slot] != null) {
+                    slot = (slot + 1) & mMask;
+                }
+                mSlots[slot] = names[id];
+                mSlotIds[slot] = id;
+            }
+        }
+
+        public int find(String name) {
+            int slot = name.hashCode() & mMask;
+            String candidate;
+            while((candidate = mSlots[slot]) != null) {
+                if(candidate.equals(name)) {
+                    return mSlotIds[slot];
+                }
+                slot = (slot + 1) & mMask;
+            }
+            return UNKNOWN_ID;
+        }
+
+        public int find(char[] characters, int offset, int length) {
+            int hash = 0;
+            for(int i = offset; i < offset + length; i++) {
+                hash = 31 * hash + characters[i];
+            }
+
+            int slot = hash & mMask;
+            String candidate;
+            while((candidate = mSlots[slot]) != null) {
+                if(matches(candidate, characters, offset, length)) {
+                    return mSlotIds[slot];
+                }
+                slot = (slot + 1) & mMask;
+            }
+            return UNKNOWN_ID;
+        }
+
+        private static boolean matches(String candidate, char[] characters,
+                int offset, int length) {
+            if(candidate.length() != length) {
+                return false;
+            }
+
+            for(int i = 0; i < length; i++) {
+                if(candidate.charAt(i) != characters[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
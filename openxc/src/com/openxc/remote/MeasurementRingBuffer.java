@@ -0,0 +1,148 @@
+package com.openxc.remote;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The layout of a ring of measurements in a memory-mapped file, shared between
+ * a {@link MeasurementRingWriter} in the VehicleService and any number of
+ * {@link MeasurementRingReader}s in application processes.
+ *
+ * The file starts with a small header, followed by a table of measurement
+ * names indexed by the writer's {@link MeasurementNames} ID and then the ring
+ * of fixed size records. Each record holds the name ID, the timestamp and the
+ * value and event, either as a double, a boolean or a short ASCII string.
+ *
+ * Every record starts with the sequence number it was written with, which the
+ * writer sets to {@link #IN_PROGRESS} while it's updating the record. Readers
+ * copy the record and check the sequence before and after, so they can tell if
+ * the writer lapped them and overwrote it in the meantime.
+ *
+ * Java doesn't make any promises about the ordering of accesses to memory
+ * shared with another process, so the sequence check alone could pass for a
+ * record that was copied half before and half after the writer changed it.
+ * Each record and each name therefore also ends with a checksum of its
+ * contents and sequence number, and readers only accept a copy that matches
+ * it. The writer and reader still access a volatile field between the steps
+ * (see {@link #writeVolatileField()}), which makes a mismatch rare but isn't
+ * what correctness depends on.
+ */
+public abstract class MeasurementRingBuffer {
+    public final static int MAGIC = 0x4f584352;
+    public final static int VERSION = 2;
+    public final static int DEFAULT_CAPACITY = 4096;
+    public final static int MAXIMUM_STRING_LENGTH = 32;
+    public final static int MAXIMUM_NAME_LENGTH = 56;
+
+    protected final static long IN_PROGRESS = -1;
+
+    // Header
+    protected final static int MAGIC_OFFSET = 0;
+    protected final static int VERSION_OFFSET = 4;
+    protected final static int CAPACITY_OFFSET = 8;
+    protected final static int RECORD_SIZE_OFFSET = 12;
+    protected final static int WRITE_SEQUENCE_OFFSET = 16;
+    protected final static int HEADER_SIZE = 64;
+
+    // Name table - a short length and a checksum followed by the name in
+    // ASCII
+    protected final static int NAMES_OFFSET = HEADER_SIZE;
+    protected final static int NAME_ENTRY_SIZE = 64;
+    protected final static int NAME_LENGTH = 0;
+    protected final static int NAME_CHECKSUM = 4;
+    protected final static int NAME_CHARACTERS = 8;
+
+    // Records
+    protected final static int RECORDS_OFFSET = NAMES_OFFSET +
+            NAME_ENTRY_SIZE * MeasurementNames.MAXIMUM_NAMES;
+    protected final static int RECORD_SIZE = 96;
+    protected final static int SEQUENCE = 0;
+    protected final static int NAME_ID = 8;
+    protected final static int VALUE_TYPE = 12;
+    protected final static int EVENT_TYPE = 13;
+    protected final static int VALUE_LENGTH = 14;
+    protected final static int EVENT_LENGTH = 15;
+    protected final static int TIMESTAMP = 16;
+    protected final static int VALUE = 24;
+    protected final static int EVENT = VALUE + MAXIMUM_STRING_LENGTH;
+    // Covers everything from NAME_ID up to here
+    protected final static int CHECKSUM = EVENT + MAXIMUM_STRING_LENGTH;
+
+    protected final static byte TYPE_NONE = 0;
+    protected final static byte TYPE_NUMBER = 1;
+    protected final static byte TYPE_BOOLEAN = 2;
+    protected final static byte TYPE_STRING = 3;
+
+    private final static long CHECKSUM_MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+    private static volatile int sVolatileField;
+
+    protected final ByteBuffer mBuffer;
+    protected final int mCapacity;
+
+    protected MeasurementRingBuffer(ByteBuffer buffer, int capacity) {
+        mBuffer = buffer;
+        mCapacity = capacity;
+    }
+
+    /**
+     * @return the number of records in the ring.
+     */
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @return the size in bytes of a ring with the given number of records.
+     */
+    public static int getFileSize(int capacity) {
+        return RECORDS_OFFSET + capacity * RECORD_SIZE;
+    }
+
+    protected int getRecordOffset(long sequence) {
+        return RECORDS_OFFSET + (int) (sequence % mCapacity) * RECORD_SIZE;
+    }
+
+    protected static int getNameOffset(int nameId) {
+        return NAMES_OFFSET + nameId * NAME_ENTRY_SIZE;
+    }
+
+    /**
+     * Compute the checksum of a range of a buffer.
+     *
+     * @param seed mixed in with the contents, e.g. the sequence number of a
+     *      record so a stale copy of it doesn't match.
+     */
+    protected static int checksum(ByteBuffer buffer, int offset, int length,
+            long seed) {
+        long hash = seed;
+        int end = offset + length;
+        for(; offset + 8 <= end; offset += 8) {
+            hash = (hash ^ buffer.getLong(offset)) * CHECKSUM_MULTIPLIER;
+        }
+        for(; offset < end; offset++) {
+            hash = (hash ^ buffer.get(offset)) * CHECKSUM_MULTIPLIER;
+        }
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Write to a volatile field.
+     *
+     * Dalvik and ART compile this with a full memory barrier on ARM, which in
+     * practice also keeps the writes to the mapped file before it from being
+     * seen after it. The Java memory model only promises that for other
+     * threads reading the same field, though, not for another process, so
+     * readers rely on the checksums rather than on this.
+     */
+    protected static void writeVolatileField() {
+        sVolatileField = 0;
+    }
+
+    /**
+     * Read from a volatile field - the reading side of
+     * {@link #writeVolatileField()}, with the same caveats.
+     */
+    protected static int readVolatileField() {
+        return sVolatileField;
+    }
+}
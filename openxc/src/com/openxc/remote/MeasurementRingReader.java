@@ -0,0 +1,211 @@
+package com.openxc.remote;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.google.common.base.Objects;
+
+/**
+ * Reads measurements from a {@link MeasurementRingBuffer} file, usually one
+ * shared read-only by the VehicleService.
+ *
+ * A new reader starts at the newest record in the ring - older values are
+ * available from the service directly. If the reader falls more than the
+ * capacity of the ring behind the writer, it skips ahead to the oldest record
+ * that's still intact and adds the records it missed to
+ * {@link #getLostCount()}. Records that don't match their checksum, because
+ * the writer was changing them while they were copied, are counted the same
+ * way.
+ */
+public class MeasurementRingReader extends MeasurementRingBuffer {
+    private final String[] mNames = new String[MeasurementNames.MAXIMUM_NAMES];
+    private final char[] mCharacters = new char[MAXIMUM_NAME_LENGTH];
+    // Records and names are copied here and checked before they're decoded
+    private final ByteBuffer mCopy = ByteBuffer.allocate(RECORD_SIZE).order(
+            ByteOrder.nativeOrder());
+    private long mSequence;
+    private long mLostCount = 0;
+
+    /**
+     * @param channel a channel for the ring file - it only needs to be
+     *      readable.
+     * @throws IOException if the file can't be mapped or doesn't contain a
+     *      ring buffer.
+     */
+    public MeasurementRingReader(FileChannel channel) throws IOException {
+        this(map(channel));
+    }
+
+    private MeasurementRingReader(ByteBuffer buffer) throws IOException {
+        super(buffer, buffer.getInt(CAPACITY_OFFSET));
+        if(mCapacity < 1 || mBuffer.capacity() < getFileSize(mCapacity)) {
+            throw new IOException("Ring buffer file is truncated");
+        }
+        mSequence = getWriteSequence();
+    }
+
+    /**
+     * Read the next measurement from the ring.
+     *
+     * @return the next measurement, or null if the reader has caught up with
+     *      the writer.
+     */
+    public synchronized RawMeasurement read() {
+        while(true) {
+            long available = getWriteSequence();
+            if(mSequence >= available) {
+                return null;
+            }
+
+            if(available - mSequence > mCapacity) {
+                mLostCount += available - mCapacity - mSequence;
+                mSequence = available - mCapacity;
+            }
+
+            int record = getRecordOffset(mSequence);
+            long sequence = mBuffer.getLong(record + SEQUENCE);
+            readVolatileField();
+            if(sequence != mSequence) {
+                // The writer has already lapped us and is overwriting it
+                skip();
+                continue;
+            }
+
+            copy(record, RECORD_SIZE);
+            readVolatileField();
+            if(mBuffer.getLong(record + SEQUENCE) != sequence
+                    || mCopy.getInt(CHECKSUM) != checksum(mCopy, NAME_ID,
+                        CHECKSUM - NAME_ID, sequence)) {
+                skip();
+                continue;
+            }
+
+            // Decode from the copy, which can't change under us
+            long timestamp = mCopy.getLong(TIMESTAMP);
+            Object value = readValue(VALUE_TYPE, VALUE_LENGTH, VALUE);
+            Object event = readValue(EVENT_TYPE, EVENT_LENGTH, EVENT);
+            String name = getName(mCopy.getInt(NAME_ID));
+            if(name == null) {
+                skip();
+                continue;
+            }
+
+            mSequence++;
+            return new RawMeasurement(name, value, event, timestamp);
+        }
+    }
+
+    /**
+     * @return the number of records the writer overwrote before this reader
+     *      got to them.
+     */
+    public synchronized long getLostCount() {
+        return mLostCount;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+            .add("capacity", getCapacity())
+            .add("lost", getLostCount())
+            .toString();
+    }
+
+    private static ByteBuffer map(FileChannel channel) throws IOException {
+        if(channel.size() < HEADER_SIZE) {
+            throw new IOException("Ring buffer file is too small");
+        }
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                0, channel.size());
+        buffer.order(ByteOrder.nativeOrder());
+        if(buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+            throw new IOException("Not a measurement ring buffer");
+        }
+        readVolatileField();
+
+        if(buffer.getInt(VERSION_OFFSET) != VERSION ||
+                buffer.getInt(RECORD_SIZE_OFFSET) != RECORD_SIZE) {
+            throw new IOException("Unsupported ring buffer version " +
+                    buffer.getInt(VERSION_OFFSET));
+        }
+        return buffer;
+    }
+
+    private long getWriteSequence() {
+        long sequence = mBuffer.getLong(WRITE_SEQUENCE_OFFSET);
+        readVolatileField();
+        return sequence;
+    }
+
+    /**
+     * Copy part of the ring, starting at the beginning of mCopy.
+     */
+    private void copy(int offset, int length) {
+        mBuffer.limit(offset + length).position(offset);
+        mCopy.clear();
+        mCopy.put(mBuffer);
+        mBuffer.clear();
+    }
+
+    private void skip() {
+        mSequence++;
+        mLostCount++;
+    }
+
+    private String getName(int nameId) {
+        if(nameId < 0 || nameId >= mNames.length) {
+            return null;
+        }
+
+        String name = mNames[nameId];
+        if(name == null) {
+            int entry = getNameOffset(nameId);
+            int length = mBuffer.getShort(entry + NAME_LENGTH);
+            readVolatileField();
+            if(length <= 0 || length > MAXIMUM_NAME_LENGTH) {
+                return null;
+            }
+
+            copy(entry, NAME_ENTRY_SIZE);
+            if(mCopy.getInt(NAME_CHECKSUM) != checksum(mCopy,
+                        NAME_CHARACTERS, length, length)) {
+                return null;
+            }
+
+            for(int i = 0; i < length; i++) {
+                mCharacters[i] = (char) mCopy.get(NAME_CHARACTERS + i);
+            }
+            // Writer IDs are only valid in the writer's process - convert
+            // to the canonical name for this one
+            name = MeasurementNames.intern(new String(mCharacters, 0, length));
+            mNames[nameId] = name;
+        }
+        return name;
+    }
+
+    /**
+     * Decode a value from the record in mCopy.
+     */
+    private Object readValue(int typeOffset, int lengthOffset, int offset) {
+        switch(mCopy.get(typeOffset)) {
+            case TYPE_NUMBER:
+                return mCopy.getDouble(offset);
+            case TYPE_BOOLEAN:
+                return mCopy.get(offset) != 0 ? Boolean.TRUE : Boolean.FALSE;
+            case TYPE_STRING:
+                int length = Math.min(mCopy.get(lengthOffset),
+                        MAXIMUM_STRING_LENGTH);
+                char[] characters = new char[Math.max(length, 0)];
+                for(int i = 0; i < characters.length; i++) {
+                    characters[i] = (char) mCopy.get(offset + i);
+                }
+                return new String(characters);
+            default:
+                return null;
+        }
+    }
+}
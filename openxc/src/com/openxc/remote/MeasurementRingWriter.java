@@ -0,0 +1,204 @@
+package com.openxc.remote;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import android.util.Log;
+
+import com.google.common.base.Objects;
+
+/**
+ * Writes measurements into a {@link MeasurementRingBuffer} file.
+ *
+ * There should only ever be one writer for a file. Writes never block on
+ * readers - a reader that falls more than the capacity of the ring behind
+ * skips ahead and counts the records it missed.
+ *
+ * Measurements that don't fit in a record (e.g. a string value longer than
+ * {@link MeasurementRingBuffer#MAXIMUM_STRING_LENGTH}) are dropped and
+ * counted.
+ */
+public class MeasurementRingWriter extends MeasurementRingBuffer {
+    private final static String TAG = "MeasurementRingWriter";
+
+    private final RandomAccessFile mFile;
+    private final boolean[] mNamesWritten =
+            new boolean[MeasurementNames.MAXIMUM_NAMES];
+    private long mSequence = 0;
+    private int mDroppedCount = 0;
+
+    /**
+     * Create a new ring in the file, replacing anything that was already in
+     * it.
+     *
+     * @param file the file to map - it's created if it doesn't exist.
+     * @param capacity the number of records in the ring.
+     */
+    public MeasurementRingWriter(File file, int capacity) throws IOException {
+        this(new RandomAccessFile(file, "rw"), capacity);
+    }
+
+    private MeasurementRingWriter(RandomAccessFile file, int capacity)
+            throws IOException {
+        super(map(file, capacity), capacity);
+        mFile = file;
+
+        mBuffer.putInt(VERSION_OFFSET, VERSION);
+        mBuffer.putInt(CAPACITY_OFFSET, capacity);
+        mBuffer.putInt(RECORD_SIZE_OFFSET, RECORD_SIZE);
+        mBuffer.putLong(WRITE_SEQUENCE_OFFSET, mSequence);
+        writeVolatileField();
+        mBuffer.putInt(MAGIC_OFFSET, MAGIC);
+    }
+
+    /**
+     * Append a measurement to the ring.
+     *
+     * @return true if the measurement was written, false if it couldn't be
+     *      represented in a record.
+     */
+    public synchronized boolean write(RawMeasurement measurement) {
+        int nameId = measurement.getNameId();
+        if(nameId == MeasurementNames.UNKNOWN_ID
+                || !isEncodable(measurement.getValue())
+                || !isEncodable(measurement.getEvent())
+                || !writeName(nameId, measurement.getName())) {
+            mDroppedCount++;
+            return false;
+        }
+
+        long sequence = mSequence;
+        int record = getRecordOffset(sequence);
+        mBuffer.putLong(record + SEQUENCE, IN_PROGRESS);
+        writeVolatileField();
+
+        mBuffer.putInt(record + NAME_ID, nameId);
+        mBuffer.putLong(record + TIMESTAMP, measurement.getTimestamp());
+        writeValue(record + VALUE_TYPE, record + VALUE_LENGTH, record + VALUE,
+                measurement.getValue());
+        writeValue(record + EVENT_TYPE, record + EVENT_LENGTH, record + EVENT,
+                measurement.getEvent());
+        mBuffer.putInt(record + CHECKSUM, checksum(mBuffer, record + NAME_ID,
+                    CHECKSUM - NAME_ID, sequence));
+        writeVolatileField();
+
+        mBuffer.putLong(record + SEQUENCE, sequence);
+        mSequence = sequence + 1;
+        writeVolatileField();
+        mBuffer.putLong(WRITE_SEQUENCE_OFFSET, mSequence);
+        return true;
+    }
+
+    /**
+     * @return the number of measurements written so far.
+     */
+    public synchronized long getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * @return the number of measurements that couldn't be written.
+     */
+    public synchronized int getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    public void close() {
+        try {
+            mFile.close();
+        } catch(IOException e) {
+            Log.w(TAG, "Unable to close ring buffer file", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+            .add("capacity", getCapacity())
+            .add("sequence", getSequence())
+            .add("dropped", getDroppedCount())
+            .toString();
+    }
+
+    private static MappedByteBuffer map(RandomAccessFile file, int capacity)
+            throws IOException {
+        if(capacity < 1) {
+            file.close();
+            throw new IllegalArgumentException(
+                    "Capacity must be at least 1, not " + capacity);
+        }
+
+        // Truncate first so nothing from a previous writer is left behind
+        file.setLength(0);
+        file.setLength(getFileSize(capacity));
+        MappedByteBuffer buffer = file.getChannel().map(
+                FileChannel.MapMode.READ_WRITE, 0, getFileSize(capacity));
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+
+    private boolean writeName(int nameId, String name) {
+        if(mNamesWritten[nameId]) {
+            return true;
+        }
+
+        if(name.length() > MAXIMUM_NAME_LENGTH || !isAscii(name)) {
+            return false;
+        }
+
+        int entry = getNameOffset(nameId);
+        for(int i = 0; i < name.length(); i++) {
+            mBuffer.put(entry + NAME_CHARACTERS + i, (byte) name.charAt(i));
+        }
+        mBuffer.putInt(entry + NAME_CHECKSUM, checksum(mBuffer,
+                    entry + NAME_CHARACTERS, name.length(), name.length()));
+        writeVolatileField();
+        mBuffer.putShort(entry + NAME_LENGTH, (short) name.length());
+        mNamesWritten[nameId] = true;
+        return true;
+    }
+
+    private void writeValue(int typeOffset, int lengthOffset, int offset,
+            Object value) {
+        if(value == null) {
+            mBuffer.put(typeOffset, TYPE_NONE);
+        } else if(value instanceof Number) {
+            mBuffer.put(typeOffset, TYPE_NUMBER);
+            mBuffer.putDouble(offset, ((Number) value).doubleValue());
+        } else if(value instanceof Boolean) {
+            mBuffer.put(typeOffset, TYPE_BOOLEAN);
+            mBuffer.put(offset, (byte) (((Boolean) value) ? 1 : 0));
+        } else {
+            String string = (String) value;
+            mBuffer.put(typeOffset, TYPE_STRING);
+            mBuffer.put(lengthOffset, (byte) string.length());
+            for(int i = 0; i < string.length(); i++) {
+                mBuffer.put(offset + i, (byte) string.charAt(i));
+            }
+        }
+    }
+
+    private static boolean isEncodable(Object value) {
+        if(value == null || value instanceof Number
+                || value instanceof Boolean) {
+            return true;
+        } else if(value instanceof String) {
+            String string = (String) value;
+            return string.length() <= MAXIMUM_STRING_LENGTH && isAscii(string);
+        }
+        return false;
+    }
+
+    private static boolean isAscii(String string) {
+        for(int i = 0; i < string.length(); i++) {
+            if(string.charAt(i) > 127) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,428 @@
+package com.openxc.remote;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.google.common.base.Objects;
+import com.openxc.util.LatencyHistogram;
+
+/**
+ * A snapshot of where the time goes in a {@link com.openxc.DataPipeline}.
+ *
+ * For each source, this has the number of measurements and raw bytes
+ * received and the average rate since the source was created. For each sink,
+ * it has the distribution of the time taken to handle a measurement (on the
+ * sink's own thread, if it has one), the number of measurements waiting for
+ * it and the number it missed because it fell behind. For measurements
+ * sampled by {@link com.openxc.util.LatencyTracer}, it has the distribution of
+ * the time taken by each hop on the way to an application.
+ *
+ * This class implements the Parcelable interface, so it can be returned from
+ * the {@link com.openxc.remote.VehicleService} over AIDL.
+ */
+public class PipelineStatistics implements Parcelable {
+    private long mElapsedTime;
+    private long mMessageCount;
+    private List<Source> mSources = new ArrayList<Source>();
+    private List<Sink> mSinks = new ArrayList<Sink>();
+    private List<Hop> mHops = new ArrayList<Hop>();
+
+    /**
+     * @param elapsedTime nanoseconds since the pipeline was created.
+     * @param messageCount the number of measurements the pipeline received.
+     */
+    public PipelineStatistics(long elapsedTime, long messageCount) {
+        mElapsedTime = elapsedTime;
+        mMessageCount = messageCount;
+    }
+
+    public void addSource(Source source) {
+        mSources.add(source);
+    }
+
+    public void addSink(Sink sink) {
+        mSinks.add(sink);
+    }
+
+    public void addHop(Hop hop) {
+        mHops.add(hop);
+    }
+
+    public long getElapsedTime() {
+        return mElapsedTime;
+    }
+
+    public long getMessageCount() {
+        return mMessageCount;
+    }
+
+    /**
+     * @return the average number of measurements per second.
+     */
+    public double getMessageRate() {
+        return getRate(mMessageCount, mElapsedTime);
+    }
+
+    public List<Source> getSources() {
+        return Collections.unmodifiableList(mSources);
+    }
+
+    public List<Sink> getSinks() {
+        return Collections.unmodifiableList(mSinks);
+    }
+
+    public List<Hop> getHops() {
+        return Collections.unmodifiableList(mHops);
+    }
+
+    public void writeToParcel(Parcel out, int flags) {
+        out.writeLong(mElapsedTime);
+        out.writeLong(mMessageCount);
+        out.writeInt(mSources.size());
+        for(Source source : mSources) {
+            source.writeToParcel(out);
+        }
+        out.writeInt(mSinks.size());
+        for(Sink sink : mSinks) {
+            sink.writeToParcel(out);
+        }
+        out.writeInt(mHops.size());
+        for(Hop hop : mHops) {
+            hop.writeToParcel(out);
+        }
+    }
+
+    public void readFromParcel(Parcel in) {
+        mElapsedTime = in.readLong();
+        mMessageCount = in.readLong();
+        mSources.clear();
+        for(int i = in.readInt(); i > 0; i--) {
+            mSources.add(new Source(in));
+        }
+        mSinks.clear();
+        for(int i = in.readInt(); i > 0; i--) {
+            mSinks.add(new Sink(in));
+        }
+        mHops.clear();
+        for(int i = in.readInt(); i > 0; i--) {
+            mHops.add(new Hop(in));
+        }
+    }
+
+    public static final Parcelable.Creator<PipelineStatistics> CREATOR =
+            new Parcelable.Creator<PipelineStatistics>() {
+        public PipelineStatistics createFromParcel(Parcel in) {
+            return new PipelineStatistics(in);
+        }
+
+        public PipelineStatistics[] newArray(int size) {
+            return new PipelineStatistics[size];
+        }
+    };
+
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+            .add("messages", getMessageCount())
+            .add("messagesPerSecond", Math.round(getMessageRate()))
+            .add("sources", mSources)
+            .add("sinks", mSinks)
+            .add("hops", mHops)
+            .toString();
+    }
+
+    private PipelineStatistics(Parcel in) {
+        readFromParcel(in);
+    }
+
+    private static double getRate(long count, long elapsedNanos) {
+        if(elapsedNanos <= 0) {
+            return 0;
+        }
+        return count / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Statistics for one data source.
+     */
+    public static class Source {
+        private final String mName;
+        private final long mElapsedTime;
+        private final long mMessageCount;
+        private final long mByteCount;
+
+        /**
+         * @param name a description of the source.
+         * @param elapsedTime nanoseconds since the source was created.
+         * @param messageCount the number of measurements it sent.
+         * @param byteCount the number of raw bytes it read, or 0 if it doesn't
+         *      report them.
+         */
+        public Source(String name, long elapsedTime, long messageCount,
+                long byteCount) {
+            mName = name;
+            mElapsedTime = elapsedTime;
+            mMessageCount = messageCount;
+            mByteCount = byteCount;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public long getMessageCount() {
+            return mMessageCount;
+        }
+
+        public long getByteCount() {
+            return mByteCount;
+        }
+
+        /**
+         * @return the average number of measurements per second.
+         */
+        public double getMessageRate() {
+            return getRate(mMessageCount, mElapsedTime);
+        }
+
+        /**
+         * @return the average number of bytes per second.
+         */
+        public double getByteRate() {
+            return getRate(mByteCount, mElapsedTime);
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                .add("name", getName())
+                .add("messages", getMessageCount())
+                .add("messagesPerSecond", Math.round(getMessageRate()))
+                .add("bytesPerSecond", Math.round(getByteRate()))
+                .toString();
+        }
+
+        private Source(Parcel in) {
+            mName = in.readString();
+            mElapsedTime = in.readLong();
+            mMessageCount = in.readLong();
+            mByteCount = in.readLong();
+        }
+
+        private void writeToParcel(Parcel out) {
+            out.writeString(mName);
+            out.writeLong(mElapsedTime);
+            out.writeLong(mMessageCount);
+            out.writeLong(mByteCount);
+        }
+    }
+
+    /**
+     * Statistics for one data sink.
+     *
+     * All durations are in nanoseconds.
+     */
+    public static class Sink {
+        private final String mName;
+        private final long mCount;
+        private final long mMeanLatency;
+        private final long mMedianLatency;
+        private final long m99thPercentileLatency;
+        private final long mMaximumLatency;
+        private final long mQueueDepth;
+        private final long mOverwrittenCount;
+        private final long mDroppedCount;
+
+        /**
+         * @param name a description of the sink.
+         * @param latency the time taken to handle each measurement.
+         * @param queueDepth the number of measurements waiting for the sink.
+         * @param overwrittenCount measurements replaced by a newer value
+         *      before the sink got them.
+         * @param droppedCount measurements the sink missed because it fell
+         *      behind.
+         */
+        public Sink(String name, LatencyHistogram latency, long queueDepth,
+                long overwrittenCount, long droppedCount) {
+            mName = name;
+            mCount = latency.getCount();
+            mMeanLatency = latency.getMean();
+            mMedianLatency = latency.getPercentile(50);
+            m99thPercentileLatency = latency.getPercentile(99);
+            mMaximumLatency = latency.getMaximum();
+            mQueueDepth = queueDepth;
+            mOverwrittenCount = overwrittenCount;
+            mDroppedCount = droppedCount;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * @return the number of measurements the sink has handled.
+         */
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getMeanLatency() {
+            return mMeanLatency;
+        }
+
+        public long getMedianLatency() {
+            return mMedianLatency;
+        }
+
+        public long get99thPercentileLatency() {
+            return m99thPercentileLatency;
+        }
+
+        public long getMaximumLatency() {
+            return mMaximumLatency;
+        }
+
+        public long getQueueDepth() {
+            return mQueueDepth;
+        }
+
+        public long getOverwrittenCount() {
+            return mOverwrittenCount;
+        }
+
+        public long getDroppedCount() {
+            return mDroppedCount;
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                .add("name", getName())
+                .add("count", getCount())
+                .add("p50", getMedianLatency())
+                .add("p99", get99thPercentileLatency())
+                .add("max", getMaximumLatency())
+                .add("queued", getQueueDepth())
+                .add("overwritten", getOverwrittenCount())
+                .add("dropped", getDroppedCount())
+                .toString();
+        }
+
+        private Sink(Parcel in) {
+            mName = in.readString();
+            mCount = in.readLong();
+            mMeanLatency = in.readLong();
+            mMedianLatency = in.readLong();
+            m99thPercentileLatency = in.readLong();
+            mMaximumLatency = in.readLong();
+            mQueueDepth = in.readLong();
+            mOverwrittenCount = in.readLong();
+            mDroppedCount = in.readLong();
+        }
+
+        private void writeToParcel(Parcel out) {
+            out.writeString(mName);
+            out.writeLong(mCount);
+            out.writeLong(mMeanLatency);
+            out.writeLong(mMedianLatency);
+            out.writeLong(m99thPercentileLatency);
+            out.writeLong(mMaximumLatency);
+            out.writeLong(mQueueDepth);
+            out.writeLong(mOverwrittenCount);
+            out.writeLong(mDroppedCount);
+        }
+    }
+
+    /**
+     * The latency of one hop of the measurements traced by
+     * {@link com.openxc.util.LatencyTracer}.
+     *
+     * All durations are in nanoseconds.
+     */
+    public static class Hop {
+        private final String mName;
+        private final long mCount;
+        private final long mMeanLatency;
+        private final long mMedianLatency;
+        private final long m99thPercentileLatency;
+        private final long mMaximumLatency;
+
+        /**
+         * @param name a description of the hop.
+         * @param latency the time taken by the hop.
+         */
+        public Hop(String name, LatencyHistogram latency) {
+            mName = name;
+            mCount = latency.getCount();
+            mMeanLatency = latency.getMean();
+            mMedianLatency = latency.getPercentile(50);
+            m99thPercentileLatency = latency.getPercentile(99);
+            mMaximumLatency = latency.getMaximum();
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * @return the number of traced measurements that made the hop.
+         */
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getMeanLatency() {
+            return mMeanLatency;
+        }
+
+        public long getMedianLatency() {
+            return mMedianLatency;
+        }
+
+        public long get99thPercentileLatency() {
+            return m99thPercentileLatency;
+        }
+
+        public long getMaximumLatency() {
+            return mMaximumLatency;
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                .add("name", getName())
+                .add("count", getCount())
+                .add("p50", getMedianLatency())
+                .add("p99", get99thPercentileLatency())
+                .add("max", getMaximumLatency())
+                .toString();
+        }
+
+        private Hop(Parcel in) {
+            mName = in.readString();
+            mCount = in.readLong();
+            mMeanLatency = in.readLong();
+            mMedianLatency = in.readLong();
+            m99thPercentileLatency = in.readLong();
+            mMaximumLatency = in.readLong();
+        }
+
+        private void writeToParcel(Parcel out) {
+            out.writeString(mName);
+            out.writeLong(mCount);
+            out.writeLong(mMeanLatency);
+            out.writeLong(mMedianLatency);
+            out.writeLong(m99thPercentileLatency);
+            out.writeLong(mMaximumLatency);
+        }
+    }
+}
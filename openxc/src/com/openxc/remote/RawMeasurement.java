@@ -7,12 +7,12 @@ import android.os.Parcelable;
 import android.util.Log;
 
 import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import com.google.common.base.Objects;
 import com.openxc.measurements.UnrecognizedMeasurementTypeException;
 import com.openxc.measurements.serializers.JsonSerializer;
+import com.openxc.util.LatencyTracer;
 
 /**
  * An untyped measurement used only for the AIDL VehicleService interface.
@@ -28,22 +28,68 @@ import com.openxc.measurements.serializers.JsonSerializer;
  * measurement needs to be returned but there is no valid value for it.
  *
  * This class implements the Parcelable interface, so it can be used directly as
- * a return value or function parameter in an AIDL interface.
+ * a return value or function parameter in an AIDL interface. The Parcel
+ * encoding is compact: a single int holds the version of the encoding, the
+ * types of the value and event and the name's ID if it's one of the names
+ * seeded in {@link MeasurementNames} (otherwise the name follows as a String),
+ * and numbers and booleans are written as primitives instead of with
+ * writeValue(). The service and its applications can use different versions
+ * of the library, so a Parcel without the expected version is read with the
+ * original encoding instead - the name, timestamp, value and event in that
+ * order.
+ *
+ * Every sink in a pipeline receives the same instance of a measurement, so it
+ * caches its JSON serialization - whichever sink asks for it first pays for the
+ * encoding, and the rest (on any thread) share the same String. A measurement
+ * parsed from JSON starts out with the message it was parsed from. Anything
+ * that changes the measurement, e.g. {@link #untimestamp()}, clears the cache.
+ *
+ * A measurement sampled by {@link LatencyTracer} also carries the time it
+ * reached each hop on its way to an application, and the stamps are only
+ * written to the Parcel for those measurements.
  *
  * @see com.openxc.measurements.BaseMeasurement
  */
 public class RawMeasurement implements Parcelable {
     private static final String TAG = "RawMeasurement";
+    // JsonFactory is thread-safe once configured, and it holds the symbol
+    // tables the parsers use to canonicalize field names - sharing one means
+    // "name", "value", etc. are only ever decoded into a String once.
+    private static final JsonFactory sJsonFactory = new JsonFactory();
 
-    private String mCachedSerialization;
+    // The version is in the top 4 bits of the header. The high bit is always
+    // set, so the header is negative and can't be mistaken for the length of
+    // the name that the original encoding starts with.
+    private static final int PARCEL_VERSION = 0x9;
+    private static final int PARCEL_VERSION_SHIFT = 28;
+    private static final int PARCEL_NAME_SHIFT = 16;
+    private static final int PARCEL_NAME_FOLLOWS = 0xfff;
+    private static final int PARCEL_TYPE_NONE = 0;
+    private static final int PARCEL_TYPE_DOUBLE = 1;
+    private static final int PARCEL_TYPE_INTEGER = 2;
+    private static final int PARCEL_TYPE_LONG = 3;
+    private static final int PARCEL_TYPE_TRUE = 4;
+    private static final int PARCEL_TYPE_FALSE = 5;
+    private static final int PARCEL_TYPE_STRING = 6;
+    // Anything else is written with writeValue()
+    private static final int PARCEL_TYPE_OTHER = 7;
+    private static final int PARCEL_TYPE_MASK = 0x7f;
+    // Set in the value type if the latency trace stamps follow
+    private static final int PARCEL_TRACE_FOLLOWS = 0x80;
+
+    // Strings are immutable, so publishing one through a volatile field is
+    // enough for other threads to see all of it
+    private volatile String mCachedSerialization;
     private long mTimestamp;
     private String mName;
+    private int mNameId = MeasurementNames.UNKNOWN_ID;
     private Object mValue;
     private Object mEvent;
+    private long[] mTraceStamps;
 
     public RawMeasurement(String name, Object value) {
         this();
-        mName = name;
+        setName(name);
         mValue = value;
     }
 
@@ -65,18 +111,121 @@ public class RawMeasurement implements Parcelable {
         timestamp();
     }
 
+    /**
+     * Deserialize a measurement directly from a slice of a byte array, e.g. a
+     * frame from a {@link com.openxc.sources.BytestreamBuffer}.
+     *
+     * The bytes are not retained, so the caller is free to reuse the array.
+     */
+    public RawMeasurement(byte[] serialized, int offset, int length)
+            throws UnrecognizedMeasurementTypeException {
+        deserialize(serialized, offset, length, this);
+        timestamp();
+    }
+
+    /**
+     * Deserialize a measurement like {@link #RawMeasurement(String)}, but
+     * without logging or throwing anything if it isn't valid - e.g. for the
+     * lines of a trace, which can be cut off at the end by a power loss.
+     *
+     * @return the measurement, or null if the string isn't a valid
+     *      measurement.
+     */
+    public static RawMeasurement tryParse(String serialized) {
+        RawMeasurement measurement = new RawMeasurement();
+        try {
+            deserialize(sJsonFactory.createParser(serialized), measurement);
+        } catch(IOException e) {
+            return null;
+        } catch(UnrecognizedMeasurementTypeException e) {
+            return null;
+        }
+        measurement.mCachedSerialization = serialized;
+        measurement.timestamp();
+        return measurement;
+    }
+
+    /**
+     * Deserialize a measurement from a slice of a byte array like
+     * {@link #RawMeasurement(byte[], int, int)}, but without logging or
+     * throwing anything if it isn't valid.
+     *
+     * @return the measurement, or null if the bytes aren't a valid
+     *      measurement.
+     */
+    public static RawMeasurement tryParse(byte[] serialized, int offset,
+            int length) {
+        RawMeasurement measurement = new RawMeasurement();
+        try {
+            deserialize(sJsonFactory.createParser(serialized, offset, length),
+                    measurement);
+        } catch(IOException e) {
+            return null;
+        } catch(UnrecognizedMeasurementTypeException e) {
+            return null;
+        }
+        measurement.timestamp();
+        return measurement;
+    }
+
     public void writeToParcel(Parcel out, int flags) {
-        out.writeString(getName());
+        int nameCode = MeasurementNames.isSeeded(mNameId) ?
+                mNameId : PARCEL_NAME_FOLLOWS;
+        int valueType = getParcelType(getValue());
+        int eventType = getParcelType(getEvent());
+        int traceFlag = isTraced() ? PARCEL_TRACE_FOLLOWS : 0;
+        out.writeInt(PARCEL_VERSION << PARCEL_VERSION_SHIFT
+                | nameCode << PARCEL_NAME_SHIFT | eventType << 8 | traceFlag
+                | valueType);
         out.writeLong(getTimestamp());
-        out.writeValue(getValue());
-        out.writeValue(getEvent());
+        if(nameCode == PARCEL_NAME_FOLLOWS) {
+            out.writeString(getName());
+        }
+        writeParcelValue(out, valueType, getValue());
+        writeParcelValue(out, eventType, getEvent());
+        if(traceFlag != 0) {
+            out.writeLongArray(mTraceStamps);
+        }
     }
 
     public void readFromParcel(Parcel in) {
-        mName = in.readString();
+        int start = in.dataPosition();
+        int header = in.readInt();
+        if(header >>> PARCEL_VERSION_SHIFT != PARCEL_VERSION) {
+            in.setDataPosition(start);
+            readNamedFromParcel(in);
+            return;
+        }
+
+        int nameCode = (header >>> PARCEL_NAME_SHIFT) & PARCEL_NAME_FOLLOWS;
+        mTimestamp = in.readLong();
+        if(nameCode == PARCEL_NAME_FOLLOWS) {
+            setName(in.readString());
+        } else {
+            mNameId = nameCode;
+            mName = MeasurementNames.getName(nameCode);
+        }
+        mValue = readParcelValue(in, header & PARCEL_TYPE_MASK);
+        mEvent = readParcelValue(in, (header >> 8) & 0xff);
+        if((header & PARCEL_TRACE_FOLLOWS) != 0) {
+            mTraceStamps = in.createLongArray();
+        } else {
+            mTraceStamps = null;
+        }
+        invalidateSerialization();
+    }
+
+    /**
+     * Read a measurement written with the original Parcel encoding, by a
+     * version of the library from before the compact one.
+     */
+    private void readNamedFromParcel(Parcel in) {
+        setName(in.readString());
         mTimestamp = in.readLong();
         mValue = in.readValue(null);
         mEvent = in.readValue(null);
+        mTraceStamps = null;
+        invalidateSerialization();
     }
 
     public static final Parcelable.Creator<RawMeasurement> CREATOR =
@@ -94,22 +243,53 @@ public class RawMeasurement implements Parcelable {
         }
     };
 
+    /**
+     * @return the measurement in the OpenXC JSON format. It's only encoded the
+     *      first time it's needed, no matter how many sinks or threads ask.
+     */
     public String serialize() {
-        return serialize(false);
+        String serialized = mCachedSerialization;
+        if(serialized == null) {
+            synchronized(this) {
+                serialized = mCachedSerialization;
+                if(serialized == null) {
+                    serialized = JsonSerializer.serialize(getName(),
+                            getValue(), getEvent(), getTimestamp());
+                    mCachedSerialization = serialized;
+                }
+            }
+        }
+        return serialized;
     }
 
+    /**
+     * @param reserialize if true, encode the measurement again instead of
+     *      using the cached serialization. The cache is cleared whenever the
+     *      measurement changes, so this should never be necessary.
+     */
     public String serialize(boolean reserialize) {
-        if(reserialize || mCachedSerialization == null) {
-            mCachedSerialization = JsonSerializer.serialize(getName(),
-                    getValue(), getEvent(), getTimestamp());
+        if(reserialize) {
+            invalidateSerialization();
         }
-        return mCachedSerialization;
+        return serialize();
     }
 
+    /**
+     * @return the name of the measurement - if it has a valid name ID, this is
+     *      the canonical instance from {@link MeasurementNames}.
+     */
     public String getName() {
         return mName;
     }
 
+    /**
+     * @return the ID of this measurement's name in {@link MeasurementNames},
+     *      or {@link MeasurementNames#UNKNOWN_ID} if it doesn't have one.
+     */
+    public int getNameId() {
+        return mNameId;
+    }
+
     public Object getValue() {
         return mValue;
     }
@@ -138,7 +318,55 @@ public class RawMeasurement implements Parcelable {
      * serialized version.
      */
     public void untimestamp() {
-    	mTimestamp = 0;
+        mTimestamp = 0;
+        invalidateSerialization();
+    }
+
+    /**
+     * Start tracing the latency of this measurement.
+     *
+     * @param readTime when the measurement was read from the vehicle
+     *      interface, from System.nanoTime().
+     */
+    public void startTrace(long readTime) {
+        mTraceStamps = new long[LatencyTracer.HOP_COUNT];
+        mTraceStamps[LatencyTracer.READ] = readTime;
+    }
+
+    /**
+     * @return true if this measurement is being traced by
+     *      {@link LatencyTracer}.
+     */
+    public boolean isTraced() {
+        return mTraceStamps != null;
+    }
+
+    /**
+     * Record the time this measurement reached a hop, if it's being traced.
+     *
+     * @param hop one of the hop constants in {@link LatencyTracer}.
+     */
+    public void stamp(int hop) {
+        long[] stamps = mTraceStamps;
+        if(stamps != null) {
+            stamps[hop] = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return the time this measurement reached a hop from System.nanoTime(),
+     *      or 0 if it isn't traced or hasn't reached the hop.
+     */
+    public long getTraceStamp(int hop) {
+        long[] stamps = mTraceStamps;
+        return stamps != null ? stamps[hop] : 0;
+    }
+
+    /**
+     * @return the stamp of each hop, or null if the measurement isn't traced.
+     */
+    public long[] getTraceStamps() {
+        return mTraceStamps;
     }
 
     public int describeContents() {
@@ -156,10 +384,9 @@ public class RawMeasurement implements Parcelable {
     private static void deserialize(String measurementString,
             RawMeasurement measurement)
             throws UnrecognizedMeasurementTypeException {
-        JsonFactory jsonFactory = new JsonFactory();
         JsonParser parser;
         try {
-            parser = jsonFactory.createParser(measurementString);
+            parser = sJsonFactory.createParser(measurementString);
         } catch(IOException e) {
             String message = "Couldn't decode JSON from: " + measurementString;
             Log.w(TAG, message, e);
@@ -167,12 +394,71 @@ public class RawMeasurement implements Parcelable {
         }
 
         try {
-            parser.nextToken();
-            while(parser.nextToken() != JsonToken.END_OBJECT) {
+            deserialize(parser, measurement);
+        } catch(IOException e) {
+            String message = "JSON message didn't have the expected format: "
+                    + measurementString;
+            Log.w(TAG, message, e);
+            throw new UnrecognizedMeasurementTypeException(message, e);
+        } catch(UnrecognizedMeasurementTypeException e) {
+            throw new UnrecognizedMeasurementTypeException(
+                    e.getMessage() + " in: " + measurementString);
+        }
+        measurement.mCachedSerialization = measurementString;
+    }
+
+    private static void deserialize(byte[] serialized, int offset,
+            int length, RawMeasurement measurement)
+            throws UnrecognizedMeasurementTypeException {
+        // Only build a String from the bytes if we need it for an error
+        try {
+            deserialize(sJsonFactory.createParser(serialized, offset, length),
+                    measurement);
+        } catch(IOException e) {
+            String message = "JSON message didn't have the expected format: "
+                    + new String(serialized, offset, length);
+            Log.w(TAG, message, e);
+            throw new UnrecognizedMeasurementTypeException(message, e);
+        } catch(UnrecognizedMeasurementTypeException e) {
+            throw new UnrecognizedMeasurementTypeException(
+                    e.getMessage() + " in: " +
+                    new String(serialized, offset, length));
+        }
+    }
+
+    private static void deserialize(JsonParser parser,
+            RawMeasurement measurement)
+            throws IOException, UnrecognizedMeasurementTypeException {
+        try {
+            if(parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new UnrecognizedMeasurementTypeException(
+                        "Expected a JSON object");
+            }
+
+            JsonToken token;
+            while((token = parser.nextToken()) != JsonToken.END_OBJECT) {
+                if(token == null) {
+                    throw new UnrecognizedMeasurementTypeException(
+                            "Unexpected end of message");
+                }
+
+                // Field names are canonicalized by the parser's symbol table,
+                // so this doesn't allocate and the comparisons are almost
+                // always satisfied by the identity check in equals().
                 String field = parser.getCurrentName();
                 parser.nextToken();
                 if(JsonSerializer.NAME_FIELD.equals(field)) {
-                    measurement.mName = parser.getText();
+                    // Look the name up from the parser's own character
+                    // buffer so known names don't allocate a String
+                    int id = MeasurementNames.getId(
+                            parser.getTextCharacters(),
+                            parser.getTextOffset(), parser.getTextLength());
+                    if(id != MeasurementNames.UNKNOWN_ID) {
+                        measurement.mNameId = id;
+                        measurement.mName = MeasurementNames.getName(id);
+                    } else {
+                        measurement.setName(parser.getText());
+                    }
                 } else if(JsonSerializer.VALUE_FIELD.equals(field)) {
                     measurement.mValue = parseUnknownType(parser);
                 } else if(JsonSerializer.EVENT_FIELD.equals(field)) {
@@ -182,45 +468,106 @@ public class RawMeasurement implements Parcelable {
                     // with fractional parts - we multiply to get pure
                     // milliseconds and then chop off anything more precise.
                     measurement.mTimestamp =
-                        (long) (parser.getNumberValue().doubleValue() * 1000);
+                        (long) (parser.getDoubleValue() * 1000);
+                } else {
+                    parser.skipChildren();
                 }
             }
+        } finally {
+            parser.close();
+        }
 
-            if(measurement.mName == null) {
-                throw new UnrecognizedMeasurementTypeException(
-                        "Missing name in: " + measurementString);
-            }
-            if(measurement.mValue == null) {
-                throw new UnrecognizedMeasurementTypeException(
-                        "Missing value in: " + measurementString);
-            }
-        } catch(IOException e) {
-            String message = "JSON message didn't have the expected format: "
-                    + measurementString;
-            Log.w(TAG, message, e);
-            throw new UnrecognizedMeasurementTypeException(message, e);
+        if(measurement.mName == null) {
+            throw new UnrecognizedMeasurementTypeException("Missing name");
+        }
+        if(measurement.mValue == null) {
+            throw new UnrecognizedMeasurementTypeException("Missing value");
         }
-        measurement.mCachedSerialization = measurementString;
     }
 
-    private static Object parseUnknownType(JsonParser parser) {
-        Object value = null;
-        try {
-            value = parser.getNumberValue();
-        } catch(JsonParseException e) {
-            try {
-                value = parser.getBooleanValue();
-            } catch(JsonParseException e2) {
-                try {
-                    value = parser.getText();
-                } catch(JsonParseException e3) {
-                } catch(IOException e4) {
-                }
-            } catch(IOException e5) {
-            }
-        } catch(IOException e) {
+    private static Object parseUnknownType(JsonParser parser)
+            throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if(token == null) {
+            return null;
+        }
+
+        switch(token) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getNumberValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_STRING:
+                return parser.getText();
+            default:
+                // nulls, objects and arrays aren't valid values
+                parser.skipChildren();
+                return null;
+        }
+    }
+
+    private static int getParcelType(Object value) {
+        if(value == null) {
+            return PARCEL_TYPE_NONE;
+        } else if(value instanceof Double) {
+            return PARCEL_TYPE_DOUBLE;
+        } else if(value instanceof Integer) {
+            return PARCEL_TYPE_INTEGER;
+        } else if(value instanceof Long) {
+            return PARCEL_TYPE_LONG;
+        } else if(value instanceof Boolean) {
+            return ((Boolean) value) ? PARCEL_TYPE_TRUE : PARCEL_TYPE_FALSE;
+        } else if(value instanceof String) {
+            return PARCEL_TYPE_STRING;
+        }
+        return PARCEL_TYPE_OTHER;
+    }
+
+    private static void writeParcelValue(Parcel out, int type, Object value) {
+        switch(type) {
+            case PARCEL_TYPE_DOUBLE:
+                out.writeDouble((Double) value);
+                break;
+            case PARCEL_TYPE_INTEGER:
+                out.writeInt((Integer) value);
+                break;
+            case PARCEL_TYPE_LONG:
+                out.writeLong((Long) value);
+                break;
+            case PARCEL_TYPE_STRING:
+                out.writeString((String) value);
+                break;
+            case PARCEL_TYPE_OTHER:
+                out.writeValue(value);
+                break;
+            default:
+                // The type is all there is to write
+                break;
+        }
+    }
+
+    private static Object readParcelValue(Parcel in, int type) {
+        switch(type) {
+            case PARCEL_TYPE_DOUBLE:
+                return in.readDouble();
+            case PARCEL_TYPE_INTEGER:
+                return in.readInt();
+            case PARCEL_TYPE_LONG:
+                return in.readLong();
+            case PARCEL_TYPE_TRUE:
+                return Boolean.TRUE;
+            case PARCEL_TYPE_FALSE:
+                return Boolean.FALSE;
+            case PARCEL_TYPE_STRING:
+                return in.readString();
+            case PARCEL_TYPE_OTHER:
+                return in.readValue(null);
+            default:
+                return null;
         }
-        return value;
     }
 
     private RawMeasurement(Parcel in)
@@ -234,9 +581,24 @@ public class RawMeasurement implements Parcelable {
         timestamp();
     }
 
+    private void setName(String name) {
+        mNameId = MeasurementNames.getId(name);
+        if(mNameId != MeasurementNames.UNKNOWN_ID) {
+            mName = MeasurementNames.getName(mNameId);
+        } else {
+            mName = name;
+        }
+    }
+
     private void timestamp() {
         if(!isTimestamped()) {
             mTimestamp = System.currentTimeMillis();
+            // A message parsed without a timestamp isn't what we'd write now
+            invalidateSerialization();
         }
     }
+
+    private synchronized void invalidateSerialization() {
+        mCachedSerialization = null;
+    }
 }
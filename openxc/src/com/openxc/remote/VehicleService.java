@@ -1,5 +1,7 @@
 package com.openxc.remote;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -7,19 +9,26 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import android.app.Service;
 import android.content.Intent;
 import android.os.IBinder;
+import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
 import com.openxc.DataPipeline;
+import com.openxc.DeliveryPolicy;
 import com.openxc.interfaces.VehicleInterface;
 import com.openxc.interfaces.VehicleInterfaceException;
 import com.openxc.interfaces.VehicleInterfaceFactory;
 import com.openxc.interfaces.VehicleInterfaceManagerUtils;
 import com.openxc.interfaces.usb.UsbVehicleInterface;
+import com.openxc.measurements.VehicleButtonEvent;
+import com.openxc.measurements.VehicleDoorStatus;
+import com.openxc.sinks.DataSinkException;
 import com.openxc.sinks.RemoteCallbackSink;
+import com.openxc.sinks.SharedMemorySink;
 import com.openxc.sinks.VehicleDataSink;
 import com.openxc.sources.ApplicationSource;
 import com.openxc.sources.DataSourceException;
 import com.openxc.sources.VehicleDataSource;
+import com.openxc.util.LatencyTracer;
 
 /**
  * The VehicleService is the centralized source of all vehicle data.
@@ -48,12 +57,15 @@ import com.openxc.sources.VehicleDataSource;
  */
 public class VehicleService extends Service {
     private final static String TAG = "VehicleService";
+    private final static String MEASUREMENT_BUFFER_FILENAME =
+            "measurements.ring";
 
     private DataPipeline mPipeline = new DataPipeline();
     private ApplicationSource mApplicationSource = new ApplicationSource();
     private CopyOnWriteArrayList<VehicleInterface> mInterfaces =
             new CopyOnWriteArrayList<VehicleInterface>();
     private RemoteCallbackSink mNotifier = new RemoteCallbackSink();
+    private volatile SharedMemorySink mSharedMemorySink;
 
     @Override
     public void onCreate() {
@@ -86,6 +98,12 @@ public class VehicleService extends Service {
     }
 
     private void initializeDefaultSinks(DataPipeline pipeline) {
+        // Events are transitions, so applications need to see all of them -
+        // but a stalled application shouldn't stall the service either
+        mNotifier.setDeliveryPolicy(VehicleButtonEvent.ID,
+                DeliveryPolicy.DROP_OLDEST);
+        mNotifier.setDeliveryPolicy(VehicleDoorStatus.ID,
+                DeliveryPolicy.DROP_OLDEST);
         pipeline.addSink(mNotifier);
     }
 
@@ -121,10 +139,47 @@ public class VehicleService extends Service {
                 mNotifier.unregister(listener);
             }
 
+            public ParcelFileDescriptor openMeasurementBuffer(
+                    VehicleServiceListener listener) {
+                SharedMemorySink sink = getSharedMemorySink();
+                if(sink == null) {
+                    return null;
+                }
+
+                try {
+                    ParcelFileDescriptor descriptor = sink.open();
+                    Log.i(TAG, "Adding shared memory listener " + listener);
+                    sink.register(listener);
+                    return descriptor;
+                } catch(IOException e) {
+                    Log.w(TAG, "Unable to open measurement buffer", e);
+                    return null;
+                }
+            }
+
+            public void closeMeasurementBuffer(
+                    VehicleServiceListener listener) {
+                SharedMemorySink sink = mSharedMemorySink;
+                if(sink != null) {
+                    Log.i(TAG, "Removing shared memory listener " + listener);
+                    sink.unregister(listener);
+                }
+            }
+
             public int getMessageCount() {
                 return VehicleService.this.mPipeline.getMessageCount();
             }
 
+            public PipelineStatistics getStatistics() {
+                return VehicleService.this.mPipeline.getStatistics();
+            }
+
+            public void setLatencySampleInterval(int interval) {
+                Log.i(TAG, "Tracing the latency of 1 in every " + interval +
+                        " measurements");
+                LatencyTracer.setSampleInterval(Math.max(0, interval));
+            }
+
             public void addVehicleInterface(String interfaceName,
                     String resource) {
                 VehicleService.this.addVehicleInterface(
@@ -152,6 +207,23 @@ public class VehicleService extends Service {
             }
     };
 
+    /**
+     * The shared memory sink is only created the first time an application
+     * asks for it, since it costs a file and a copy of every measurement.
+     */
+    private synchronized SharedMemorySink getSharedMemorySink() {
+        if(mSharedMemorySink == null) {
+            try {
+                mSharedMemorySink = new SharedMemorySink(
+                        new File(getCacheDir(), MEASUREMENT_BUFFER_FILENAME));
+                mPipeline.addSink(mSharedMemorySink);
+            } catch(DataSinkException e) {
+                Log.w(TAG, "Unable to create shared measurement buffer", e);
+            }
+        }
+        return mSharedMemorySink;
+    }
+
     private void addVehicleInterface(
             Class<? extends VehicleInterface> interfaceType) {
         addVehicleInterface(interfaceType, null);
@@ -1,14 +1,13 @@
 package com.openxc.sinks;
 
-import java.util.Iterator;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-
-import android.util.Log;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import com.openxc.DeliveryPolicy;
+import com.openxc.MeasurementQueue;
 import com.openxc.remote.RawMeasurement;
+import com.openxc.util.LatencyHistogram;
 
 /**
  * Functionality to notify multiple clients asynchronously of new measurements.
@@ -20,38 +19,184 @@ import com.openxc.remote.RawMeasurement;
  * new values.
  *
  * New measurments are queued up and propagated to receivers in a separate
- * thread, to avoid blocking the original sender of the data.
+ * thread, to avoid blocking the original sender of the data - with the default
+ * policy, handing off a measurement never takes a lock, and the notification
+ * thread is only woken up if it's waiting for work. Subclasses that
+ * know nobody is interested in a measurement can override
+ * {@link #shouldPropagate(RawMeasurement)} to keep it out of the queue.
+ *
+ * Each time the notification thread wakes up, it drains everything queued
+ * since the last time and hands it to
+ * {@link #propagateMeasurements(List)} in batches of at most
+ * {@link #setMaximumBatchSize(int)} measurements. Sinks that can deliver a
+ * batch more cheaply than each measurement individually (e.g. over a binder
+ * transaction) can also set a batch latency with
+ * {@link #setMaximumBatchLatency(long)} - the thread will wait up to that long
+ * after the first new measurement for more to arrive.
+ *
+ * By default only the latest value of each measurement waits in the queue, so
+ * a slow receiver sees fewer updates but is never more than one value behind.
+ * Receivers that need every value (e.g. every button press) can choose a
+ * different {@link DeliveryPolicy} for the whole sink or for specific
+ * measurements; {@link #getOverwrittenCount()} and {@link #getDroppedCount()}
+ * report what each policy cost.
+ *
+ * The time spent propagating each measurement is recorded in
+ * {@link #getLatency()}.
  */
 public abstract class AbstractQueuedCallbackSink extends BaseVehicleDataSink {
-    private final static String TAG = "AbstractQueuedCallbackSink";
+    public final static int DEFAULT_MAXIMUM_BATCH_SIZE = 64;
 
     private NotificationThread mNotificationThread = new NotificationThread();
-    private Lock mNotificationsLock = new ReentrantLock();
-    private Condition mNotificationReceived = mNotificationsLock.newCondition();
-    private ConcurrentHashMap<String, RawMeasurement> mNotifications =
-            new ConcurrentHashMap<String, RawMeasurement>(32);
+    private final MeasurementQueue mNotifications;
+    private volatile int mMaximumBatchSize = DEFAULT_MAXIMUM_BATCH_SIZE;
+    private volatile long mMaximumBatchLatencyNanos = 0;
+    private final LatencyHistogram mLatency = new LatencyHistogram();
 
     public AbstractQueuedCallbackSink() {
+        this(MeasurementQueue.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param queueCapacity the maximum number of measurements waiting to be
+     *      propagated.
+     */
+    public AbstractQueuedCallbackSink(int queueCapacity) {
+        mNotifications = new MeasurementQueue(queueCapacity,
+                DeliveryPolicy.COALESCE_LATEST);
         mNotificationThread.start();
     }
 
     public synchronized void stop() {
         mNotificationThread.done();
+        mNotifications.close();
+    }
+
+    /**
+     * Set the delivery policy for measurements that don't have their own.
+     */
+    public void setDeliveryPolicy(DeliveryPolicy policy) {
+        mNotifications.setDefaultPolicy(policy);
+    }
+
+    /**
+     * Set the delivery policy for one measurement.
+     *
+     * @param measurementId the ID of the measurement.
+     * @param policy the policy, or null to use the sink's default.
+     */
+    public void setDeliveryPolicy(String measurementId,
+            DeliveryPolicy policy) {
+        mNotifications.setPolicy(measurementId, policy);
+    }
+
+    public DeliveryPolicy getDeliveryPolicy() {
+        return mNotifications.getDefaultPolicy();
+    }
+
+    /**
+     * @return the number of values replaced by a newer one before they were
+     *      propagated.
+     */
+    public long getOverwrittenCount() {
+        return mNotifications.getOverwrittenCount();
+    }
+
+    /**
+     * @return the number of values dropped because the queue was full.
+     */
+    public long getDroppedCount() {
+        return mNotifications.getDroppedCount();
+    }
+
+    /**
+     * @return the number of measurements waiting to be propagated.
+     */
+    public int getQueueSize() {
+        return mNotifications.size();
+    }
+
+    /**
+     * @return the time spent propagating each measurement, averaged over the
+     *      batch it was propagated in.
+     */
+    public LatencyHistogram getLatency() {
+        return mLatency;
+    }
+
+    /**
+     * Set the largest number of measurements passed to
+     * {@link #propagateMeasurements(List)} at once.
+     */
+    public void setMaximumBatchSize(int size) {
+        if(size < 1) {
+            throw new IllegalArgumentException(
+                    "Batch size must be at least 1, not " + size);
+        }
+        mMaximumBatchSize = size;
+    }
+
+    public int getMaximumBatchSize() {
+        return mMaximumBatchSize;
+    }
+
+    /**
+     * Set how long to wait for more measurements to fill a batch once a new
+     * one arrives. The default is 0, i.e. propagate right away.
+     *
+     * @param milliseconds the maximum added delay in milliseconds.
+     */
+    public void setMaximumBatchLatency(long milliseconds) {
+        mMaximumBatchLatencyNanos = TimeUnit.MILLISECONDS.toNanos(
+                Math.max(0, milliseconds));
+    }
+
+    public long getMaximumBatchLatency() {
+        return TimeUnit.NANOSECONDS.toMillis(mMaximumBatchLatencyNanos);
     }
 
     public boolean receive(RawMeasurement rawMeasurement)
             throws DataSinkException {
         super.receive(rawMeasurement);
-        mNotificationsLock.lock();
-        mNotifications.put(rawMeasurement.getName(), rawMeasurement);
-        mNotificationReceived.signal();
-        mNotificationsLock.unlock();
+        if(!shouldPropagate(rawMeasurement)) {
+            return true;
+        }
+
+        try {
+            mNotifications.put(rawMeasurement);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataSinkException(
+                    "Interrupted while waiting for room in the queue", e);
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the measurement doesn't need to be propagated to any
+     *      receivers - it's still stored as the last known value.
+     */
+    protected boolean shouldPropagate(RawMeasurement rawMeasurement) {
         return true;
     }
 
     abstract protected void propagateMeasurement(String measurementId,
             RawMeasurement measurement);
 
+    /**
+     * Propagate a batch of measurements. Measurements with the same
+     * {@link DeliveryPolicy} are in the order they were received.
+     *
+     * By default this calls {@link #propagateMeasurement(String,
+     * RawMeasurement)} for each of them. The list is reused for the next
+     * batch, so don't keep a reference to it.
+     */
+    protected void propagateMeasurements(List<RawMeasurement> measurements) {
+        for(RawMeasurement measurement : measurements) {
+            propagateMeasurement(measurement.getName(), measurement);
+        }
+    }
+
     private class NotificationThread extends Thread {
         private boolean mRunning = true;
 
@@ -59,41 +204,35 @@ public abstract class AbstractQueuedCallbackSink extends BaseVehicleDataSink {
             return mRunning;
         }
 
+        // Nothing on the stop path uses the Android log, so queued sinks can
+        // be stopped from plain JVM code and tests
         public synchronized void done() {
-            Log.d(TAG, "Stopping notification thread");
             mRunning = false;
-            // A context switch right can cause a race condition if we
-            // used take() instead of poll(): when mRunning is set to
-            // false and interrupt is called but we haven't called
-            // take() yet, so nobody is waiting. By using poll we can not be
-            // locked for more than 1s.
+            // Closing the queue also wakes us up, so this can't be missed even
+            // if we haven't started waiting yet
             interrupt();
         }
 
         public void run() {
+            List<RawMeasurement> batch = new ArrayList<RawMeasurement>();
             while(isRunning()) {
-                mNotificationsLock.lock();
                 try {
-                    if(mNotifications.isEmpty()) {
-                        mNotificationReceived.await();
-                    }
+                    mNotifications.awaitNotEmpty();
+                    mNotifications.awaitSize(mMaximumBatchSize,
+                            mMaximumBatchLatencyNanos);
                 } catch(InterruptedException e) {
-                    Log.d(TAG, "Interrupted while waiting for a new " +
-                            "item for notification -- likely shutting down");
+                    // Interrupted by done() - shutting down
                     return;
-                } finally {
-                    mNotificationsLock.unlock();
                 }
 
-                // This iterator is weakly consistent, so we don't need the lock
-                Iterator<RawMeasurement> it = mNotifications.values().iterator();
-                while(it.hasNext()) {
-                    RawMeasurement measurement = it.next();
-                    propagateMeasurement(measurement.getName(), measurement);
-                    it.remove();
+                while(mNotifications.drainTo(batch, mMaximumBatchSize) > 0) {
+                    long start = System.nanoTime();
+                    propagateMeasurements(batch);
+                    mLatency.record((System.nanoTime() - start) / batch.size(),
+                            batch.size());
+                    batch.clear();
                 }
             }
-            Log.d(TAG, "Stopped measurement notifier");
         }
     }
 }
@@ -1,9 +1,8 @@
 package com.openxc.sinks;
 
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
 
+import com.openxc.MeasurementStore;
 import com.openxc.remote.RawMeasurement;
 
 /**
@@ -12,35 +11,70 @@ import com.openxc.remote.RawMeasurement;
  * Many sinks require a reference to last known value of all measurements. This
  * class encapsulates the functionality require to store a reference to the
  * measurements data structure and query it for values.
+ *
+ * When the sink is added to a {@link com.openxc.DataPipeline}, the pipeline
+ * gives it its own {@link MeasurementStore} so the values aren't duplicated
+ * in every sink. A sink used on its own keeps a private store instead.
  */
 public class BaseVehicleDataSink implements VehicleDataSink {
-    private Map<String, RawMeasurement> mMeasurements =
-            new ConcurrentHashMap<String, RawMeasurement>();
+    private volatile MeasurementStore mMeasurements;
+    private volatile boolean mSharedMeasurements = false;
 
     /**
      * Receive a raw measurement, deserialized to primatives.
      *
      * Children of this class can call super.receive() if they need to store
      * copies of received measurements to access via the get(String) method.
+     * If the sink is sharing a pipeline's store, the pipeline has already
+     * stored the measurement and this does nothing.
      */
     public boolean receive(RawMeasurement measurement) throws DataSinkException {
-        mMeasurements.put(measurement.getName(), measurement);
+        if(!mSharedMeasurements) {
+            getMeasurementStore().put(measurement);
+        }
         return true;
     }
 
+    /**
+     * Use a store of last known values that's kept up to date by someone else,
+     * usually a {@link com.openxc.DataPipeline}.
+     *
+     * @param store the shared store, or null to go back to a private store.
+     */
+    public void setMeasurementStore(MeasurementStore store) {
+        mMeasurements = store;
+        mSharedMeasurements = store != null;
+    }
+
     public boolean containsMeasurement(String measurementId) {
-        return mMeasurements.containsKey(measurementId);
+        return getMeasurementStore().contains(measurementId);
     }
 
     public RawMeasurement get(String measurementId) {
-        return mMeasurements.get(measurementId);
+        return getMeasurementStore().get(measurementId);
     }
 
-    public Set<Map.Entry<String, RawMeasurement>> getMeasurements() {
-        return mMeasurements.entrySet();
+    /**
+     * @return a snapshot of the last known value of every measurement.
+     */
+    public List<RawMeasurement> getMeasurements() {
+        return getMeasurementStore().getAll();
     }
 
     public void stop() {
         // do nothing unless you need it
     }
+
+    protected MeasurementStore getMeasurementStore() {
+        MeasurementStore store = mMeasurements;
+        if(store == null) {
+            synchronized(this) {
+                if(mMeasurements == null) {
+                    mMeasurements = new MeasurementStore();
+                }
+                store = mMeasurements;
+            }
+        }
+        return store;
+    }
 }
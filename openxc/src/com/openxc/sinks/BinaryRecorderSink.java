@@ -0,0 +1,31 @@
+package com.openxc.sinks;
+
+import java.io.IOException;
+
+import com.openxc.sources.trace.BinaryTraceWriter;
+import com.openxc.sources.trace.TraceWriter;
+import com.openxc.util.FileOpener;
+
+/**
+ * Record raw vehicle measurements to a file in the compact binary trace
+ * format.
+ *
+ * This works just like a {@link FileRecorderSink}, including splitting the
+ * recording by trip, but the traces are several times smaller and can be
+ * played back by a {@link com.openxc.sources.trace.TraceVehicleDataSource}
+ * without parsing any JSON.
+ *
+ * @see BinaryTraceWriter
+ */
+public class BinaryRecorderSink extends FileRecorderSink {
+    public BinaryRecorderSink(FileOpener fileOpener) throws DataSinkException {
+        super(fileOpener);
+    }
+
+    @Override
+    protected TraceWriter openWriter(FileOpener fileOpener, String basename)
+            throws IOException {
+        return new BinaryTraceWriter(fileOpener.openStreamForWriting(
+                    basename + BinaryTraceWriter.FILE_EXTENSION));
+    }
+}
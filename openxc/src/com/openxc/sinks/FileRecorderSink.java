@@ -1,6 +1,5 @@
 package com.openxc.sinks;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
@@ -10,6 +9,8 @@ import java.util.Locale;
 import android.util.Log;
 
 import com.openxc.remote.RawMeasurement;
+import com.openxc.sources.trace.JsonTraceWriter;
+import com.openxc.sources.trace.TraceWriter;
 import com.openxc.util.FileOpener;
 
 /**
@@ -23,6 +24,9 @@ import com.openxc.util.FileOpener;
  * The heuristic is very simple: if we haven't received any new data in a while,
  * consider the previous trip to have ended. When activity resumes, start a new
  * trip.
+ *
+ * Subclasses can record in a different trace format by overriding
+ * {@link #openWriter(FileOpener, String)}.
  */
 public class FileRecorderSink extends BaseVehicleDataSink {
     private final static String TAG = "FileRecorderSink";
@@ -31,7 +35,7 @@ public class FileRecorderSink extends BaseVehicleDataSink {
             new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss", Locale.US);
 
     private FileOpener mFileOpener;
-    private BufferedWriter mWriter;
+    private TraceWriter mWriter;
     private Calendar mLastMessageReceived;
 
     public FileRecorderSink(FileOpener fileOpener) throws DataSinkException {
@@ -60,8 +64,7 @@ public class FileRecorderSink extends BaseVehicleDataSink {
 
         mLastMessageReceived = GregorianCalendar.getInstance();
         try {
-            mWriter.write(measurement.serialize());
-            mWriter.newLine();
+            mWriter.write(measurement);
         } catch(IOException e) {
             Log.w(TAG, "Unable to write measurement to file", e);
             return false;
@@ -95,15 +98,27 @@ public class FileRecorderSink extends BaseVehicleDataSink {
         }
     }
 
+    /**
+     * Open a new trace file.
+     *
+     * @param basename the name of the file without an extension, from the
+     *      time it's opened.
+     * @return a writer for the file.
+     */
+    protected TraceWriter openWriter(FileOpener fileOpener, String basename)
+            throws IOException {
+        return new JsonTraceWriter(fileOpener.openForWriting(
+                    basename + ".json"));
+    }
+
     private synchronized Calendar openTimestampedFile() throws IOException {
         Calendar calendar = GregorianCalendar.getInstance();
-        String filename = sDateFormatter.format(
-                calendar.getTime()) + ".json";
+        String basename = sDateFormatter.format(calendar.getTime());
         if(mWriter != null) {
             close();
         }
-        mWriter = mFileOpener.openForWriting(filename);
-        Log.i(TAG, "Opened trace file " + filename + " for writing");
+        mWriter = openWriter(mFileOpener, basename);
+        Log.i(TAG, "Opened trace file " + basename + " for writing");
         return calendar;
     }
 }
@@ -0,0 +1,21 @@
+package com.openxc.sinks;
+
+import java.util.Set;
+
+/**
+ * A data sink that only wants some measurements.
+ *
+ * A {@link com.openxc.DataPipeline} only sends a filtered sink the
+ * measurements it's interested in, so the sink isn't called at all for the
+ * rest - e.g. a sink that only uses the vehicle's location doesn't need to
+ * hear about every engine speed update.
+ *
+ * The pipeline reads the interests when the sink is added, so they shouldn't
+ * change afterwards.
+ */
+public interface FilteredVehicleDataSink extends VehicleDataSink {
+    /**
+     * @return the IDs of the measurements this sink wants to receive.
+     */
+    public Set<String> getMeasurementInterests();
+}
@@ -1,40 +1,53 @@
 package com.openxc.sinks;
 
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import android.util.Log;
 
 import com.google.common.base.Objects;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
 import com.openxc.NoValueException;
 import com.openxc.measurements.BaseMeasurement;
 import com.openxc.measurements.Measurement;
 import com.openxc.measurements.UnrecognizedMeasurementTypeException;
+import com.openxc.remote.MeasurementNames;
 import com.openxc.remote.RawMeasurement;
+import com.openxc.util.LatencyTracer;
 
 /**
  * A data sink that sends new measurements of specific types to listeners.
  *
  * Applications requesting asynchronous updates for specific signals get their
  * values through this sink.
+ *
+ * Listeners are indexed by the {@link MeasurementNames} ID of the measurement
+ * they're interested in, so a measurement nobody is listening for is dropped
+ * with a single array read before it's queued. A typed {@link Measurement} is
+ * only built for measurements that have listeners, and the same instance is
+ * sent to all of them.
+ *
+ * This is the last hop of a measurement traced by {@link LatencyTracer} -
+ * its whole trace is recorded just before it's sent to the listeners.
  */
 public class MeasurementListenerSink extends AbstractQueuedCallbackSink {
     private final static String TAG = "MeasurementListenerSink";
 
-    private Multimap<Class<? extends Measurement>,
-            Measurement.Listener> mListeners = HashMultimap.create();
-
-    public MeasurementListenerSink() {
-        mListeners = HashMultimap.create();
-        mListeners = Multimaps.synchronizedMultimap(mListeners);
-    }
+    private final AtomicReferenceArray<Listeners> mListeners =
+            new AtomicReferenceArray<Listeners>(
+                    MeasurementNames.MAXIMUM_NAMES);
+    // Only used if the name table is full
+    private final Map<String, Listeners> mUnindexedListeners =
+            new ConcurrentHashMap<String, Listeners>();
 
     public void register(Class<? extends Measurement> measurementType,
             Measurement.Listener listener)
             throws UnrecognizedMeasurementTypeException {
-        mListeners.put(measurementType, listener);
-
         String measurementId = BaseMeasurement.getIdForClass(measurementType);
+        getOrCreateListeners(measurementId, measurementType).add(listener);
+
         if(containsMeasurement(measurementId)) {
             // send the last known value to the new listener
             try {
@@ -47,31 +60,116 @@ public class MeasurementListenerSink extends AbstractQueuedCallbackSink {
 
     public void unregister(Class<? extends Measurement> measurementType,
             Measurement.Listener listener) {
-        mListeners.remove(measurementType, listener);
+        try {
+            Listeners listeners = getListeners(
+                    BaseMeasurement.getIdForClass(measurementType));
+            if(listeners != null) {
+                listeners.remove(listener);
+            }
+        } catch(UnrecognizedMeasurementTypeException e) {
+            // it couldn't have been registered in the first place
+        }
     }
 
     @Override
     public String toString() {
+        int count = 0;
+        for(int i = 0; i < mListeners.length(); i++) {
+            Listeners listeners = mListeners.get(i);
+            if(listeners != null) {
+                count += listeners.size();
+            }
+        }
+        for(Listeners listeners : mUnindexedListeners.values()) {
+            count += listeners.size();
+        }
+
         return Objects.toStringHelper(this)
-            .add("numListeners", mListeners.size())
+            .add("numListeners", count)
+            .add("overwritten", getOverwrittenCount())
+            .add("dropped", getDroppedCount())
             .toString();
     }
 
+    @Override
+    protected boolean shouldPropagate(RawMeasurement rawMeasurement) {
+        Listeners listeners = getListeners(rawMeasurement);
+        return listeners != null && !listeners.isEmpty();
+    }
+
     protected void propagateMeasurement(String measurementId,
             RawMeasurement rawMeasurement) {
+        Listeners listeners = getListeners(rawMeasurement);
+        if(listeners == null || listeners.isEmpty()) {
+            return;
+        }
+
+        if(rawMeasurement.isTraced()) {
+            rawMeasurement.stamp(LatencyTracer.DELIVERED);
+            LatencyTracer.record(rawMeasurement.getTraceStamps());
+        }
+
         try {
             Measurement measurement = BaseMeasurement.getMeasurementFromRaw(
-                    rawMeasurement);
-            for(Measurement.Listener listener :
-                    mListeners.get(BaseMeasurement.getClassForId(measurementId))) {
+                    listeners.getType(), rawMeasurement);
+            for(Measurement.Listener listener : listeners) {
                 listener.receive(measurement);
             }
         } catch(UnrecognizedMeasurementTypeException e) {
-            // This happens quite often if nobody has registered to receive
-            // updates for the specific signal. It can be an error, but if we
-            // log here it's really, really noisy.
+            Log.w(TAG, "Unable to build a measurement for listeners", e);
         } catch(NoValueException e) {
             Log.w(TAG, "Received notification for a blank measurement", e);
         }
     }
+
+    private Listeners getListeners(RawMeasurement rawMeasurement) {
+        int id = rawMeasurement.getNameId();
+        if(id != MeasurementNames.UNKNOWN_ID) {
+            return mListeners.get(id);
+        }
+        return getListeners(rawMeasurement.getName());
+    }
+
+    private Listeners getListeners(String measurementId) {
+        int id = MeasurementNames.findId(measurementId);
+        if(id != MeasurementNames.UNKNOWN_ID) {
+            return mListeners.get(id);
+        } else if(measurementId != null) {
+            return mUnindexedListeners.get(measurementId);
+        }
+        return null;
+    }
+
+    private synchronized Listeners getOrCreateListeners(String measurementId,
+            Class<? extends Measurement> measurementType) {
+        Listeners listeners = getListeners(measurementId);
+        if(listeners == null) {
+            listeners = new Listeners(measurementType);
+            int id = MeasurementNames.getId(measurementId);
+            if(id != MeasurementNames.UNKNOWN_ID) {
+                mListeners.set(id, listeners);
+            } else {
+                mUnindexedListeners.put(measurementId, listeners);
+            }
+        }
+        return listeners;
+    }
+
+    /**
+     * The listeners for a single measurement type - the set is safe to
+     * iterate while listeners are added and removed from other threads.
+     */
+    private static class Listeners
+            extends CopyOnWriteArraySet<Measurement.Listener> {
+        private static final long serialVersionUID = 1L;
+        private final Class<? extends Measurement> mType;
+
+        public Listeners(Class<? extends Measurement> type) {
+            mType = type;
+        }
+
+        public Class<? extends Measurement> getType() {
+            return mType;
+        }
+    }
 }
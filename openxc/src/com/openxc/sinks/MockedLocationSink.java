@@ -1,6 +1,10 @@
 package com.openxc.sinks;
 
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 import android.content.Context;
 import android.location.Location;
@@ -25,9 +29,13 @@ import com.openxc.remote.RawMeasurement;
  * with mocked locations enabled, or the specific OpenXC
  * Latitude/Longitude measurements.
  */
-public class MockedLocationSink extends ContextualVehicleDataSink {
+public class MockedLocationSink extends ContextualVehicleDataSink
+        implements FilteredVehicleDataSink {
     public final static String TAG = "MockedLocationSink";
     public final static String VEHICLE_LOCATION_PROVIDER = "vehicle";
+    private final static Set<String> INTERESTS = Collections.unmodifiableSet(
+            new HashSet<String>(Arrays.asList(Latitude.ID, Longitude.ID,
+                    VehicleSpeed.ID)));
 
     private LocationManager mLocationManager;
     private boolean mOverwriteNativeStatus;
@@ -50,6 +58,10 @@ public class MockedLocationSink extends ContextualVehicleDataSink {
         return false;
     }
 
+    public Set<String> getMeasurementInterests() {
+        return INTERESTS;
+    }
+
     /**
      * Enable or disable overwriting Android's native GPS values with those from
      * the vehicle.
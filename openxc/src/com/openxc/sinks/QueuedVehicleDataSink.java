@@ -0,0 +1,100 @@
+package com.openxc.sinks;
+
+import com.google.common.base.Objects;
+import com.openxc.DeliveryPolicy;
+import com.openxc.MeasurementQueue;
+import com.openxc.MeasurementStore;
+import com.openxc.remote.RawMeasurement;
+
+/**
+ * Give another data sink its own queue and thread, so it can't slow down the
+ * data source or any other sink.
+ *
+ * Measurements received by this sink are queued and passed on to the wrapped
+ * sink from a separate thread. If the wrapped sink falls behind, the queue's
+ * {@link DeliveryPolicy} decides which measurements it misses - this never
+ * blocks the caller unless the policy is {@link DeliveryPolicy#LOSSLESS}.
+ *
+ * If the wrapped sink throws a {@link DataSinkException}, the exception is
+ * rethrown from the next call to {@link #receive(RawMeasurement)} so that a
+ * {@link com.openxc.DataPipeline} removes it the same way it would a
+ * synchronous sink. Like the pipeline, this class doesn't use the Android log
+ * so it can run on a plain JVM.
+ */
+public class QueuedVehicleDataSink extends AbstractQueuedCallbackSink {
+    private final VehicleDataSink mSink;
+    private volatile DataSinkException mFailure;
+
+    public QueuedVehicleDataSink(VehicleDataSink sink, DeliveryPolicy policy) {
+        this(sink, policy, MeasurementQueue.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param sink the sink to pass measurements on to.
+     * @param policy what to do with new measurements when the queue is full.
+     * @param queueCapacity the maximum number of measurements waiting for the
+     *      sink.
+     */
+    public QueuedVehicleDataSink(VehicleDataSink sink, DeliveryPolicy policy,
+            int queueCapacity) {
+        super(queueCapacity);
+        if(sink == null) {
+            throw new IllegalArgumentException("Sink can't be null");
+        }
+        mSink = sink;
+        setDeliveryPolicy(policy);
+    }
+
+    public VehicleDataSink getSink() {
+        return mSink;
+    }
+
+    @Override
+    public boolean receive(RawMeasurement measurement)
+            throws DataSinkException {
+        DataSinkException failure = mFailure;
+        if(failure != null) {
+            throw new DataSinkException("Wrapped sink " + mSink +
+                    " failed", failure);
+        }
+        return super.receive(measurement);
+    }
+
+    @Override
+    public void setMeasurementStore(MeasurementStore store) {
+        super.setMeasurementStore(store);
+        if(mSink instanceof BaseVehicleDataSink) {
+            ((BaseVehicleDataSink) mSink).setMeasurementStore(store);
+        }
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        mSink.stop();
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+            .add("sink", mSink)
+            .add("policy", getDeliveryPolicy())
+            .add("overwritten", getOverwrittenCount())
+            .add("dropped", getDroppedCount())
+            .toString();
+    }
+
+    protected void propagateMeasurement(String measurementId,
+            RawMeasurement measurement) {
+        if(mFailure != null) {
+            return;
+        }
+
+        try {
+            mSink.receive(measurement);
+        } catch(DataSinkException e) {
+            // The pipeline logs it when it removes the sink
+            mFailure = e;
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package com.openxc.sinks;
 
-import java.util.Map;
+import java.util.List;
 
 import android.os.RemoteCallbackList;
 import android.os.RemoteException;
@@ -9,6 +9,7 @@ import android.util.Log;
 import com.google.common.base.Objects;
 import com.openxc.remote.RawMeasurement;
 import com.openxc.remote.VehicleServiceListener;
+import com.openxc.util.LatencyTracer;
 
 /**
  * A data sink that sends new measurements through an AIDL interface.
@@ -17,14 +18,26 @@ import com.openxc.remote.VehicleServiceListener;
  * Android to applications using {@link com.openxc.VehicleManager}. Once
  * registered, a receiver gets all measurements regardless of their type or
  * value.
+ *
+ * Measurements are sent to each receiver in batches, one binder transaction
+ * per batch, waiting at most {@link #DEFAULT_BATCH_LATENCY_MS} for a batch to
+ * fill up by default.
+ *
+ * Measurements sampled by {@link LatencyTracer} are stamped as they leave the
+ * queue, and the service's part of their trace is recorded.
  */
 public class RemoteCallbackSink extends AbstractQueuedCallbackSink {
     private final static String TAG = "RemoteCallbackSink";
+    public final static int DEFAULT_BATCH_LATENCY_MS = 10;
 
     private int mListenerCount;
     private RemoteCallbackList<VehicleServiceListener> mListeners =
             new RemoteCallbackList<VehicleServiceListener>();
 
+    public RemoteCallbackSink() {
+        setMaximumBatchLatency(DEFAULT_BATCH_LATENCY_MS);
+    }
+
     public synchronized void register(VehicleServiceListener listener) {
         synchronized(mListeners) {
             if(mListeners.register(listener)) {
@@ -33,14 +46,17 @@ public class RemoteCallbackSink extends AbstractQueuedCallbackSink {
         }
 
         // send the last known value of all measurements to the new listener
-        for(Map.Entry<String, RawMeasurement> entry : getMeasurements()) {
-            try {
-                listener.receive(entry.getValue());
-            } catch(RemoteException e) {
-                Log.w(TAG, "Couldn't notify application " +
-                        "listener -- did it crash?", e);
-                break;
+        List<RawMeasurement> measurements = getMeasurements();
+        try {
+            for(int i = 0; i < measurements.size();
+                    i += getMaximumBatchSize()) {
+                listener.receiveBatch(toArray(measurements, i,
+                            Math.min(measurements.size(),
+                                i + getMaximumBatchSize())));
             }
+        } catch(RemoteException e) {
+            Log.w(TAG, "Couldn't notify application " +
+                    "listener -- did it crash?", e);
         }
     }
 
@@ -60,6 +76,8 @@ public class RemoteCallbackSink extends AbstractQueuedCallbackSink {
     public String toString() {
         return Objects.toStringHelper(this)
             .add("numListeners", getListenerCount())
+            .add("overwritten", getOverwrittenCount())
+            .add("dropped", getDroppedCount())
             .toString();
     }
 
@@ -79,4 +97,41 @@ public class RemoteCallbackSink extends AbstractQueuedCallbackSink {
             mListeners.finishBroadcast();
         }
     }
+
+    @Override
+    protected void propagateMeasurements(List<RawMeasurement> measurements) {
+        for(RawMeasurement measurement : measurements) {
+            if(measurement.isTraced()) {
+                measurement.stamp(LatencyTracer.SENT);
+                LatencyTracer.record(measurement.getTraceStamps());
+            }
+        }
+
+        if(measurements.size() == 1) {
+            propagateMeasurement(measurements.get(0).getName(),
+                    measurements.get(0));
+            return;
+        }
+
+        RawMeasurement[] batch = toArray(measurements, 0, measurements.size());
+        synchronized(mListeners) {
+            int i = mListeners.beginBroadcast();
+            while(i > 0) {
+                i--;
+                try {
+                    mListeners.getBroadcastItem(i).receiveBatch(batch);
+                } catch(RemoteException e) {
+                    Log.w(TAG, "Couldn't notify application " +
+                            "listener -- did it crash?", e);
+                }
+            }
+            mListeners.finishBroadcast();
+        }
+    }
+
+    private static RawMeasurement[] toArray(List<RawMeasurement> measurements,
+            int start, int end) {
+        return measurements.subList(start, end).toArray(
+                new RawMeasurement[end - start]);
+    }
 };
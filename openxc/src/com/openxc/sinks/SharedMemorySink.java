@@ -0,0 +1,157 @@
+package com.openxc.sinks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import android.os.ParcelFileDescriptor;
+import android.os.RemoteCallbackList;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.google.common.base.Objects;
+import com.openxc.remote.MeasurementRingBuffer;
+import com.openxc.remote.MeasurementRingWriter;
+import com.openxc.remote.RawMeasurement;
+import com.openxc.remote.VehicleServiceListener;
+
+/**
+ * A data sink that writes all measurements to a shared memory ring buffer.
+ *
+ * This is an alternative to the {@link RemoteCallbackSink} for sending
+ * measurements to applications. Measurements are written to a memory-mapped
+ * {@link MeasurementRingBuffer} file that applications map read-only, and the
+ * binder is only used to wake up registered receivers when new measurements
+ * are available. Wakeups are coalesced in the same way as the
+ * RemoteCallbackSink's batches, so a receiver gets at most one per
+ * {@link RemoteCallbackSink#DEFAULT_BATCH_LATENCY_MS}.
+ */
+public class SharedMemorySink extends AbstractQueuedCallbackSink {
+    private final static String TAG = "SharedMemorySink";
+
+    private final File mFile;
+    private final MeasurementRingWriter mWriter;
+    private int mListenerCount;
+    private RemoteCallbackList<VehicleServiceListener> mListeners =
+            new RemoteCallbackList<VehicleServiceListener>();
+
+    /**
+     * @param file the file to use for the ring buffer - it should be private
+     *      to the service, as receivers get access through a descriptor.
+     */
+    public SharedMemorySink(File file) throws DataSinkException {
+        this(file, MeasurementRingBuffer.DEFAULT_CAPACITY);
+    }
+
+    public SharedMemorySink(File file, int capacity) throws DataSinkException {
+        mFile = file;
+        try {
+            mWriter = new MeasurementRingWriter(file, capacity);
+        } catch(IOException e) {
+            super.stop();
+            throw new DataSinkException("Unable to create ring buffer in " +
+                    file, e);
+        }
+        setMaximumBatchLatency(RemoteCallbackSink.DEFAULT_BATCH_LATENCY_MS);
+    }
+
+    public boolean receive(RawMeasurement measurement)
+            throws DataSinkException {
+        mWriter.write(measurement);
+        return super.receive(measurement);
+    }
+
+    /**
+     * Open a read-only descriptor for the ring buffer to pass to a receiver.
+     */
+    public ParcelFileDescriptor open() throws IOException {
+        return ParcelFileDescriptor.open(mFile,
+                ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    /**
+     * Wake up a receiver when new measurements are written.
+     *
+     * A reader only sees the records written after it opens the ring, so like
+     * the {@link RemoteCallbackSink}, the last known value of every
+     * measurement is sent to the new receiver directly.
+     */
+    public synchronized void register(VehicleServiceListener listener) {
+        synchronized(mListeners) {
+            if(mListeners.register(listener)) {
+                ++mListenerCount;
+            }
+        }
+
+        List<RawMeasurement> measurements = getMeasurements();
+        try {
+            for(int i = 0; i < measurements.size();
+                    i += getMaximumBatchSize()) {
+                int end = Math.min(measurements.size(),
+                        i + getMaximumBatchSize());
+                listener.receiveBatch(measurements.subList(i, end).toArray(
+                            new RawMeasurement[end - i]));
+            }
+        } catch(RemoteException e) {
+            Log.w(TAG, "Couldn't notify application " +
+                    "listener -- did it crash?", e);
+        }
+    }
+
+    public void unregister(VehicleServiceListener listener) {
+        synchronized(mListeners) {
+            if(mListeners.unregister(listener)) {
+                --mListenerCount;
+            }
+        }
+    }
+
+    public int getListenerCount() {
+        return mListenerCount;
+    }
+
+    public synchronized void stop() {
+        super.stop();
+        mWriter.close();
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+            .add("numListeners", getListenerCount())
+            .add("writer", mWriter)
+            .toString();
+    }
+
+    @Override
+    protected boolean shouldPropagate(RawMeasurement measurement) {
+        // Only queue a wakeup if somebody's reading
+        return mListenerCount > 0;
+    }
+
+    @Override
+    protected void propagateMeasurements(List<RawMeasurement> measurements) {
+        wakeListeners();
+    }
+
+    protected void propagateMeasurement(String measurementId,
+            RawMeasurement measurement) {
+        wakeListeners();
+    }
+
+    private void wakeListeners() {
+        synchronized(mListeners) {
+            int i = mListeners.beginBroadcast();
+            while(i > 0) {
+                i--;
+                try {
+                    mListeners.getBroadcastItem(i).measurementsAvailable();
+                } catch(RemoteException e) {
+                    Log.w(TAG, "Couldn't wake application " +
+                            "listener -- did it crash?", e);
+                }
+            }
+            mListeners.finishBroadcast();
+        }
+    }
+}
@@ -1,11 +1,11 @@
 package com.openxc.sinks;
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.locks.Condition;
@@ -26,8 +26,6 @@ import org.apache.http.params.HttpParams;
 import android.content.Context;
 import android.util.Log;
 
-import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.base.Objects;
 import com.openxc.remote.RawMeasurement;
 
@@ -79,8 +77,8 @@ public class UploaderSink extends ContextualVehicleDataSink {
     }
 
     public boolean receive(RawMeasurement measurement) {
-        String data = measurement.serialize(true);
-        mRecordQueue.offer(data);
+        // Usually already serialized by another sink, e.g. FileRecorderSink
+        mRecordQueue.offer(measurement.serialize());
         if(mRecordQueue.size() >= UPLOAD_BATCH_SIZE) {
             mQueueLock.lock();
             mRecordsQueued.signal();
@@ -118,6 +116,30 @@ public class UploaderSink extends ContextualVehicleDataSink {
             .toString();
     }
 
+    /**
+     * Encode a batch of serialized measurements as the body of an upload
+     * request.
+     */
+    static String constructRequestData(List<String> records) {
+        // The records are already JSON, so they only need to be joined
+        int length = 16;
+        for(String record : records) {
+            length += record.length() + 1;
+        }
+
+        StringBuilder buffer = new StringBuilder(length);
+        buffer.append("{\"records\":[");
+        Iterator<String> recordIterator = records.iterator();
+        while(recordIterator.hasNext()) {
+            buffer.append(recordIterator.next());
+            if(recordIterator.hasNext()) {
+                buffer.append(',');
+            }
+        }
+        buffer.append("]}");
+        return buffer.toString();
+    }
+
     private static URI uriFromString(String path) throws DataSinkException {
         try {
             return new URI(path);
@@ -151,7 +173,7 @@ public class UploaderSink extends ContextualVehicleDataSink {
                     String data = constructRequestData(records);
                     HttpPost request = constructRequest(data);
                     makeRequest(request);
-                } catch(UploaderException e) {
+                } catch(DataSinkException e) {
                     Log.w(TAG, "Problem uploading the record", e);
                 } catch(InterruptedException e) {
                     Log.w(TAG, "Uploader was interrupted", e);
@@ -164,34 +186,6 @@ public class UploaderSink extends ContextualVehicleDataSink {
             mRunning = false;
         }
 
-        private String constructRequestData(ArrayList<String> records)
-                throws UploaderException {
-            StringWriter buffer = new StringWriter(512);
-            JsonFactory jsonFactory = new JsonFactory();
-            try {
-                JsonGenerator gen = jsonFactory.createJsonGenerator(buffer);
-
-                gen.writeStartObject();
-                gen.writeArrayFieldStart("records");
-                Iterator<String> recordIterator = records.iterator();
-                while(recordIterator.hasNext()) {
-                    gen.writeRaw(recordIterator.next());
-                    if(recordIterator.hasNext()) {
-                        gen.writeRaw(",");
-                    }
-                }
-                gen.writeEndArray();
-                gen.writeEndObject();
-
-                gen.close();
-            } catch(IOException e) {
-                Log.w(TAG, "Unable to encode all data to JSON -- " +
-                        "message may be incomplete", e);
-                throw new UploaderException();
-            }
-            return buffer.toString();
-        }
-
         private HttpPost constructRequest(String data)
                 throws UploaderException {
             HttpPost request = new HttpPost(mUri);
@@ -1,11 +1,13 @@
 package com.openxc.sources;
 
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import com.openxc.measurements.UnrecognizedMeasurementTypeException;
 import com.openxc.remote.RawMeasurement;
+import com.openxc.util.LatencyTracer;
 
 /**
  * A common parent for all vehicle data sources.
@@ -15,12 +17,19 @@ import com.openxc.remote.RawMeasurement;
  * {@link com.openxc.sources.VehicleDataSource} interface) and implements a
  * {@link #handleMessage(RawMeasurement)} method for subclass to call
  * with each new measurement, regardless of its origin.
+ *
+ * It also counts the measurements passed to the callback, and the raw bytes
+ * that subclasses report with {@link #addBytesReceived(int)}, so the rates can
+ * be reported in {@link com.openxc.remote.PipelineStatistics}.
  */
 public class BaseVehicleDataSource implements VehicleDataSource {
     private final static String TAG = "BaseVehicleDataSource";
     private SourceCallback mCallback;
     private final Lock mCallbackLock = new ReentrantLock();
     private final Condition mCallbackChanged = mCallbackLock.newCondition();
+    private final long mStartTime = System.nanoTime();
+    private final AtomicLong mMessageCount = new AtomicLong();
+    private final AtomicLong mByteCount = new AtomicLong();
 
     public BaseVehicleDataSource() { }
 
@@ -65,6 +74,7 @@ public class BaseVehicleDataSource implements VehicleDataSource {
      */
     protected void handleMessage(RawMeasurement measurement) {
         if(mCallback != null && measurement != null) {
+            mMessageCount.incrementAndGet();
             mCallback.receive(measurement);
         }
     }
@@ -76,6 +86,70 @@ public class BaseVehicleDataSource implements VehicleDataSource {
         }
     }
 
+    /**
+     * Pass a new serialized measurement to the callback, if set.
+     *
+     * @param data an array containing the serialized measurement.
+     * @param offset the position of the first byte of the measurement.
+     * @param length the number of bytes in the measurement.
+     */
+    protected void handleMessage(byte[] data, int offset, int length) {
+        handleMessage(data, offset, length, System.nanoTime());
+    }
+
+    /**
+     * Pass a new serialized measurement to the callback, if set, and start
+     * tracing its latency if it's sampled by {@link LatencyTracer}.
+     *
+     * @param data an array containing the serialized measurement.
+     * @param offset the position of the first byte of the measurement.
+     * @param length the number of bytes in the measurement.
+     * @param readTime when the bytes were read from the device, from
+     *      System.nanoTime().
+     */
+    protected void handleMessage(byte[] data, int offset, int length,
+            long readTime) {
+        try {
+            RawMeasurement measurement = new RawMeasurement(
+                    data, offset, length);
+            if(LatencyTracer.shouldSample()) {
+                measurement.startTrace(readTime);
+                measurement.stamp(LatencyTracer.DECODED);
+            }
+            handleMessage(measurement);
+        } catch(UnrecognizedMeasurementTypeException e) {
+        }
+    }
+
+    /**
+     * @return the number of measurements passed to the callback.
+     */
+    public long getMessageCount() {
+        return mMessageCount.get();
+    }
+
+    /**
+     * @return the number of raw bytes read from the source, if the source
+     *      reports them.
+     */
+    public long getBytesReceived() {
+        return mByteCount.get();
+    }
+
+    /**
+     * @return the time this source was created, from System.nanoTime().
+     */
+    public long getStartTime() {
+        return mStartTime;
+    }
+
+    /**
+     * Count raw bytes read from the underlying device or file.
+     */
+    protected void addBytesReceived(int count) {
+        mByteCount.addAndGet(count);
+    }
+
     /**
      * Return a string suitable as a tag for logging.
      */
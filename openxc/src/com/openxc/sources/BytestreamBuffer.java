@@ -1,17 +1,39 @@
 package com.openxc.sources;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
+import android.util.Log;
+
 /**
  * A "mixin" of sorts to be used with object composition, this contains
  * functionality common to data sources that received streams of bytes.
+ *
+ * Incoming bytes are copied into a single reusable byte array, which is
+ * scanned in place for message delimiters (a newline or a NUL byte). Complete
+ * messages are handed out as slices of that array with
+ * {@link #nextFrame()}, {@link #getFrameBuffer()}, {@link #getFrameOffset()}
+ * and {@link #getFrameLength()} - no Strings or intermediate arrays are
+ * allocated along the way. A trailing partial message stays where it is in the
+ * array until the rest of it arrives; it's only moved to the front when the
+ * array runs out of room at the end.
  */
 public class BytestreamBuffer {
     private final static String TAG = "BytestreamBuffer";
-    private final static int BUFFER_SIZE = 512;
-    private StringBuilder mBuffer = new StringBuilder(BUFFER_SIZE);
+    private final static int BUFFER_SIZE = 4096;
+    // A single message is never more than a few hundred bytes - if we go this
+    // long without a delimiter we're not reading OpenXC messages.
+    private final static int MAX_FRAME_SIZE = 64 * 1024;
+
+    private byte[] mBuffer = new byte[BUFFER_SIZE];
+    // Start of the first byte that hasn't been returned in a frame yet
+    private int mStart = 0;
+    // How far into the buffer we've already looked for a delimiter
+    private int mScanned = 0;
+    // End of the valid data in the buffer
+    private int mEnd = 0;
+    private int mFrameOffset = 0;
+    private int mFrameLength = 0;
     private double mBytesReceived = 0;
     private double mLastLoggedTransferStatsAtByte = 0;
     private final long mStartTime = System.nanoTime();
@@ -19,47 +41,130 @@ public class BytestreamBuffer {
     /**
      * Add additional bytes to the buffer from the data source.
      *
+     * Any frame previously returned by {@link #nextFrame()} is invalid after
+     * calling this method, as the underlying bytes may have moved.
+     *
      * @param bytes an array of bytes received from the interface.
      * @param length number of bytes received, and thus the amount that should
      *      be read from the array.
      */
     public void receive(byte[] bytes, int length) {
-        // Creating a new String object for each message causes the
-        // GC to go a little crazy, but I don't see another obvious way
-        // of converting the byte[] to something the StringBuilder can
-        // accept (either char[] or String). See #151.
-        String data = new String(bytes, 0, length);
-        mBuffer.append(data);
+        makeRoomFor(length);
+        System.arraycopy(bytes, 0, mBuffer, mEnd, length);
+        mEnd += length;
         mBytesReceived += length;
 
         logTransferStats();
     }
 
+    /**
+     * Advance to the next complete message in the buffer, if any.
+     *
+     * Empty messages (e.g. the blank line between a "\r\n" pair or padding
+     * NUL bytes) are skipped, as is a trailing carriage return. When this
+     * method returns true, the message is available from
+     * {@link #getFrameBuffer()} starting at {@link #getFrameOffset()} for
+     * {@link #getFrameLength()} bytes, until the next call to this method or
+     * {@link #receive(byte[], int)}.
+     *
+     * @return true if a complete message was found.
+     */
+    public boolean nextFrame() {
+        while(mScanned < mEnd) {
+            byte current = mBuffer[mScanned++];
+            if(current == '\n' || current == 0) {
+                int start = mStart;
+                int end = mScanned - 1;
+                mStart = mScanned;
+                while(end > start && mBuffer[end - 1] == '\r') {
+                    end--;
+                }
+
+                if(end > start) {
+                    mFrameOffset = start;
+                    mFrameLength = end - start;
+                    return true;
+                }
+            }
+        }
+
+        if(mStart == mEnd) {
+            // Everything's been consumed, so we can start over at the
+            // beginning of the array without copying anything
+            mStart = mScanned = mEnd = 0;
+        }
+        mFrameLength = 0;
+        return false;
+    }
+
+    /**
+     * @return the array holding the message found by the last successful call
+     *      to {@link #nextFrame()}.
+     */
+    public byte[] getFrameBuffer() {
+        return mBuffer;
+    }
+
+    /**
+     * @return the position of the first byte of the current message.
+     */
+    public int getFrameOffset() {
+        return mFrameOffset;
+    }
+
+    /**
+     * @return the length in bytes of the current message.
+     */
+    public int getFrameLength() {
+        return mFrameLength;
+    }
+
     /**
      * Parse the current byte buffer to find messages. Any messages found in the
      * buffer are removed and returned.
      *
+     * This is a convenience wrapper around {@link #nextFrame()} that allocates
+     * a String for each message - data sources reading at a high rate should
+     * use the frames directly.
+     *
      * @return A list of messages parsed and subsequently removed from the
      *      buffer, if any.
      */
     public List<String> readLines() {
-        List<String> result;
-        if(mBuffer.indexOf("\n") != -1) {
-            String[] records = mBuffer.toString().split("\n", -1);
+        List<String> result = new ArrayList<String>();
+        while(nextFrame()) {
+            result.add(new String(mBuffer, mFrameOffset, mFrameLength));
+        }
+        return result;
+    }
 
-            mBuffer = new StringBuilder(BUFFER_SIZE);
-            result = Arrays.asList(records).subList(0, records.length - 1);
+    private void makeRoomFor(int length) {
+        if(mEnd + length <= mBuffer.length) {
+            return;
+        }
+
+        int pending = mEnd - mStart;
+        if(pending + length > MAX_FRAME_SIZE) {
+            Log.w(TAG, "Dropping " + pending + " bytes received without " +
+                    "a message delimiter");
+            mStart = mScanned = mEnd;
+            pending = 0;
+        }
 
-            // Preserve any remaining, trailing incomplete messages in the
-            // buffer
-            if(records[records.length - 1].length() > 0) {
-                mBuffer.append(records[records.length - 1]);
+        byte[] destination = mBuffer;
+        if(pending + length > mBuffer.length) {
+            int size = mBuffer.length;
+            while(size < pending + length) {
+                size *= 2;
             }
-        } else {
-            result = new ArrayList<String>();
+            destination = new byte[size];
         }
 
-        return result;
+        System.arraycopy(mBuffer, mStart, destination, 0, pending);
+        mBuffer = destination;
+        mScanned -= mStart;
+        mStart = 0;
+        mEnd = pending;
     }
 
     private void logTransferStats() {
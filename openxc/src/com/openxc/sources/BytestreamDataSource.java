@@ -48,6 +48,7 @@ public abstract class BytestreamDataSource extends ContextualVehicleDataSource
 
     public void run() {
         BytestreamBuffer buffer = new BytestreamBuffer();
+        byte[] bytes = new byte[READ_BATCH_SIZE];
         while(mRunning) {
             mConnectionLock.lock();
 
@@ -70,7 +71,6 @@ public abstract class BytestreamDataSource extends ContextualVehicleDataSource
             }
 
             int received;
-            byte[] bytes = new byte[READ_BATCH_SIZE];
             try {
                 received = read(bytes);
             } catch(IOException e) {
@@ -81,9 +81,13 @@ public abstract class BytestreamDataSource extends ContextualVehicleDataSource
             }
 
             if(received > 0) {
+                long readTime = System.nanoTime();
+                addBytesReceived(received);
                 buffer.receive(bytes, received);
-                for(String record : buffer.readLines()) {
-                    handleMessage(record);
+                while(buffer.nextFrame()) {
+                    handleMessage(buffer.getFrameBuffer(),
+                            buffer.getFrameOffset(), buffer.getFrameLength(),
+                            readTime);
                 }
             }
 
@@ -7,6 +7,7 @@ import com.google.common.base.Objects;
 import com.openxc.remote.RawMeasurement;
 import com.openxc.remote.VehicleServiceInterface;
 import com.openxc.remote.VehicleServiceListener;
+import com.openxc.util.LatencyTracer;
 
 /**
  * Pass measurements from a VehicleService to an in-process callback.
@@ -55,7 +56,19 @@ public class RemoteListenerSource extends BaseVehicleDataSource {
     private VehicleServiceListener mRemoteListener =
         new VehicleServiceListener.Stub() {
             public void receive(RawMeasurement rawMeasurement) {
+                rawMeasurement.stamp(LatencyTracer.RECEIVED);
                 handleMessage(rawMeasurement);
             }
+
+            public void receiveBatch(RawMeasurement[] rawMeasurements) {
+                for(RawMeasurement rawMeasurement : rawMeasurements) {
+                    rawMeasurement.stamp(LatencyTracer.RECEIVED);
+                    handleMessage(rawMeasurement);
+                }
+            }
+
+            public void measurementsAvailable() {
+                // Only used with a SharedMemorySource
+            }
         };
 }
@@ -0,0 +1,127 @@
+package com.openxc.sources;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import android.os.ParcelFileDescriptor;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.google.common.base.Objects;
+import com.openxc.remote.MeasurementRingReader;
+import com.openxc.remote.RawMeasurement;
+import com.openxc.remote.VehicleServiceInterface;
+import com.openxc.remote.VehicleServiceListener;
+
+/**
+ * Pass measurements from a VehicleService's shared memory buffer to an
+ * in-process callback.
+ *
+ * This is an alternative to the {@link RemoteListenerSource} - instead of
+ * receiving each measurement as a Parcel, it maps the service's
+ * {@link com.openxc.sinks.SharedMemorySink} buffer read-only and reads new
+ * measurements from it when the service wakes it up. The last known value of
+ * each measurement is still sent through the binder when the buffer is
+ * opened, since the ring only has the newest records.
+ */
+public class SharedMemorySource extends BaseVehicleDataSource {
+    private final static String TAG = "SharedMemorySource";
+
+    private VehicleServiceInterface mService;
+    private ParcelFileDescriptor mDescriptor;
+    private MeasurementRingReader mReader;
+    private long mLoggedLostCount = 0;
+
+    /**
+     * Open the shared memory buffer of the remote service.
+     *
+     * @throws DataSourceException if the service doesn't have a buffer or it
+     *      can't be mapped.
+     */
+    public SharedMemorySource(VehicleServiceInterface service)
+            throws DataSourceException {
+        mService = service;
+
+        try {
+            mDescriptor = mService.openMeasurementBuffer(mRemoteListener);
+        } catch(RemoteException e) {
+            throw new DataSourceException(
+                    "Unable to open the shared measurement buffer", e);
+        }
+
+        if(mDescriptor == null) {
+            throw new DataSourceException(
+                    "VehicleService has no shared measurement buffer");
+        }
+
+        try {
+            MeasurementRingReader reader = new MeasurementRingReader(
+                    new FileInputStream(mDescriptor.getFileDescriptor())
+                    .getChannel());
+            synchronized(this) {
+                mReader = reader;
+            }
+        } catch(IOException e) {
+            stop();
+            throw new DataSourceException(
+                    "Unable to map the shared measurement buffer", e);
+        }
+    }
+
+    public void stop() {
+        super.stop();
+        try {
+            mService.closeMeasurementBuffer(mRemoteListener);
+        } catch(RemoteException e) {
+            Log.w(TAG, "Unable to stop measurement buffer wakeups", e);
+        }
+
+        try {
+            mDescriptor.close();
+        } catch(IOException e) {
+            Log.w(TAG, "Unable to close measurement buffer", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+            .add("reader", mReader)
+            .toString();
+    }
+
+    private synchronized void readAvailable() {
+        if(mReader == null) {
+            return;
+        }
+
+        RawMeasurement measurement;
+        while((measurement = mReader.read()) != null) {
+            handleMessage(measurement);
+        }
+
+        long lost = mReader.getLostCount();
+        if(lost != mLoggedLostCount) {
+            Log.w(TAG, "Fell behind the VehicleService and missed " +
+                    (lost - mLoggedLostCount) + " measurements");
+            mLoggedLostCount = lost;
+        }
+    }
+
+    private VehicleServiceListener mRemoteListener =
+        new VehicleServiceListener.Stub() {
+            public void receive(RawMeasurement rawMeasurement) {
+                handleMessage(rawMeasurement);
+            }
+
+            public void receiveBatch(RawMeasurement[] rawMeasurements) {
+                for(RawMeasurement rawMeasurement : rawMeasurements) {
+                    handleMessage(rawMeasurement);
+                }
+            }
+
+            public void measurementsAvailable() {
+                readAvailable();
+            }
+        };
+}
@@ -0,0 +1,105 @@
+package com.openxc.sources.trace;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The layout of a binary OpenXC trace.
+ *
+ * A trace starts with the 4 magic bytes "OXCT" and a version byte, followed
+ * by a sequence of records. Each record starts with a header byte:
+ *
+ *  - 0xff defines the next entry in the file's string dictionary, and is
+ *      followed by the string (as with DataOutput.writeUTF()). Entries are
+ *      numbered from 0 in the order they're defined, and each is defined just
+ *      before the first record that uses it.
+ *  - Anything else is a measurement. The low 4 bits are the type of its value
+ *      and the high 4 bits the type of its event. It's followed by the
+ *      dictionary index of its name, the difference between its timestamp and
+ *      the previous measurement's in milliseconds (the first is relative to
+ *      0), and then the value and the event.
+ *
+ * Indexes and integers are variable-length - 7 bits per byte, least
+ * significant first, with the high bit set on every byte but the last - and
+ * signed numbers are zig-zag encoded first so small negative numbers stay
+ * small. Doubles that are exactly representable as a float are stored in 4
+ * bytes. String values are stored as a dictionary index, unless the dictionary
+ * is full.
+ *
+ * A trace can be cut off at any point, e.g. if the recording device loses
+ * power - the records before the last complete one are still readable.
+ */
+final class BinaryTrace {
+    static final byte[] MAGIC = { 'O', 'X', 'C', 'T' };
+    static final int VERSION = 1;
+
+    static final int DEFINE_STRING = 0xff;
+
+    static final int TYPE_NONE = 0;
+    static final int TYPE_DOUBLE = 1;
+    static final int TYPE_FLOAT = 2;
+    static final int TYPE_INTEGER = 3;
+    static final int TYPE_LONG = 4;
+    static final int TYPE_TRUE = 5;
+    static final int TYPE_FALSE = 6;
+    static final int TYPE_STRING_REFERENCE = 7;
+    static final int TYPE_STRING = 8;
+
+    // Names are always added to the dictionary, but past this many entries
+    // string values are written in full so unique values (e.g. a VIN) can't
+    // grow it forever.
+    static final int MAXIMUM_DICTIONARY_SIZE = 4096;
+
+    private BinaryTrace() { }
+
+    /**
+     * @return true if the stream starts with the binary trace magic bytes.
+     *      The stream must support mark() and reset(), and it's left at the
+     *      same position.
+     */
+    static boolean startsWithMagic(InputStream stream) throws IOException {
+        stream.mark(MAGIC.length);
+        try {
+            for(int i = 0; i < MAGIC.length; i++) {
+                if(stream.read() != MAGIC[i]) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            stream.reset();
+        }
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while((value & ~0x7fL) != 0) {
+            out.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static void writeSignedVarLong(DataOutput out, long value)
+            throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Variable-length integer is too long");
+    }
+
+    static long readSignedVarLong(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
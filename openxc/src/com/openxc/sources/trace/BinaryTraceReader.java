@@ -0,0 +1,169 @@
+package com.openxc.sources.trace;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.io.CountingInputStream;
+import com.openxc.remote.RawMeasurement;
+
+/**
+ * Read a binary trace written by a {@link BinaryTraceWriter}.
+ *
+ * Nothing is parsed - each measurement is rebuilt directly from its typed
+ * fields, and its name is looked up in the file's dictionary.
+ */
+public class BinaryTraceReader implements TraceReader {
+    private CountingInputStream mCounter;
+    private DataInputStream mInput;
+    private List<String> mDictionary = new ArrayList<String>();
+    private long mLastTimestamp;
+    private boolean mTruncated;
+
+    /**
+     * @throws IOException if the stream doesn't start with the header of a
+     *      binary trace with a supported version.
+     */
+    public BinaryTraceReader(InputStream stream) throws IOException {
+        mCounter = new CountingInputStream(new BufferedInputStream(stream));
+        mInput = new DataInputStream(mCounter);
+
+        byte[] magic = new byte[BinaryTrace.MAGIC.length];
+        int version;
+        try {
+            mInput.readFully(magic);
+            version = mInput.readUnsignedByte();
+        } catch(EOFException e) {
+            throw new IOException("Stream is too short to be a binary trace");
+        }
+
+        for(int i = 0; i < magic.length; i++) {
+            if(magic[i] != BinaryTrace.MAGIC[i]) {
+                throw new IOException("Stream is not a binary trace");
+            }
+        }
+
+        if(version != BinaryTrace.VERSION) {
+            throw new IOException("Unsupported binary trace version " +
+                    version);
+        }
+    }
+
+    /**
+     * Continue reading a trace from a record in the middle of it, e.g. one
+     * found with a {@link TraceIndex}.
+     *
+     * @param stream the trace, positioned at the start of a record.
+     * @param dictionary the dictionary entries defined before the record.
+     * @param lastTimestamp the timestamp of the measurement before the record.
+     */
+    BinaryTraceReader(InputStream stream, List<String> dictionary,
+            long lastTimestamp) {
+        mCounter = new CountingInputStream(new BufferedInputStream(stream));
+        mInput = new DataInputStream(mCounter);
+        mDictionary.addAll(dictionary);
+        mLastTimestamp = lastTimestamp;
+    }
+
+    /**
+     * @return true if the stream starts with the header of a binary trace.
+     *      The stream must support mark() and reset(), and it's left at the
+     *      same position.
+     */
+    public static boolean isBinaryTrace(InputStream stream)
+            throws IOException {
+        return BinaryTrace.startsWithMagic(stream);
+    }
+
+    public RawMeasurement read() throws IOException {
+        try {
+            int header;
+            while((header = mInput.read()) == BinaryTrace.DEFINE_STRING) {
+                mDictionary.add(mInput.readUTF());
+            }
+
+            if(header == -1) {
+                return null;
+            }
+
+            String name = lookup(BinaryTrace.readVarLong(mInput));
+            long timestamp = mLastTimestamp +
+                    BinaryTrace.readSignedVarLong(mInput);
+            Object value = readValue(header & 0xf);
+            Object event = readValue(header >> 4);
+            mLastTimestamp = timestamp;
+            return new RawMeasurement(name, value, event, timestamp);
+        } catch(EOFException e) {
+            mTruncated = true;
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the trace ended in the middle of a record, e.g. because
+     *      the recording was cut off. The records before it are still read.
+     */
+    public boolean isTruncated() {
+        return mTruncated;
+    }
+
+    public long getBytesRead() {
+        return mCounter.getCount();
+    }
+
+    public void close() throws IOException {
+        mInput.close();
+    }
+
+    /**
+     * @return the dictionary entries defined so far.
+     */
+    List<String> getDictionary() {
+        return mDictionary;
+    }
+
+    /**
+     * @return the timestamp of the last measurement read.
+     */
+    long getLastTimestamp() {
+        return mLastTimestamp;
+    }
+
+    private String lookup(long index) throws IOException {
+        if(index < 0 || index >= mDictionary.size()) {
+            throw new IOException("Binary trace refers to undefined string " +
+                    index);
+        }
+        return mDictionary.get((int) index);
+    }
+
+    private Object readValue(int type) throws IOException {
+        switch(type) {
+            case BinaryTrace.TYPE_NONE:
+                return null;
+            case BinaryTrace.TYPE_DOUBLE:
+                return mInput.readDouble();
+            case BinaryTrace.TYPE_FLOAT:
+                return (double) mInput.readFloat();
+            case BinaryTrace.TYPE_INTEGER:
+                return (int) BinaryTrace.readSignedVarLong(mInput);
+            case BinaryTrace.TYPE_LONG:
+                return BinaryTrace.readSignedVarLong(mInput);
+            case BinaryTrace.TYPE_TRUE:
+                return Boolean.TRUE;
+            case BinaryTrace.TYPE_FALSE:
+                return Boolean.FALSE;
+            case BinaryTrace.TYPE_STRING_REFERENCE:
+                return lookup(BinaryTrace.readVarLong(mInput));
+            case BinaryTrace.TYPE_STRING:
+                return mInput.readUTF();
+            default:
+                throw new IOException("Unknown value type " + type +
+                        " in binary trace");
+        }
+    }
+}
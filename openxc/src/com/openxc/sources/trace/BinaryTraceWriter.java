@@ -0,0 +1,135 @@
+package com.openxc.sources.trace;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.openxc.remote.RawMeasurement;
+
+/**
+ * Write a compact binary trace.
+ *
+ * Each measurement takes a few bytes instead of the 60-100 of a JSON trace
+ * line - names and repeated string values are written once per file, and
+ * timestamps as the difference from the previous one. See
+ * {@link BinaryTrace} for the layout.
+ *
+ * A measurement without a timestamp is recorded with the time it's written,
+ * since it couldn't be played back otherwise.
+ */
+public class BinaryTraceWriter implements TraceWriter {
+    /** The extension used for binary trace files. */
+    public static final String FILE_EXTENSION = ".oxt";
+
+    private DataOutputStream mOutput;
+    private Map<String, Integer> mDictionary = new HashMap<String, Integer>();
+    private long mLastTimestamp;
+
+    /**
+     * Start a new trace by writing the header to the stream.
+     */
+    public BinaryTraceWriter(OutputStream stream) throws IOException {
+        mOutput = new DataOutputStream(new BufferedOutputStream(stream));
+        mOutput.write(BinaryTrace.MAGIC);
+        mOutput.writeByte(BinaryTrace.VERSION);
+    }
+
+    public void write(RawMeasurement measurement) throws IOException {
+        long timestamp = measurement.isTimestamped() ?
+                measurement.getTimestamp() : System.currentTimeMillis();
+        Object value = measurement.getValue();
+        Object event = measurement.getEvent();
+
+        // The dictionary entries have to come before the record using them
+        int nameIndex = define(measurement.getName(), true);
+        int valueType = getType(value);
+        int eventType = getType(event);
+
+        mOutput.writeByte(eventType << 4 | valueType);
+        BinaryTrace.writeVarLong(mOutput, nameIndex);
+        BinaryTrace.writeSignedVarLong(mOutput,
+                timestamp - mLastTimestamp);
+        writeValue(valueType, value);
+        writeValue(eventType, event);
+        mLastTimestamp = timestamp;
+    }
+
+    public void flush() throws IOException {
+        mOutput.flush();
+    }
+
+    public void close() throws IOException {
+        mOutput.close();
+    }
+
+    /**
+     * @return the index of the string in the dictionary, or -1 if it isn't
+     *      in the dictionary and required is false.
+     */
+    private int define(String string, boolean required) throws IOException {
+        Integer index = mDictionary.get(string);
+        if(index != null) {
+            return index;
+        }
+
+        if(!required &&
+                mDictionary.size() >= BinaryTrace.MAXIMUM_DICTIONARY_SIZE) {
+            return -1;
+        }
+
+        int newIndex = mDictionary.size();
+        mOutput.writeByte(BinaryTrace.DEFINE_STRING);
+        mOutput.writeUTF(string);
+        mDictionary.put(string, newIndex);
+        return newIndex;
+    }
+
+    private int getType(Object value) throws IOException {
+        if(value == null) {
+            return BinaryTrace.TYPE_NONE;
+        } else if(value instanceof Integer) {
+            return BinaryTrace.TYPE_INTEGER;
+        } else if(value instanceof Long) {
+            return BinaryTrace.TYPE_LONG;
+        } else if(value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            boolean fitsFloat = (double) (float) number == number ||
+                    Double.isNaN(number);
+            return fitsFloat ? BinaryTrace.TYPE_FLOAT : BinaryTrace.TYPE_DOUBLE;
+        } else if(value instanceof Boolean) {
+            return ((Boolean) value) ?
+                    BinaryTrace.TYPE_TRUE : BinaryTrace.TYPE_FALSE;
+        }
+        return define(value.toString(), false) != -1 ?
+                BinaryTrace.TYPE_STRING_REFERENCE : BinaryTrace.TYPE_STRING;
+    }
+
+    private void writeValue(int type, Object value) throws IOException {
+        switch(type) {
+            case BinaryTrace.TYPE_DOUBLE:
+                mOutput.writeDouble(((Number) value).doubleValue());
+                break;
+            case BinaryTrace.TYPE_FLOAT:
+                mOutput.writeFloat(((Number) value).floatValue());
+                break;
+            case BinaryTrace.TYPE_INTEGER:
+            case BinaryTrace.TYPE_LONG:
+                BinaryTrace.writeSignedVarLong(mOutput,
+                        ((Number) value).longValue());
+                break;
+            case BinaryTrace.TYPE_STRING_REFERENCE:
+                BinaryTrace.writeVarLong(mOutput,
+                        mDictionary.get(value.toString()));
+                break;
+            case BinaryTrace.TYPE_STRING:
+                mOutput.writeUTF(value.toString());
+                break;
+            default:
+                // The type is all there is to write
+                break;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.openxc.sources.trace;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.openxc.remote.RawMeasurement;
+
+/**
+ * Read a trace of OpenXC JSON messages, one per line.
+ *
+ * Lines are split on the raw bytes, so {@link #getBytesRead()} is the exact
+ * offset of the next line in the trace - a reader can be started at any
+ * offset it returns, e.g. from a {@link TraceIndex}. Blank lines and lines
+ * that aren't valid messages are skipped, and the invalid ones are counted in
+ * {@link #getSkippedLineCount()} - nothing is logged, so the reader can be
+ * used without Android.
+ */
+public class JsonTraceReader implements TraceReader {
+    private static final int BUFFER_SIZE = 8192;
+
+    private InputStream mStream;
+    private byte[] mBuffer = new byte[BUFFER_SIZE];
+    // Start of the first byte that hasn't been returned in a line yet
+    private int mStart;
+    // End of the valid data in the buffer
+    private int mEnd;
+    private int mLineStart;
+    private int mLineLength;
+    private boolean mEndOfStream;
+    private long mBytesRead;
+    private long mSkippedLineCount;
+
+    /**
+     * @param stream the trace, positioned at the start of a line.
+     */
+    public JsonTraceReader(InputStream stream) {
+        mStream = stream;
+    }
+
+    public RawMeasurement read() throws IOException {
+        while(nextLine()) {
+            if(mLineLength == 0) {
+                continue;
+            }
+
+            RawMeasurement measurement = RawMeasurement.tryParse(
+                    new String(mBuffer, mLineStart, mLineLength, "UTF-8"));
+            if(measurement == null || !measurement.isTimestamped()) {
+                mSkippedLineCount++;
+                continue;
+            }
+            return measurement;
+        }
+        return null;
+    }
+
+    public long getBytesRead() {
+        return mBytesRead;
+    }
+
+    /**
+     * @return the number of lines skipped because they weren't valid
+     *      messages, not counting blank lines.
+     */
+    public long getSkippedLineCount() {
+        return mSkippedLineCount;
+    }
+
+    public void close() throws IOException {
+        mStream.close();
+    }
+
+    /**
+     * Find the next line in the buffer, reading more of the stream if
+     * necessary. A trailing carriage return isn't included in the line.
+     *
+     * @return false if the end of the stream has been reached.
+     */
+    private boolean nextLine() throws IOException {
+        int scanned = mStart;
+        while(true) {
+            for(; scanned < mEnd; scanned++) {
+                if(mBuffer[scanned] == '\n') {
+                    setLine(scanned, scanned + 1);
+                    return true;
+                }
+            }
+
+            if(mEndOfStream) {
+                if(mStart < mEnd) {
+                    // The last line doesn't have to end with a newline
+                    setLine(mEnd, mEnd);
+                    return true;
+                }
+                return false;
+            }
+
+            if(mStart > 0) {
+                System.arraycopy(mBuffer, mStart, mBuffer, 0, mEnd - mStart);
+                scanned -= mStart;
+                mEnd -= mStart;
+                mStart = 0;
+            }
+
+            if(mEnd == mBuffer.length) {
+                byte[] larger = new byte[mBuffer.length * 2];
+                System.arraycopy(mBuffer, 0, larger, 0, mEnd);
+                mBuffer = larger;
+            }
+
+            int received = mStream.read(mBuffer, mEnd, mBuffer.length - mEnd);
+            if(received == -1) {
+                mEndOfStream = true;
+            } else {
+                mEnd += received;
+            }
+        }
+    }
+
+    private void setLine(int end, int next) {
+        mLineStart = mStart;
+        mLineLength = end - mStart;
+        if(mLineLength > 0 && mBuffer[end - 1] == '\r') {
+            mLineLength--;
+        }
+        mBytesRead += next - mStart;
+        mStart = next;
+    }
+}
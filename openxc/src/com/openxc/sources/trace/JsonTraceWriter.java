@@ -0,0 +1,35 @@
+package com.openxc.sources.trace;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import com.openxc.remote.RawMeasurement;
+
+/**
+ * Write a trace of OpenXC JSON messages, one per line.
+ */
+public class JsonTraceWriter implements TraceWriter {
+    private BufferedWriter mWriter;
+
+    public JsonTraceWriter(Writer writer) {
+        if(writer instanceof BufferedWriter) {
+            mWriter = (BufferedWriter) writer;
+        } else {
+            mWriter = new BufferedWriter(writer);
+        }
+    }
+
+    public void write(RawMeasurement measurement) throws IOException {
+        mWriter.write(measurement.serialize());
+        mWriter.newLine();
+    }
+
+    public void flush() throws IOException {
+        mWriter.flush();
+    }
+
+    public void close() throws IOException {
+        mWriter.close();
+    }
+}
@@ -0,0 +1,172 @@
+package com.openxc.sources.trace;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.openxc.remote.RawMeasurement;
+
+/**
+ * Read a trace file of OpenXC JSON messages, one per line, by mapping it
+ * into memory.
+ *
+ * Lines are found by scanning the mapped bytes, and each one is copied into a
+ * reused buffer and parsed from there - the bytes are never decoded into
+ * characters and no String is built for the line. The file is read by the
+ * OS as it's paged in, so a trace that's played back repeatedly stays in the
+ * page cache instead of the heap.
+ *
+ * Like {@link JsonTraceReader}, {@link #getBytesRead()} is the exact offset
+ * of the next line, and blank lines and lines that aren't valid messages are
+ * skipped. Invalid lines are counted in {@link #getSkippedLineCount()} rather
+ * than logged, so the reader can be used without Android, e.g. by a
+ * {@link TraceProcessor}.
+ */
+public class MappedJsonTraceReader implements TraceReader {
+    // The file is mapped one region at a time, so it doesn't need to fit in
+    // the address space all at once. A line can't be longer than this.
+    static final int REGION_SIZE = 32 * 1024 * 1024;
+
+    private FileChannel mChannel;
+    private long mSize;
+    private int mRegionSize;
+    private MappedByteBuffer mRegion;
+    // The offset in the file of the start of mRegion
+    private long mRegionStart;
+    // The offset in the file of the next line
+    private long mPosition;
+    private byte[] mLine = new byte[256];
+    private long mSkippedLineCount;
+
+    public MappedJsonTraceReader(File trace) throws IOException {
+        this(trace, 0);
+    }
+
+    /**
+     * @param position the offset of the line to start reading from, e.g. one
+     *      found with a {@link TraceIndex}.
+     */
+    public MappedJsonTraceReader(File trace, long position)
+            throws IOException {
+        this(trace, position, Long.MAX_VALUE);
+    }
+
+    /**
+     * Read only the lines that start before an offset, e.g. one chunk of a
+     * trace split by a {@link TraceProcessor}.
+     *
+     * @param position the offset of the first line.
+     * @param end the offset of the line after the last one to read, which is
+     *      treated as the end of the file.
+     */
+    MappedJsonTraceReader(File trace, long position, long end)
+            throws IOException {
+        this(trace, position, end, REGION_SIZE);
+    }
+
+    MappedJsonTraceReader(File trace, long position, long end,
+            int regionSize) throws IOException {
+        mChannel = new FileInputStream(trace).getChannel();
+        mSize = Math.min(mChannel.size(), end);
+        mPosition = position;
+        mRegionSize = regionSize;
+    }
+
+    public RawMeasurement read() throws IOException {
+        while(mPosition < mSize) {
+            int length = nextLine();
+            if(length == 0) {
+                continue;
+            }
+
+            RawMeasurement measurement = RawMeasurement.tryParse(mLine, 0,
+                    length);
+            if(measurement == null || !measurement.isTimestamped()) {
+                mSkippedLineCount++;
+                continue;
+            }
+            return measurement;
+        }
+        return null;
+    }
+
+    public long getBytesRead() {
+        return mPosition;
+    }
+
+    /**
+     * @return the number of lines skipped because they weren't valid
+     *      messages, not counting blank lines.
+     */
+    public long getSkippedLineCount() {
+        return mSkippedLineCount;
+    }
+
+    /**
+     * Close the file. The mapping is released when it's garbage collected.
+     */
+    public void close() throws IOException {
+        mRegion = null;
+        mChannel.close();
+    }
+
+    /**
+     * Copy the next line into mLine, without a trailing carriage return, and
+     * move mPosition to the line after it.
+     *
+     * @return the length of the line.
+     */
+    private int nextLine() throws IOException {
+        long lineStart = mPosition;
+        if(mRegion == null || lineStart < mRegionStart ||
+                lineStart >= mRegionStart + mRegion.limit()) {
+            mapRegion(lineStart);
+        }
+
+        int start = (int) (lineStart - mRegionStart);
+        int end = start;
+        while(true) {
+            int limit = mRegion.limit();
+            while(end < limit && mRegion.get(end) != '\n') {
+                end++;
+            }
+
+            if(end < limit || mRegionStart + limit == mSize) {
+                // The last line doesn't have to end with a newline
+                break;
+            }
+
+            if(start == 0) {
+                throw new IOException("The trace line at " + lineStart +
+                        " is longer than " + mRegionSize + " bytes");
+            }
+
+            // The line continues past the region - map the next one from the
+            // start of the line and keep looking
+            end -= start;
+            start = 0;
+            mapRegion(lineStart);
+        }
+
+        mPosition = mRegionStart + Math.min(end + 1, mRegion.limit());
+        int length = end - start;
+        if(length > 0 && mRegion.get(end - 1) == '\r') {
+            length--;
+        }
+
+        if(length > mLine.length) {
+            mLine = new byte[Math.max(length, mLine.length * 2)];
+        }
+        mRegion.position(start);
+        mRegion.get(mLine, 0, length);
+        return length;
+    }
+
+    private void mapRegion(long start) throws IOException {
+        mRegionStart = start;
+        mRegion = mChannel.map(FileChannel.MapMode.READ_ONLY, start,
+                Math.min(mRegionSize, mSize - start));
+    }
+}
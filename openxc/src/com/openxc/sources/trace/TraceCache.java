@@ -0,0 +1,254 @@
+package com.openxc.sources.trace;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.openxc.remote.RawMeasurement;
+
+/**
+ * A trace decoded into memory once, so it can be played back again and again
+ * without reading or parsing it.
+ *
+ * The measurements are packed into arrays of primitives - the timestamp, the
+ * types of the value and event, and the value and event themselves as the bits
+ * of a double or long, or an index into a table of strings. Names and string
+ * values are only stored once. Each measurement takes about 21 bytes, or 29 if
+ * any of them have events, which is much less than as JSON or as a
+ * RawMeasurement object.
+ *
+ * Values are kept the same way as in a binary trace - numbers other than
+ * integers and longs become doubles.
+ */
+public class TraceCache {
+    private static final int INITIAL_CAPACITY = 1024;
+    // Timestamp, name, types and value
+    private static final int RECORD_SIZE = 8 + 4 + 1 + 8;
+    private static final int EVENT_SIZE = 8;
+    // A rough size of a String object and its entries in the string table,
+    // not counting its characters
+    private static final int STRING_OVERHEAD = 64;
+
+    private final long mMaximumBytes;
+    private List<String> mStrings = new ArrayList<String>();
+    private Map<String, Integer> mStringIds = new HashMap<String, Integer>();
+    private long mStringBytes;
+    private int mSize;
+    private long[] mTimestamps = new long[0];
+    private int[] mNames = new int[0];
+    private byte[] mTypes = new byte[0];
+    private long[] mValues = new long[0];
+    // Only allocated once a measurement has an event
+    private long[] mEvents;
+    // The packed form of the last value passed to pack()
+    private long mPacked;
+
+    private TraceCache(long maximumBytes) {
+        mMaximumBytes = maximumBytes;
+    }
+
+    /**
+     * Read the rest of a trace into memory. The reader isn't closed.
+     *
+     * @param maximumBytes the most memory the cache may use.
+     * @return the cache, or null if the trace doesn't fit in maximumBytes.
+     */
+    public static TraceCache load(TraceReader reader, long maximumBytes)
+            throws IOException {
+        TraceCache cache = new TraceCache(maximumBytes);
+        RawMeasurement measurement;
+        while((measurement = reader.read()) != null) {
+            if(!cache.add(measurement)) {
+                return null;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Open a reader that plays back the cached measurements from the start.
+     * Any number of readers can be open at once.
+     *
+     * Nothing is read from the trace, so the reader's
+     * {@link TraceReader#getBytesRead()} is always 0.
+     */
+    public TraceReader openReader() {
+        return new CachedTraceReader();
+    }
+
+    /**
+     * @return the number of measurements in the cache.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the approximate number of bytes of memory used by the cache.
+     */
+    public long getMemoryUsage() {
+        return getMemoryUsage(mTimestamps.length, mEvents != null);
+    }
+
+    /**
+     * @return a new copy of a measurement in the cache.
+     */
+    public RawMeasurement get(int index) {
+        int types = mTypes[index];
+        Object event = null;
+        if(mEvents != null) {
+            event = unpack(types >> 4, mEvents[index]);
+        }
+        return new RawMeasurement(mStrings.get(mNames[index]),
+                unpack(types & 0xf, mValues[index]), event,
+                mTimestamps[index]);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+            .add("measurements", mSize)
+            .add("strings", mStrings.size())
+            .add("memoryUsage", getMemoryUsage())
+            .toString();
+    }
+
+    /**
+     * @return false if the measurement doesn't fit in the memory limit.
+     */
+    private boolean add(RawMeasurement measurement) {
+        boolean hasEvent = mEvents != null || measurement.getEvent() != null;
+        if(mSize == mTimestamps.length || hasEvent != (mEvents != null)) {
+            int capacity = mTimestamps.length;
+            if(mSize == capacity) {
+                capacity = Math.max(INITIAL_CAPACITY, mSize * 2);
+            }
+            // Use whatever memory is left for the last arrays, rather than
+            // going over the limit
+            while(capacity > mSize && getMemoryUsage(capacity, hasEvent) >
+                    mMaximumBytes) {
+                capacity = mSize + (capacity - mSize) / 2;
+            }
+            if(capacity == mSize) {
+                return false;
+            }
+            resize(capacity, hasEvent);
+        }
+
+        int valueType = pack(measurement.getValue());
+        mValues[mSize] = mPacked;
+        int eventType = pack(measurement.getEvent());
+        if(mEvents != null) {
+            mEvents[mSize] = mPacked;
+        }
+        mTypes[mSize] = (byte) (eventType << 4 | valueType);
+        mNames[mSize] = define(measurement.getName());
+        mTimestamps[mSize] = measurement.getTimestamp();
+        mSize++;
+        return getMemoryUsage() <= mMaximumBytes;
+    }
+
+    private long getMemoryUsage(int capacity, boolean hasEvents) {
+        return (long) capacity * (RECORD_SIZE + (hasEvents ? EVENT_SIZE : 0))
+            + mStringBytes;
+    }
+
+    private void resize(int capacity, boolean hasEvents) {
+        long[] timestamps = new long[capacity];
+        System.arraycopy(mTimestamps, 0, timestamps, 0, mSize);
+        mTimestamps = timestamps;
+        int[] names = new int[capacity];
+        System.arraycopy(mNames, 0, names, 0, mSize);
+        mNames = names;
+        byte[] types = new byte[capacity];
+        System.arraycopy(mTypes, 0, types, 0, mSize);
+        mTypes = types;
+        long[] values = new long[capacity];
+        System.arraycopy(mValues, 0, values, 0, mSize);
+        mValues = values;
+        if(hasEvents) {
+            long[] events = new long[capacity];
+            if(mEvents != null) {
+                System.arraycopy(mEvents, 0, events, 0, mSize);
+            }
+            mEvents = events;
+        }
+    }
+
+    private int define(String string) {
+        Integer id = mStringIds.get(string);
+        if(id == null) {
+            id = mStrings.size();
+            mStrings.add(string);
+            mStringIds.put(string, id);
+            mStringBytes += STRING_OVERHEAD + string.length() * 2;
+        }
+        return id;
+    }
+
+    /**
+     * Store the packed form of a value in mPacked.
+     *
+     * @return the type of the value.
+     */
+    private int pack(Object value) {
+        mPacked = 0;
+        if(value == null) {
+            return BinaryTrace.TYPE_NONE;
+        } else if(value instanceof Integer) {
+            mPacked = (Integer) value;
+            return BinaryTrace.TYPE_INTEGER;
+        } else if(value instanceof Long) {
+            mPacked = (Long) value;
+            return BinaryTrace.TYPE_LONG;
+        } else if(value instanceof Number) {
+            mPacked = Double.doubleToRawLongBits(
+                    ((Number) value).doubleValue());
+            return BinaryTrace.TYPE_DOUBLE;
+        } else if(value instanceof Boolean) {
+            return ((Boolean) value) ?
+                    BinaryTrace.TYPE_TRUE : BinaryTrace.TYPE_FALSE;
+        }
+        mPacked = define(value.toString());
+        return BinaryTrace.TYPE_STRING_REFERENCE;
+    }
+
+    private Object unpack(int type, long packed) {
+        switch(type) {
+            case BinaryTrace.TYPE_DOUBLE:
+                return Double.longBitsToDouble(packed);
+            case BinaryTrace.TYPE_INTEGER:
+                return (int) packed;
+            case BinaryTrace.TYPE_LONG:
+                return packed;
+            case BinaryTrace.TYPE_TRUE:
+                return Boolean.TRUE;
+            case BinaryTrace.TYPE_FALSE:
+                return Boolean.FALSE;
+            case BinaryTrace.TYPE_STRING_REFERENCE:
+                return mStrings.get((int) packed);
+            default:
+                return null;
+        }
+    }
+
+    private class CachedTraceReader implements TraceReader {
+        private int mPosition;
+
+        public RawMeasurement read() {
+            if(mPosition >= mSize) {
+                return null;
+            }
+            return get(mPosition++);
+        }
+
+        public long getBytesRead() {
+            return 0;
+        }
+
+        public void close() { }
+    }
+}
@@ -0,0 +1,94 @@
+package com.openxc.sources.trace;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+
+import com.openxc.remote.RawMeasurement;
+
+/**
+ * Convert traces between the JSON and binary formats.
+ *
+ * Binary traces only keep timestamps to the millisecond, so a JSON trace
+ * converted to binary and back has the same measurements but not exactly the
+ * same timestamps.
+ */
+public class TraceConverter {
+    private TraceConverter() { }
+
+    /**
+     * Open a reader for a trace in either format.
+     */
+    public static TraceReader openReader(InputStream stream)
+            throws IOException {
+        if(!stream.markSupported()) {
+            stream = new BufferedInputStream(stream);
+        }
+
+        if(BinaryTraceReader.isBinaryTrace(stream)) {
+            return new BinaryTraceReader(stream);
+        }
+        return new JsonTraceReader(stream);
+    }
+
+    /**
+     * Open a reader for a trace file in either format. JSON traces are read
+     * with a {@link MappedJsonTraceReader}.
+     */
+    public static TraceReader openReader(File trace) throws IOException {
+        InputStream stream = new BufferedInputStream(
+                new FileInputStream(trace));
+        try {
+            if(BinaryTraceReader.isBinaryTrace(stream)) {
+                return new BinaryTraceReader(stream);
+            }
+        } catch(IOException e) {
+            stream.close();
+            throw e;
+        }
+        stream.close();
+        return new MappedJsonTraceReader(trace);
+    }
+
+    /**
+     * Copy every measurement from a reader to a writer. Neither is closed.
+     *
+     * @return the number of measurements copied.
+     */
+    public static long convert(TraceReader reader, TraceWriter writer)
+            throws IOException {
+        long count = 0;
+        RawMeasurement measurement;
+        while((measurement = reader.read()) != null) {
+            writer.write(measurement);
+            count++;
+        }
+        writer.flush();
+        return count;
+    }
+
+    /**
+     * Convert a JSON or binary trace to the binary format.
+     *
+     * @return the number of measurements converted.
+     */
+    public static long toBinary(InputStream input, OutputStream output)
+            throws IOException {
+        return convert(openReader(input), new BinaryTraceWriter(output));
+    }
+
+    /**
+     * Convert a JSON or binary trace to the JSON format.
+     *
+     * @return the number of measurements converted.
+     */
+    public static long toJson(InputStream input, OutputStream output)
+            throws IOException {
+        return convert(openReader(input),
+                new JsonTraceWriter(new OutputStreamWriter(output)));
+    }
+}
@@ -0,0 +1,373 @@
+package com.openxc.sources.trace;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Objects;
+import com.openxc.remote.RawMeasurement;
+
+/**
+ * An index of the offsets of records in a trace file by their timestamp, so
+ * playback can start at any time in the trace without reading everything
+ * before it.
+ *
+ * The index has a checkpoint every {@link #CHECKPOINT_INTERVAL} records, with
+ * the record's offset and the latest timestamp of any record before it.
+ * Finding where to start reading is a binary search over the checkpoints, and
+ * at most one interval of records before the requested time is read and
+ * skipped. Timestamps in a trace don't have to be in order - a record is never
+ * skipped unless its timestamp is before the requested time.
+ *
+ * The index is built by reading the trace once, and saved next to it in a
+ * sidecar file (the trace's name plus {@link #FILE_EXTENSION}) so it's only
+ * built again if the trace changes. Both JSON and binary traces can be indexed
+ * - the checkpoints of a binary trace also record the dictionary and the
+ * previous timestamp, so the records can be decoded without the ones before
+ * them.
+ */
+public class TraceIndex {
+    public static final String FILE_EXTENSION = ".idx";
+    public static final int CHECKPOINT_INTERVAL = 1024;
+
+    private static final byte[] MAGIC = { 'O', 'X', 'C', 'I' };
+    private static final int VERSION = 1;
+
+    private long mTraceLength;
+    private long mTraceModified;
+    private boolean mBinary;
+    private long mRecordCount;
+    private long mStartTime;
+    private long mEndTime;
+    private int mCheckpointCount;
+    private long[] mOffsets;
+    // The latest timestamp of any record before each checkpoint
+    private long[] mPrecedingTimestamps;
+    // The timestamp of the record before each checkpoint, and the size of the
+    // dictionary at that point - only used for binary traces
+    private long[] mLastTimestamps;
+    private int[] mDictionarySizes;
+    private List<String> mDictionary = Collections.emptyList();
+
+    private TraceIndex() { }
+
+    /**
+     * Load the index of a trace from its sidecar file, or build it and save
+     * the sidecar if it doesn't exist or the trace has changed since.
+     *
+     * If the sidecar can't be saved (e.g. the directory isn't writable) the
+     * index is still returned, but it'll be built again next time. Nothing is
+     * logged, so the index can be used without Android.
+     */
+    public static TraceIndex open(File trace) throws IOException {
+        File sidecar = getSidecar(trace);
+        if(sidecar.exists()) {
+            try {
+                TraceIndex index = read(sidecar);
+                if(index.isCurrent(trace)) {
+                    return index;
+                }
+            } catch(IOException e) {
+                // Not an index we can use - build it again
+            }
+        }
+
+        TraceIndex index = build(trace);
+        try {
+            index.write(sidecar);
+        } catch(IOException e) {
+            sidecar.delete();
+        }
+        return index;
+    }
+
+    /**
+     * Build the index of a trace by reading all of it.
+     */
+    public static TraceIndex build(File trace) throws IOException {
+        TraceIndex index = new TraceIndex();
+        index.mTraceLength = trace.length();
+        index.mTraceModified = trace.lastModified();
+
+        List<long[]> checkpoints = new ArrayList<long[]>();
+        TraceReader reader = TraceConverter.openReader(trace);
+        try {
+            BinaryTraceReader binaryReader = null;
+            if(reader instanceof BinaryTraceReader) {
+                binaryReader = (BinaryTraceReader) reader;
+                index.mBinary = true;
+            }
+
+            long precedingTimestamp = Long.MIN_VALUE;
+            while(true) {
+                long offset = reader.getBytesRead();
+                long lastTimestamp = 0;
+                int dictionarySize = 0;
+                if(binaryReader != null) {
+                    lastTimestamp = binaryReader.getLastTimestamp();
+                    dictionarySize = binaryReader.getDictionary().size();
+                }
+
+                RawMeasurement measurement = reader.read();
+                if(measurement == null) {
+                    break;
+                }
+
+                if(index.mRecordCount % CHECKPOINT_INTERVAL == 0) {
+                    checkpoints.add(new long[] { offset, precedingTimestamp,
+                        lastTimestamp, dictionarySize });
+                }
+
+                long timestamp = measurement.getTimestamp();
+                if(index.mRecordCount == 0) {
+                    index.mStartTime = timestamp;
+                }
+                precedingTimestamp = Math.max(precedingTimestamp, timestamp);
+                index.mRecordCount++;
+            }
+            index.mEndTime = precedingTimestamp;
+
+            if(binaryReader != null) {
+                index.mDictionary = new ArrayList<String>(
+                        binaryReader.getDictionary());
+            }
+        } finally {
+            reader.close();
+        }
+
+        index.allocate(checkpoints.size());
+        for(int i = 0; i < checkpoints.size(); i++) {
+            long[] checkpoint = checkpoints.get(i);
+            index.mOffsets[i] = checkpoint[0];
+            index.mPrecedingTimestamps[i] = checkpoint[1];
+            index.mLastTimestamps[i] = checkpoint[2];
+            index.mDictionarySizes[i] = (int) checkpoint[3];
+        }
+        return index;
+    }
+
+    /**
+     * Load an index from a sidecar file.
+     *
+     * @throws IOException if the file couldn't be read or isn't an index.
+     */
+    public static TraceIndex read(File sidecar) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(sidecar)));
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            input.readFully(magic);
+            for(int i = 0; i < magic.length; i++) {
+                if(magic[i] != MAGIC[i]) {
+                    throw new IOException(sidecar + " is not a trace index");
+                }
+            }
+
+            int version = input.readUnsignedByte();
+            if(version != VERSION) {
+                throw new IOException("Unsupported trace index version " +
+                        version);
+            }
+
+            TraceIndex index = new TraceIndex();
+            index.mTraceLength = input.readLong();
+            index.mTraceModified = input.readLong();
+            index.mBinary = input.readBoolean();
+            index.mRecordCount = input.readLong();
+            index.mStartTime = input.readLong();
+            index.mEndTime = input.readLong();
+            index.allocate(input.readInt());
+            for(int i = 0; i < index.mCheckpointCount; i++) {
+                index.mOffsets[i] = input.readLong();
+                index.mPrecedingTimestamps[i] = input.readLong();
+                if(index.mBinary) {
+                    index.mLastTimestamps[i] = input.readLong();
+                    index.mDictionarySizes[i] = input.readInt();
+                }
+            }
+
+            if(index.mBinary) {
+                int dictionarySize = input.readInt();
+                index.mDictionary = new ArrayList<String>(dictionarySize);
+                for(int i = 0; i < dictionarySize; i++) {
+                    index.mDictionary.add(input.readUTF());
+                }
+            }
+            return index;
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Save the index to a sidecar file.
+     */
+    public void write(File sidecar) throws IOException {
+        DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(sidecar)));
+        try {
+            output.write(MAGIC);
+            output.writeByte(VERSION);
+            output.writeLong(mTraceLength);
+            output.writeLong(mTraceModified);
+            output.writeBoolean(mBinary);
+            output.writeLong(mRecordCount);
+            output.writeLong(mStartTime);
+            output.writeLong(mEndTime);
+            output.writeInt(mCheckpointCount);
+            for(int i = 0; i < mCheckpointCount; i++) {
+                output.writeLong(mOffsets[i]);
+                output.writeLong(mPrecedingTimestamps[i]);
+                if(mBinary) {
+                    output.writeLong(mLastTimestamps[i]);
+                    output.writeInt(mDictionarySizes[i]);
+                }
+            }
+
+            if(mBinary) {
+                output.writeInt(mDictionary.size());
+                for(String entry : mDictionary) {
+                    output.writeUTF(entry);
+                }
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * @return the sidecar file for the index of a trace.
+     */
+    public static File getSidecar(File trace) {
+        return new File(trace.getPath() + FILE_EXTENSION);
+    }
+
+    /**
+     * @return true if the trace is the same size and has the same
+     *      modification time as when it was indexed.
+     */
+    public boolean isCurrent(File trace) {
+        return trace.length() == mTraceLength &&
+                trace.lastModified() == mTraceModified;
+    }
+
+    /**
+     * Open a reader for the trace starting at the last checkpoint before a
+     * time. The reader may return some records from before the time - wrap it
+     * in a {@link WindowedTraceReader} to skip them.
+     *
+     * @param trace the trace this index was built from.
+     * @param timestamp the time to start reading from, in milliseconds.
+     */
+    public TraceReader openReader(File trace, long timestamp)
+            throws IOException {
+        int checkpoint = findCheckpoint(timestamp);
+        if(checkpoint == -1) {
+            return TraceConverter.openReader(trace);
+        }
+        return openCheckpoint(trace, checkpoint);
+    }
+
+    /**
+     * Open a reader for the trace starting at a checkpoint.
+     *
+     * @param trace the trace this index was built from.
+     */
+    TraceReader openCheckpoint(File trace, int checkpoint)
+            throws IOException {
+        if(!mBinary) {
+            return new MappedJsonTraceReader(trace, mOffsets[checkpoint]);
+        }
+
+        FileInputStream stream = new FileInputStream(trace);
+        try {
+            stream.getChannel().position(mOffsets[checkpoint]);
+            return new BinaryTraceReader(stream,
+                    mDictionary.subList(0, mDictionarySizes[checkpoint]),
+                    mLastTimestamps[checkpoint]);
+        } catch(IOException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the index of the last checkpoint with no records before it at
+     *      or after the timestamp, or -1 if there are no checkpoints.
+     */
+    int findCheckpoint(long timestamp) {
+        int low = 0;
+        int high = mCheckpointCount - 1;
+        int found = -1;
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            if(mPrecedingTimestamps[middle] < timestamp) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return the offset in the trace of a checkpoint.
+     */
+    long getOffset(int checkpoint) {
+        return mOffsets[checkpoint];
+    }
+
+    public int getCheckpointCount() {
+        return mCheckpointCount;
+    }
+
+    public long getRecordCount() {
+        return mRecordCount;
+    }
+
+    /**
+     * @return the timestamp of the first record in the trace.
+     */
+    public long getStartTime() {
+        return mStartTime;
+    }
+
+    /**
+     * @return the latest timestamp in the trace.
+     */
+    public long getEndTime() {
+        return mEndTime;
+    }
+
+    public boolean isBinary() {
+        return mBinary;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+            .add("records", mRecordCount)
+            .add("checkpoints", mCheckpointCount)
+            .add("startTime", mStartTime)
+            .add("endTime", mEndTime)
+            .add("binary", mBinary)
+            .toString();
+    }
+
+    private void allocate(int checkpointCount) {
+        mCheckpointCount = checkpointCount;
+        mOffsets = new long[checkpointCount];
+        mPrecedingTimestamps = new long[checkpointCount];
+        mLastTimestamps = new long[checkpointCount];
+        mDictionarySizes = new int[checkpointCount];
+    }
+}
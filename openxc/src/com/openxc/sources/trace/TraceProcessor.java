@@ -0,0 +1,432 @@
+package com.openxc.sources.trace;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Objects;
+import com.openxc.remote.RawMeasurement;
+import com.openxc.sources.SourceCallback;
+
+/**
+ * Process recorded traces offline, as fast as they can be decoded on a pool of
+ * threads.
+ *
+ * JSON traces are split into chunks of about {@link #CHUNK_SIZE} bytes on line
+ * boundaries, and the chunks of all of the traces are decoded in parallel. The
+ * measurements are still passed to the callback - usually a
+ * {@link com.openxc.DataPipeline} with the sinks that compute the results - one
+ * at a time from the calling thread, in the same order as they are in the
+ * traces. Sinks don't have to be thread safe, and see each trace the same way
+ * as when it's played back by a {@link TraceVehicleDataSource}, except that
+ * the measurements keep the timestamps recorded in the trace.
+ *
+ * Binary traces are split at the checkpoints of their {@link TraceIndex}, into
+ * chunks of at most {@link #CHUNK_RECORDS} records that can each be decoded
+ * without the records before them. The index is built and saved next to the
+ * trace the first time it's processed, if it doesn't already have one.
+ *
+ * If the callback implements {@link TraceListener}, it's also told when each
+ * trace starts and finishes, e.g. to compute statistics for each trip.
+ */
+public class TraceProcessor {
+    public static final int CHUNK_SIZE = 1024 * 1024;
+    public static final int CHUNK_RECORDS = 16 * TraceIndex.CHECKPOINT_INTERVAL;
+
+    /**
+     * A callback that's told where each trace starts and finishes.
+     */
+    public interface TraceListener {
+        /**
+         * Called before the first measurement of a trace is received.
+         */
+        public void traceStarted(File trace);
+
+        /**
+         * Called after the last measurement of a trace is received.
+         */
+        public void traceFinished(File trace);
+    }
+
+    private final int mThreadCount;
+    private final int mChunkSize;
+    private final int mChunkRecords;
+
+    /**
+     * Create a processor with a thread for each processor.
+     */
+    public TraceProcessor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public TraceProcessor(int threadCount) {
+        this(threadCount, CHUNK_SIZE);
+    }
+
+    TraceProcessor(int threadCount, int chunkSize) {
+        this(threadCount, chunkSize, CHUNK_RECORDS);
+    }
+
+    TraceProcessor(int threadCount, int chunkSize, int chunkRecords) {
+        if(threadCount < 1) {
+            throw new IllegalArgumentException(
+                    "Need at least 1 thread, not " + threadCount);
+        }
+        mThreadCount = threadCount;
+        mChunkSize = chunkSize;
+        mChunkRecords = chunkRecords;
+    }
+
+    /**
+     * Process a trace, or every trace in a directory in order of their names.
+     * Files in the directory that don't look like traces (e.g.
+     * {@link TraceIndex} sidecars) are skipped.
+     */
+    public Summary process(File traceOrDirectory, SourceCallback callback)
+            throws IOException {
+        if(traceOrDirectory.isDirectory()) {
+            return process(listTraces(traceOrDirectory), callback);
+        }
+        return process(Collections.singletonList(traceOrDirectory), callback);
+    }
+
+    /**
+     * Process a list of traces in order. Nothing is logged - the summary is
+     * the only report of the run.
+     *
+     * @throws IOException if any of the traces can't be read. The callback
+     *      will already have received the measurements before the problem.
+     */
+    public Summary process(List<File> traces, SourceCallback callback)
+            throws IOException {
+        TraceListener listener = null;
+        if(callback instanceof TraceListener) {
+            listener = (TraceListener) callback;
+        }
+
+        long startTime = System.nanoTime();
+        long byteCount = 0;
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        for(File trace : traces) {
+            split(trace, chunks);
+            byteCount += trace.length();
+        }
+
+        long recordCount = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(mThreadCount);
+        try {
+            // Only decode a few chunks ahead of the callback, so a large trace
+            // doesn't have to fit in memory
+            LinkedList<Chunk> pending = new LinkedList<Chunk>();
+            int next = 0;
+            while(next < chunks.size() || !pending.isEmpty()) {
+                while(next < chunks.size() &&
+                        pending.size() < mThreadCount * 2) {
+                    Chunk chunk = chunks.get(next++);
+                    chunk.mResult = executor.submit(chunk);
+                    pending.add(chunk);
+                }
+
+                Chunk chunk = pending.removeFirst();
+                List<RawMeasurement> measurements = getResult(chunk);
+                if(listener != null && chunk.mFirst) {
+                    listener.traceStarted(chunk.mTrace);
+                }
+                for(RawMeasurement measurement : measurements) {
+                    callback.receive(measurement);
+                }
+                recordCount += measurements.size();
+                if(listener != null && chunk.mLast) {
+                    listener.traceFinished(chunk.mTrace);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return new Summary(traces.size(), recordCount, byteCount,
+                System.nanoTime() - startTime);
+    }
+
+    /**
+     * The amount of data a run of a {@link TraceProcessor} got through, and
+     * how long it took.
+     */
+    public static class Summary {
+        private final int mTraceCount;
+        private final long mRecordCount;
+        private final long mByteCount;
+        private final long mElapsedTime;
+
+        Summary(int traceCount, long recordCount, long byteCount,
+                long elapsedTime) {
+            mTraceCount = traceCount;
+            mRecordCount = recordCount;
+            mByteCount = byteCount;
+            mElapsedTime = elapsedTime;
+        }
+
+        public int getTraceCount() {
+            return mTraceCount;
+        }
+
+        public long getRecordCount() {
+            return mRecordCount;
+        }
+
+        public long getByteCount() {
+            return mByteCount;
+        }
+
+        /**
+         * @return how long the run took, in nanoseconds.
+         */
+        public long getElapsedTime() {
+            return mElapsedTime;
+        }
+
+        public double getRecordsPerSecond() {
+            return mRecordCount * 1e9 / Math.max(mElapsedTime, 1);
+        }
+
+        public double getBytesPerSecond() {
+            return mByteCount * 1e9 / Math.max(mElapsedTime, 1);
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                .add("traces", mTraceCount)
+                .add("records", mRecordCount)
+                .add("bytes", mByteCount)
+                .add("elapsedMs", mElapsedTime / 1000000)
+                .add("recordsPerSecond", Math.round(getRecordsPerSecond()))
+                .add("bytesPerSecond", Math.round(getBytesPerSecond()))
+                .toString();
+        }
+    }
+
+    private static List<File> listTraces(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if(files == null) {
+            throw new IOException("Unable to list the traces in " +
+                    directory);
+        }
+
+        Arrays.sort(files);
+        List<File> traces = new ArrayList<File>();
+        for(File file : files) {
+            if(file.isFile() && !file.isHidden() &&
+                    !file.getName().endsWith(TraceIndex.FILE_EXTENSION)) {
+                traces.add(file);
+            }
+        }
+        return traces;
+    }
+
+    /**
+     * Add the chunks of a trace to a list. Every trace has at least one
+     * chunk, even if it's empty.
+     */
+    private void split(File trace, List<Chunk> chunks) throws IOException {
+        InputStream stream = new BufferedInputStream(
+                new FileInputStream(trace));
+        boolean binary;
+        try {
+            binary = BinaryTraceReader.isBinaryTrace(stream);
+        } finally {
+            stream.close();
+        }
+
+        if(binary) {
+            splitBinary(trace, chunks);
+            return;
+        }
+
+        FileChannel channel = new FileInputStream(trace).getChannel();
+        try {
+            long size = channel.size();
+            long start = 0;
+            do {
+                long end = findLineStart(channel,
+                        Math.min(start + mChunkSize, size));
+                chunks.add(new Chunk(trace, start, end, start == 0,
+                            end == size));
+                start = end;
+            } while(start < size);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Add the chunks of a binary trace to a list, starting each one at a
+     * checkpoint of the trace's index.
+     */
+    private void splitBinary(File trace, List<Chunk> chunks)
+            throws IOException {
+        TraceIndex index = TraceIndex.open(trace);
+        int checkpointCount = index.getCheckpointCount();
+        if(checkpointCount == 0) {
+            chunks.add(new Chunk(trace, 0, 0, true, true));
+            return;
+        }
+
+        int step = Math.max(1, mChunkRecords / TraceIndex.CHECKPOINT_INTERVAL);
+        for(int checkpoint = 0; checkpoint < checkpointCount;
+                checkpoint += step) {
+            int next = checkpoint + step;
+            if(next < checkpointCount) {
+                chunks.add(new Chunk(trace, index, checkpoint,
+                            index.getOffset(next),
+                            step * TraceIndex.CHECKPOINT_INTERVAL));
+            } else {
+                // The last chunk has the rest of the records
+                chunks.add(new Chunk(trace, index, checkpoint, trace.length(),
+                            Integer.MAX_VALUE));
+            }
+        }
+    }
+
+    /**
+     * @return the offset of the first line that starts at or after a
+     *      position, or the size of the file if there isn't one.
+     */
+    private static long findLineStart(FileChannel channel, long position)
+            throws IOException {
+        long size = channel.size();
+        if(position == 0 || position >= size) {
+            return position;
+        }
+
+        // The position is already the start of a line if the byte before it
+        // ends one
+        position--;
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while(true) {
+            buffer.clear();
+            int received = channel.read(buffer, position);
+            if(received <= 0) {
+                return size;
+            }
+            for(int i = 0; i < received; i++) {
+                if(buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += received;
+        }
+    }
+
+    private static List<RawMeasurement> getResult(Chunk chunk)
+            throws IOException {
+        try {
+            return chunk.mResult.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                    "Interrupted while processing " + chunk.mTrace);
+        } catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if(cause instanceof Error) {
+                throw (Error) cause;
+            }
+            IOException exception = new IOException("Unable to process " +
+                    chunk.mTrace);
+            exception.initCause(cause);
+            throw exception;
+        }
+    }
+
+    private static class Chunk implements Callable<List<RawMeasurement>> {
+        private final File mTrace;
+        private final long mStart;
+        private final long mEnd;
+        // The index and checkpoint a binary chunk starts at, or null for JSON
+        private final TraceIndex mIndex;
+        private final int mCheckpoint;
+        private final int mRecordLimit;
+        // True if this is the first or last chunk of the trace
+        private final boolean mFirst;
+        private final boolean mLast;
+        private Future<List<RawMeasurement>> mResult;
+
+        /**
+         * A chunk of the lines of a JSON trace.
+         */
+        public Chunk(File trace, long start, long end, boolean first,
+                boolean last) {
+            mTrace = trace;
+            mStart = start;
+            mEnd = end;
+            mIndex = null;
+            mCheckpoint = 0;
+            mRecordLimit = Integer.MAX_VALUE;
+            mFirst = first;
+            mLast = last;
+        }
+
+        /**
+         * A chunk of a binary trace, starting at a checkpoint.
+         *
+         * @param end the offset of the next chunk, or the end of the trace.
+         * @param recordLimit the number of records in the chunk.
+         */
+        public Chunk(File trace, TraceIndex index, int checkpoint, long end,
+                int recordLimit) {
+            mTrace = trace;
+            mStart = index.getOffset(checkpoint);
+            mEnd = end;
+            mIndex = index;
+            mCheckpoint = checkpoint;
+            mRecordLimit = recordLimit;
+            mFirst = checkpoint == 0;
+            mLast = end == trace.length();
+        }
+
+        public List<RawMeasurement> call() throws IOException {
+            List<RawMeasurement> measurements =
+                    new ArrayList<RawMeasurement>();
+            if(mStart == mEnd) {
+                return measurements;
+            }
+
+            TraceReader reader;
+            if(mIndex != null) {
+                reader = mIndex.openCheckpoint(mTrace, mCheckpoint);
+            } else {
+                reader = new MappedJsonTraceReader(mTrace, mStart, mEnd);
+            }
+
+            try {
+                RawMeasurement measurement;
+                while(measurements.size() < mRecordLimit &&
+                        (measurement = reader.read()) != null) {
+                    measurements.add(measurement);
+                }
+            } finally {
+                reader.close();
+            }
+            return measurements;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.openxc.sources.trace;
+
+import java.io.IOException;
+
+import com.openxc.remote.RawMeasurement;
+
+/**
+ * Read the measurements in a recorded trace, in the order they were recorded.
+ *
+ * @see TraceWriter
+ */
+public interface TraceReader {
+    /**
+     * Read the next measurement from the trace, skipping any records that
+     * can't be decoded.
+     *
+     * @return the next measurement, with the timestamp it was recorded at, or
+     *      null if the end of the trace has been reached.
+     * @throws IOException if the trace couldn't be read.
+     */
+    public RawMeasurement read() throws IOException;
+
+    /**
+     * @return the number of bytes of the trace consumed so far.
+     */
+    public long getBytesRead();
+
+    public void close() throws IOException;
+}
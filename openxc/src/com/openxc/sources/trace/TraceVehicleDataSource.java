@@ -4,19 +4,15 @@ import com.google.common.base.Objects;
 
 import java.util.concurrent.TimeUnit;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.IOException;
 
 import java.net.URI;
 
-import com.openxc.measurements.UnrecognizedMeasurementTypeException;
-
 import com.openxc.sources.ContextualVehicleDataSource;
 import com.openxc.sources.SourceCallback;
 import com.openxc.sources.DataSourceException;
@@ -45,6 +41,12 @@ import android.util.Log;
  * {"timestamp": 1351176963.438211, "name": "brake_pedal_status", "value": false}
  * {"timestamp": 1351176963.438318, "name": "transmission_gear_position", "value": "second"}
  *
+ * Traces can also be in the compact binary format written by
+ * {@link BinaryTraceWriter}, e.g. by a
+ * {@link com.openxc.sinks.BinaryRecorderSink} - the format is detected from
+ * the start of the file, and binary traces are played back without any JSON
+ * parsing. {@link TraceConverter} converts traces between the two formats.
+ *
  * The trace file to use is specified via the constructor as an Android-style
  * resource URI, e.g. "resource://42", "file:///storage/traces/trace.json" or a
  * plain file path (e.g. "/sdcard/com.openxc/trace.json" ). When using
@@ -61,6 +63,23 @@ import android.util.Log;
  *
  * The trace file is played back in a continuous loop at roughly the same speed
  * as the original recording (at least according to the timestamps in the file).
+ * {@link #setPlaybackSpeed(double)} speeds it up (or slows it down), and with
+ * {@link #UNTHROTTLED} the records are sent as fast as the pipeline accepts
+ * them. The rate of each pass through the trace is logged at the end of it,
+ * and the latest is available from {@link #getPlaybackRate()}.
+ *
+ * Playback can be limited to a window of time in the trace with
+ * {@link #setPlaybackWindow(long, long)}, and moved to any time with
+ * {@link #seek(long)}. Regular files are indexed by a {@link TraceIndex} the
+ * first time they're played, so starting in the middle of a long trace doesn't
+ * mean reading everything before it.
+ * {@link #setPreloadLimit(long)} decodes the whole trace into a
+ * {@link TraceCache} the first time it's played, so later loops don't read
+ * or parse it again, and start without a pause.
+ *
+ * JSON trace files are mapped into memory with a {@link MappedJsonTraceReader}
+ * rather than read through a stream, so a trace that's looped stays in the
+ * OS's page cache.
  *
  * Playback will not begin until a callback is set, either via a constructor or
  * the
@@ -71,10 +90,33 @@ public class TraceVehicleDataSource extends ContextualVehicleDataSource
             implements Runnable {
     private static final String TAG = "TraceVehicleDataSource";
 
+    private static final long NO_SEEK = Long.MIN_VALUE;
+
+    /**
+     * The playback speed to send records as fast as the pipeline will accept
+     * them, regardless of their timestamps.
+     */
+    public static final double UNTHROTTLED = Double.POSITIVE_INFINITY;
+
     private long mFirstTimestamp = 0;
-    private boolean mRunning = true;
+    // When the record with mFirstTimestamp was played, from System.nanoTime()
+    private long mFirstPlayedTime;
+    // The speed that mFirstTimestamp and mFirstPlayedTime were stored with
+    private double mTimingSpeed;
+    private volatile double mSpeed = 1;
+    private volatile double mPlaybackRate;
+    private volatile boolean mRunning = true;
     private boolean mLoop = true;
     private URI mFilename;
+    private volatile TraceIndex mIndex;
+    private volatile long mStartTime = 0;
+    private volatile long mEndTime = Long.MAX_VALUE;
+    private long mSeekTime = NO_SEEK;
+    private volatile long mPreloadLimit = 0;
+    // The preload limit that mCache was loaded with - only used by the
+    // playback thread
+    private long mCacheLimit = 0;
+    private TraceCache mCache;
 
     /** Construct a trace data source with the given context, callback and
      * trace file resource URI.
@@ -131,6 +173,106 @@ public class TraceVehicleDataSource extends ContextualVehicleDataSource
         super.stop();
         Log.d(TAG, "Stopping trace playback");
         mRunning = false;
+        synchronized(this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Only play back the part of the trace recorded during a window of time.
+     * Playback restarts at the beginning of the window, and each loop starts
+     * there too.
+     *
+     * @param startTime the start of the window in milliseconds since the
+     *      epoch, as recorded in the trace.
+     * @param endTime the end of the window, or Long.MAX_VALUE to play to the
+     *      end of the trace.
+     */
+    public void setPlaybackWindow(long startTime, long endTime) {
+        if(endTime < startTime) {
+            throw new IllegalArgumentException("Playback window ends (" +
+                    endTime + ") before it starts (" + startTime + ")");
+        }
+        mStartTime = startTime;
+        mEndTime = endTime;
+        seek(startTime);
+    }
+
+    /**
+     * Jump to a time in the trace. Playback continues from the first record
+     * at or after the time, to the end of the playback window.
+     *
+     * @param timestamp the time in milliseconds since the epoch, as recorded
+     *      in the trace.
+     */
+    public synchronized void seek(long timestamp) {
+        Log.d(TAG, "Seeking to " + timestamp + " in " + mFilename);
+        mSeekTime = timestamp;
+        notifyAll();
+    }
+
+    /**
+     * Change the speed of playback relative to the original recording, e.g. 10
+     * to play back 10 times faster. The new speed takes effect at the next
+     * record.
+     *
+     * At {@link #UNTHROTTLED}, records are sent without waiting for their
+     * timestamps and the next loop starts without a pause, so playback is
+     * limited only by the pipeline. Sinks that the pipeline calls directly
+     * (or through a {@link com.openxc.DeliveryPolicy#LOSSLESS} queue) hold up
+     * playback until they're ready for the next record; sinks with any other
+     * delivery policy may miss records.
+     *
+     * @param speed the speed factor, which must be greater than 0.
+     */
+    public void setPlaybackSpeed(double speed) {
+        if(!(speed > 0)) {
+            throw new IllegalArgumentException(
+                    "Playback speed must be greater than 0, not " + speed);
+        }
+        mSpeed = speed;
+    }
+
+    public double getPlaybackSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * @return the average number of records per second sent during the last
+     *      pass through the trace, or 0 if none has finished yet.
+     */
+    public double getPlaybackRate() {
+        return mPlaybackRate;
+    }
+
+    /**
+     * Decode the whole trace into memory when the next pass of playback
+     * starts, and play it back from there from then on. If the trace doesn't
+     * fit in the limit, it's read from the file every time as usual.
+     *
+     * The trace is only read once, so changes to it aren't played back.
+     *
+     * @param maximumBytes the most memory the decoded trace may use, or 0 to
+     *      read it from the file every time.
+     */
+    public void setPreloadLimit(long maximumBytes) {
+        if(maximumBytes < 0) {
+            throw new IllegalArgumentException(
+                    "Preload limit can't be negative: " + maximumBytes);
+        }
+        mPreloadLimit = maximumBytes;
+    }
+
+    public long getPreloadLimit() {
+        return mPreloadLimit;
+    }
+
+    /**
+     * @return the index of the trace, or null if it's not a regular file or
+     *      playback hasn't started yet.
+     */
+    public TraceIndex getIndex() {
+        return mIndex;
     }
 
     /**
@@ -141,45 +283,38 @@ public class TraceVehicleDataSource extends ContextualVehicleDataSource
      * thread will die a quick death.
      */
     public void run() {
+        long startTime = mStartTime;
         while(mRunning) {
-            Log.d(TAG, "Starting trace playback from beginning of " + mFilename);
-            BufferedReader reader;
+            Log.d(TAG, "Starting trace playback of " + mFilename + " at " +
+                    startTime);
+            TraceReader reader;
             try {
-                reader = openFile(mFilename);
+                reader = new WindowedTraceReader(openPlayback(startTime),
+                        startTime, mEndTime);
             } catch(DataSourceException e) {
                 Log.w(TAG, "Couldn't open the trace file " + mFilename, e);
                 break;
             }
 
-            String line = null;
             long startingTime = System.nanoTime();
+            long bytesRead = 0;
+            long messageCount = 0;
+            mFirstTimestamp = 0;
+            long seekTime = NO_SEEK;
             try {
-                while(mRunning && (line = reader.readLine()) != null) {
-                    RawMeasurement measurement;
-                    try {
-                        measurement = new RawMeasurement(line);
-                    } catch(UnrecognizedMeasurementTypeException e) {
-                        Log.w(TAG, "A trace line was not in the expected " +
-                                "format: " + line);
-                        continue;
-                    }
-
-                    if(measurement != null && !measurement.isTimestamped()) {
-                        Log.w(TAG, "A trace line was missing a timestamp: " +
-                                line);
-                        continue;
-                    }
-
-                    try {
-                        waitForNextRecord(startingTime,
-                                measurement.getTimestamp());
-                    } catch(NumberFormatException e) {
-                        Log.w(TAG, "A trace line was not in the expected " +
-                                "format: " + line);
-                        continue;
+                RawMeasurement measurement;
+                while(mRunning && (measurement = reader.read()) != null) {
+                    long position = reader.getBytesRead();
+                    addBytesReceived((int) (position - bytesRead));
+                    bytesRead = position;
+
+                    seekTime = waitForNextRecord(measurement.getTimestamp());
+                    if(seekTime != NO_SEEK) {
+                        break;
                     }
                     measurement.untimestamp();
                     handleMessage(measurement);
+                    messageCount++;
                 }
             } catch(IOException e) {
                 Log.w(TAG, "An exception occured when reading the trace " +
@@ -192,15 +327,18 @@ public class TraceVehicleDataSource extends ContextualVehicleDataSource
                     Log.w(TAG, "Couldn't even close the trace file", e);
                 }
             }
+            reportPlaybackRate(messageCount, System.nanoTime() - startingTime);
 
-            if(!mLoop) {
-                Log.d(TAG, "Not looping trace.");
-                break;
+            if(seekTime == NO_SEEK) {
+                if(!mLoop) {
+                    Log.d(TAG, "Not looping trace.");
+                    break;
+                }
+                Log.d(TAG, "Restarting playback of trace " + mFilename);
+                seekTime = waitForSeek(
+                        mSpeed == UNTHROTTLED || mCache != null ? 0 : 1000);
             }
-            Log.d(TAG, "Restarting playback of trace " + mFilename);
-            try {
-                Thread.sleep(1000);
-            } catch(InterruptedException e) {}
+            startTime = seekTime != NO_SEEK ? seekTime : mStartTime;
         }
         Log.d(TAG, "Playback of trace " + mFilename + " is finished");
     }
@@ -231,6 +369,7 @@ public class TraceVehicleDataSource extends ContextualVehicleDataSource
     public String toString() {
         return Objects.toStringHelper(this)
             .add("filename", mFilename)
+            .add("speed", mSpeed)
             .toString();
     }
 
@@ -247,73 +386,180 @@ public class TraceVehicleDataSource extends ContextualVehicleDataSource
         return TAG;
     }
 
+    private void reportPlaybackRate(long messageCount, long elapsedNanoseconds) {
+        if(messageCount == 0) {
+            return;
+        }
+
+        double rate = messageCount * 1e9 / Math.max(elapsedNanoseconds, 1);
+        mPlaybackRate = rate;
+        Log.i(TAG, "Played " + messageCount + " records of " + mFilename +
+                " in " + elapsedNanoseconds / 1000000 + "ms at " +
+                Math.round(rate) + " records/s");
+    }
+
     /**
-     * Using the startingTime as the relative starting point, sleep this thread
-     * until the next timestamp would occur.
+     * Using the first record played at the current speed as the relative
+     * starting point, wait until the next timestamp would occur or until
+     * playback is moved with {@link #seek(long)}.
      *
-     * @param startingTime the relative starting time in nanoseconds
      * @param timestamp the timestamp to wait for in milliseconds since the
      * epoch
+     * @return the time to seek to, or NO_SEEK if the record should be played.
      */
-    private void waitForNextRecord(long startingTime, long timestamp) {
+    private long waitForNextRecord(long timestamp) {
         // TODO is all of this nanosecond conversion necessary? the original
         // motivation was to get the most accurate time from the system, but i"m
         // not really sure it matters if the records are only timestamped at
         // the ms level.
         long timestampNanoseconds = TimeUnit.NANOSECONDS.convert(
                 timestamp, TimeUnit.MILLISECONDS);
-        if(mFirstTimestamp == 0) {
+        double speed = mSpeed;
+        if(mFirstTimestamp == 0 || speed != mTimingSpeed) {
             mFirstTimestamp = timestampNanoseconds;
+            mFirstPlayedTime = System.nanoTime();
+            mTimingSpeed = speed;
             Log.d(TAG, "Storing " + timestamp + " as the first " +
-                    "timestamp of the trace file");
+                    "timestamp of the trace file at " + speed + "x speed");
+        }
+
+        if(speed == UNTHROTTLED) {
+            return waitForSeek(0);
         }
-        long targetTime = startingTime + (timestampNanoseconds - mFirstTimestamp);
+
+        long targetTime = mFirstPlayedTime + (long) (
+                (timestampNanoseconds - mFirstTimestamp) / speed);
         long sleepDuration = TimeUnit.MILLISECONDS.convert(
                 targetTime - System.nanoTime(), TimeUnit.NANOSECONDS);
-        sleepDuration = Math.max(sleepDuration, 0);
-        try {
-            Thread.sleep(sleepDuration);
-        } catch(InterruptedException e) {}
+        return waitForSeek(sleepDuration);
     }
 
-    private BufferedReader openResourceFile(URI filename) {
-        InputStream stream;
+    /**
+     * Wait for a while, unless playback is moved with {@link #seek(long)} or
+     * stopped.
+     *
+     * @return the time to seek to, or NO_SEEK if there was no seek.
+     */
+    private synchronized long waitForSeek(long milliseconds) {
+        long deadline = System.currentTimeMillis() + milliseconds;
+        long remaining = milliseconds;
+        while(mSeekTime == NO_SEEK && mRunning && remaining > 0) {
+            try {
+                wait(remaining);
+            } catch(InterruptedException e) {
+                break;
+            }
+            remaining = deadline - System.currentTimeMillis();
+        }
+
+        long seekTime = mSeekTime;
+        mSeekTime = NO_SEEK;
+        return seekTime;
+    }
+
+    private InputStream openResourceFile(URI filename) {
         try {
-            stream = getContext().getResources().openRawResource(
+            return getContext().getResources().openRawResource(
                     Integer.valueOf(filename.getAuthority()));
         } catch(Resources.NotFoundException e) {
             Log.w(TAG, "Unable to find a trace resource with URI " + filename
                     + " -- returning an empty buffer");
-            stream = new ByteArrayInputStream(new byte[0]);
+            return new ByteArrayInputStream(new byte[0]);
         }
-        return readerForStream(stream);
     }
 
-    private BufferedReader openRegularFile(URI filename)
+    private InputStream openRegularFile(URI filename)
             throws DataSourceException {
-        FileInputStream stream;
         try {
-            stream = new FileInputStream(filename.getPath());
+            return new FileInputStream(filename.getPath());
         } catch(FileNotFoundException e) {
             throw new DataSourceException(
                 "Couldn't open the trace file " + filename, e);
         }
+    }
 
-        return readerForStream(stream);
+    /**
+     * Open the trace for a pass of playback, from the preloaded cache if it's
+     * enabled and the trace fits.
+     */
+    private TraceReader openPlayback(long startTime)
+            throws DataSourceException {
+        long limit = mPreloadLimit;
+        if(limit != mCacheLimit) {
+            mCacheLimit = limit;
+            mCache = limit > 0 ? preload(limit) : null;
+        }
+
+        if(mCache != null) {
+            return mCache.openReader();
+        }
+        return openFile(mFilename, startTime);
     }
 
-    private BufferedReader readerForStream(InputStream stream) {
-        DataInputStream dataStream = new DataInputStream(stream);
-        return new BufferedReader(new InputStreamReader(dataStream));
+    private TraceCache preload(long limit) throws DataSourceException {
+        long start = System.nanoTime();
+        TraceReader reader = openFile(mFilename, Long.MIN_VALUE);
+        try {
+            TraceCache cache = TraceCache.load(reader, limit);
+            if(cache == null) {
+                Log.i(TAG, "Trace " + mFilename + " doesn't fit in the " +
+                        limit + " byte preload limit, streaming it instead");
+            } else {
+                Log.i(TAG, "Preloaded " + cache + " from " + mFilename +
+                        " in " + (System.nanoTime() - start) / 1000000 + "ms");
+            }
+            return cache;
+        } catch(IOException e) {
+            Log.w(TAG, "Unable to preload the trace " + mFilename, e);
+            return null;
+        } finally {
+            try {
+                reader.close();
+            } catch(IOException e) {
+                Log.w(TAG, "Couldn't even close the trace file", e);
+            }
+        }
     }
 
-    private BufferedReader openFile(URI filename)
+    /**
+     * Open the trace, using its index to start as close as possible to a
+     * time if it's a regular file. The reader may return records from before
+     * the time.
+     */
+    private TraceReader openFile(URI filename, long startTime)
             throws DataSourceException {
         String scheme = filename.getScheme();
+        InputStream stream;
         if(scheme != null && scheme.equals("resource")) {
-            return openResourceFile(filename);
+            stream = openResourceFile(filename);
         } else {
-            return openRegularFile(filename);
+            File file = new File(filename.getPath());
+            if(file.isFile()) {
+                try {
+                    if(mIndex == null || !mIndex.isCurrent(file)) {
+                        long start = System.nanoTime();
+                        mIndex = TraceIndex.open(file);
+                        Log.i(TAG, "Opened " + mIndex + " of " + filename +
+                                " in " + (System.nanoTime() - start) / 1000000 +
+                                "ms");
+                    }
+                    return mIndex.openReader(file, startTime);
+                } catch(IOException e) {
+                    Log.w(TAG, "Unable to index the trace file " + filename +
+                            ", reading it from the beginning", e);
+                }
+            }
+            stream = openRegularFile(filename);
+        }
+
+        try {
+            return TraceConverter.openReader(stream);
+        } catch(IOException e) {
+            try {
+                stream.close();
+            } catch(IOException e2) { }
+            throw new DataSourceException(
+                "Couldn't read the trace file " + filename, e);
         }
     }
 }
@@ -0,0 +1,17 @@
+package com.openxc.sources.trace;
+
+import java.io.IOException;
+
+import com.openxc.remote.RawMeasurement;
+
+/**
+ * Record measurements to a trace that can be played back with a
+ * {@link TraceReader}.
+ */
+public interface TraceWriter {
+    public void write(RawMeasurement measurement) throws IOException;
+
+    public void flush() throws IOException;
+
+    public void close() throws IOException;
+}
@@ -0,0 +1,50 @@
+package com.openxc.sources.trace;
+
+import java.io.IOException;
+
+import com.openxc.remote.RawMeasurement;
+
+/**
+ * Read only the part of a trace recorded during a window of time.
+ *
+ * Measurements before the start of the window are skipped, and the trace ends
+ * at the first measurement after the end of it.
+ */
+public class WindowedTraceReader implements TraceReader {
+    private TraceReader mReader;
+    private long mStartTime;
+    private long mEndTime;
+
+    /**
+     * @param startTime the start of the window in milliseconds, as recorded in
+     *      the trace.
+     * @param endTime the end of the window in milliseconds, or
+     *      Long.MAX_VALUE to read to the end of the trace.
+     */
+    public WindowedTraceReader(TraceReader reader, long startTime,
+            long endTime) {
+        mReader = reader;
+        mStartTime = startTime;
+        mEndTime = endTime;
+    }
+
+    public RawMeasurement read() throws IOException {
+        RawMeasurement measurement;
+        while((measurement = mReader.read()) != null) {
+            if(measurement.getTimestamp() > mEndTime) {
+                return null;
+            } else if(measurement.getTimestamp() >= mStartTime) {
+                return measurement;
+            }
+        }
+        return null;
+    }
+
+    public long getBytesRead() {
+        return mReader.getBytesRead();
+    }
+
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
@@ -1,5 +1,6 @@
 /**
  * Contains a vehicle data source implementation that reads from OpenXC trace
- * files. This source is most often used for bench testing.
+ * files, and the readers and writers for the JSON and binary trace formats.
+ * This source is most often used for bench testing.
  */
 package com.openxc.sources.trace;
@@ -26,6 +26,12 @@ public class AndroidFileOpener implements FileOpener {
     }
 
     public BufferedWriter openForWriting(String filename) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+                    openStreamForWriting(filename)));
+    }
+
+    public OutputStream openStreamForWriting(String filename)
+            throws IOException {
         Log.i(TAG, "Opening " + getDirectory() + "/" + filename
                 + " for writing on external storage");
 
@@ -35,8 +41,7 @@ public class AndroidFileOpener implements FileOpener {
         File file = new File(directory, filename);
         try {
             directory.mkdirs();
-            OutputStream outputStream = new FileOutputStream(file);
-            return new BufferedWriter(new OutputStreamWriter(outputStream));
+            return new FileOutputStream(file);
         } catch(IOException e) {
             Log.w(TAG, "Unable to open " + file + " for writing", e);
             throw e;
@@ -2,6 +2,7 @@ package com.openxc.util;
 
 import java.io.IOException;
 import java.io.BufferedWriter;
+import java.io.OutputStream;
 
 /**
  * A generic interface for opening a file for writing.
@@ -18,4 +19,13 @@ public interface FileOpener {
      * @throws IOException if there are issues opening the file
      */
     public BufferedWriter openForWriting(String path) throws IOException;
+
+    /**
+     * Open the file at the given path for writing binary data. If the file
+     * already exists, it's truncated.
+     *
+     * @return an OutputStream that references the requested file.
+     * @throws IOException if there are issues opening the file
+     */
+    public OutputStream openStreamForWriting(String path) throws IOException;
 }
@@ -1,8 +1,10 @@
 package com.openxc.util;
 
 import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * A file opener that uses the standard Java IO API.
@@ -19,4 +21,12 @@ public class JavaFileOpener implements FileOpener {
             throw e;
         }
     }
+
+    /**
+     * Open a file for binary data, replacing anything already in it - a
+     * binary trace can't be appended to, as it starts with a header.
+     */
+    public OutputStream openStreamForWriting(String path) throws IOException {
+        return new FileOutputStream(path);
+    }
 }
@@ -0,0 +1,146 @@
+package com.openxc.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Objects;
+
+/**
+ * A histogram of durations in nanoseconds with a fixed relative precision.
+ *
+ * Values are counted in log-linear buckets, in the style of an HDR histogram:
+ * each power of 2 is split into {@link #SUB_BUCKET_COUNT} equal buckets, so
+ * any value is reported to within about 6% no matter how large it is.
+ * Recording a value never allocates or locks and is safe from any thread, so
+ * it can be used on the path of every measurement.
+ */
+public class LatencyHistogram {
+    private final static int SUB_BUCKET_BITS = 4;
+    public final static int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private final static int BUCKET_COUNT =
+            (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mTotalCount = new AtomicLong();
+    private final AtomicLong mTotal = new AtomicLong();
+    private final AtomicLong mMaximum = new AtomicLong();
+
+    /**
+     * Count a duration.
+     *
+     * @param nanoseconds the duration - negative values are counted as 0.
+     */
+    public void record(long nanoseconds) {
+        record(nanoseconds, 1);
+    }
+
+    /**
+     * Count the same duration several times, e.g. the average time per
+     * measurement in a batch.
+     */
+    public void record(long nanoseconds, int count) {
+        if(count <= 0) {
+            return;
+        }
+
+        nanoseconds = Math.max(0, nanoseconds);
+        mCounts.addAndGet(getIndex(nanoseconds), count);
+        mTotalCount.addAndGet(count);
+        mTotal.addAndGet(nanoseconds * count);
+
+        long maximum;
+        while(nanoseconds > (maximum = mMaximum.get())) {
+            if(mMaximum.compareAndSet(maximum, nanoseconds)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return mTotalCount.get();
+    }
+
+    public long getMaximum() {
+        return mMaximum.get();
+    }
+
+    /**
+     * @return the mean of all recorded durations, or 0 if there are none.
+     */
+    public long getMean() {
+        long count = getCount();
+        return count > 0 ? mTotal.get() / count : 0;
+    }
+
+    /**
+     * Return the duration that the given percentage of recorded durations are
+     * less than or equal to.
+     *
+     * @param percentile the percentage, between 0 and 100.
+     * @return the upper bound of the bucket containing the percentile, or 0
+     *      if nothing has been recorded.
+     */
+    public long getPercentile(double percentile) {
+        long count = getCount();
+        if(count == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(
+                    count * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts.get(i);
+            if(seen >= target) {
+                return Math.min(getUpperBound(i), getMaximum());
+            }
+        }
+        return getMaximum();
+    }
+
+    /**
+     * Forget everything recorded so far.
+     *
+     * Values recorded at the same time as the reset may or may not be kept.
+     */
+    public void reset() {
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+        mTotalCount.set(0);
+        mTotal.set(0);
+        mMaximum.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+            .add("count", getCount())
+            .add("p50", getPercentile(50))
+            .add("p99", getPercentile(99))
+            .add("max", getMaximum())
+            .toString();
+    }
+
+    private static int getIndex(long value) {
+        if(value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT +
+                (int) ((value >>> shift) - SUB_BUCKET_COUNT);
+    }
+
+    private static long getUpperBound(int index) {
+        if(index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT;
+        long bound = (subBucket + 1) << shift;
+        // The top bucket's bound overflows
+        return bound > 0 ? bound - 1 : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,153 @@
+package com.openxc.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sampled end-to-end latency tracing of measurements.
+ *
+ * A sampled {@link com.openxc.remote.RawMeasurement} carries a timestamp for
+ * each hop on its way from a vehicle interface to an application's
+ * {@link com.openxc.measurements.Measurement.Listener}, and the stamps are
+ * copied across the binder with it. The stamps are from System.nanoTime(),
+ * which on Android is the monotonic clock shared by every process on the
+ * device, so stamps from the vehicle service and from an application can be
+ * compared directly.
+ *
+ * When a traced measurement reaches the end of its path in a process, the
+ * time between each pair of consecutive hops it was stamped at is recorded in
+ * that hop's {@link LatencyHistogram}. The histograms are shared by
+ * everything in the process and are included in the
+ * {@link com.openxc.remote.PipelineStatistics} of each pipeline.
+ *
+ * Tracing is off by default - a measurement is only sampled if
+ * {@link #setSampleInterval(int)} has been called in the process that reads
+ * it from the vehicle interface.
+ */
+public class LatencyTracer {
+    /** The bytes were returned by the vehicle interface. */
+    public final static int READ = 0;
+    /** The measurement was parsed from the bytes. */
+    public final static int DECODED = 1;
+    /** The measurement entered the vehicle service's pipeline. */
+    public final static int PIPELINE = 2;
+    /** The measurement left the service's queue to be sent to applications. */
+    public final static int SENT = 3;
+    /** The measurement arrived in the application's process. */
+    public final static int RECEIVED = 4;
+    /** The measurement entered the application's pipeline. */
+    public final static int CLIENT_PIPELINE = 5;
+    /** The measurement left the queue to be sent to listeners. */
+    public final static int DELIVERED = 6;
+    public final static int HOP_COUNT = 7;
+
+    private final static String[] HOP_NAMES = {
+        "read", "decode", "source", "service queue", "binder",
+        "client source", "listener queue"
+    };
+
+    private static volatile int sSampleInterval = 0;
+    private static final AtomicInteger sSampleCounter = new AtomicInteger();
+    private static final LatencyHistogram[] sHopLatencies =
+            new LatencyHistogram[HOP_COUNT];
+    private static final LatencyHistogram sTotalLatency =
+            new LatencyHistogram();
+
+    static {
+        for(int i = 0; i < HOP_COUNT; i++) {
+            sHopLatencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Trace one of every interval measurements read from a vehicle interface
+     * in this process.
+     *
+     * @param interval the number of measurements per sample, or 0 to stop
+     *      tracing.
+     */
+    public static void setSampleInterval(int interval) {
+        if(interval < 0) {
+            throw new IllegalArgumentException(
+                    "Sample interval can't be negative: " + interval);
+        }
+        sSampleInterval = interval;
+    }
+
+    public static int getSampleInterval() {
+        return sSampleInterval;
+    }
+
+    /**
+     * @return true if the next measurement should be traced. This doesn't
+     *      touch any shared state if tracing is off.
+     */
+    public static boolean shouldSample() {
+        int interval = sSampleInterval;
+        return interval > 0 &&
+                sSampleCounter.incrementAndGet() % interval == 0;
+    }
+
+    /**
+     * Record the hops of a trace.
+     *
+     * Hops the measurement wasn't stamped at (e.g. ones in another process)
+     * are skipped, and the next hop's latency is measured from the last one
+     * that was stamped.
+     *
+     * @param stamps the stamp of each hop from System.nanoTime(), or 0 if the
+     *      measurement wasn't stamped there.
+     */
+    public static void record(long[] stamps) {
+        long first = 0;
+        long previous = 0;
+        for(int hop = 0; hop < HOP_COUNT && hop < stamps.length; hop++) {
+            if(stamps[hop] == 0) {
+                continue;
+            }
+
+            if(previous == 0) {
+                first = stamps[hop];
+            } else {
+                sHopLatencies[hop].record(stamps[hop] - previous);
+            }
+            previous = stamps[hop];
+        }
+
+        if(previous != first) {
+            sTotalLatency.record(previous - first);
+        }
+    }
+
+    /**
+     * @param hop one of the hop constants, e.g. {@link #SENT}.
+     * @return the time taken to reach the hop from the one before it.
+     */
+    public static LatencyHistogram getHopLatency(int hop) {
+        return sHopLatencies[hop];
+    }
+
+    /**
+     * @return the time from the first to the last stamp of each trace.
+     */
+    public static LatencyHistogram getTotalLatency() {
+        return sTotalLatency;
+    }
+
+    /**
+     * @return a short description of the time measured for a hop, e.g.
+     *      "binder" for the time from {@link #SENT} to {@link #RECEIVED}.
+     */
+    public static String getHopName(int hop) {
+        return HOP_NAMES[hop];
+    }
+
+    /**
+     * Clear the recorded latencies.
+     */
+    public static void reset() {
+        for(LatencyHistogram histogram : sHopLatencies) {
+            histogram.reset();
+        }
+        sTotalLatency.reset();
+    }
+}